@@ -0,0 +1,221 @@
+package org.tbull.util;
+
+
+
+
+/** A bit permutation compiled into a Bene&scaron; network of masked delta swaps.
+ *
+ *  <P>Any permutation of {@code N = 2^k} bits can be realized by {@code 2k - 1} stages, each of which swaps some
+ *  of the bit pairs that are a fixed distance (the delta) apart. The deltas are {@code N/2, N/4, ..., 2, 1, 2,
+ *  ..., N/2}. Which pairs get swapped in a stage is given by a mask with a bit set at the lower position of
+ *  each pair to swap. A stage thus works on whole words at a time: with a delta of 64 or more, it exchanges
+ *  masked bits between two words, and below that, it does a delta swap within each word.</P>
+ *
+ *  <P>The network is its own mirror image, and each stage is an involution, so running the stages in reverse
+ *  order realizes the inverse permutation. Stages that happen to swap nothing are dropped altogether.</P>
+ *
+ *  <P>Permutations whose length is not a power of two are padded with fixed points up to the next power of two
+ *  (but at least 64), so the network always works on whole {@code long} words.</P>
+ *
+ *  <P>Objects of this class are immutable.</P>
+ *
+ *  @see    BitShuffler
+ */
+
+final class BenesNetwork {
+
+    /** The number of bits the network works on, a power of two, at least 64. */
+    final int width;
+    /** The number of {@code long} words the network works on. */
+    final int words;
+    /** The delta of each (non-empty) stage. */
+    final int[] deltas;
+    /** The masks of each (non-empty) stage, one per word. */
+    final long[][] masks;
+
+
+
+
+    /** Compiles a permutation of up to 64 bits into the masks of all 11 stages of a 64 bit network.
+     *
+     *  <P>The stages have the deltas 32, 16, 8, 4, 2, 1, 2, 4, 8, 16, 32, in this order. Stages that swap
+     *  nothing have a mask of {@code 0}. This is meant for fully unrolled implementations.</P>
+     *
+     *  @param  seq     A permutation of {@code 0 .. seq.length - 1}, not checked for validity.
+     *                  {@code seq.length} must not exceed 64.
+     */
+    static long[] stages64(int[] seq) {
+        int[] deltas = new int[11];
+        long[][] masks = new long[11][1];
+        long[] result = new long[11];
+
+        route(seq, 64, 6, deltas, masks);
+        for (int i = 0; i < 11; i++) result[i] = masks[i][0];
+
+        return result;
+    }
+
+
+    /** Compiles the permutation that moves bit {@code i} to position {@code seq[i]}.
+     *
+     *  {@code seq} is not checked for validity. It must be a permutation of {@code 0 .. seq.length - 1}.
+     */
+    BenesNetwork(int[] seq) {
+        int len = seq.length, k, n, i;
+
+        for (n = 64, k = 6; n < len; n <<= 1) k++;
+        width = n;
+        words = n >>> 6;
+
+        int stages = 2 * k - 1;
+        int[] all_deltas = new int[stages];
+        long[][] all_masks = new long[stages][words];
+        int used = 0;
+
+        route(seq, n, k, all_deltas, all_masks);
+
+        for (i = 0; i < stages; i++)
+            if (!is_zero(all_masks[i])) used++;
+
+        deltas = new int[used];
+        masks = new long[used][];
+        for (i = 0, used = 0; i < stages; i++) {
+            if (is_zero(all_masks[i])) continue;
+            deltas[used] = all_deltas[i];
+            masks[used] = all_masks[i];
+            used++;
+        }
+    }
+
+
+        private static boolean is_zero(long[] a) {
+            for (long x: a) if (x != 0) return false;
+            return true;
+        }
+
+
+        private static void set_bit(long[] mask, int pos) {
+            mask[pos >>> 6] |= 1L << pos;
+        }
+
+
+        /** Sets up the masks of all stages for the permutation {@code seq}, padded to {@code n = 2^k} bits.
+         *
+         *  <P>Works level by level, from the outer stages inwards. At each level, the bits are organized in
+         *  blocks of {@code 2 * half} bits, each of which is routed on its own: the outer stage pair of a block
+         *  splits the block's permutation into two permutations on {@code half} bits each, one for the lower and
+         *  one for the upper half of the block. These make up the blocks of the next level.</P>
+         *
+         *  <P>The split follows the classic looping algorithm: the two bits of each input pair (positions
+         *  {@code j} and {@code j + half}) must go to different halves, and so must the two bits of each output
+         *  pair. Following these constraints alternately from a bit to its input partner and from there to its
+         *  output partner leads through a cycle which can always be consistently 2-colored.</P>
+         */
+        private static void route(int[] seq, int n, int k, int[] deltas, long[][] masks) {
+            int len = seq.length, stages = 2 * k - 1;
+            int[] perm = new int[n], inv = new int[n];
+            int[] side = new int[n];
+            int[] next_perm = new int[n];
+            int level, half, block, j, i, s, e, base, p, t;
+
+            for (i = 0; i < n; i++) perm[i] = i < len ? seq[i] : i;
+            for (i = 0; i < n; i++) inv[perm[i]] = i;
+
+            for (level = 0; level < k - 1; level++) {
+                half = n >>> (level + 1);
+                long[] in_mask = masks[level], out_mask = masks[stages - 1 - level];
+                deltas[level] = deltas[stages - 1 - level] = half;
+
+                java.util.Arrays.fill(side, -1);
+
+                for (block = 0; block < n; block += 2 * half) {
+                    /* 2-color the bits of this block */
+                    for (j = block; j < block + half; j++) {
+                        if (side[j] >= 0) continue;
+
+                        i = j; s = 0;
+                        for (;;) {
+                            side[i] = s;
+                            side[i ^ half] = 1 - s;
+                            // the output partner of i's input partner must go to the same half as i
+                            e = inv[perm[i ^ half] ^ half];
+                            if (side[e] >= 0) break;
+                            i = e;
+                        }
+                    }
+
+                    /* input stage: bits of the lower half that must go to the upper half get swapped */
+                    for (j = block; j < block + half; j++)
+                        if (side[j] == 1) set_bit(in_mask, j);
+
+                    /* output stage: bits arriving in the upper half that belong to the lower half get swapped */
+                    for (j = block; j < block + half; j++)
+                        if (side[inv[j]] == 1) set_bit(out_mask, j);
+                }
+
+                /* the permutations for the next level: each bit is now in its half, at the same offset */
+                for (i = 0; i < n; i++) {
+                    base = (i & ~(2 * half - 1)) + side[i] * half;
+                    p = base + (i & (half - 1));
+                    t = base + (perm[i] & (half - 1));
+                    next_perm[p] = t;
+                }
+                System.arraycopy(next_perm, 0, perm, 0, n);
+                for (i = 0; i < n; i++) inv[perm[i]] = i;
+            }
+
+            /* innermost stage: blocks of 2 bits, either straight or crossed */
+            deltas[k - 1] = 1;
+            for (j = 0; j < n; j += 2)
+                if (perm[j] != j) set_bit(masks[k - 1], j);
+        }
+
+
+
+
+        /** Swaps the masked bits that are {@code d} positions apart. */
+        private static void stage(long[] x, int d, long[] m) {
+            int w, dw;
+            long t;
+
+            if (d >= 64) {
+                // between words
+                dw = d >>> 6;
+                for (w = 0; w < m.length; w++) {
+                    if ((t = m[w]) == 0) continue;
+                    t &= x[w] ^ x[w + dw];
+                    x[w] ^= t;
+                    x[w + dw] ^= t;
+                }
+            } else {
+                // within words
+                for (w = 0; w < m.length; w++) {
+                    if ((t = m[w]) == 0) continue;
+                    t &= (x[w] >>> d) ^ x[w];
+                    x[w] ^= t ^ (t << d);
+                }
+            }
+        }
+
+
+    /** Applies the permutation to {@code x} in place.
+     *
+     *  @param  x   At least {@link #words} words of bits, bit {@code i} being bit {@code i & 63} of
+     *              {@code x[i >>> 6]}. Any words beyond are left untouched.
+     */
+    void forward(long[] x) {
+        for (int i = 0; i < deltas.length; i++)
+            stage(x, deltas[i], masks[i]);
+    }
+
+
+    /** Applies the inverse permutation to {@code x} in place.
+     *
+     *  @param  x   At least {@link #words} words of bits, see {@link #forward(long[])}.
+     */
+    void backward(long[] x) {
+        for (int i = deltas.length - 1; i >= 0; i--)
+            stage(x, deltas[i], masks[i]);
+    }
+
+}
@@ -0,0 +1,110 @@
+package org.tbull.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+
+
+
+/** Bit gather (compress) and scatter (expand) operations.
+ *
+ *  <P>Beginning with Java 19, {@code Long.compress} and {@code Long.expand} exist and are intrinsified by the
+ *  JIT to single instructions where the hardware has them (PEXT/PDEP on x86-64 with BMI2). We are compiled
+ *  against older class libraries, so we look them up reflectively once. The handles are kept in
+ *  {@code static final} fields, which lets the JIT treat them as constants and inline the intrinsics.</P>
+ *
+ *  <P>If the runtime lacks these methods, {@link #INTRINSIC} is {@code false} and the operations fall back to
+ *  a portable loop that takes one iteration per set mask bit. That is correct, but slow; users should
+ *  prefer another way of doing things in that case.</P>
+ */
+
+final class BitGather {
+
+    private static final MethodHandle COMPRESS = find("compress");
+    private static final MethodHandle EXPAND = find("expand");
+
+    /** Whether the runtime provides {@code Long.compress} and {@code Long.expand}. */
+    static final boolean INTRINSIC = COMPRESS != null && EXPAND != null;
+
+
+    private BitGather() { }
+
+
+        private static MethodHandle find(String name) {
+            try {
+                return MethodHandles.publicLookup().findStatic(Long.class, name,
+                    MethodType.methodType(long.class, long.class, long.class));
+            } catch (NoSuchMethodException e) {
+                return null;
+            } catch (IllegalAccessException e) {
+                return null;
+            }
+        }
+
+
+
+
+    /** Gathers the bits of {@code x} selected by {@code mask} into the low bits of the result, keeping their
+     *  order. Like {@code Long.compress(x, mask)}.
+     */
+    static long compress(long x, long mask) {
+        if (INTRINSIC) {
+            try {
+                return (long) COMPRESS.invokeExact(x, mask);
+            } catch (Throwable e) {
+                throw new AssertionError(e);
+            }
+        }
+        return compress_loop(x, mask);
+    }
+
+
+    /** Scatters the low bits of {@code x} to the positions selected by {@code mask}, keeping their order.
+     *  Like {@code Long.expand(x, mask)}.
+     */
+    static long expand(long x, long mask) {
+        if (INTRINSIC) {
+            try {
+                return (long) EXPAND.invokeExact(x, mask);
+            } catch (Throwable e) {
+                throw new AssertionError(e);
+            }
+        }
+        return expand_loop(x, mask);
+    }
+
+
+
+
+    /** Portable implementation of {@link #compress(long, long)}. */
+    static long compress_loop(long x, long mask) {
+        long result = 0;
+        int k = 0;
+
+        while (mask != 0) {
+            long low = mask & -mask;    // lowest selected bit
+            if ((x & low) != 0) result |= 1L << k;
+            k++;
+            mask ^= low;
+        }
+
+        return result;
+    }
+
+
+    /** Portable implementation of {@link #expand(long, long)}. */
+    static long expand_loop(long x, long mask) {
+        long result = 0;
+
+        while (mask != 0) {
+            long low = mask & -mask;    // lowest target bit
+            if ((x & 1) != 0) result |= low;
+            x >>>= 1;
+            mask ^= low;
+        }
+
+        return result;
+    }
+
+}
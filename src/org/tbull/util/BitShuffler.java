@@ -1,8 +1,13 @@
 package org.tbull.util;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.nio.BufferOverflowException;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 
 
@@ -18,6 +23,19 @@ import java.util.Random;
  *  An unshuffle sequence is generated which inverts the effect of the shuffle process, so that the original
  *  number can be computed from the shuffled version.</P>
  *
+ *  <P>Numbers of up to 64 bits are shuffled by one of three {@link Engine}s, compiled when the shuffle sequence
+ *  is set. By default, shuffling is table-driven: a lookup table is precomputed for each byte of the input,
+ *  holding the scattered bits of each of the 256 possible byte values. A shuffle then takes one lookup per byte,
+ *  ORed together, instead of moving the bits one at a time. Alternatively, the sequence is compiled into a
+ *  network of masked delta swaps, which needs no memory lookups at all, or into groups of bits gathered and
+ *  scattered with {@code Long.compress} and {@code Long.expand}. The latter falls back to the tables where
+ *  the runtime lacks these methods, unless the sequence needs none of them.</P>
+ *
+ *  <P>The compiled form of a sequence is an immutable {@link CompiledBitShuffler}, which all operations
+ *  delegate to. Threads may shuffle concurrently while another thread changes the sequence, each operation
+ *  then uses either the old or the new sequence. Changing the sequence from several threads at once is not
+ *  supported. Code that only needs a fixed sequence should rather share {@link #compiled()}.</P>
+ *
  *  This is a quick-hack implementation.
  *
  *  @version    2008-09-09
@@ -28,8 +46,32 @@ import java.util.Random;
 
 public class BitShuffler {
 
+    /** The ways of shuffling numbers of up to 64 bits, see {@link BitShuffler#setEngine(Engine)}. */
+    public static enum Engine {
+        /** Lookup tables, one per byte of the input. Takes 8 lookups per {@code long} and 32 KiB of tables.
+         *  Fastest as long as the tables stay in the cache. */
+        TABLE,
+        /** A Bene&scaron; network of masked delta swaps. Takes up to 11 steps of a few shift, xor and and
+         *  operations per {@code long}, without any memory lookups. Best on cache-cold paths.
+         *  Sequences longer than 64 fall back to {@link #TABLE}. */
+        NETWORK,
+        /** Groups of bits gathered and scattered with {@code Long.compress} and {@code Long.expand}, which
+         *  the JIT turns into single instructions on hardware that has them (PEXT/PDEP on x86-64 with BMI2).
+         *  Structured sequences, like rotations or byte swaps, take just a few of these. Anything else takes
+         *  six sheep-and-goats stages of two compress operations each.
+         *  On runtimes before Java 19, which lack these methods, only sequences that split into groups of plain
+         *  shifts are handled this way, anything else falls back to {@link #TABLE}. So do sequences longer
+         *  than 64. */
+        GATHER
+    }
+
+
     protected int[] shuffle_sequence;
     protected int[] unshuffle_sequence;
+    protected Engine engine = Engine.TABLE;
+
+    /** The compiled form of the current sequences, replaced as a whole whenever they change. */
+    volatile CompiledBitShuffler compiled;
 
 
 
@@ -49,16 +91,34 @@ public class BitShuffler {
     }
 
 
+    /** Constructs a {@code BitShuffler} with a given shuffle sequence and engine.
+     *
+     *  @param  seq     See {@link #setShuffleSequence} for details.
+     *  @param  engine  See {@link #setEngine} for details.
+     */
+    public BitShuffler(int[] seq, Engine engine) {
+        if (engine == null) throw new IllegalArgumentException();
+        this.engine = engine;
+        setShuffleSequence(seq);
+    }
+
+
 
 
     protected boolean verify_sequence(int[] seq) {
+        return is_permutation(seq);
+    }
+
+
+    /** Tells whether {@code seq} is a permutation of {@code 0 .. seq.length - 1}. */
+    static boolean is_permutation(int[] seq) {
         int i, len = seq.length;
         boolean[] present = new boolean[len];   // records which target bit numbers are present in the mapping
 
         for (i = 0; i < len; i++) present[i] = false;
 
         for (i = 0; i < len; i++) {
-            if (seq[i] >= len) return false;    // target bit number must not exceed sequence length
+            if (seq[i] < 0 || seq[i] >= len) return false;     // target bit number must be within the sequence
             present[seq[i]] = true;             // mark bit number as present
         }
 
@@ -91,13 +151,14 @@ public class BitShuffler {
      */
 
     public void setShuffleSequence(int[] seq) throws IllegalArgumentException {
-        shuffle_sequence = new int[seq.length];
-
+        // verify first, so that we don't end up in a broken state if the sequence is rejected
         if (!verify_sequence(seq)) throw new IllegalArgumentException();
 
+        shuffle_sequence = new int[seq.length];
         System.arraycopy(seq, 0, shuffle_sequence, 0, seq.length);
         // shuffle_sequence = java.util.Arrays.copyOf(seq, seq.length);
         create_unshuffle_sequence();
+        compile();
 //        System.out.printf("shuffle_sequence: %s\n", java.util.Arrays.toString(shuffle_sequence));
     }
 
@@ -113,26 +174,94 @@ public class BitShuffler {
             shuffle_sequence[i] = i;
 
         create_unshuffle_sequence();
+        compile();
     }
 
 
 
     /** Generates a random sequence suitable for use with a {@code BitShuffler}. */
     public static int[] randomSequence(int length) {
-        List<Integer> remaining = new LinkedList<Integer>();
-        Random rnd = new Random();
-        int seq[] = new int[length];
-        int i;
+        Random rnd = ThreadLocalRandom.current();
+        int seq[] = identity(length);
+
+        // Fisher-Yates: pick the element for each position from the ones not yet picked
+        for (int i = length - 1; i > 0; i--)
+            swap(seq, i, rnd.nextInt(i + 1));
 
-        for (i = 0; i < length; i++) remaining.add(Integer.valueOf(i));
+        return seq;
+    }
 
-        for (i = 0; i < length; i++)
-            seq[i] = remaining.remove(rnd.nextInt(remaining.size())).intValue();
+
+    /** Generates a sequence suitable for use with a {@code BitShuffler}, derived from a key.
+     *
+     *  <P>The same key and length always give the same sequence, on any platform and in any version of this
+     *  class, so a sequence can be stored or transmitted as its key. Different keys give unrelated looking
+     *  sequences. The sequence is shuffled by Fisher-Yates, driven by the SplitMix64 generator seeded with
+     *  {@code key}, which takes a few nanoseconds per element.</P>
+     *
+     *  <P>This is not a cryptographic key derivation: the key can be recovered from the sequence with modest
+     *  effort. It is meant to obfuscate, not to protect secrets.</P>
+     */
+    public static int[] keyedSequence(int length, long key) {
+        int seq[] = identity(length);
+        long state = key;
+
+        for (int i = length - 1; i > 0; i--) {
+            state += SPLITMIX_GAMMA;
+            // the top 31 bits scaled to 0 .. i, the bias is below 2^-31 / i
+            swap(seq, i, (int) (((mix64(state) >>> 33) * (i + 1)) >>> 31));
+        }
 
         return seq;
     }
 
 
+    /** Generates a sequence suitable for use with a {@code BitShuffler}, derived from a key of any length.
+     *
+     *  The key is hashed down to 64 bits, which are then used like in {@link #keyedSequence(int, long)}.
+     *  See there for details.
+     */
+    public static int[] keyedSequence(int length, byte[] key) {
+        long h = key.length;
+        int i;
+
+        for (i = 0; i + 8 <= key.length; i += 8) {
+            long w = 0;
+            for (int j = 7; j >= 0; j--) w = (w << 8) | (key[i + j] & 0xff);
+            h = mix64((h + SPLITMIX_GAMMA) ^ w);
+        }
+        if (i < key.length) {
+            long w = 0;
+            for (int j = key.length - 1; j >= i; j--) w = (w << 8) | (key[j] & 0xff);
+            h = mix64((h + SPLITMIX_GAMMA) ^ w);
+        }
+
+        return keyedSequence(length, h);
+    }
+
+
+        static final long SPLITMIX_GAMMA = 0x9e3779b97f4a7c15L;
+
+        /** The output function of SplitMix64, a bijective 64 bit mixer. */
+        static long mix64(long z) {
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            return z ^ (z >>> 31);
+        }
+
+
+        private static int[] identity(int length) {
+            int seq[] = new int[length];
+            for (int i = 0; i < length; i++) seq[i] = i;
+            return seq;
+        }
+
+
+        private static void swap(int[] a, int i, int j) {
+            int t = a[i]; a[i] = a[j]; a[j] = t;
+        }
+
+
 
     /**
      *  Creates the unshuffle sequence from the shuffle sequence
@@ -147,14 +276,378 @@ public class BitShuffler {
     }
 
 
+    /** Compiles the sequences for use by the current engine.
+     *
+     *  The compiled form is built aside and then published at once, so threads shuffling concurrently see
+     *  either the old or the new sequence, never a mix of both.
+     */
+    protected void compile() {
+        compiled = new CompiledBitShuffler(shuffle_sequence.clone(), unshuffle_sequence.clone(), engine);
+    }
+
+
+    /** Returns the compiled form of the current shuffle sequence and engine.
+     *
+     *  <P>The result is immutable, so it can be shared between threads freely and is not affected by later
+     *  changes to this {@code BitShuffler}. All shuffling operations of this class just delegate to it.</P>
+     */
+    public CompiledBitShuffler compiled() {
+        return compiled;
+    }
+
+
+    /** Selects the engine used for shuffling numbers of up to 64 bits.
+     *
+     *  <P>All engines give the same results, they only differ in performance, see {@link Engine}.
+     *  {@link Engine#NETWORK} and {@link Engine#GATHER} fall back to {@link Engine#TABLE} where they can not
+     *  handle a sequence, and {@code GATHER} also where {@code Long.compress} and {@code Long.expand} are not
+     *  available. The default is {@link Engine#TABLE}. Switching engines recompiles the shuffle sequence.</P>
+     */
+    public void setEngine(Engine engine) {
+        if (engine == null) throw new IllegalArgumentException();
+        this.engine = engine;
+        compile();
+    }
+
+
+    /** Returns the engine used for shuffling numbers of up to 64 bits. */
+    public Engine getEngine() {
+        return engine;
+    }
+
+
+
+
+        /** A compiled form of a sequence, permuting numbers of up to 64 bits in one direction. */
+        static abstract class Kernel {
+            /** Permutes the bits of {@code n}. Bits beyond the sequence or moved beyond bit 63 are dropped. */
+            abstract long permute(long n);
+            /** Permutes the bits of {@code n}. Bits beyond the sequence or moved beyond bit 31 are dropped. */
+            abstract int permute(int n);
+            /** Tells whether this kernel uses {@link BitGather}, which is slow without intrinsics. */
+            boolean uses_gather() { return false; }
+        }
+
+
+        /** Permutes through lookup tables, see {@link BitShuffler#make_table(int[])}. */
+        static final class TableKernel extends Kernel {
+            final long[] t;
+
+            TableKernel(int[] seq) { t = make_table(seq); }
+
+            @Override long permute(long n) { return lookup(t, n); }
+            @Override int permute(int n) { return lookup(t, n); }
+        }
+
+
+        /** Permutes through a fully unrolled 64 bit Bene&scaron; network, see {@link BenesNetwork#stages64}.
+         *
+         *  The inverse permutation runs through the same stages in reverse order. As the deltas of the stages
+         *  are symmetric, that is just a matter of reversing the masks.
+         */
+        static final class NetworkKernel extends Kernel {
+            /** The bits within the sequence. */
+            final long mask;
+            final long m0, m1, m2, m3, m4, m5, m6, m7, m8, m9, m10;
+
+            NetworkKernel(long[] stages, int length, boolean inverse) {
+                long[] m = stages;
+                if (inverse) {
+                    m = new long[11];
+                    for (int i = 0; i < 11; i++) m[i] = stages[10 - i];
+                }
+
+                mask = length >= 64 ? -1L : (1L << length) - 1;
+                m0 = m[0]; m1 = m[1]; m2 = m[2]; m3 = m[3]; m4 = m[4]; m5 = m[5];
+                m6 = m[6]; m7 = m[7]; m8 = m[8]; m9 = m[9]; m10 = m[10];
+            }
+
+            @Override long permute(long x) {
+                long t;
+
+                x &= mask;
+                t = ((x >>> 32) ^ x) & m0;  x ^= t ^ (t << 32);
+                t = ((x >>> 16) ^ x) & m1;  x ^= t ^ (t << 16);
+                t = ((x >>>  8) ^ x) & m2;  x ^= t ^ (t <<  8);
+                t = ((x >>>  4) ^ x) & m3;  x ^= t ^ (t <<  4);
+                t = ((x >>>  2) ^ x) & m4;  x ^= t ^ (t <<  2);
+                t = ((x >>>  1) ^ x) & m5;  x ^= t ^ (t <<  1);
+                t = ((x >>>  2) ^ x) & m6;  x ^= t ^ (t <<  2);
+                t = ((x >>>  4) ^ x) & m7;  x ^= t ^ (t <<  4);
+                t = ((x >>>  8) ^ x) & m8;  x ^= t ^ (t <<  8);
+                t = ((x >>> 16) ^ x) & m9;  x ^= t ^ (t << 16);
+                t = ((x >>> 32) ^ x) & m10; x ^= t ^ (t << 32);
+
+                return x;
+            }
+
+            @Override int permute(int n) {
+                return (int) permute(n & 0xffffffffL);
+            }
+        }
+
+
+        /** Maximum number of order-preserving groups for a {@link GatherKernel}. Beyond that, the six stages of
+         *  a {@link RadixGatherKernel} are cheaper. */
+        static final int MAX_GATHER_GROUPS = 6;
+
+
+        /** Compiles a sequence of up to 64 bits for compress/expand operations, see {@link Engine#GATHER}.
+         *
+         *  <P>The bits are split into as few groups as possible, such that the bits of each group keep their
+         *  relative order (both source and target positions increase together). Each group is then moved by
+         *  a single compress/expand pair, or even a single shift. This is the greedy cover of the sequence by
+         *  increasing subsequences, which is optimal: the number of groups equals the length of the longest
+         *  decreasing subsequence.</P>
+         *
+         *  <P>Too many groups (as usual for random sequences) make a {@link RadixGatherKernel} instead.</P>
+         */
+        static Kernel gather_kernel(int[] seq) {
+            int len = seq.length, groups = 0, i, j, t, best;
+            long[] src = new long[64], dst = new long[64];
+            int[] last = new int[64];
+
+            for (i = 0; i < len; i++) {
+                t = seq[i];
+
+                // the group whose last target is the largest one below t
+                best = -1;
+                for (j = 0; j < groups; j++)
+                    if (last[j] < t && (best < 0 || last[j] > last[best])) best = j;
+                if (best < 0) best = groups++;
+
+                src[best] |= 1L << i;
+                dst[best] |= 1L << t;
+                last[best] = t;
+            }
+
+            if (groups > MAX_GATHER_GROUPS) return new RadixGatherKernel(seq);
+            return new GatherKernel(Arrays.copyOf(src, groups), Arrays.copyOf(dst, groups));
+        }
+
+
+        /** Moves order-preserving groups of bits, see {@link BitShuffler#gather_kernel(int[])}. */
+        static final class GatherKernel extends Kernel {
+            /** Marks a group that is not a plain shift. */
+            static final int NO_SHIFT = Integer.MIN_VALUE;
+
+            final long[] src, dst;
+            final int[] shift;
+
+            GatherKernel(long[] src, long[] dst) {
+                this.src = src;
+                this.dst = dst;
+                shift = new int[src.length];
+
+                // groups which move all of their bits by the same distance need no compress/expand
+                for (int g = 0; g < src.length; g++) {
+                    int c = Long.numberOfTrailingZeros(dst[g]) - Long.numberOfTrailingZeros(src[g]);
+                    if (c >= 0 ? src[g] << c == dst[g] : src[g] >>> -c == dst[g]) shift[g] = c;
+                    else shift[g] = NO_SHIFT;
+                }
+            }
+
+            @Override boolean uses_gather() {
+                for (int c: shift) if (c == NO_SHIFT) return true;
+                return false;
+            }
+
+            @Override long permute(long x) {
+                long result = 0;
+                int c;
+
+                for (int g = 0; g < src.length; g++) {
+                    if ((c = shift[g]) == NO_SHIFT)
+                        result |= BitGather.expand(BitGather.compress(x, src[g]), dst[g]);
+                    else if (c >= 0) result |= (x & src[g]) << c;
+                    else result |= (x & src[g]) >>> -c;
+                }
+
+                return result;
+            }
+
+            @Override int permute(int n) {
+                return (int) permute(n & 0xffffffffL);
+            }
+        }
+
+
+        /** Permutes by sorting the bits on their target positions, see {@link Engine#GATHER}.
+         *
+         *  <P>This is a LSD radix sort with 6 passes of one target position bit each. A pass is a sheep-and-goats
+         *  operation: the bits whose target has the pass's bit clear are gathered at the bottom, the others on
+         *  top of them, each keeping their relative order. That takes two compress operations. Passes that
+         *  happen to leave everything in place are dropped.</P>
+         */
+        static final class RadixGatherKernel extends Kernel {
+            /** The bits within the sequence. */
+            final long mask;
+            /** Per pass: the bits going to the top, and the number of bits going to the bottom. */
+            final long[] goats;
+            final int[] sheep_count;
+
+            RadixGatherKernel(int[] seq) {
+                int len = seq.length, passes = 0, bit, p, lo, hi;
+                int[] tgt = new int[64], next = new int[64], tmp;
+                long[] g = new long[6];
+                int[] n = new int[6];
+                long m;
+
+                mask = len >= 64 ? -1L : (1L << len) - 1;
+                for (p = 0; p < 64; p++) tgt[p] = p < len ? seq[p] : p;
+
+                for (bit = 0; bit < 6; bit++) {
+                    m = 0;
+                    for (p = 0; p < 64; p++)
+                        if ((tgt[p] >>> bit & 1) != 0) m |= 1L << p;
+
+                    // stable partition
+                    lo = 0; hi = 64 - Long.bitCount(m);
+                    for (p = 0; p < 64; p++)
+                        if ((m >>> p & 1) != 0) next[hi++] = tgt[p];
+                        else next[lo++] = tgt[p];
+
+                    if (!Arrays.equals(tgt, next)) {
+                        g[passes] = m;
+                        n[passes] = 64 - Long.bitCount(m);
+                        passes++;
+                    }
+                    tmp = tgt; tgt = next; next = tmp;
+                }
+
+                goats = Arrays.copyOf(g, passes);
+                sheep_count = Arrays.copyOf(n, passes);
+            }
+
+            @Override boolean uses_gather() { return true; }
+
+            @Override long permute(long x) {
+                long m;
+
+                x &= mask;
+                for (int i = 0; i < goats.length; i++) {
+                    m = goats[i];
+                    x = BitGather.compress(x, ~m) | (BitGather.compress(x, m) << sheep_count[i]);
+                }
+
+                return x;
+            }
+
+            @Override int permute(int n) {
+                return (int) permute(n & 0xffffffffL);
+            }
+        }
+
+
+    /** Creates the lookup tables for a (64 bit) shuffle sequence.
+     *
+     *  <P>The result consists of 8 tables of 256 entries each, laid out one after the other. Table {@code k}
+     *  (at offset {@code k * 256}) holds, for each possible value of byte {@code k} of a number, the bits of that
+     *  byte moved to their target positions. Shuffling a number is then a matter of ORing together one entry from
+     *  each table, see {@link #lookup(long[], long)}.</P>
+     *
+     *  <P>Bits beyond the length of the sequence and bits whose target position is beyond 63 do not contribute
+     *  to the tables, so they are dropped in the result.</P>
+     */
+    protected static long[] make_table(int[] seq) {
+        long[] table = new long[8 * 256];
+        long[] bits = new long[8];
+        int len = seq.length, i, j, k, b, base;
+
+        for (k = 0; k < 8; k++) {
+            // the target bit of each bit of byte k
+            for (j = 0; j < 8; j++) {
+                i = (k << 3) + j;
+                bits[j] = i < len && seq[i] < 64 ? 1L << seq[i] : 0;
+            }
+
+            // each entry is the entry without its lowest bit plus the target of that bit
+            base = k << 8;
+            for (b = 1; b < 256; b++)
+                table[base + b] = table[base + (b & (b - 1))] | bits[Integer.numberOfTrailingZeros(b)];
+        }
+
+        return table;
+    }
+
+
+    /** Permutes the bits of {@code n} using the tables created by {@link #make_table(int[])}. */
+    protected static long lookup(long[] t, long n) {
+        return    t[           (int)  n         & 0xff ]
+                | t[0x100 | ((int) (n >>>  8) & 0xff)]
+                | t[0x200 | ((int) (n >>> 16) & 0xff)]
+                | t[0x300 | ((int) (n >>> 24) & 0xff)]
+                | t[0x400 | ((int) (n >>> 32) & 0xff)]
+                | t[0x500 | ((int) (n >>> 40) & 0xff)]
+                | t[0x600 | ((int) (n >>> 48) & 0xff)]
+                | t[0x700 | ((int) (n >>> 56)       )];
+    }
+
+
+    /** Permutes the bits of {@code n} using the first half of the tables created by {@link #make_table(int[])}.
+     *
+     *  Bits moved beyond bit 31 are dropped.
+     */
+    protected static int lookup(long[] t, int n) {
+        return (int) (
+                  t[           n         & 0xff ]
+                | t[0x100 | ((n >>>  8) & 0xff)]
+                | t[0x200 | ((n >>> 16) & 0xff)]
+                | t[0x300 | ((n >>> 24)       )]);
+    }
+
+
+
+
+    /*
+     *  Reference implementations.
+     *  These move the bits one at a time. They are kept to verify the table-driven implementation against.
+     *
+     */
+
+
+    /** Moves bit {@code i} of {@code n} to position {@code seq[i]}, one bit at a time. */
+    protected static int shuffle_int_loop(int[] seq, int n) {
+        int result, bit;
+
+        result = 0;
+        for (int i = 0; i < seq.length && i < 32; i++) {
+            /* take bit i and move it to its position according to seq */
+            bit = ((n & (1 << i)) >>> i);
+            result |= (bit << seq[i]);
+
+            /* alternative:
+                if ((n & (1 << i)) != 0)
+                    result |= (1 << seq[i]);
+            */
+        }
+
+        return result;
+    }
+
+
+    /** Moves bit {@code i} of {@code n} to position {@code seq[i]}, one bit at a time. */
+    protected static long shuffle_long_loop(int[] seq, long n) {
+        long result, bit;
+
+        result = 0;
+        for (int i = 0; i < seq.length && i < 64; i++) {
+            /* take bit i and move it to its position according to seq */
+            bit = ((n & (1L << i)) >>> i);
+            result |= (bit << seq[i]);
+        }
+
+        return result;
+    }
+
+
 
 
     /**
      *  Returns the number of bits this {@code BitShuffler} works on.
      */
     public int length() {
-        //return (byte) var_shuffle_sequence.size();
-        return (byte) shuffle_sequence.length;
+        return shuffle_sequence.length;
     }
 
 
@@ -173,28 +666,14 @@ public class BitShuffler {
      *  shuffle sequence is prepared for. Higher bits are considered insignificant and,
      *  thus, set to {@code 0} in the return value.
      *
+     *  Bits that the sequence moves beyond bit 31 are dropped.
+     *
      *  @param  n   The number to be shuffled.
      *  @return     The shuffled version of @c n.
-     *
-     *  TODO:   define [Verhalten] if shuffle sequence has more than 32 bits
      */
 
     public int shuffleInt(int n) {
-        int result, bit;
-
-        result = 0;
-        for (int i = 0; i < shuffle_sequence.length && i < 32; i++) {
-            /* take bit i and move it to its position according to shuffle_sequence */
-            bit = ((n & (1 << i)) >>> i);
-            result |= (bit << shuffle_sequence[i]);
-
-            /* alternative:
-                if ((n & (1 << i)) != 0)
-                    result |= (1 << shuffle_sequence[i]);
-            */
-        }
-
-        return result;
+        return compiled.shuffleInt(n);
     }
 
 
@@ -205,31 +684,19 @@ public class BitShuffler {
      *  shuffle sequence is prepared for. Higher bits are considered insignificant and,
      *  thus, set to {@code 0} in the return value.
      *
+     *  Bits that the sequence moves beyond bit 63 are dropped.
+     *
      *  @param  n   The number to be shuffled.
      *  @return     The shuffled version of @c n.
-     *
-     *  TODO:   define [Verhalten] if shuffle sequence has more than 32 bits
      */
 
     public long shuffleLong(long n) {
-        long result, bit;
-
-        result = 0;
-        for (int i = 0; i < shuffle_sequence.length && i < 64; i++) {
-            /* take bit i and move it to its position according to shuffle_sequence */
-            bit = ((n & (1 << i)) >>> i);
-            result |= (bit << shuffle_sequence[i]);
-        }
-
-        return result;
+        return compiled.shuffleLong(n);
     }
 
 
 
     /** TODO
-    public java.util.BitSet shuffleBitSet(BitSet bs) {
-    }
-
     rename shuffle*() to shuffle(), the overloading mechanism will still tell them apart
     */
 
@@ -246,16 +713,7 @@ public class BitShuffler {
      */
 
     public int unshuffleInt(int n) {
-        int result, bit;
-
-        result = 0;
-        for (int i = 0; i < unshuffle_sequence.length && i < 32; i++) {
-            /* take bit i and move it to its position according to unshuffle_sequence */
-            bit = ((n & (1 << i)) >>> i);
-            result |= (bit << unshuffle_sequence[i]);
-        }
-
-        return result;
+        return compiled.unshuffleInt(n);
     }
 
 
@@ -271,34 +729,134 @@ public class BitShuffler {
      */
 
     public long unshuffleLong(long n) {
-        long result, bit;
+        return compiled.unshuffleLong(n);
+    }
 
-        result = 0;
-        for (int i = 0; i < unshuffle_sequence.length && i < 64; i++) {
-            /* take bit i and move it to its position according to unshuffle_sequence */
-            bit = ((n & (1 << i)) >>> i);
-            result |= (bit << unshuffle_sequence[i]);
-        }
 
-        return result;
+
+
+    /*
+     *  Bulk operations and arbitrary width.
+     *
+     *  See CompiledBitShuffler for these, they are just delegated.
+     *
+     */
+
+
+    /** Shuffles an array of numbers, see {@link CompiledBitShuffler#shuffle(long[], long[])}. */
+    public long[] shuffle(long[] src, long[] dst) throws IndexOutOfBoundsException {
+        return compiled.shuffle(src, dst);
+    }
+
+
+    /** Shuffles a range of numbers, see {@link CompiledBitShuffler#shuffle(long[], int, long[], int, int)}. */
+    public long[] shuffle(long[] src, int src_pos, long[] dst, int dst_pos, int len)
+            throws IndexOutOfBoundsException {
+        return compiled.shuffle(src, src_pos, dst, dst_pos, len);
+    }
+
+
+    /** Unshuffles an array of numbers, see {@link CompiledBitShuffler#unshuffle(long[], long[])}. */
+    public long[] unshuffle(long[] src, long[] dst) throws IndexOutOfBoundsException {
+        return compiled.unshuffle(src, dst);
+    }
+
+
+    /** Unshuffles a range of numbers, see {@link CompiledBitShuffler#unshuffle(long[], int, long[], int, int)}. */
+    public long[] unshuffle(long[] src, int src_pos, long[] dst, int dst_pos, int len)
+            throws IndexOutOfBoundsException {
+        return compiled.unshuffle(src, src_pos, dst, dst_pos, len);
     }
 
 
+    /** Shuffles an array of numbers, see {@link CompiledBitShuffler#shuffle(int[], int[])}. */
+    public int[] shuffle(int[] src, int[] dst) throws IndexOutOfBoundsException {
+        return compiled.shuffle(src, dst);
+    }
+
 
+    /** Shuffles a range of numbers, see {@link CompiledBitShuffler#shuffle(int[], int, int[], int, int)}. */
+    public int[] shuffle(int[] src, int src_pos, int[] dst, int dst_pos, int len)
+            throws IndexOutOfBoundsException {
+        return compiled.shuffle(src, src_pos, dst, dst_pos, len);
+    }
 
 
+    /** Unshuffles an array of numbers, see {@link CompiledBitShuffler#unshuffle(int[], int[])}. */
+    public int[] unshuffle(int[] src, int[] dst) throws IndexOutOfBoundsException {
+        return compiled.unshuffle(src, dst);
+    }
+
+
+    /** Unshuffles a range of numbers, see {@link CompiledBitShuffler#unshuffle(int[], int, int[], int, int)}. */
+    public int[] unshuffle(int[] src, int src_pos, int[] dst, int dst_pos, int len)
+            throws IndexOutOfBoundsException {
+        return compiled.unshuffle(src, src_pos, dst, dst_pos, len);
+    }
+
+
+    /** Shuffles the remaining numbers of a buffer,
+     *  see {@link CompiledBitShuffler#shuffle(LongBuffer, LongBuffer)}. */
+    public void shuffle(LongBuffer src, LongBuffer dst) throws BufferOverflowException, ReadOnlyBufferException {
+        compiled.shuffle(src, dst);
+    }
+
+
+    /** Unshuffles the remaining numbers of a buffer,
+     *  see {@link CompiledBitShuffler#unshuffle(LongBuffer, LongBuffer)}. */
+    public void unshuffle(LongBuffer src, LongBuffer dst) throws BufferOverflowException, ReadOnlyBufferException {
+        compiled.unshuffle(src, dst);
+    }
+
+
+    /** Shuffles the remaining numbers of a buffer,
+     *  see {@link CompiledBitShuffler#shuffle(IntBuffer, IntBuffer)}. */
+    public void shuffle(IntBuffer src, IntBuffer dst) throws BufferOverflowException, ReadOnlyBufferException {
+        compiled.shuffle(src, dst);
+    }
+
+
+    /** Unshuffles the remaining numbers of a buffer,
+     *  see {@link CompiledBitShuffler#unshuffle(IntBuffer, IntBuffer)}. */
+    public void unshuffle(IntBuffer src, IntBuffer dst) throws BufferOverflowException, ReadOnlyBufferException {
+        compiled.unshuffle(src, dst);
+    }
+
+
+    /** Shuffles a wide number, see {@link CompiledBitShuffler#shuffleWords(long[])}. */
+    public long[] shuffleWords(long[] words) {
+        return compiled.shuffleWords(words);
+    }
+
+
+    /** Unshuffles a wide number, see {@link CompiledBitShuffler#unshuffleWords(long[])}. */
+    public long[] unshuffleWords(long[] words) {
+        return compiled.unshuffleWords(words);
+    }
+
+
+    /** Shuffles a wide number, see {@link CompiledBitShuffler#shuffle(byte[])}. */
     public byte[] shuffle(byte[] n) {
-        int len = n.length < shuffle_sequence.length ? shuffle_sequence.length : n.length;
-        byte[] result = new byte[len];
+        return compiled.shuffle(n);
+    }
 
-        java.util.Arrays.fill(result, (byte) 0);
 
-        // if len > shuffle_sequence.length, copy remaining bits
+    /** Unshuffles a wide number, see {@link CompiledBitShuffler#unshuffle(byte[])}. */
+    public byte[] unshuffle(byte[] n) {
+        return compiled.unshuffle(n);
+    }
 
-        return result;
+
+    /** Shuffles a {@code BitSet}, see {@link CompiledBitShuffler#shuffle(BitSet)}. */
+    public BitSet shuffle(BitSet bs) {
+        return compiled.shuffle(bs);
     }
 
 
+    /** Unshuffles a {@code BitSet}, see {@link CompiledBitShuffler#unshuffle(BitSet)}. */
+    public BitSet unshuffle(BitSet bs) {
+        return compiled.unshuffle(bs);
+    }
 
-}
 
+}
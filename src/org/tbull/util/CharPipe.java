@@ -0,0 +1,461 @@
+package org.tbull.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PipedReader;
+import java.io.PipedWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+
+
+
+/** Like {@link PipedWriter} and {@link PipedReader}, but lock-free and built for throughput.
+ *
+ *  <P>The JDK pipes synchronize every single call, poll for data with {@code wait(1000)} and use a tiny buffer
+ *  of 1024 chars. This pipe passes characters from exactly one producer thread to exactly one consumer thread
+ *  through a ring buffer. The two ends coordinate through a pair of ever-increasing counters only, so as long
+ *  as there is data (or room) available, neither reading nor writing involves any locking at all.</P>
+ *
+ *  <P>What happens when the consumer runs dry or the producer fills up the buffer is determined by the
+ *  {@link WaitStrategy}. {@link WaitStrategy#BLOCKING BLOCKING} spins for a short while and then parks the
+ *  thread until the other end makes progress. {@link WaitStrategy#SPINNING SPINNING} never parks, trading CPU
+ *  time for the lowest possible latency; use it only if both ends run on dedicated cores.</P>
+ *
+ *  <P>Get hold of the two ends with {@link #getWriter()} and {@link #getReader()}. Closing the writer signals
+ *  end-of-stream to the reader once it has consumed the remaining characters. Closing the reader makes any
+ *  further writes fail with an {@code IOException}, so a producer does not wait forever on a consumer that
+ *  went away.</P>
+ *
+ *  <P><STRONG>Note well:</STRONG> Like {@link StringBuilderWriter} and {@link CharSequenceReader}, the ends are
+ *  not synchronized. At any one time, only a single thread may write and only a single thread may read. Handing
+ *  an end over to another thread is fine, provided there is a proper happens-before relation between the two
+ *  threads (e.g. the hand-over goes through a {@code volatile} field or a concurrent queue).</P>
+ *
+ *  <P>Ceterum censeo HTML in Javadoc is the dumbest idea ever.</P>
+ *
+ *  @see    StringBuilderWriter
+ *  @see    CharSequenceReader
+ */
+
+public class CharPipe {
+
+    /** How an end of the pipe waits for the other end to make progress. */
+    public static enum WaitStrategy {
+        /** Spin for a short while, then park the thread until the other end makes progress. */
+        BLOCKING,
+        /** Spin (yielding the processor every now and then), never park. */
+        SPINNING
+    }
+
+
+    /** Default capacity of the ring buffer, in {@code char}s. */
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    /** Number of busy-spins before a {@link WaitStrategy#BLOCKING BLOCKING} end parks its thread. */
+    private static final int SPIN_LIMIT = 256;
+
+
+    protected final char[] buffer;
+    protected final int mask;
+    protected final WaitStrategy wait_strategy;
+
+    /** Total number of chars consumed so far. Only ever written by the reader. */
+    protected final AtomicLong head = new AtomicLong();
+    /** Total number of chars produced so far. Only ever written by the writer. */
+    protected final AtomicLong tail = new AtomicLong();
+
+    protected volatile boolean writer_closed = false;
+    protected volatile boolean reader_closed = false;
+
+    /* the threads currently parked (BLOCKING strategy only) */
+    protected volatile Thread parked_reader = null;
+    protected volatile Thread parked_writer = null;
+
+    private final PipeWriter writer;
+    private final PipeReader reader;
+
+
+
+
+    /** Constructs a blocking pipe with the {@link #DEFAULT_CAPACITY default capacity}. */
+    public CharPipe() {
+        this(DEFAULT_CAPACITY, WaitStrategy.BLOCKING);
+    }
+
+
+    /** Constructs a blocking pipe with (at least) the specified capacity.
+     *
+     *  @param  capacity                    Number of {@code char}s the pipe can hold. Rounded up to the next
+     *                                      power of two.
+     *  @throws IllegalArgumentException    If {@code capacity <= 0} or {@code capacity > 2^30}.
+     */
+    public CharPipe(int capacity) throws IllegalArgumentException {
+        this(capacity, WaitStrategy.BLOCKING);
+    }
+
+
+    /** Constructs a pipe with (at least) the specified capacity and the specified wait strategy.
+     *
+     *  @param  capacity                    Number of {@code char}s the pipe can hold. Rounded up to the next
+     *                                      power of two.
+     *  @param  wait_strategy               What to do when there is no data to read or no room to write.
+     *  @throws IllegalArgumentException    If {@code capacity <= 0} or {@code capacity > 2^30}.
+     */
+    public CharPipe(int capacity, WaitStrategy wait_strategy) throws IllegalArgumentException {
+        if (capacity <= 0 || capacity > (1 << 30)) throw new IllegalArgumentException("Invalid capacity");
+        if (wait_strategy == null) throw new IllegalArgumentException("No wait strategy");
+
+        // round up to a power of two, so that wrapping around is a simple mask operation
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+
+        buffer = new char[size];
+        mask = size - 1;
+        this.wait_strategy = wait_strategy;
+
+        writer = new PipeWriter();
+        reader = new PipeReader();
+    }
+
+
+
+
+    /** Returns the number of {@code char}s the pipe can hold. */
+    public int capacity() {
+        return buffer.length;
+    }
+
+
+    /** Returns the writing end of the pipe. Always returns the same object. */
+    public PipeWriter getWriter() {
+        return writer;
+    }
+
+
+    /** Returns the reading end of the pipe. Always returns the same object. */
+    public PipeReader getReader() {
+        return reader;
+    }
+
+
+
+
+        /** Publishes a new value of one of the counters.
+         *
+         *  When threads might be parked, this must be a full volatile write, so that the subsequent check for a
+         *  parked thread on the other end cannot be reordered before it. Otherwise, an ordered write suffices.
+         */
+        private void publish(AtomicLong counter, long value) {
+            if (wait_strategy == WaitStrategy.BLOCKING) counter.set(value);
+            else counter.lazySet(value);
+        }
+
+
+        private static void unpark(Thread t) {
+            if (t != null) LockSupport.unpark(t);
+        }
+
+
+        /** Waits until {@code tail} moves beyond {@code h} or the writer closes the pipe.
+         *
+         *  @return     The current value of {@code tail}, which equals {@code h} at end-of-stream.
+         */
+        private long await_data(long h) throws IOException {
+            int spins = 0;
+            long t;
+
+            for (;;) {
+                if ((t = tail.get()) != h) return t;
+                // writes happen before the close, so re-reading the tail catches any last chars
+                if (writer_closed) return tail.get();
+                if (reader_closed) throw new IOException("Pipe closed");
+
+                if (wait_strategy == WaitStrategy.SPINNING || spins < SPIN_LIMIT) {
+                    if ((++spins & 0x3f) == 0) Thread.yield();
+                    continue;
+                }
+
+                parked_reader = Thread.currentThread();
+                if (tail.get() == h && !writer_closed) LockSupport.park(this);
+                parked_reader = null;
+
+                if (Thread.interrupted()) throw new InterruptedIOException();
+            }
+        }
+
+
+        /** Waits until {@code head} moves beyond {@code t - capacity}, i.e. there is room for at least one char.
+         *
+         *  @return     The current value of {@code head}.
+         */
+        private long await_space(long t) throws IOException {
+            long limit = t - buffer.length;
+            int spins = 0;
+            long h;
+
+            for (;;) {
+                if (reader_closed) throw new IOException("Pipe closed by reader");
+                if ((h = head.get()) != limit) return h;
+
+                if (wait_strategy == WaitStrategy.SPINNING || spins < SPIN_LIMIT) {
+                    if ((++spins & 0x3f) == 0) Thread.yield();
+                    continue;
+                }
+
+                parked_writer = Thread.currentThread();
+                if (head.get() == limit && !reader_closed) LockSupport.park(this);
+                parked_writer = null;
+
+                if (Thread.interrupted()) throw new InterruptedIOException();
+            }
+        }
+
+
+
+
+    /** The writing end of a {@link CharPipe}.
+     *
+     *  Writes return as soon as all characters have been put into the pipe, blocking (or spinning) only while the
+     *  pipe is full. There is no buffering on top of the pipe itself, so {@link #flush()} has nothing to do.
+     */
+    public class PipeWriter extends Writer {
+
+        /** Our private copy of {@code head}, refreshed only when the pipe appears full. */
+        private long cached_head = 0;
+
+
+        PipeWriter() {
+            super(CharPipe.this);   // Writer insists on a lock object, but we never use it
+        }
+
+
+            /** Returns the number of chars that can be written without waiting, waiting for at least one. */
+            private int acquire(long t) throws IOException {
+                if (writer_closed) throw new IOException("Pipe closed");
+                if (reader_closed) throw new IOException("Pipe closed by reader");
+
+                int free = (int) (buffer.length - (t - cached_head));
+                if (free > 0) return free;
+
+                cached_head = head.get();
+                free = (int) (buffer.length - (t - cached_head));
+                if (free > 0) return free;
+
+                cached_head = await_space(t);
+                return (int) (buffer.length - (t - cached_head));
+            }
+
+
+            private void release(long t) {
+                publish(tail, t);
+                if (wait_strategy == WaitStrategy.BLOCKING) unpark(parked_reader);
+            }
+
+
+        public @Override void write(int c) throws IOException {
+            long t = tail.get();
+            acquire(t);
+            buffer[(int) t & mask] = (char) c;
+            release(t + 1);
+        }
+
+
+        public @Override void write(char[] cbuf, int off, int len) throws IOException {
+            if (off < 0 || len < 0 || off + len < 0 || off + len > cbuf.length)
+                throw new IndexOutOfBoundsException();
+
+            long t = tail.get();
+            int n, pos, first;
+
+            while (len > 0) {
+                n = Math.min(acquire(t), len);
+                pos = (int) t & mask;
+
+                // copy in at most two pieces, the second one after wrapping around
+                first = Math.min(n, buffer.length - pos);
+                System.arraycopy(cbuf, off, buffer, pos, first);
+                if (first < n) System.arraycopy(cbuf, off + first, buffer, 0, n - first);
+
+                off += n; len -= n; t += n;
+                release(t);
+            }
+        }
+
+
+        public @Override void write(char[] cbuf) throws IOException {
+            write(cbuf, 0, cbuf.length);
+        }
+
+
+        public @Override void write(String str, int off, int len) throws IOException {
+            if (off < 0 || len < 0 || off + len < 0 || off + len > str.length())
+                throw new IndexOutOfBoundsException();
+
+            long t = tail.get();
+            int n, pos, first;
+
+            while (len > 0) {
+                n = Math.min(acquire(t), len);
+                pos = (int) t & mask;
+
+                first = Math.min(n, buffer.length - pos);
+                str.getChars(off, off + first, buffer, pos);
+                if (first < n) str.getChars(off + first, off + n, buffer, 0);
+
+                off += n; len -= n; t += n;
+                release(t);
+            }
+        }
+
+
+        public @Override void write(String str) throws IOException {
+            write(str, 0, str.length());
+        }
+
+
+        public @Override PipeWriter append(char c) throws IOException {
+            write(c);
+            return this;
+        }
+
+        public @Override PipeWriter append(CharSequence csq) throws IOException {
+            if (csq == null) csq = "null";
+            return append(csq, 0, csq.length());
+        }
+
+        public @Override PipeWriter append(CharSequence csq, int start, int end) throws IOException {
+            if (csq == null) csq = "null";
+            if (csq instanceof String) write((String) csq, start, end - start);
+            else if (start < 0 || end > csq.length() || start > end) throw new IndexOutOfBoundsException();
+            else for (int i = start; i < end; i++) write(csq.charAt(i));
+            return this;
+        }
+
+
+        /** Does nothing. Written characters are available to the reader immediately. */
+        public @Override void flush() {
+            // nothing to do
+        }
+
+
+        /** Closes the writing end of the pipe.
+         *
+         *  The reader still gets to see all characters written so far, and end-of-stream after that.
+         *  Closing a closed writer has no effect.
+         */
+        public @Override void close() {
+            writer_closed = true;
+            unpark(parked_reader);
+        }
+
+    }
+
+
+
+
+    /** The reading end of a {@link CharPipe}.
+     *
+     *  Reads block (or spin) only while the pipe is empty, and return whatever is available otherwise, which may
+     *  be less than requested. Like {@link CharSequenceReader}, this reader does not support mark/reset.
+     */
+    public class PipeReader extends Reader {
+
+        /** Our private copy of {@code tail}, refreshed only when the pipe appears empty. */
+        private long cached_tail = 0;
+
+
+        PipeReader() {
+            super(CharPipe.this);   // Reader insists on a lock object, but we never use it
+        }
+
+
+            /** Returns the number of chars that can be read without waiting, waiting for at least one.
+             *
+             *  @return     The number of available chars, or {@code 0} at end-of-stream.
+             */
+            private int acquire(long h) throws IOException {
+                if (reader_closed) throw new IOException("Pipe closed");
+
+                int avail = (int) (cached_tail - h);
+                if (avail > 0) return avail;
+
+                cached_tail = tail.get();
+                avail = (int) (cached_tail - h);
+                if (avail > 0) return avail;
+
+                cached_tail = await_data(h);
+                return (int) (cached_tail - h);
+            }
+
+
+            private void release(long h) {
+                publish(head, h);
+                if (wait_strategy == WaitStrategy.BLOCKING) unpark(parked_writer);
+            }
+
+
+        /** Returns the number of characters that can currently be read without waiting. */
+        public int available() {
+            return (int) (tail.get() - head.get());
+        }
+
+
+        /** Tells whether there are characters available to be read without waiting. */
+        public @Override boolean ready() {
+            return available() > 0;
+        }
+
+
+        public @Override int read() throws IOException {
+            long h = head.get();
+            if (acquire(h) == 0) return -1;
+
+            char c = buffer[(int) h & mask];
+            release(h + 1);
+            return c;
+        }
+
+
+        public @Override int read(char[] cbuf, int off, int len) throws IOException {
+            if (off < 0 || len < 0 || off + len < 0 || off + len > cbuf.length)
+                throw new IndexOutOfBoundsException();
+            if (len == 0) return 0;
+
+            long h = head.get();
+            int n, pos, first;
+
+            n = acquire(h);
+            if (n == 0) return -1;
+            if (n > len) n = len;
+
+            pos = (int) h & mask;
+            first = Math.min(n, buffer.length - pos);
+            System.arraycopy(buffer, pos, cbuf, off, first);
+            if (first < n) System.arraycopy(buffer, 0, cbuf, off + first, n - first);
+
+            release(h + n);
+            return n;
+        }
+
+
+        public @Override int read(char[] cbuf) throws IOException {
+            return read(cbuf, 0, cbuf.length);
+        }
+
+
+        /** Closes the reading end of the pipe.
+         *
+         *  Any subsequent or currently waiting write to the pipe fails with an {@code IOException}.
+         *  Closing a closed reader has no effect.
+         */
+        public @Override void close() {
+            reader_closed = true;
+            unpark(parked_writer);
+        }
+
+    }
+
+}
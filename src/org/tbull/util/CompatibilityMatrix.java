@@ -0,0 +1,280 @@
+package org.tbull.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+
+
+/** Which of a set of actual versions are compatible for use in place of which of a set of expected versions,
+ *  as a bitmap.
+ *
+ *  <P>The matrix has a row for each expected version and a column for each actual version, in the order they
+ *  were given. Bit {@code (i, j)} is set if {@code actual[j].compatibleForUse(expected[i])}, see
+ *  {@link SemVer#compatibleForUse(SemVer)} and {@link Version#compatibleForUse(Version)}. Each row starts at a
+ *  new {@code long}, in the little-endian bit order of {@link BitSet#toLongArray()}.</P>
+ *
+ *  <P>Computing the matrix does not compare every version with every other. The actual versions are sorted and
+ *  split into buckets of mutually compatible versions, which are the versions of the same major version, or of
+ *  the same minor version in initial development. Then the versions compatible with an expected version are
+ *  the ones of its bucket that are not older than it. The expected versions are sorted too, so a single sweep
+ *  over both finds the bucket of each expected version. Within a bucket, the expected versions are taken from
+ *  the newest down, each adding the newly compatible actual versions to a bitmap, whose words are then copied
+ *  into its row. So the work is proportional to the size of the bitmap, plus the sorting.</P>
+ *
+ *  <P>The parallel variants work on the buckets, and on parts of large buckets, in parallel, in the common
+ *  fork/join pool. Matrices are immutable.</P>
+ */
+
+public final class CompatibilityMatrix {
+
+    /** Inputs of fewer versions are computed sequentially by the parallel variants. */
+    static final int PARALLEL_THRESHOLD = 1 << 12;
+    /** The parallel variants split the expected versions of a bucket into parts of at most this many. */
+    static final int CHUNK_SIZE = 1 << 8;
+
+
+    private final int rows, columns, stride;
+    private final long[] words;
+
+
+
+
+    private CompatibilityMatrix(int rows, int columns) {
+        this.rows = rows;
+        this.columns = columns;
+        this.stride = (columns + 63) >>> 6;
+        this.words = new long[rows * stride];
+    }
+
+
+    /** Computes the compatibility of {@code SemVer}s. */
+    public static CompatibilityMatrix compute(SemVer[] actual, SemVer[] expected) {
+        return compute(actual, expected, SEMVER, false);
+    }
+
+
+    /** Computes the compatibility of {@code SemVer}s, in parallel if there are many. */
+    public static CompatibilityMatrix parallelCompute(SemVer[] actual, SemVer[] expected) {
+        return compute(actual, expected, SEMVER, true);
+    }
+
+
+    /** Computes the compatibility of {@code Version}s. */
+    public static CompatibilityMatrix compute(Version[] actual, Version[] expected) {
+        return compute(actual, expected, VERSION, false);
+    }
+
+
+    /** Computes the compatibility of {@code Version}s, in parallel if there are many. */
+    public static CompatibilityMatrix parallelCompute(Version[] actual, Version[] expected) {
+        return compute(actual, expected, VERSION, true);
+    }
+
+
+
+
+    /** Returns the number of rows, which is the number of expected versions. */
+    public int rows() {
+        return rows;
+    }
+
+
+    /** Returns the number of columns, which is the number of actual versions. */
+    public int columns() {
+        return columns;
+    }
+
+
+    /** Tells whether actual version {@code column} is compatible for use in place of expected version
+     *  {@code row}.
+     */
+    public boolean get(int row, int column) throws IndexOutOfBoundsException {
+        check(row, rows);
+        check(column, columns);
+        return (words[row * stride + (column >>> 6)] & 1L << column) != 0;
+    }
+
+
+        private static void check(int i, int n) throws IndexOutOfBoundsException {
+            if (i < 0 || i >= n) throw new IndexOutOfBoundsException(i + " not in [0, " + n + ")");
+        }
+
+
+    /** Returns the actual versions compatible with expected version {@code row}, as a set of columns. */
+    public BitSet row(int row) throws IndexOutOfBoundsException {
+        check(row, rows);
+        return BitSet.valueOf(Arrays.copyOfRange(words, row * stride, (row + 1) * stride));
+    }
+
+
+    /** Returns the number of actual versions compatible with expected version {@code row}. */
+    public int count(int row) throws IndexOutOfBoundsException {
+        check(row, rows);
+        int n = 0;
+        for (int i = row * stride, end = i + stride; i < end; i++) n += Long.bitCount(words[i]);
+        return n;
+    }
+
+
+    /** Returns the bitmap: {@link #rows()} rows of {@code (columns() + 63) / 64} {@code long}s each. */
+    public long[] toLongArray() {
+        return words.clone();
+    }
+
+
+
+
+    /*
+     *  Computation.
+     *
+     */
+
+
+        /** The ordering and the compatibility rules of a kind of versions. */
+        private static abstract class Scheme<T> implements Comparator<T> {
+            /** Tells whether two versions are in the same bucket. */
+            abstract boolean same_bucket(T a, T b);
+        }
+
+
+        private static final Scheme<SemVer> SEMVER = new Scheme<SemVer>() {
+            public @Override int compare(SemVer a, SemVer b) {
+                return a.comparePrecedence(b);
+            }
+
+            @Override boolean same_bucket(SemVer a, SemVer b) {
+                // unstable versions are compatible with themselves only
+                return a.major == b.major && (a.major != 0 || a.comparePrecedence(b) == 0);
+            }
+        };
+
+
+        private static final Scheme<Version> VERSION = new Scheme<Version>() {
+            public @Override int compare(Version a, Version b) {
+                return a.compareTo(b);
+            }
+
+            @Override boolean same_bucket(Version a, Version b) {
+                return a.major == b.major && (a.major != 0 || a.minor == b.minor);
+            }
+        };
+
+
+        /** Returns the indices of {@code a}, in the order of their elements. */
+        private static <T> int[] order(final T[] a, final Scheme<T> scheme) {
+            Integer[] boxed = new Integer[a.length];
+            for (int i = 0; i < boxed.length; i++) boxed[i] = Integer.valueOf(i);
+            Arrays.sort(boxed, new Comparator<Integer>() {
+                public @Override int compare(Integer x, Integer y) {
+                    return scheme.compare(a[x.intValue()], a[y.intValue()]);
+                }
+            });
+
+            int[] order = new int[boxed.length];
+            for (int i = 0; i < order.length; i++) order[i] = boxed[i].intValue();
+            return order;
+        }
+
+
+        private static <T> CompatibilityMatrix compute(T[] actual, T[] expected, Scheme<T> scheme,
+                boolean parallel) {
+            final CompatibilityMatrix m = new CompatibilityMatrix(expected.length, actual.length);
+            parallel &= actual.length + expected.length >= PARALLEL_THRESHOLD;
+
+            int[] cols = order(actual, scheme), rows = order(expected, scheme);
+            List<Part> parts = new ArrayList<Part>();
+
+            // sweep over the buckets of the actual versions and the expected versions side by side
+            int q = 0;
+            for (int bs = 0, be; bs < cols.length && q < rows.length; bs = be) {
+                T first = actual[cols[bs]];
+                for (be = bs + 1; be < cols.length && scheme.same_bucket(first, actual[cols[be]]); be++) ;
+
+                // expected versions below the bucket and not in it have nothing compatible
+                while (q < rows.length && scheme.compare(expected[rows[q]], first) < 0
+                        && !scheme.same_bucket(expected[rows[q]], first)) q++;
+                int r = q;
+                while (r < rows.length && scheme.same_bucket(expected[rows[r]], first)) r++;
+
+                for (int from = q; from < r; from += parallel ? CHUNK_SIZE : r - q)
+                    parts.add(new Part(bs, be, from, Math.min(r, parallel ? from + CHUNK_SIZE : r)));
+                q = r;
+            }
+
+            if (parallel && parts.size() > 1)
+                ForkJoinPool.commonPool().invoke(new Parts<T>(m, actual, expected, scheme, cols, rows, parts));
+            else
+                for (Part p: parts) m.fill(actual, expected, scheme, cols, rows, p);
+            return m;
+        }
+
+
+        /** A bucket of actual versions, {@code cols[bs .. be - 1]}, and some of the expected versions in it,
+         *  {@code rows[from .. to - 1]}.
+         */
+        private static final class Part {
+            final int bs, be, from, to;
+
+            Part(int bs, int be, int from, int to) {
+                this.bs = bs; this.be = be; this.from = from; this.to = to;
+            }
+        }
+
+
+        /** Fills the rows of a part. */
+        private <T> void fill(T[] actual, T[] expected, Scheme<T> scheme, int[] cols, int[] rows, Part part) {
+            // the bitmap of the compatible columns, covering the words of the bucket's columns only
+            int lo = Integer.MAX_VALUE, hi = -1;
+            for (int k = part.bs; k < part.be; k++) {
+                lo = Math.min(lo, cols[k] >>> 6);
+                hi = Math.max(hi, cols[k] >>> 6);
+            }
+            long[] bits = new long[hi - lo + 1];
+
+            // from the newest expected version down, the compatible ones growing towards the bucket start
+            int p = part.be;
+            for (int k = part.to - 1; k >= part.from; k--) {
+                T e = expected[rows[k]];
+                while (p > part.bs && scheme.compare(actual[cols[p - 1]], e) >= 0) {
+                    int c = cols[--p];
+                    bits[(c >>> 6) - lo] |= 1L << c;
+                }
+                if (p < part.be) System.arraycopy(bits, 0, words, rows[k] * stride + lo, bits.length);
+            }
+        }
+
+
+        /** Fills the rows of some parts, in parallel. */
+        private static final class Parts<T> extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+
+            final CompatibilityMatrix m;
+            final T[] actual, expected;
+            final Scheme<T> scheme;
+            final int[] cols, rows;
+            final List<Part> parts;
+
+            Parts(CompatibilityMatrix m, T[] actual, T[] expected, Scheme<T> scheme, int[] cols, int[] rows,
+                    List<Part> parts) {
+                this.m = m; this.actual = actual; this.expected = expected; this.scheme = scheme;
+                this.cols = cols; this.rows = rows; this.parts = parts;
+            }
+
+            protected @Override void compute() {
+                int n = parts.size();
+                if (n == 1) {
+                    m.fill(actual, expected, scheme, cols, rows, parts.get(0));
+                    return;
+                }
+                invokeAll(new Parts<T>(m, actual, expected, scheme, cols, rows, parts.subList(0, n / 2)),
+                    new Parts<T>(m, actual, expected, scheme, cols, rows, parts.subList(n / 2, n)));
+            }
+        }
+
+}
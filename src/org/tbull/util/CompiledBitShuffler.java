@@ -0,0 +1,587 @@
+package org.tbull.util;
+
+import java.nio.BufferOverflowException;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.tbull.util.BitShuffler.Engine;
+import org.tbull.util.BitShuffler.Kernel;
+
+
+
+
+/** The compiled, immutable form of a shuffle sequence.
+ *
+ *  <P>This offers all the shuffling operations of {@link BitShuffler}, but the sequence and engine are fixed
+ *  at construction time. Objects of this class are immutable and thus can be shared freely between threads,
+ *  without any synchronization. A {@code BitShuffler} keeps one of these for its current sequence and hands it
+ *  out through {@link BitShuffler#compiled()}, so a mutable shuffler can be set up once and then be published
+ *  to any number of threads in its compiled form.</P>
+ *
+ *  <P>Compiling a sequence takes the lookup tables (or the network, or the gather kernels, see {@link Engine})
+ *  for both directions, a few microseconds worth of work. The network for numbers wider than 64 bits is
+ *  compiled upon first use of a wide operation. Compiling it more than once if several threads happen to race
+ *  for it is harmless, as the network is immutable itself.</P>
+ *
+ *  @see    BitShuffler
+ */
+
+public final class CompiledBitShuffler {
+
+    final int[] shuffle_sequence;
+    final int[] unshuffle_sequence;
+    final Engine engine;
+
+    /** Compiled forms of the sequences for numbers of up to 64 bits. */
+    final Kernel shuffle_kernel, unshuffle_kernel;
+    /** Network for shuffling numbers of arbitrary width, compiled upon first use. See {@link #network()}. */
+    private BenesNetwork network;
+
+
+
+    /** Compiles a shuffle sequence with the default engine.
+     *
+     *  @param  seq     See {@link BitShuffler#setShuffleSequence} for details. The array is copied.
+     *  @throws IllegalArgumentException    If {@code seq} is not a valid shuffle sequence.
+     */
+    public CompiledBitShuffler(int[] seq) throws IllegalArgumentException {
+        this(seq, Engine.TABLE);
+    }
+
+
+    /** Compiles a shuffle sequence with a given engine.
+     *
+     *  @param  seq     See {@link BitShuffler#setShuffleSequence} for details. The array is copied.
+     *  @param  engine  See {@link BitShuffler#setEngine} for details.
+     *  @throws IllegalArgumentException    If {@code seq} is not a valid shuffle sequence or {@code engine}
+     *                                      is {@code null}.
+     */
+    public CompiledBitShuffler(int[] seq, Engine engine) throws IllegalArgumentException {
+        this(checked(seq, engine), inverse(seq), engine);
+    }
+
+
+    /** Compiles a shuffle sequence along with its inverse, both already verified. The arrays are not copied. */
+    CompiledBitShuffler(int[] seq, int[] unseq, Engine engine) {
+        Kernel fwd = null, inv = null;
+
+        if (engine == Engine.NETWORK && seq.length <= 64) {
+            long[] stages = BenesNetwork.stages64(seq);
+            fwd = new BitShuffler.NetworkKernel(stages, seq.length, false);
+            inv = new BitShuffler.NetworkKernel(stages, seq.length, true);
+        } else if (engine == Engine.GATHER && seq.length <= 64) {
+            fwd = BitShuffler.gather_kernel(seq);
+            inv = BitShuffler.gather_kernel(unseq);
+            // don't emulate compress/expand, that is way slower than the tables
+            if (!BitGather.INTRINSIC && (fwd.uses_gather() || inv.uses_gather())) fwd = inv = null;
+        }
+
+        if (fwd == null) {
+            fwd = new BitShuffler.TableKernel(seq);
+            inv = new BitShuffler.TableKernel(unseq);
+        }
+
+        this.shuffle_sequence = seq;
+        this.unshuffle_sequence = unseq;
+        this.engine = engine;
+        this.shuffle_kernel = fwd;
+        this.unshuffle_kernel = inv;
+    }
+
+
+        private static int[] checked(int[] seq, Engine engine) {
+            if (engine == null || !BitShuffler.is_permutation(seq)) throw new IllegalArgumentException();
+            return seq.clone();
+        }
+
+
+        /** Returns the inverse of a permutation. */
+        static int[] inverse(int[] seq) {
+            int[] inv = new int[seq.length];
+            for (int i = 0; i < seq.length; i++) inv[seq[i]] = i;
+            return inv;
+        }
+
+
+
+
+    /** Returns the number of bits this shuffler works on. */
+    public int length() {
+        return shuffle_sequence.length;
+    }
+
+
+    /** Returns a copy of the shuffle sequence. */
+    public int[] getShuffleSequence() {
+        return shuffle_sequence.clone();
+    }
+
+
+    /** Returns the engine the sequence was compiled for. This is the engine asked for, even if the sequence
+     *  had to fall back to another one. */
+    public Engine getEngine() {
+        return engine;
+    }
+
+
+
+
+    /** Returns the shuffled version of {@code n}, see {@link BitShuffler#shuffleInt(int)}. */
+    public int shuffleInt(int n) {
+        return shuffle_kernel.permute(n);
+    }
+
+
+    /** Returns the shuffled version of {@code n}, see {@link BitShuffler#shuffleLong(long)}. */
+    public long shuffleLong(long n) {
+        return shuffle_kernel.permute(n);
+    }
+
+
+    /** Returns the unshuffled version of {@code n}, see {@link BitShuffler#unshuffleInt(int)}. */
+    public int unshuffleInt(int n) {
+        return unshuffle_kernel.permute(n);
+    }
+
+
+    /** Returns the unshuffled version of {@code n}, see {@link BitShuffler#unshuffleLong(long)}. */
+    public long unshuffleLong(long n) {
+        return unshuffle_kernel.permute(n);
+    }
+
+
+
+
+    /*
+     *  Bulk operations.
+     *
+     *  These process whole arrays or buffers of numbers with the kernel grabbed once at the start of the call.
+     *  Large arrays are split up and processed in parallel in the common fork/join pool.
+     *
+     */
+
+
+    /** Arrays of at least this many elements are processed in parallel. */
+    static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    /** Size of the slices that parallel processing splits an array into. */
+    static final int PARALLEL_SLICE = 1 << 13;
+
+
+        private static void check_range(int src_length, int src_pos, int dst_length, int dst_pos, int len) {
+            if (src_pos < 0 || dst_pos < 0 || len < 0 || src_pos + len < 0 || dst_pos + len < 0
+                || src_pos + len > src_length || dst_pos + len > dst_length)
+                throw new IndexOutOfBoundsException();
+        }
+
+
+        private static void permute(Kernel k, long[] src, int src_pos, long[] dst, int dst_pos, int len) {
+            if (len >= PARALLEL_THRESHOLD) {
+                ForkJoinPool.commonPool().invoke(new LongSlice(k, src, src_pos, dst, dst_pos, len));
+                return;
+            }
+
+            for (int i = 0; i < len; i++)
+                dst[dst_pos + i] = k.permute(src[src_pos + i]);
+        }
+
+
+        private static void permute(Kernel k, int[] src, int src_pos, int[] dst, int dst_pos, int len) {
+            if (len >= PARALLEL_THRESHOLD) {
+                ForkJoinPool.commonPool().invoke(new IntSlice(k, src, src_pos, dst, dst_pos, len));
+                return;
+            }
+
+            for (int i = 0; i < len; i++)
+                dst[dst_pos + i] = k.permute(src[src_pos + i]);
+        }
+
+
+        private static void permute(Kernel k, LongBuffer src, LongBuffer dst) {
+            int len = src.remaining();
+            if (dst.remaining() < len) throw new BufferOverflowException();
+
+            if (src.hasArray() && dst.hasArray() && !dst.isReadOnly()) {
+                permute(k, src.array(), src.arrayOffset() + src.position(),
+                    dst.array(), dst.arrayOffset() + dst.position(), len);
+                src.position(src.position() + len);
+                dst.position(dst.position() + len);
+            } else {
+                while (len-- > 0) dst.put(k.permute(src.get()));
+            }
+        }
+
+
+        private static void permute(Kernel k, IntBuffer src, IntBuffer dst) {
+            int len = src.remaining();
+            if (dst.remaining() < len) throw new BufferOverflowException();
+
+            if (src.hasArray() && dst.hasArray() && !dst.isReadOnly()) {
+                permute(k, src.array(), src.arrayOffset() + src.position(),
+                    dst.array(), dst.arrayOffset() + dst.position(), len);
+                src.position(src.position() + len);
+                dst.position(dst.position() + len);
+            } else {
+                while (len-- > 0) dst.put(k.permute(src.get()));
+            }
+        }
+
+
+        /** Permutes a slice of a {@code long} array, splitting it up for parallel processing if it is large. */
+        private static class LongSlice extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+
+            final Kernel k;
+            final long[] src, dst;
+            final int src_pos, dst_pos, len;
+
+            LongSlice(Kernel k, long[] src, int src_pos, long[] dst, int dst_pos, int len) {
+                this.k = k; this.src = src; this.src_pos = src_pos; this.dst = dst; this.dst_pos = dst_pos;
+                this.len = len;
+            }
+
+            protected @Override void compute() {
+                if (len <= PARALLEL_SLICE) {
+                    for (int i = 0; i < len; i++)
+                        dst[dst_pos + i] = k.permute(src[src_pos + i]);
+                } else {
+                    int half = len >>> 1;
+                    invokeAll(new LongSlice(k, src, src_pos, dst, dst_pos, half),
+                        new LongSlice(k, src, src_pos + half, dst, dst_pos + half, len - half));
+                }
+            }
+        }
+
+
+        /** Permutes a slice of an {@code int} array, splitting it up for parallel processing if it is large. */
+        private static class IntSlice extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+
+            final Kernel k;
+            final int[] src, dst;
+            final int src_pos, dst_pos, len;
+
+            IntSlice(Kernel k, int[] src, int src_pos, int[] dst, int dst_pos, int len) {
+                this.k = k; this.src = src; this.src_pos = src_pos; this.dst = dst; this.dst_pos = dst_pos;
+                this.len = len;
+            }
+
+            protected @Override void compute() {
+                if (len <= PARALLEL_SLICE) {
+                    for (int i = 0; i < len; i++)
+                        dst[dst_pos + i] = k.permute(src[src_pos + i]);
+                } else {
+                    int half = len >>> 1;
+                    invokeAll(new IntSlice(k, src, src_pos, dst, dst_pos, half),
+                        new IntSlice(k, src, src_pos + half, dst, dst_pos + half, len - half));
+                }
+            }
+        }
+
+
+    /** Shuffles each number of {@code src} like {@link #shuffleLong(long)} does, storing the results in
+     *  {@code dst}.
+     *
+     *  <P>{@code src} and {@code dst} may be the same array, shuffling the numbers in place.
+     *  Arrays of {@value #PARALLEL_THRESHOLD} or more elements are processed in parallel.</P>
+     *
+     *  @param  src     The numbers to be shuffled.
+     *  @param  dst     Where to put the shuffled numbers. Must be at least as long as {@code src}.
+     *  @return         {@code dst}, for your convenience.
+     *  @throws IndexOutOfBoundsException   If {@code dst} is shorter than {@code src}.
+     */
+    public long[] shuffle(long[] src, long[] dst) throws IndexOutOfBoundsException {
+        return shuffle(src, 0, dst, 0, src.length);
+    }
+
+
+    /** Shuffles {@code len} numbers of {@code src}, starting at {@code src_pos}, like {@link #shuffleLong(long)}
+     *  does, storing the results in {@code dst}, starting at {@code dst_pos}.
+     *
+     *  <P>The ranges may be in the same array if they are either identical or do not overlap at all.
+     *  Ranges of {@value #PARALLEL_THRESHOLD} or more elements are processed in parallel.</P>
+     *
+     *  @return         {@code dst}, for your convenience.
+     *  @throws IndexOutOfBoundsException   If any of the ranges exceeds its array.
+     */
+    public long[] shuffle(long[] src, int src_pos, long[] dst, int dst_pos, int len)
+            throws IndexOutOfBoundsException {
+        check_range(src.length, src_pos, dst.length, dst_pos, len);
+        permute(shuffle_kernel, src, src_pos, dst, dst_pos, len);
+        return dst;
+    }
+
+
+    /** Unshuffles each number of {@code src} like {@link #unshuffleLong(long)} does, storing the results in
+     *  {@code dst}. See {@link #shuffle(long[], long[])} for details.
+     *
+     *  @return         {@code dst}, for your convenience.
+     *  @throws IndexOutOfBoundsException   If {@code dst} is shorter than {@code src}.
+     */
+    public long[] unshuffle(long[] src, long[] dst) throws IndexOutOfBoundsException {
+        return unshuffle(src, 0, dst, 0, src.length);
+    }
+
+
+    /** Unshuffles a range of numbers, see {@link #shuffle(long[], int, long[], int, int)} for details.
+     *
+     *  @return         {@code dst}, for your convenience.
+     *  @throws IndexOutOfBoundsException   If any of the ranges exceeds its array.
+     */
+    public long[] unshuffle(long[] src, int src_pos, long[] dst, int dst_pos, int len)
+            throws IndexOutOfBoundsException {
+        check_range(src.length, src_pos, dst.length, dst_pos, len);
+        permute(unshuffle_kernel, src, src_pos, dst, dst_pos, len);
+        return dst;
+    }
+
+
+    /** Shuffles each number of {@code src} like {@link #shuffleInt(int)} does, storing the results in
+     *  {@code dst}. See {@link #shuffle(long[], long[])} for details.
+     *
+     *  @return         {@code dst}, for your convenience.
+     *  @throws IndexOutOfBoundsException   If {@code dst} is shorter than {@code src}.
+     */
+    public int[] shuffle(int[] src, int[] dst) throws IndexOutOfBoundsException {
+        return shuffle(src, 0, dst, 0, src.length);
+    }
+
+
+    /** Shuffles a range of numbers, see {@link #shuffle(long[], int, long[], int, int)} for details.
+     *
+     *  @return         {@code dst}, for your convenience.
+     *  @throws IndexOutOfBoundsException   If any of the ranges exceeds its array.
+     */
+    public int[] shuffle(int[] src, int src_pos, int[] dst, int dst_pos, int len)
+            throws IndexOutOfBoundsException {
+        check_range(src.length, src_pos, dst.length, dst_pos, len);
+        permute(shuffle_kernel, src, src_pos, dst, dst_pos, len);
+        return dst;
+    }
+
+
+    /** Unshuffles each number of {@code src} like {@link #unshuffleInt(int)} does, storing the results in
+     *  {@code dst}. See {@link #shuffle(long[], long[])} for details.
+     *
+     *  @return         {@code dst}, for your convenience.
+     *  @throws IndexOutOfBoundsException   If {@code dst} is shorter than {@code src}.
+     */
+    public int[] unshuffle(int[] src, int[] dst) throws IndexOutOfBoundsException {
+        return unshuffle(src, 0, dst, 0, src.length);
+    }
+
+
+    /** Unshuffles a range of numbers, see {@link #shuffle(long[], int, long[], int, int)} for details.
+     *
+     *  @return         {@code dst}, for your convenience.
+     *  @throws IndexOutOfBoundsException   If any of the ranges exceeds its array.
+     */
+    public int[] unshuffle(int[] src, int src_pos, int[] dst, int dst_pos, int len)
+            throws IndexOutOfBoundsException {
+        check_range(src.length, src_pos, dst.length, dst_pos, len);
+        permute(unshuffle_kernel, src, src_pos, dst, dst_pos, len);
+        return dst;
+    }
+
+
+    /** Shuffles the remaining numbers of {@code src} like {@link #shuffleLong(long)} does, putting the results
+     *  into {@code dst}.
+     *
+     *  <P>The positions of both buffers are advanced by the number of elements processed, just like
+     *  {@code dst.put(src)} would do. Array-backed buffers are processed like arrays, including the parallel
+     *  processing of large ranges; other buffers are processed sequentially.</P>
+     *
+     *  @throws BufferOverflowException     If there is insufficient space in {@code dst}.
+     *  @throws ReadOnlyBufferException     If {@code dst} is read-only.
+     */
+    public void shuffle(LongBuffer src, LongBuffer dst) throws BufferOverflowException, ReadOnlyBufferException {
+        permute(shuffle_kernel, src, dst);
+    }
+
+
+    /** Unshuffles the remaining numbers of {@code src} like {@link #unshuffleLong(long)} does, putting the
+     *  results into {@code dst}. See {@link #shuffle(LongBuffer, LongBuffer)} for details.
+     *
+     *  @throws BufferOverflowException     If there is insufficient space in {@code dst}.
+     *  @throws ReadOnlyBufferException     If {@code dst} is read-only.
+     */
+    public void unshuffle(LongBuffer src, LongBuffer dst) throws BufferOverflowException, ReadOnlyBufferException {
+        permute(unshuffle_kernel, src, dst);
+    }
+
+
+    /** Shuffles the remaining numbers of {@code src} like {@link #shuffleInt(int)} does, putting the results
+     *  into {@code dst}. See {@link #shuffle(LongBuffer, LongBuffer)} for details.
+     *
+     *  @throws BufferOverflowException     If there is insufficient space in {@code dst}.
+     *  @throws ReadOnlyBufferException     If {@code dst} is read-only.
+     */
+    public void shuffle(IntBuffer src, IntBuffer dst) throws BufferOverflowException, ReadOnlyBufferException {
+        permute(shuffle_kernel, src, dst);
+    }
+
+
+    /** Unshuffles the remaining numbers of {@code src} like {@link #unshuffleInt(int)} does, putting the
+     *  results into {@code dst}. See {@link #shuffle(LongBuffer, LongBuffer)} for details.
+     *
+     *  @throws BufferOverflowException     If there is insufficient space in {@code dst}.
+     *  @throws ReadOnlyBufferException     If {@code dst} is read-only.
+     */
+    public void unshuffle(IntBuffer src, IntBuffer dst) throws BufferOverflowException, ReadOnlyBufferException {
+        permute(unshuffle_kernel, src, dst);
+    }
+
+
+
+
+    /*
+     *  Arbitrary width.
+     *
+     *  Numbers wider than 64 bits are shuffled through a Benes network (see BenesNetwork), which moves whole
+     *  words of bits at a time. The network is compiled upon first use, so users of the fixed-width operations
+     *  don't pay for it.
+     *
+     *  Bit i of a wide number is bit (i % 64) of word (i / 64), or bit (i % 8) of byte (i / 8), respectively.
+     *  This is the same little-endian order as used by BitSet.toLongArray() and BitSet.toByteArray().
+     *  In contrast to the fixed-width operations, bits beyond the length of the sequence remain untouched.
+     *
+     */
+
+
+        /** Returns the network for the current sequence, compiling it upon first use. */
+        BenesNetwork network() {
+            BenesNetwork net = network;
+            if (net == null) network = net = new BenesNetwork(shuffle_sequence);
+            return net;
+        }
+
+
+        /** Shuffles or unshuffles wide numbers given as words.
+         *
+         *  @param  words   The number. Left untouched.
+         *  @param  forward {@code true} to shuffle, {@code false} to unshuffle.
+         *  @return         A new array of at least {@code words.length} words, big enough to hold the sequence.
+         */
+        long[] permute_words(long[] words, boolean forward) {
+            BenesNetwork net = network();
+            int len = Math.max(words.length, (shuffle_sequence.length + 63) >>> 6);
+            long[] result = Arrays.copyOf(words, len);
+            long[] x = len >= net.words ? result : Arrays.copyOf(result, net.words);
+
+            /* the network pads the sequence with fixed points, so any bits beyond it just pass through */
+            if (forward) net.forward(x);
+            else net.backward(x);
+
+            if (x != result) System.arraycopy(x, 0, result, 0, len);
+            return result;
+        }
+
+
+        private static long[] bytes_to_words(byte[] bytes) {
+            long[] words = new long[(bytes.length + 7) >>> 3];
+            for (int i = 0; i < bytes.length; i++)
+                words[i >>> 3] |= (bytes[i] & 0xffL) << ((i & 7) << 3);
+            return words;
+        }
+
+
+        private static byte[] words_to_bytes(long[] words, int len) {
+            byte[] bytes = new byte[len];
+            for (int i = 0; i < len; i++)
+                bytes[i] = (byte) (words[i >>> 3] >>> ((i & 7) << 3));
+            return bytes;
+        }
+
+
+        byte[] permute_bytes(byte[] bytes, boolean forward) {
+            int len = Math.max(bytes.length, (shuffle_sequence.length + 7) >>> 3);
+            return words_to_bytes(permute_words(bytes_to_words(bytes), forward), len);
+        }
+
+
+    /** Returns the shuffled version of a number of arbitrary width, given as {@code long} words.
+     *
+     *  <P>Bit {@code i} of the number is bit {@code i % 64} of {@code words[i / 64]}. Bits beyond the length of
+     *  the shuffle sequence remain untouched. If the number has less bits than the sequence, it is considered
+     *  to be padded with zeroes.</P>
+     *
+     *  <P>The bits are moved a word at a time through a network of about {@code 2 log2(length)} masked swap
+     *  stages, compiled upon first use. Rough figures for random sequences, warmed up, on a current x86-64 server
+     *  core, including the allocation of the result: 128 bits in about 75 ns, 256 bits in about 110 ns,
+     *  1024 bits in about 430 ns.</P>
+     *
+     *  @param  words   The number to be shuffled. Left untouched.
+     *  @return         A new array holding the shuffled number, of at least {@code words.length} words, and big
+     *                  enough to hold all bits of the sequence.
+     */
+    public long[] shuffleWords(long[] words) {
+        return permute_words(words, true);
+    }
+
+
+    /** Returns the unshuffled version of a number of arbitrary width, given as {@code long} words.
+     *  See {@link #shuffleWords(long[])} for details.
+     *
+     *  @param  words   The number to be unshuffled. Left untouched.
+     *  @return         A new array holding the unshuffled number.
+     */
+    public long[] unshuffleWords(long[] words) {
+        return permute_words(words, false);
+    }
+
+
+    /** Returns the shuffled version of a number of arbitrary width, given as bytes.
+     *
+     *  Bit {@code i} of the number is bit {@code i % 8} of {@code n[i / 8]}. Apart from that, this works like
+     *  {@link #shuffleWords(long[])}.
+     *
+     *  @param  n       The number to be shuffled. Left untouched.
+     *  @return         A new array holding the shuffled number, of at least {@code n.length} bytes, and big
+     *                  enough to hold all bits of the sequence.
+     */
+    public byte[] shuffle(byte[] n) {
+        return permute_bytes(n, true);
+    }
+
+
+    /** Returns the unshuffled version of a number of arbitrary width, given as bytes.
+     *  See {@link #shuffle(byte[])} for details.
+     *
+     *  @param  n       The number to be unshuffled. Left untouched.
+     *  @return         A new array holding the unshuffled number.
+     */
+    public byte[] unshuffle(byte[] n) {
+        return permute_bytes(n, false);
+    }
+
+
+    /** Returns the shuffled version of a {@code BitSet}.
+     *
+     *  Bits beyond the length of the shuffle sequence remain untouched. Apart from that, this works like
+     *  {@link #shuffleWords(long[])}.
+     *
+     *  @param  bs      The bits to be shuffled. Left untouched.
+     *  @return         A new {@code BitSet} holding the shuffled bits.
+     */
+    public BitSet shuffle(BitSet bs) {
+        return BitSet.valueOf(permute_words(bs.toLongArray(), true));
+    }
+
+
+    /** Returns the unshuffled version of a {@code BitSet}. See {@link #shuffle(BitSet)} for details.
+     *
+     *  @param  bs      The bits to be unshuffled. Left untouched.
+     *  @return         A new {@code BitSet} holding the unshuffled bits.
+     */
+    public BitSet unshuffle(BitSet bs) {
+        return BitSet.valueOf(permute_words(bs.toLongArray(), false));
+    }
+
+
+
+}
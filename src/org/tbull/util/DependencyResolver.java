@@ -0,0 +1,577 @@
+package org.tbull.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+
+
+
+/** Resolves the transitive dependencies of packages, choosing a version of each package such that all version
+ *  constraints hold.
+ *
+ *  <P>Packages, their versions, and the dependencies of each version come from a {@link Provider}. A
+ *  dependency names a package and the {@link SemVerRange} of its versions that will do. Resolution picks the
+ *  newest versions it can, by a backtracking search:</P>
+ *  <UL>
+ *    <LI>It always decides the package with the fewest candidate versions left next, so dead ends show up
+ *      early.</LI>
+ *    <LI>When all candidates of a package fail, the search finds out which earlier decisions caused that, and
+ *      jumps back to the latest of them right away, skipping the decisions in between, which could not have
+ *      helped (conflict-directed backjumping).</LI>
+ *    <LI>The failing combination of decisions is learned as an incompatibility, so the search never tries it
+ *      again, whatever way it gets there.</LI>
+ *    <LI>Everything the provider returns is memoized, as is which versions of a package match a range.</LI>
+ *    <LI>As soon as a package comes up, its versions are fetched in the background, and so are the
+ *      dependencies of its newest candidates, so a slow provider works in parallel with the search.</LI>
+ *  </UL>
+ *
+ *  <P>A resolver can be used by several threads at once, and keeps what it learned from the provider between
+ *  resolutions. The provider is assumed not to change meanwhile.</P>
+ */
+
+public final class DependencyResolver {
+
+    /** Supplies packages, their versions and dependencies. Implementations must be thread-safe. */
+    public static interface Provider {
+
+        /** Returns the versions of a package, in any order, or an empty array if there is no such package. */
+        SemVer[] versions(String pkg) throws IOException;
+
+        /** Returns the dependencies of a version of a package, as package names mapped to version ranges. */
+        Map<String, SemVerRange> dependencies(String pkg, SemVer version) throws IOException;
+    }
+
+
+    /** Thrown if there is no way to satisfy all constraints. */
+    public static class ResolutionException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        public ResolutionException(String message) {
+            super(message);
+        }
+    }
+
+
+
+
+    /** How many of the newest candidates of a package get their dependencies prefetched. */
+    static final int PREFETCH_CANDIDATES = 4;
+
+
+    private final Provider provider;
+    /** Runs prefetches, {@code null} for none. */
+    private final Executor executor;
+
+    /** The versions of each package, newest first. */
+    private final ConcurrentHashMap<String, FutureTask<SemVer[]>> versions =
+        new ConcurrentHashMap<String, FutureTask<SemVer[]>>();
+    /** The dependencies of each package version, keyed by {@code pkg + ' ' + version}. */
+    private final ConcurrentHashMap<String, FutureTask<Map<String, SemVerRange>>> dependencies =
+        new ConcurrentHashMap<String, FutureTask<Map<String, SemVerRange>>>();
+
+
+
+
+    /** Creates a resolver that prefetches in the common fork/join pool. */
+    public DependencyResolver(Provider provider) {
+        this(provider, ForkJoinPool.commonPool());
+    }
+
+
+    /** Creates a resolver that prefetches with {@code executor}, or not at all if it is {@code null}. */
+    public DependencyResolver(Provider provider, Executor executor) {
+        this.provider = provider;
+        this.executor = executor;
+    }
+
+
+
+
+    /*
+     *  Memoized provider.
+     *
+     *  Each result is computed by a FutureTask, which runs once only, whether in the background or in the thread
+     *  that needs it first; others wait for it. Tasks that failed are dropped, so the next one to ask retries.
+     *
+     */
+
+
+        private FutureTask<SemVer[]> versions_task(final String pkg) {
+            FutureTask<SemVer[]> task = versions.get(pkg);
+            if (task != null) return task;
+
+            task = new FutureTask<SemVer[]>(new Callable<SemVer[]>() {
+                public @Override SemVer[] call() throws IOException {
+                    SemVer[] vs = provider.versions(pkg).clone();
+                    Arrays.sort(vs, Collections.reverseOrder());
+                    return vs;
+                }
+            });
+            FutureTask<SemVer[]> other = versions.putIfAbsent(pkg, task);
+            return other != null ? other : task;
+        }
+
+
+        private FutureTask<Map<String, SemVerRange>> dependencies_task(final String pkg, final SemVer version) {
+            String key = pkg + ' ' + version;
+            FutureTask<Map<String, SemVerRange>> task = dependencies.get(key);
+            if (task != null) return task;
+
+            task = new FutureTask<Map<String, SemVerRange>>(new Callable<Map<String, SemVerRange>>() {
+                public @Override Map<String, SemVerRange> call() throws IOException {
+                    return new LinkedHashMap<String, SemVerRange>(provider.dependencies(pkg, version));
+                }
+            });
+            FutureTask<Map<String, SemVerRange>> other = dependencies.putIfAbsent(key, task);
+            return other != null ? other : task;
+        }
+
+
+        /** Returns the result of a task, removing the task from the cache if it failed. */
+        private static <T> T get(Map<String, FutureTask<T>> cache, String key, FutureTask<T> task)
+                throws IOException {
+            task.run();     // unless it ran or runs already
+            try {
+                return task.get();
+            } catch (InterruptedException e) {
+                // only the waiting was interrupted, the task goes on
+                Thread.currentThread().interrupt();
+                throw new java.io.InterruptedIOException();
+            } catch (ExecutionException e) {
+                cache.remove(key, task);
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) throw (IOException) cause;
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                if (cause instanceof Error) throw (Error) cause;
+                throw new IOException(cause);
+            }
+        }
+
+
+        private void prefetch(FutureTask<?> task) {
+            if (executor == null || task.isDone()) return;
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                // then it gets run when needed
+            }
+        }
+
+
+        SemVer[] versions(String pkg) throws IOException {
+            return get(versions, pkg, versions_task(pkg));
+        }
+
+
+        Map<String, SemVerRange> dependencies(String pkg, SemVer version) throws IOException {
+            return get(dependencies, pkg + ' ' + version, dependencies_task(pkg, version));
+        }
+
+
+
+
+    /** Resolves requirements, choosing a version of each package needed, directly or indirectly.
+     *
+     *  @param  requirements    The packages needed, mapped to the versions that will do.
+     *  @return     The version chosen for each package needed, by package name.
+     *  @throws ResolutionException     If the requirements can't be satisfied.
+     */
+    public Map<String, SemVer> resolve(Map<String, SemVerRange> requirements)
+            throws IOException, ResolutionException {
+        Search s = new Search();
+        for (Map.Entry<String, SemVerRange> e: requirements.entrySet()) {
+            s.constrain(e.getKey(), new Constraint(null, e.getValue()));
+            prefetch(versions_task(e.getKey()));
+        }
+
+        if (s.solve() != null) throw new ResolutionException(s.explanation);
+        return new TreeMap<String, SemVer>(s.assigned);
+    }
+
+
+    /** Resolves the dependencies of a version of a package, see {@link #resolve(Map)}. The result includes
+     *  the package itself.
+     */
+    public Map<String, SemVer> resolve(String pkg, SemVer version) throws IOException, ResolutionException {
+        return resolve(Collections.singletonMap(pkg, SemVerRange.parse("=" + version)));
+    }
+
+
+
+
+    /*
+     *  Search.
+     *
+     */
+
+
+        /** A version range imposed on a package, by the package that depends on it. */
+        private static final class Constraint {
+            /** The package whose chosen version imposes the range, {@code null} for the requirements. */
+            final String from;
+            final SemVerRange range;
+
+            Constraint(String from, SemVerRange range) {
+                this.from = from; this.range = range;
+            }
+        }
+
+
+        /** The state of one resolution. */
+        private final class Search {
+            /** The versions chosen, in the order of the decisions. */
+            final LinkedHashMap<String, SemVer> assigned = new LinkedHashMap<String, SemVer>();
+            /** The constraints on each package that came up. */
+            final Map<String, List<Constraint>> constraints = new LinkedHashMap<String, List<Constraint>>();
+            /** Learned incompatibilities: combinations of versions that can't be chosen together, indexed by
+             *  each of their members, as {@code pkg + ' ' + version}. */
+            final Map<String, List<Map<String, SemVer>>> nogoods = new HashMap<String, List<Map<String, SemVer>>>();
+            /** Which of the versions of a package match a range, by package and range. */
+            final Map<String, IdentityHashMap<SemVerRange, boolean[]>> matches =
+                new HashMap<String, IdentityHashMap<SemVerRange, boolean[]>>();
+
+            String explanation = "no solution";
+
+
+            void constrain(String pkg, Constraint c) {
+                List<Constraint> list = constraints.get(pkg);
+                if (list == null) constraints.put(pkg, list = new ArrayList<Constraint>());
+                list.add(c);
+            }
+
+
+            void unconstrain(String pkg) {
+                List<Constraint> list = constraints.get(pkg);
+                list.remove(list.size() - 1);
+                if (list.isEmpty()) constraints.remove(pkg);
+            }
+
+
+            /** Returns the packages whose choices constrain {@code pkg}. */
+            Set<String> causes(String pkg) {
+                Set<String> causes = new HashSet<String>();
+                List<Constraint> list = constraints.get(pkg);
+                if (list != null) for (Constraint c: list) if (c.from != null) causes.add(c.from);
+                return causes;
+            }
+
+
+            boolean[] matching(String pkg, SemVer[] vs, SemVerRange range) {
+                IdentityHashMap<SemVerRange, boolean[]> m = matches.get(pkg);
+                if (m == null) matches.put(pkg, m = new IdentityHashMap<SemVerRange, boolean[]>());
+                boolean[] b = m.get(range);
+                if (b == null) {
+                    b = new boolean[vs.length];
+                    for (int i = 0; i < vs.length; i++) b[i] = range.matches(vs[i]);
+                    m.put(range, b);
+                }
+                return b;
+            }
+
+
+            /** Returns the versions of {@code pkg} that satisfy its constraints, and {@code extra} if not
+             *  {@code null}, newest first.
+             */
+            List<SemVer> candidates(String pkg, SemVerRange extra) throws IOException {
+                SemVer[] vs = versions(pkg);
+                List<boolean[]> filters = new ArrayList<boolean[]>();
+                List<Constraint> list = constraints.get(pkg);
+                if (list != null) for (Constraint c: list) filters.add(matching(pkg, vs, c.range));
+                if (extra != null) filters.add(matching(pkg, vs, extra));
+
+                List<SemVer> result = new ArrayList<SemVer>();
+                next: for (int i = 0; i < vs.length; i++) {
+                    for (boolean[] f: filters) if (!f[i]) continue next;
+                    result.add(vs[i]);
+                }
+                return result;
+            }
+
+
+            /** Returns a learned incompatibility that choosing {@code version} for {@code pkg} would complete,
+             *  or {@code null}.
+             */
+            Map<String, SemVer> nogood(String pkg, SemVer version) {
+                List<Map<String, SemVer>> list = nogoods.get(pkg + ' ' + version);
+                if (list == null) return null;
+                next: for (Map<String, SemVer> ng: list) {
+                    for (Map.Entry<String, SemVer> e: ng.entrySet())
+                        if (!e.getKey().equals(pkg) && !e.getValue().equals(assigned.get(e.getKey()))) continue next;
+                    return ng;
+                }
+                return null;
+            }
+
+
+            void learn(Set<String> conflict) {
+                Map<String, SemVer> ng = new HashMap<String, SemVer>();
+                for (String p: conflict) ng.put(p, assigned.get(p));
+                for (Map.Entry<String, SemVer> e: ng.entrySet()) {
+                    String key = e.getKey() + ' ' + e.getValue();
+                    List<Map<String, SemVer>> list = nogoods.get(key);
+                    if (list == null) nogoods.put(key, list = new ArrayList<Map<String, SemVer>>());
+                    list.add(ng);
+                }
+            }
+
+
+            /** Picks the undecided package with the fewest candidates, or {@code null} if all are decided. */
+            String pick() throws IOException {
+                String best = null;
+                int fewest = Integer.MAX_VALUE;
+                for (String pkg: constraints.keySet()) {
+                    if (assigned.containsKey(pkg)) continue;
+                    int n = candidates(pkg, null).size();
+                    if (n < fewest) {
+                        best = pkg;
+                        fewest = n;
+                    }
+                }
+                return best;
+            }
+
+
+            /** Explains why no version of {@code pkg} will do, with {@code extra} being the range that a
+             *  version {@code extra_version} of {@code extra_from} would add, if not {@code null}.
+             */
+            String describe(String pkg, SemVerRange extra, String extra_from, SemVer extra_version) {
+                StringBuilder sb = new StringBuilder("no version of ").append(pkg).append(" satisfies");
+                List<Constraint> list = constraints.get(pkg);
+                if (list != null) for (Constraint c: list)
+                    describe(sb, c.range, c.from, c.from == null ? null : assigned.get(c.from));
+                if (extra != null) describe(sb, extra, extra_from, extra_version);
+                return sb.toString();
+            }
+
+
+                private void describe(StringBuilder sb, SemVerRange range, String from, SemVer version) {
+                    sb.append(" \"").append(range).append("\" (");
+                    if (from == null) sb.append("required");
+                    else sb.append("by ").append(from).append(' ').append(version);
+                    sb.append(')');
+                }
+
+
+            /** Decides all undecided packages.
+             *
+             *  @return     {@code null} on success, with {@link #assigned} holding the solution, or the packages
+             *              whose choices caused a failure.
+             */
+            Set<String> solve() throws IOException {
+                String pkg = pick();
+                if (pkg == null) return null;
+
+                List<SemVer> candidates = candidates(pkg, null);
+                for (int i = 0; i < candidates.size() && i < PREFETCH_CANDIDATES; i++)
+                    prefetch(dependencies_task(pkg, candidates.get(i)));
+                if (candidates.isEmpty()) explanation = describe(pkg, null, null, null);
+
+                // the packages that limit the candidates are to blame if none works
+                Set<String> conflict = causes(pkg);
+
+                for (SemVer v: candidates) {
+                    Map<String, SemVer> ng = nogood(pkg, v);
+                    if (ng != null) {
+                        conflict.addAll(ng.keySet());
+                        conflict.remove(pkg);
+                        continue;
+                    }
+
+                    // check the dependencies against what is decided already, and against each other
+                    Map<String, SemVerRange> deps = dependencies(pkg, v);
+                    Set<String> reason = null;
+                    for (Map.Entry<String, SemVerRange> d: deps.entrySet()) {
+                        String dep = d.getKey();
+                        prefetch(versions_task(dep));
+                        SemVer chosen = assigned.get(dep);
+                        if (chosen != null ? !d.getValue().matches(chosen)
+                                : candidates(dep, d.getValue()).isEmpty()) {
+                            reason = causes(dep);
+                            if (chosen != null) reason.add(dep);
+                            explanation = describe(dep, d.getValue(), pkg, v);
+                            break;
+                        }
+                    }
+                    if (reason != null) {
+                        reason.remove(pkg);
+                        conflict.addAll(reason);
+                        continue;
+                    }
+
+                    assigned.put(pkg, v);
+                    for (Map.Entry<String, SemVerRange> d: deps.entrySet())
+                        constrain(d.getKey(), new Constraint(pkg, d.getValue()));
+
+                    Set<String> sub = solve();
+                    if (sub == null) return null;
+
+                    for (String dep: deps.keySet()) unconstrain(dep);
+                    assigned.remove(pkg);
+
+                    // our choice had nothing to do with it, so trying others won't help
+                    if (!sub.contains(pkg)) return sub;
+                    sub.remove(pkg);
+                    conflict.addAll(sub);
+                }
+
+                learn(conflict);
+                return conflict;
+            }
+        }
+
+
+
+
+    /*
+     *  Providers.
+     *
+     */
+
+
+    /** Keeps packages in memory. They can be added one by one, or read from text.
+     *
+     *  <P>The text format has a package version on each line, as in
+     *  {@code foo 1.2.0: bar ^1.0, baz >=2.1 <3}: the package name, the version, and optionally, after a colon,
+     *  a comma-separated list of dependencies, each of them a package name and a version range, which defaults
+     *  to any version. Blank lines and lines starting with {@code '#'} are ignored.</P>
+     *
+     *  <P>Adding and reading is not thread-safe, but once all packages are in place, the provider can be
+     *  used by any number of threads.</P>
+     */
+    public static class MemoryProvider implements Provider {
+        private final Map<String, Map<SemVer, Map<String, SemVerRange>>> packages =
+            new HashMap<String, Map<SemVer, Map<String, SemVerRange>>>();
+
+
+        /** Adds a version of a package, with its dependencies, replacing any earlier one. */
+        public MemoryProvider add(String pkg, SemVer version, Map<String, SemVerRange> dependencies) {
+            Map<SemVer, Map<String, SemVerRange>> vs = packages.get(pkg);
+            if (vs == null) packages.put(pkg, vs = new HashMap<SemVer, Map<String, SemVerRange>>());
+            vs.put(version, new LinkedHashMap<String, SemVerRange>(dependencies));
+            return this;
+        }
+
+
+        /** Adds a package version given by a line of text, see {@link MemoryProvider}.
+         *
+         *  @throws IllegalArgumentException    If the line is malformed.
+         */
+        public MemoryProvider add(String line) throws IllegalArgumentException {
+            String s = line.trim();
+            if (s.isEmpty() || s.startsWith("#")) return this;
+
+            int colon = s.indexOf(':');
+            String[] head = (colon < 0 ? s : s.substring(0, colon)).trim().split("\\s+");
+            if (head.length != 2) throw new IllegalArgumentException("malformed package version: " + line);
+
+            Map<String, SemVerRange> deps = new LinkedHashMap<String, SemVerRange>();
+            if (colon >= 0) {
+                for (String dep: s.substring(colon + 1).split(",")) {
+                    dep = dep.trim();
+                    if (dep.isEmpty()) continue;
+                    int blank = dep.indexOf(' ');
+                    if (blank < 0) deps.put(dep, SemVerRange.parse("*"));
+                    else deps.put(dep.substring(0, blank), SemVerRange.parse(dep.substring(blank + 1)));
+                }
+            }
+
+            return add(head[0], SemVer.parse(head[1]), deps);
+        }
+
+
+        /** Adds the package versions given by the lines of text from {@code in}, see {@link MemoryProvider}.
+         *
+         *  @throws IllegalArgumentException    If a line is malformed.
+         */
+        public MemoryProvider read(Reader in) throws IOException, IllegalArgumentException {
+            BufferedReader r = new BufferedReader(in);
+            for (String line; (line = r.readLine()) != null; ) add(line);
+            return this;
+        }
+
+
+        public @Override SemVer[] versions(String pkg) {
+            Map<SemVer, Map<String, SemVerRange>> vs = packages.get(pkg);
+            return vs == null ? new SemVer[0] : vs.keySet().toArray(new SemVer[vs.size()]);
+        }
+
+
+        public @Override Map<String, SemVerRange> dependencies(String pkg, SemVer version) {
+            Map<SemVer, Map<String, SemVerRange>> vs = packages.get(pkg);
+            Map<String, SemVerRange> deps = vs == null ? null : vs.get(version);
+            return deps == null ? Collections.<String, SemVerRange>emptyMap() : Collections.unmodifiableMap(deps);
+        }
+    }
+
+
+    /** Reads packages from a directory, which holds a file for each package, named like the package with the
+     *  suffix {@code ".deps"}, in the text format of {@link MemoryProvider}, in UTF-8. Each file is read when
+     *  its package is first asked for; a missing file means there is no such package.
+     */
+    public static class DirectoryProvider implements Provider {
+        private final File dir;
+        private final ConcurrentHashMap<String, MemoryProvider> loaded =
+            new ConcurrentHashMap<String, MemoryProvider>();
+
+
+        public DirectoryProvider(File dir) {
+            this.dir = dir;
+        }
+
+
+            private MemoryProvider load(String pkg) throws IOException {
+                MemoryProvider p = loaded.get(pkg);
+                if (p != null) return p;
+
+                p = new MemoryProvider();
+                File f = new File(dir, pkg + ".deps");
+                if (f.isFile()) {
+                    Reader in = new InputStreamReader(new FileInputStream(f), StandardCharsets.UTF_8);
+                    try {
+                        p.read(in);
+                    } catch (IllegalArgumentException e) {
+                        throw new IOException(f + ": " + e.getMessage(), e);
+                    } finally {
+                        in.close();
+                    }
+                }
+
+                MemoryProvider other = loaded.putIfAbsent(pkg, p);
+                return other != null ? other : p;
+            }
+
+
+        public @Override SemVer[] versions(String pkg) throws IOException {
+            return load(pkg).versions(pkg);
+        }
+
+
+        public @Override Map<String, SemVerRange> dependencies(String pkg, SemVer version) throws IOException {
+            return load(pkg).dependencies(pkg, version);
+        }
+    }
+
+}
@@ -0,0 +1,431 @@
+package org.tbull.util;
+
+import java.io.IOException;
+
+
+
+
+/** Turns numeric IDs into short, opaque text tokens and back.
+ *
+ *  <P>This is meant for hiding sequential IDs, like database keys, from the outside world: consecutive IDs
+ *  give unrelated looking tokens, but each token decodes to exactly one ID again. An ID is first obfuscated,
+ *  then written in base 32 or base 62 with a fixed number of digits.</P>
+ *
+ *  <P>The obfuscation consists of a number of rounds, each of which shuffles the bits of the ID with a
+ *  {@link CompiledBitShuffler}, then XORs a key into it and adds another key to it. Shuffles, XORs and
+ *  additions alone hardly mix, so each round finally folds the upper half of the bits into the lower half and
+ *  multiplies by a fixed odd constant, which spreads each bit into all bits above it. All arithmetic is modulo
+ *  {@code 2^bits}, and each step can be undone. With zero rounds, IDs are just written out in the chosen base.
+ *  All of this is obfuscation only: anybody who gets to see enough pairs of IDs and tokens can work out the
+ *  keys.</P>
+ *
+ *  <P>Tokens are written into caller-supplied {@code char} arrays or {@code Appendable}s and read from
+ *  {@code CharSequence}s or {@code char} arrays, so encoding and decoding don't allocate anything, except for
+ *  the convenience methods returning {@code String}s. Objects of this class are immutable and can be shared
+ *  between threads freely.</P>
+ *
+ *  @see    BitShuffler#keyedSequence(int, long)
+ */
+
+public final class IdCodec {
+
+    /** The digits of a token. */
+    public static enum Alphabet {
+        /** Crockford's base 32: digits and lower case letters, without i, l, o and u. Decoding ignores case
+         *  and takes {@code i} and {@code l} for {@code 1} and {@code o} for {@code 0}. Five bits per digit. */
+        BASE32("0123456789abcdefghjkmnpqrstvwxyz"),
+        /** Digits, upper case and lower case letters. Case sensitive. About 5.95 bits per digit. */
+        BASE62("0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz");
+
+
+        final int radix;
+        final char[] digits;
+        /** The value of each ASCII character, {@code -1} for characters that are not digits. */
+        final byte[] values = new byte[128];
+
+
+        private Alphabet(String digits) {
+            this.digits = digits.toCharArray();
+            this.radix = this.digits.length;
+
+            java.util.Arrays.fill(values, (byte) -1);
+            for (int i = 0; i < radix; i++) values[this.digits[i]] = (byte) i;
+
+            if (radix == 32) {
+                for (int i = 0; i < radix; i++) values[Character.toUpperCase(this.digits[i])] = (byte) i;
+                values['i'] = values['I'] = values['l'] = values['L'] = 1;
+                values['o'] = values['O'] = 0;
+            }
+        }
+
+
+        /** Returns the number of digits it takes to write any number of {@code bits} bits. */
+        public int width(int bits) {
+            int w = 0;
+            for (long max = bits == 64 ? -1L : (1L << bits) - 1; max != 0; max = Long.divideUnsigned(max, radix))
+                w++;
+            return Math.max(w, 1);
+        }
+    }
+
+
+
+
+    private final CompiledBitShuffler shuffler;
+    private final long[] xor_keys, add_keys;
+    private final Alphabet alphabet;
+
+    private final int bits;
+    private final long mask;
+    /** The shift of the fold in each round, at least half of {@link #bits}, so that one fold undoes another. */
+    private final int fold;
+    private final int width;
+
+    /** For base 32: bits per digit. {@code 0} for other alphabets. */
+    private final int shift;
+    /** {@code radix^(width - 1 - i)} for each digit position {@code i}, most significant first. */
+    private final long[] powers;
+    /** {@code mask / radix} and {@code mask % radix}, unsigned, for the overflow check when decoding. */
+    private final long max_quotient;
+    private final int max_remainder;
+
+
+
+
+    /** Constructs a codec from its parts.
+     *
+     *  @param  shuffler    The permutation applied in each round. Its length gives the number of bits of the
+     *                      IDs, which must be between 1 and 64.
+     *  @param  xor_keys    The key XORed in each round. Bits beyond the length of the shuffler are ignored.
+     *  @param  add_keys    The key added in each round, same length as {@code xor_keys}. Bits beyond the length
+     *                      of the shuffler are ignored.
+     *  @param  alphabet    The digits of the tokens.
+     *  @throws IllegalArgumentException    If the shuffler has an unsupported length or the key arrays differ
+     *                                      in length.
+     */
+    public IdCodec(CompiledBitShuffler shuffler, long[] xor_keys, long[] add_keys, Alphabet alphabet)
+            throws IllegalArgumentException {
+        if (shuffler.length() < 1 || shuffler.length() > 64 || xor_keys.length != add_keys.length
+                || alphabet == null)
+            throw new IllegalArgumentException();
+
+        this.shuffler = shuffler;
+        this.alphabet = alphabet;
+        this.bits = shuffler.length();
+        this.mask = bits == 64 ? -1L : (1L << bits) - 1;
+        this.fold = (bits + 1) >>> 1;
+        this.xor_keys = new long[xor_keys.length];
+        this.add_keys = new long[add_keys.length];
+        for (int i = 0; i < xor_keys.length; i++) {
+            this.xor_keys[i] = xor_keys[i] & mask;
+            this.add_keys[i] = add_keys[i] & mask;
+        }
+
+        this.width = alphabet.width(bits);
+        this.shift = alphabet.radix == 32 ? 5 : 0;
+        this.powers = new long[width];
+        // radix^(width - 1) <= mask, so even the highest power fits
+        for (int i = width - 1; i >= 0; i--) powers[i] = pow(alphabet.radix, width - 1 - i);
+        this.max_quotient = Long.divideUnsigned(mask, alphabet.radix);
+        this.max_remainder = (int) Long.remainderUnsigned(mask, alphabet.radix);
+    }
+
+
+    /** Constructs a codec with the shuffle sequence and all round keys derived from a single key.
+     *
+     *  @param  bits        The number of bits of the IDs, between 1 and 64.
+     *  @param  key         The key. See {@link BitShuffler#keyedSequence(int, long)}.
+     *  @param  rounds      The number of rounds. Two or three mix well enough for most purposes.
+     *  @param  alphabet    The digits of the tokens.
+     *  @throws IllegalArgumentException    If {@code bits} or {@code rounds} are out of range.
+     */
+    public static IdCodec keyed(int bits, long key, int rounds, Alphabet alphabet) throws IllegalArgumentException {
+        if (bits < 1 || bits > 64 || rounds < 0) throw new IllegalArgumentException();
+
+        long[] xor_keys = new long[rounds], add_keys = new long[rounds];
+        // a stream of its own for the round keys, apart from the one that keyedSequence() draws from key
+        long k = BitShuffler.mix64(~key);
+        for (int i = 0; i < rounds; i++) {
+            xor_keys[i] = BitShuffler.mix64(k += BitShuffler.SPLITMIX_GAMMA);
+            add_keys[i] = BitShuffler.mix64(k += BitShuffler.SPLITMIX_GAMMA) | 1;  // odd, so there always is a carry
+        }
+
+        return new IdCodec(new CompiledBitShuffler(BitShuffler.keyedSequence(bits, key)), xor_keys, add_keys,
+            alphabet);
+    }
+
+
+        /** The multiplier of each round, and its inverse modulo {@code 2^64}, and thus modulo any {@code 2^bits}. */
+        private static final long MUL = 0xd1342543de82ef95L, MUL_INVERSE = inverse(MUL);
+
+        /** Returns the multiplicative inverse of an odd number modulo {@code 2^64}, by Newton's iteration. */
+        private static long inverse(long a) {
+            long x = a;     // correct to 3 bits, each step doubles that
+            for (int i = 0; i < 5; i++) x *= 2 - a * x;
+            return x;
+        }
+
+
+        private static long pow(int radix, int exp) {
+            long p = 1;
+            while (exp-- > 0) p *= radix;
+            return p;
+        }
+
+
+
+
+    /** Returns the number of bits of the IDs. */
+    public int bits() {
+        return bits;
+    }
+
+
+    /** Returns the number of characters of each token. */
+    public int width() {
+        return width;
+    }
+
+
+    /** Returns the alphabet of the tokens. */
+    public Alphabet getAlphabet() {
+        return alphabet;
+    }
+
+
+
+
+    /** Obfuscates an ID, without turning it into text. This is the number a token is made of.
+     *
+     *  @throws IllegalArgumentException    If {@code id} has bits set beyond {@link #bits()}.
+     */
+    public long obfuscate(long id) throws IllegalArgumentException {
+        if ((id & ~mask) != 0) throw new IllegalArgumentException("ID out of range: " + id);
+
+        for (int r = 0; r < xor_keys.length; r++) {
+            id = (shuffler.shuffleLong(id) ^ xor_keys[r]) + add_keys[r];
+            id &= mask;
+            id = ((id ^ (id >>> fold)) * MUL) & mask;
+        }
+        return id;
+    }
+
+
+    /** Reverts {@link #obfuscate(long)}. Bits beyond {@link #bits()} are ignored. */
+    public long deobfuscate(long n) {
+        n &= mask;
+        for (int r = xor_keys.length - 1; r >= 0; r--) {
+            n = (n * MUL_INVERSE) & mask;
+            n ^= n >>> fold;
+            n = shuffler.unshuffleLong(((n - add_keys[r]) & mask) ^ xor_keys[r]);
+        }
+        return n;
+    }
+
+
+
+
+    /** Writes the token for an ID into an array.
+     *
+     *  @param  id      The ID.
+     *  @param  dst     Where to write the token, {@link #width()} characters starting at {@code pos}.
+     *  @return         The position after the token.
+     *  @throws IllegalArgumentException    If {@code id} has bits set beyond {@link #bits()}.
+     *  @throws IndexOutOfBoundsException   If the token does not fit into {@code dst}.
+     */
+    public int encode(long id, char[] dst, int pos) throws IllegalArgumentException, IndexOutOfBoundsException {
+        if (pos < 0 || pos > dst.length - width) throw new IndexOutOfBoundsException();
+        return write_digits(obfuscate(id), dst, pos);
+    }
+
+
+    /** Appends the token for an ID to an {@code Appendable}, one character at a time.
+     *
+     *  @throws IllegalArgumentException    If {@code id} has bits set beyond {@link #bits()}.
+     *  @throws IOException                 If {@code out} throws it.
+     */
+    public <A extends Appendable> A encode(long id, A out) throws IllegalArgumentException, IOException {
+        long n = obfuscate(id);
+        char[] digits = alphabet.digits;
+
+        if (shift != 0) {
+            for (int i = (width - 1) * shift; i >= 0; i -= shift) out.append(digits[(int) (n >>> i) & 31]);
+        } else {
+            for (int i = 0; i < width - 1; i++) {
+                long p = powers[i];
+                // the first quotient may need all 64 bits, the others are positive
+                long q = i == 0 ? Long.divideUnsigned(n, p) : n / p;
+                out.append(digits[(int) q]);
+                n -= q * p;
+            }
+            out.append(digits[(int) n]);
+        }
+
+        return out;
+    }
+
+
+    /** Returns the token for an ID. This allocates the {@code String}, prefer the other variants on hot paths.
+     *
+     *  @throws IllegalArgumentException    If {@code id} has bits set beyond {@link #bits()}.
+     */
+    public String encode(long id) throws IllegalArgumentException {
+        char[] buf = new char[width];
+        encode(id, buf, 0);
+        return new String(buf);
+    }
+
+
+        /** Writes {@code n} as {@link #width} digits, least significant last. */
+        private int write_digits(long n, char[] dst, int pos) {
+            char[] digits = alphabet.digits;
+            int i = pos + width - 1;
+
+            if (shift != 0) {
+                for (; i >= pos; i--, n >>>= 5) dst[i] = digits[(int) n & 31];
+            } else {
+                int radix = alphabet.radix;
+                if (n < 0) {
+                    // get below 2^63 first, so that plain division does the rest
+                    long q = Long.divideUnsigned(n, radix);
+                    dst[i--] = digits[(int) (n - q * radix)];
+                    n = q;
+                }
+                for (; i >= pos; i--) {
+                    long q = n / radix;
+                    dst[i] = digits[(int) (n - q * radix)];
+                    n = q;
+                }
+            }
+
+            return pos + width;
+        }
+
+
+
+
+    /** Decodes a token.
+     *
+     *  @param  token   Exactly {@link #width()} characters.
+     *  @return         The ID.
+     *  @throws IllegalArgumentException    If {@code token} is not a valid token.
+     */
+    public long decode(CharSequence token) throws IllegalArgumentException {
+        return decode(token, 0, token.length());
+    }
+
+
+    /** Decodes a token from the range {@code start .. end - 1} of {@code s}.
+     *
+     *  @throws IllegalArgumentException    If the range does not hold a valid token.
+     *  @throws IndexOutOfBoundsException   If the range exceeds {@code s}.
+     */
+    public long decode(CharSequence s, int start, int end) throws IllegalArgumentException, IndexOutOfBoundsException {
+        if (start < 0 || end > s.length() || start > end) throw new IndexOutOfBoundsException();
+        if (end - start != width) throw invalid(s, start, end);
+
+        long n = 0;
+        for (int i = start; i < end; i++) {
+            int d = digit(s.charAt(i));
+            if (d < 0 || !fits(n, d)) throw invalid(s, start, end);
+            n = n * alphabet.radix + d;
+        }
+
+        return deobfuscate(n);
+    }
+
+
+    /** Decodes the token of {@link #width()} characters at {@code pos} in {@code src}.
+     *
+     *  @throws IllegalArgumentException    If there is no valid token.
+     *  @throws IndexOutOfBoundsException   If the token would exceed {@code src}.
+     */
+    public long decode(char[] src, int pos) throws IllegalArgumentException, IndexOutOfBoundsException {
+        if (pos < 0 || pos > src.length - width) throw new IndexOutOfBoundsException();
+
+        long n = 0;
+        for (int i = pos, end = pos + width; i < end; i++) {
+            int d = digit(src[i]);
+            if (d < 0 || !fits(n, d)) throw invalid(new String(src, pos, width), 0, width);
+            n = n * alphabet.radix + d;
+        }
+
+        return deobfuscate(n);
+    }
+
+
+        private int digit(char c) {
+            return c < 128 ? alphabet.values[c] : -1;
+        }
+
+
+        /** Tells whether {@code n * radix + d} still fits into {@link #bits} bits. */
+        private boolean fits(long n, int d) {
+            int c = Long.compareUnsigned(n, max_quotient);
+            return c < 0 || c == 0 && d <= max_remainder;
+        }
+
+
+        private static IllegalArgumentException invalid(CharSequence s, int start, int end) {
+            return new IllegalArgumentException("Invalid token: " + s.subSequence(start, end));
+        }
+
+
+
+
+    /** Writes the tokens for {@code len} IDs, starting at {@code ids[off]}, one after the other into
+     *  {@code dst}, starting at {@code pos}. As all tokens have the same width, there is no need for separators.
+     *
+     *  @return         The position after the last token.
+     *  @throws IllegalArgumentException    If any ID has bits set beyond {@link #bits()}. The tokens before it
+     *                                      have been written then.
+     *  @throws IndexOutOfBoundsException   If any of the ranges exceeds its array.
+     */
+    public int encode(long[] ids, int off, int len, char[] dst, int pos)
+            throws IllegalArgumentException, IndexOutOfBoundsException {
+        if (off < 0 || len < 0 || off > ids.length - len || pos < 0 || (long) len * width > dst.length - pos)
+            throw new IndexOutOfBoundsException();
+
+        for (int i = off, end = off + len; i < end; i++)
+            pos = write_digits(obfuscate(ids[i]), dst, pos);
+        return pos;
+    }
+
+
+    /** Appends the tokens for {@code len} IDs, starting at {@code ids[off]}, to {@code out}, separated by
+     *  {@code separator}.
+     *
+     *  @throws IllegalArgumentException    If any ID has bits set beyond {@link #bits()}.
+     *  @throws IOException                 If {@code out} throws it.
+     */
+    public <A extends Appendable> A encode(long[] ids, int off, int len, A out, char separator)
+            throws IllegalArgumentException, IOException {
+        if (off < 0 || len < 0 || off > ids.length - len) throw new IndexOutOfBoundsException();
+
+        for (int i = off, end = off + len; i < end; i++) {
+            if (i > off) out.append(separator);
+            encode(ids[i], out);
+        }
+        return out;
+    }
+
+
+    /** Decodes {@code len} tokens written one after the other, starting at {@code src[pos]}, into
+     *  {@code ids}, starting at {@code off}. This is the counterpart of
+     *  {@link #encode(long[], int, int, char[], int)}.
+     *
+     *  @return         The position after the last token.
+     *  @throws IllegalArgumentException    If any token is invalid.
+     *  @throws IndexOutOfBoundsException   If any of the ranges exceeds its array.
+     */
+    public int decode(char[] src, int pos, long[] ids, int off, int len)
+            throws IllegalArgumentException, IndexOutOfBoundsException {
+        if (off < 0 || len < 0 || off > ids.length - len || pos < 0 || (long) len * width > src.length - pos)
+            throw new IndexOutOfBoundsException();
+
+        for (int i = off, end = off + len; i < end; i++, pos += width)
+            ids[i] = decode(src, pos);
+        return pos;
+    }
+
+}
@@ -0,0 +1,450 @@
+package org.tbull.util;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.TreeSet;
+
+
+
+
+/** Encodes {@link SemVer} and {@link Version} objects as single {@code long}s, along with utilities for arrays
+ *  of these.
+ *
+ *  <P>The encoding puts the version numbers into fixed bit fields, the most significant one first, followed by
+ *  the rank of the special string in a {@link Dictionary}. A version without a special string (a release) gets
+ *  the highest rank, so it sorts after all of its pre-releases. The topmost bit is always {@code 0}, so packed
+ *  versions compare the same whether taken as signed or unsigned numbers, and in the same order as the versions
+ *  themselves. Large sets of versions can thus be sorted, searched and bucketed as primitive arrays, without
+ *  touching any objects.</P>
+ *
+ *  <P>The layouts, from the most significant bits down:</P>
+ *  <UL>
+ *    <LI>{@code SemVer}: 15 bits major, 16 bits minor, 16 bits patch, 16 bits special.</LI>
+ *    <LI>{@code Version}: 11 bits major, 12 bits minor, 12 bits revision, 12 bits patch, 16 bits special.</LI>
+ *  </UL>
+ *  <P>Versions with larger numbers, and {@code SemVer}s with build metadata, can not be packed;
+ *  {@link #canPack(SemVer, Dictionary)} tells.</P>
+ */
+
+public final class PackedVersions {
+
+    /** The number of bits of the special string's rank, the lowest field in all layouts. */
+    static final int SPECIAL_BITS = 16;
+    /** The rank of a missing special string, the highest of all. */
+    public static final int RELEASE = (1 << SPECIAL_BITS) - 1;
+
+    static final int SEMVER_PATCH_SHIFT = SPECIAL_BITS;
+    static final int SEMVER_MINOR_SHIFT = SEMVER_PATCH_SHIFT + 16;
+    static final int SEMVER_MAJOR_SHIFT = SEMVER_MINOR_SHIFT + 16;
+    static final int SEMVER_MAJOR_MAX = (1 << 15) - 1, SEMVER_MINOR_MAX = 0xffff, SEMVER_PATCH_MAX = 0xffff;
+
+    static final int VERSION_PATCH_SHIFT = SPECIAL_BITS;
+    static final int VERSION_REVISION_SHIFT = VERSION_PATCH_SHIFT + 12;
+    static final int VERSION_MINOR_SHIFT = VERSION_REVISION_SHIFT + 12;
+    static final int VERSION_MAJOR_SHIFT = VERSION_MINOR_SHIFT + 12;
+    static final int VERSION_MAJOR_MAX = (1 << 11) - 1, VERSION_MINOR_MAX = 0xfff;
+
+
+    private PackedVersions() { }
+
+
+
+
+    /** An ordered set of special strings, mapping each to its rank.
+     *
+     *  <P>Ranks follow the ordering of the special strings, so they can stand in for them in packed versions.
+     *  As that requires knowing all special strings beforehand, a dictionary is built from a complete set of
+     *  them and is immutable from then on. There are separate dictionaries for {@code SemVer} and
+     *  {@code Version}, as these may order their special strings differently.</P>
+     */
+    public static final class Dictionary {
+        private final String[] specials;
+        private final Comparator<String> order;
+
+
+        private Dictionary(Collection<String> specials, Comparator<String> order) throws IllegalArgumentException {
+            TreeSet<String> set = new TreeSet<String>(order);
+            for (String s: specials) if (s != null) set.add(s);
+            if (set.size() >= RELEASE) throw new IllegalArgumentException("too many special strings");
+
+            this.specials = set.toArray(new String[set.size()]);
+            this.order = order;
+        }
+
+
+        /** Builds a dictionary of the special strings of some {@code SemVer}s.
+         *
+         *  @throws IllegalArgumentException    If there are more than 65534 distinct special strings.
+         */
+        public static Dictionary forSemVers(Collection<SemVer> versions) throws IllegalArgumentException {
+            java.util.List<String> specials = new java.util.ArrayList<String>(versions.size());
+            for (SemVer v: versions) specials.add(v.special);
+            return new Dictionary(specials, SEMVER_ORDER);
+        }
+
+
+        /** Builds a dictionary of special strings for use with {@code SemVer}s.
+         *
+         *  @throws IllegalArgumentException    If there are more than 65534 distinct special strings.
+         */
+        public static Dictionary ofSemVerSpecials(Collection<String> specials) throws IllegalArgumentException {
+            return new Dictionary(specials, SEMVER_ORDER);
+        }
+
+
+        /** Builds a dictionary of the special strings of some {@code Version}s.
+         *
+         *  @throws IllegalArgumentException    If there are more than 65534 distinct special strings.
+         */
+        public static Dictionary forVersions(Collection<Version> versions) throws IllegalArgumentException {
+            java.util.List<String> specials = new java.util.ArrayList<String>(versions.size());
+            for (Version v: versions) specials.add(v.special);
+            return new Dictionary(specials, VERSION_ORDER);
+        }
+
+
+        /** Builds a dictionary of special strings for use with {@code Version}s.
+         *
+         *  @throws IllegalArgumentException    If there are more than 65534 distinct special strings.
+         */
+        public static Dictionary ofVersionSpecials(Collection<String> specials) throws IllegalArgumentException {
+            return new Dictionary(specials, VERSION_ORDER);
+        }
+
+
+        /** Returns the number of special strings. */
+        public int size() {
+            return specials.length;
+        }
+
+
+        /** Returns the rank of a special string, {@link #RELEASE} for {@code null}, or {@code -1} if the string
+         *  is not in the dictionary.
+         */
+        public int rank(String special) {
+            if (special == null) return RELEASE;
+            int i = Arrays.binarySearch(specials, special, order);
+            return i >= 0 ? i : -1;
+        }
+
+
+        /** Returns the rank of the special string held by the characters {@code start .. end - 1} of
+         *  {@code src}, or {@code -1} if it is not in the dictionary. Only for {@code Version} dictionaries,
+         *  which order their strings lexically.
+         */
+        int rank(char[] src, int start, int end) {
+            int lo = 0, hi = specials.length - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1, c = compare(specials[mid], src, start, end);
+                if (c < 0) lo = mid + 1;
+                else if (c > 0) hi = mid - 1;
+                else return mid;
+            }
+            return -1;
+        }
+
+
+            private static int compare(String s, char[] src, int start, int end) {
+                int n = Math.min(s.length(), end - start);
+                for (int i = 0; i < n; i++) {
+                    char a = s.charAt(i), b = src[start + i];
+                    if (a != b) return a - b;
+                }
+                return s.length() - (end - start);
+            }
+
+
+        /** Returns the special string of a rank, {@code null} for {@link #RELEASE}.
+         *
+         *  @throws IndexOutOfBoundsException   If there is no such rank.
+         */
+        public String special(int rank) throws IndexOutOfBoundsException {
+            return rank == RELEASE ? null : specials[rank];
+        }
+    }
+
+
+        private static final Comparator<String> SEMVER_ORDER = new Comparator<String>() {
+            public @Override int compare(String a, String b) { return SemVer.compare_special(a, b); }
+        };
+
+        private static final Comparator<String> VERSION_ORDER = new Comparator<String>() {
+            public @Override int compare(String a, String b) { return Version.compare_special(a, b); }
+        };
+
+
+        private static int rank(Dictionary dict, String special) throws IllegalArgumentException {
+            int r = dict.rank(special);
+            if (r < 0) throw new IllegalArgumentException("special string not in dictionary: " + special);
+            return r;
+        }
+
+
+
+
+    /** Tells whether a {@code SemVer} can be packed with a dictionary. Versions with build metadata can't. */
+    public static boolean canPack(SemVer v, Dictionary dict) {
+        return v.major <= SEMVER_MAJOR_MAX && v.minor <= SEMVER_MINOR_MAX && v.patch <= SEMVER_PATCH_MAX
+            && v.build == null && dict.rank(v.special) >= 0;
+    }
+
+
+    /** Packs a {@code SemVer}.
+     *
+     *  @throws IllegalArgumentException    If a number exceeds its field, the special string is not in the
+     *                                      dictionary, or the version has build metadata.
+     */
+    public static long pack(SemVer v, Dictionary dict) throws IllegalArgumentException {
+        if (v.major > SEMVER_MAJOR_MAX || v.minor > SEMVER_MINOR_MAX || v.patch > SEMVER_PATCH_MAX)
+            throw new IllegalArgumentException("version number too large to pack: " + v);
+        if (v.build != null) throw new IllegalArgumentException("build metadata can't be packed: " + v);
+        return semver(v.major, v.minor, v.patch, rank(dict, v.special));
+    }
+
+
+    /** Packs the numbers of a {@code SemVer} along with the rank of its special string. Useful for searching:
+     *  a rank of {@code 0} gives the lowest possible pre-release, {@link #RELEASE} gives the release.
+     *  The numbers are not checked.
+     */
+    public static long semver(int major, int minor, int patch, int rank) {
+        return (long) major << SEMVER_MAJOR_SHIFT | (long) minor << SEMVER_MINOR_SHIFT
+            | (long) patch << SEMVER_PATCH_SHIFT | rank;
+    }
+
+
+    /** Unpacks a {@code SemVer} packed with the same dictionary. */
+    public static SemVer unpackSemVer(long packed, Dictionary dict) {
+        return SemVer.valueOf(semverMajor(packed), semverMinor(packed), semverPatch(packed),
+            dict.special(rank(packed)));
+    }
+
+
+    /** Returns the major version of a packed {@code SemVer}. */
+    public static int semverMajor(long packed) {
+        return (int) (packed >>> SEMVER_MAJOR_SHIFT);
+    }
+
+
+    /** Returns the minor version of a packed {@code SemVer}. */
+    public static int semverMinor(long packed) {
+        return (int) (packed >>> SEMVER_MINOR_SHIFT) & SEMVER_MINOR_MAX;
+    }
+
+
+    /** Returns the patch level of a packed {@code SemVer}. */
+    public static int semverPatch(long packed) {
+        return (int) (packed >>> SEMVER_PATCH_SHIFT) & SEMVER_PATCH_MAX;
+    }
+
+
+    /** Returns the rank of the special string of a packed version, of either kind. */
+    public static int rank(long packed) {
+        return (int) packed & RELEASE;
+    }
+
+
+
+
+    /** Tells whether a {@code Version} can be packed with a dictionary. */
+    public static boolean canPack(Version v, Dictionary dict) {
+        return v.major <= VERSION_MAJOR_MAX && v.minor <= VERSION_MINOR_MAX && v.revision <= VERSION_MINOR_MAX
+            && v.patch <= VERSION_MINOR_MAX && dict.rank(v.special) >= 0;
+    }
+
+
+    /** Packs a {@code Version}.
+     *
+     *  @throws IllegalArgumentException    If a number exceeds its field, or the special string is not in the
+     *                                      dictionary.
+     */
+    public static long pack(Version v, Dictionary dict) throws IllegalArgumentException {
+        if (v.major > VERSION_MAJOR_MAX || v.minor > VERSION_MINOR_MAX || v.revision > VERSION_MINOR_MAX
+                || v.patch > VERSION_MINOR_MAX)
+            throw new IllegalArgumentException("version number too large to pack: " + v);
+        return version(v.major, v.minor, v.revision, v.patch, rank(dict, v.special));
+    }
+
+
+    /** Packs the numbers of a {@code Version} along with the rank of its special string, see
+     *  {@link #semver(int, int, int, int)}. The numbers are not checked.
+     */
+    public static long version(int major, int minor, int revision, int patch, int rank) {
+        return (long) major << VERSION_MAJOR_SHIFT | (long) minor << VERSION_MINOR_SHIFT
+            | (long) revision << VERSION_REVISION_SHIFT | (long) patch << VERSION_PATCH_SHIFT | rank;
+    }
+
+
+    /** Unpacks a {@code Version} packed with the same dictionary. */
+    public static Version unpackVersion(long packed, Dictionary dict) {
+        return new Version(versionMajor(packed),
+            (int) (packed >>> VERSION_MINOR_SHIFT) & VERSION_MINOR_MAX,
+            (int) (packed >>> VERSION_REVISION_SHIFT) & VERSION_MINOR_MAX,
+            (int) (packed >>> VERSION_PATCH_SHIFT) & VERSION_MINOR_MAX,
+            dict.special(rank(packed)));
+    }
+
+
+    /** Returns the major version of a packed {@code Version}. */
+    public static int versionMajor(long packed) {
+        return (int) (packed >>> VERSION_MAJOR_SHIFT);
+    }
+
+
+
+
+    /*
+     *  Arrays.
+     *
+     */
+
+
+    /** Packs an array of {@code SemVer}s.
+     *
+     *  @throws IllegalArgumentException    If any of them can not be packed.
+     */
+    public static long[] pack(SemVer[] versions, Dictionary dict) throws IllegalArgumentException {
+        long[] packed = new long[versions.length];
+        for (int i = 0; i < versions.length; i++) packed[i] = pack(versions[i], dict);
+        return packed;
+    }
+
+
+    /** Unpacks an array of {@code SemVer}s. */
+    public static SemVer[] unpackSemVers(long[] packed, Dictionary dict) {
+        SemVer[] versions = new SemVer[packed.length];
+        for (int i = 0; i < packed.length; i++) versions[i] = unpackSemVer(packed[i], dict);
+        return versions;
+    }
+
+
+    /** Packs an array of {@code Version}s.
+     *
+     *  @throws IllegalArgumentException    If any of them can not be packed.
+     */
+    public static long[] pack(Version[] versions, Dictionary dict) throws IllegalArgumentException {
+        long[] packed = new long[versions.length];
+        for (int i = 0; i < versions.length; i++) packed[i] = pack(versions[i], dict);
+        return packed;
+    }
+
+
+    /** Unpacks an array of {@code Version}s. */
+    public static Version[] unpackVersions(long[] packed, Dictionary dict) {
+        Version[] versions = new Version[packed.length];
+        for (int i = 0; i < packed.length; i++) versions[i] = unpackVersion(packed[i], dict);
+        return versions;
+    }
+
+
+    /** Sorts packed versions into ascending order. */
+    public static void sort(long[] packed) {
+        Arrays.sort(packed);
+    }
+
+
+    /** Sorts packed versions into ascending order, rearranging the elements of {@code values} alongside, so
+     *  that each value stays with its version. The sort is stable. This is how to build a map keyed by packed
+     *  versions, see {@link #get(long[], Object[], long)}.
+     *
+     *  @throws IllegalArgumentException    If {@code values} is shorter than {@code packed}.
+     */
+    public static <T> void sort(long[] packed, T[] values) throws IllegalArgumentException {
+        int n = packed.length, i;
+        if (values.length < n) throw new IllegalArgumentException();
+
+        for (i = 1; i < n && packed[i - 1] <= packed[i]; i++) ;
+        if (i >= n) return;     // sorted already
+
+        int[] order = sort_indices(packed);
+        long[] p = packed.clone();
+        T[] v = values.clone();
+        for (i = 0; i < n; i++) {
+            packed[i] = p[order[i]];
+            values[i] = v[order[i]];
+        }
+    }
+
+
+        /** Returns the indices of {@code keys} in the order of their keys, keeping equal keys in order. */
+        private static int[] sort_indices(long[] keys) {
+            int n = keys.length;
+            int[] a = new int[n], b = new int[n], t;
+            for (int i = 0; i < n; i++) a[i] = i;
+
+            // bottom-up merge sort, which is stable
+            for (int width = 1; width < n; width <<= 1) {
+                for (int lo = 0; lo < n; lo += width << 1) {
+                    int mid = Math.min(lo + width, n), hi = Math.min(lo + (width << 1), n);
+                    int i = lo, j = mid, k = lo;
+                    while (i < mid && j < hi) b[k++] = keys[a[j]] < keys[a[i]] ? a[j++] : a[i++];
+                    while (i < mid) b[k++] = a[i++];
+                    while (j < hi) b[k++] = a[j++];
+                }
+                t = a; a = b; b = t;
+            }
+
+            return a;
+        }
+
+
+    /** Searches sorted packed versions for a version, like {@link Arrays#binarySearch(long[], long)}. */
+    public static int binarySearch(long[] sorted, long packed) {
+        return Arrays.binarySearch(sorted, packed);
+    }
+
+
+    /** Returns the index of the first element of {@code sorted[from .. to - 1]} that is not less than
+     *  {@code packed}, or {@code to} if there is none.
+     */
+    public static int lowerBound(long[] sorted, int from, int to, long packed) {
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            if (sorted[mid] < packed) from = mid + 1;
+            else to = mid;
+        }
+        return from;
+    }
+
+
+    /** Returns the index of the first element of {@code sorted[from .. to - 1]} that is greater than
+     *  {@code packed}, or {@code to} if there is none.
+     */
+    public static int upperBound(long[] sorted, int from, int to, long packed) {
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            if (sorted[mid] <= packed) from = mid + 1;
+            else to = mid;
+        }
+        return from;
+    }
+
+
+    /** Returns the index of the greatest element of {@code sorted} that is less than or equal to
+     *  {@code packed}, or {@code -1} if there is none.
+     */
+    public static int floor(long[] sorted, long packed) {
+        return upperBound(sorted, 0, sorted.length, packed) - 1;
+    }
+
+
+    /** Returns the index of the least element of {@code sorted} that is greater than or equal to
+     *  {@code packed}, or {@code -1} if there is none.
+     */
+    public static int ceiling(long[] sorted, long packed) {
+        int i = lowerBound(sorted, 0, sorted.length, packed);
+        return i < sorted.length ? i : -1;
+    }
+
+
+    /** Returns the value of a version in a map made of sorted packed versions and their values, see
+     *  {@link #sort(long[], Object[])}.
+     *
+     *  @return     The value, or {@code null} if the version is not in the map.
+     */
+    public static <T> T get(long[] sorted, T[] values, long packed) {
+        int i = Arrays.binarySearch(sorted, packed);
+        return i >= 0 ? values[i] : null;
+    }
+
+}
@@ -1,25 +1,56 @@
 package org.tbull.util;
 
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.Comparator;
 import java.util.Map;
-import java.util.regex.Matcher;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 
 /** Implements version numbers according to the <A HREF="http://semver.org/">Semantic Versioning</A> (SemVer) recommendation.
  *
+ *  <P>Version 2.0 of the recommendation is supported: the pre-release version (called the special string here)
+ *  is a series of dot-separated identifiers, as in {@code "1.0.0-alpha.10"}, and build metadata may follow after
+ *  a {@code '+'}, as in {@code "1.0.0+20130313"}. The older form that appends the special string directly, as in
+ *  {@code "1.0.0alpha"}, is still accepted.</P>
  *
  *  Objects of this class are immutable.
  *  {@link #equals(Object)} and {@link #hashCode()} are implemented, so {@code SemVer} objects are suitable for use
  *  as {@link Map} keys.
- *  The natural ordering provided by this class is consistent with equals.
+ *  The natural ordering provided by this class is consistent with equals. It orders by precedence first, as
+ *  defined by SemVer, and then by build metadata, which has no bearing on precedence; see {@link #PRECEDENCE}
+ *  for an ordering that ignores the build metadata.
  */
 
 /* also see http://www.jarvana.com/jarvana/view/org/semver/api/0.9/api-0.9-javadoc.jar!/org/semver/package-summary.html
  * for the docs of another implementation. */
 public class SemVer implements Comparable<SemVer> {
-    protected static final Pattern special_pattern = Pattern.compile("[A-Za-z][0-9A-Za-z-]*");
+    /** A pre-release identifier: a number without leading zeros, or alphanumerics and hyphens. */
+    private static final String identifier = "(?:0|[1-9]\\d*|\\d*[A-Za-z-][0-9A-Za-z-]*)";
+    protected static final Pattern special_pattern = Pattern.compile(identifier + "(?:\\." + identifier + ")*");
+    protected static final Pattern build_pattern = Pattern.compile("[0-9A-Za-z-]+(?:\\.[0-9A-Za-z-]+)*");
     protected static final Pattern semver_pattern =
-        Pattern.compile("v?(\\d+)(?:\\.(\\d+))?(?:\\.(\\d+))?([A-Za-z][0-9A-Za-z-]*)?");
+        Pattern.compile("v?(\\d+)(?:\\.(\\d+))?(?:\\.(\\d+))?"
+            + "(?:-(" + special_pattern + ")|([A-Za-z][0-9A-Za-z-]*(?:\\." + identifier + ")*))?"
+            + "(?:\\+(" + build_pattern + "))?");
+
+    /** Orders versions by precedence alone, ignoring build metadata. Not consistent with equals. */
+    public static final Comparator<SemVer> PRECEDENCE = new Comparator<SemVer>() {
+        public @Override int compare(SemVer a, SemVer b) {
+            return a.comparePrecedence(b);
+        }
+    };
+
+    /** Per-thread buffer for parsing sources other than {@code char[]}. Declared before {@link #VERSION},
+     *  whose construction needs it.
+     */
+    private static final ThreadLocal<char[]> scratch = new ThreadLocal<char[]>() {
+        protected @Override char[] initialValue() {
+            return new char[64];
+        }
+    };
 
     /** The version of this version number implementation. */
     public static final SemVer VERSION = new SemVer(0, 1, 0, "draft");
@@ -30,6 +61,8 @@ public class SemVer implements Comparable<SemVer> {
     public final int minor;
     public final int patch;
     public final String special;
+    /** The build metadata, or {@code null}. */
+    public final String build;
 
     private String tostring_cache = null;
     private String totag_cache = null;
@@ -42,6 +75,16 @@ public class SemVer implements Comparable<SemVer> {
     }
 
     public SemVer(int major, int minor, int patch, String special) throws IllegalArgumentException {
+        this(major, minor, patch, special, null, true);
+    }
+
+    /** Constructs a {@code SemVer} with build metadata, which must match {@link #build_pattern}. */
+    public SemVer(int major, int minor, int patch, String special, String build) throws IllegalArgumentException {
+        this(major, minor, patch, special, build, true);
+    }
+
+    /** Constructs a {@code SemVer}, skipping the check of the strings if they are known to be good. */
+    SemVer(int major, int minor, int patch, String special, String build, boolean check) {
         if (major < 0) throw new IllegalArgumentException("major version < 0");
         this.major = major;
 
@@ -52,9 +95,13 @@ public class SemVer implements Comparable<SemVer> {
         this.patch = patch;
 
         // TODO the pattern does not match the empty string "" - what to do then?
-        if (special != null && !special_pattern.matcher(special).matches())
+        if (check && special != null && !is_special(special))
             throw new IllegalArgumentException("special string does not meet requirements");
         this.special = special;
+
+        if (check && build != null && !is_build(build))
+            throw new IllegalArgumentException("build metadata does not meet requirements");
+        this.build = build;
     }
 
 
@@ -65,10 +112,30 @@ public class SemVer implements Comparable<SemVer> {
         }
 
     /* Compares this version with the specified version for order.
+     *
+     *  Versions of equal precedence are ordered by their build metadata, a version without any coming first.
+     *  Build metadata is compared like special strings, and, if that finds no difference (as between
+     *  {@code "+001"} and {@code "+1"}), character by character, so that only equal versions compare as 0.
      *
      *  @see Comparable#compareTo(Object)
      */
     public @Override int compareTo(SemVer o) {
+        int i = comparePrecedence(o);
+        if (i != 0) return i;
+
+        if (build == null) return (o.build == null ? 0 : -1);
+        if (o.build == null) return 1;
+        i = compare_identifiers(build, o.build);
+        return i != 0 ? i : build.compareTo(o.build);
+    }
+
+
+    /** Compares the precedence of this version with that of the specified version, as defined by SemVer:
+     *  the numbers are compared, then the special strings, build metadata being ignored.
+     *
+     *  @see #PRECEDENCE
+     */
+    public int comparePrecedence(SemVer o) {
         int i;
 
         i = cmp(major, o.major);
@@ -80,12 +147,67 @@ public class SemVer implements Comparable<SemVer> {
         i = cmp(patch, o.patch);
         if (i != 0) return i;
 
-        if (special == null) return (o.special == null ? 0 : 1);
-        if (o.special == null) return -1;
-        return special.compareTo(o.special);    // semver spec doesn't say anything about ignoring case differences
+        return compare_special(special, o.special);
     }
 
 
+        /** Compares special strings, a missing one ({@code null}) being greater than any other. */
+        static int compare_special(String a, String b) {
+            if (a == null) return (b == null ? 0 : 1);
+            if (b == null) return -1;
+            return compare_identifiers(a, b);
+        }
+
+
+        /** Compares dot-separated identifiers the way SemVer orders pre-release versions, walking both strings
+         *  in place: identifiers are compared from left to right, numeric ones numerically, others lexically in
+         *  ASCII order (semver spec doesn't say anything about ignoring case differences), and numeric ones
+         *  are lower than others. If all identifiers are equal, the string with fewer of them is lower.
+         */
+        static int compare_identifiers(String a, String b) {
+            int n = a.length(), m = b.length(), i = 0, j = 0;
+
+            for (;;) {
+                if (i >= n) return (j >= m ? 0 : -1);
+                if (j >= m) return 1;
+
+                int ie = i, je = j;
+                boolean a_numeric = true, b_numeric = true;
+                for (char c; ie < n && (c = a.charAt(ie)) != '.'; ie++) if (!is_digit(c)) a_numeric = false;
+                for (char c; je < m && (c = b.charAt(je)) != '.'; je++) if (!is_digit(c)) b_numeric = false;
+
+                int c;
+                if (a_numeric && b_numeric) c = compare_numeric(a, i, ie, b, j, je);
+                else if (a_numeric) c = -1;
+                else if (b_numeric) c = 1;
+                else c = compare_lexical(a, i, ie, b, j, je);
+                if (c != 0) return c;
+
+                i = ie + 1;
+                j = je + 1;
+            }
+        }
+
+
+        /** Compares two runs of digits by their value, however long they are. */
+        private static int compare_numeric(String a, int i, int ie, String b, int j, int je) {
+            while (i < ie - 1 && a.charAt(i) == '0') i++;
+            while (j < je - 1 && b.charAt(j) == '0') j++;
+
+            if (ie - i != je - j) return (ie - i < je - j ? -1 : 1);
+            return compare_lexical(a, i, ie, b, j, je);
+        }
+
+
+        private static int compare_lexical(String a, int i, int ie, String b, int j, int je) {
+            for (; i < ie && j < je; i++, j++) {
+                char ca = a.charAt(i), cb = b.charAt(j);
+                if (ca != cb) return (ca < cb ? -1 : 1);
+            }
+            return cmp(ie - i, je - j);
+        }
+
+
     /* Returns a hash code value for the object.
      *
      *  @see Object#hashCode()
@@ -98,6 +220,7 @@ public class SemVer implements Comparable<SemVer> {
         result = prime * result + this.minor;
         result = prime * result + this.patch;
         result = prime * result + ((this.special == null) ? 0 : this.special.hashCode());
+        result = prime * result + ((this.build == null) ? 0 : this.build.hashCode());
         return result;
     }
 
@@ -117,6 +240,9 @@ public class SemVer implements Comparable<SemVer> {
         if (this.special == null) {
             if (other.special != null) return false;
         } else if (!this.special.equals(other.special)) return false;
+        if (this.build == null) {
+            if (other.build != null) return false;
+        } else if (!this.build.equals(other.build)) return false;
         return true;
     }
 
@@ -132,9 +258,11 @@ public class SemVer implements Comparable<SemVer> {
      *  <P>For example, if you programmed against an API in version 1.4.2 (the expected version), then this method
      *  would return {@code true} if called on any of the actual versions 1.4.2, 1.4.6 or 1.5.0. It would
      *  return {@code false} if called on any of the actual versions 1.4.0, 1.3.7 or 2.0.0.</P>
+     *
+     *  <P>Build metadata is ignored.</P>
      */
     public boolean compatibleForUse(SemVer expected) {
-        int cmp = this.compareTo(expected);
+        int cmp = this.comparePrecedence(expected);
 
         // same version: always compatible
         if (cmp == 0) return true;
@@ -173,41 +301,441 @@ public class SemVer implements Comparable<SemVer> {
     }
 
 
+    /** Parses a version number, as in {@code "X.Y.Z-special+build"}, optionally prefixed by a {@code 'v'}.
+     *
+     *  <P>The minor version and patch level may be omitted, they default to {@code 0} then. The special string
+     *  must match {@link #special_pattern}; if it starts with a letter, the hyphen before it may be omitted, as
+     *  in {@code "X.Y.Zspecial"}. The build metadata must match {@link #build_pattern}. The parser is
+     *  hand-written and works in a single pass, without regular expressions or intermediate objects; it
+     *  allocates nothing but the result and its strings. It accepts exactly the strings that
+     *  {@link #semver_pattern} matches.</P>
+     *
+     *  @throws IllegalArgumentException    If {@code version} is not a valid version number, or one of its
+     *                                      numbers does not fit into an {@code int}.
+     */
     public static SemVer parse(CharSequence version) throws IllegalArgumentException {
-        int x, y, z;
-        String xs, ys, zs;
-        String special;
+        return parse(version, 0, version.length());
+    }
 
-        Matcher m = semver_pattern.matcher(version);
-        if (!m.matches()) throw new IllegalArgumentException();
 
-        xs = m.group(1); x = Integer.parseInt(xs);
-        ys = m.group(2); y = ys == null ? 0 : Integer.parseInt(ys);
-        zs = m.group(3); z = zs == null ? 0 : Integer.parseInt(zs);
-        special = m.group(4);
-//System.out.printf("semver.parse matched: (%s) (%s) (%s) (%s)\n", xs, ys, zs, special);
+    /** Parses a version number from the characters {@code start .. end - 1} of {@code s}.
+     *  See {@link #parse(CharSequence)} for details.
+     *
+     *  @throws IllegalArgumentException    If the range does not hold a valid version number.
+     *  @throws IndexOutOfBoundsException   If the range exceeds {@code s}.
+     */
+    public static SemVer parse(CharSequence s, int start, int end)
+            throws IllegalArgumentException, IndexOutOfBoundsException {
+        if (start < 0 || end > s.length() || start > end) throw new IndexOutOfBoundsException();
+        return parse_any(chars(s, start, end), 0, end - start);
+    }
 
-        return new SemVer(x, y, z, special);
+
+    /** Parses a version number from {@code len} characters of {@code a}, starting at {@code off}.
+     *  See {@link #parse(CharSequence)} for details.
+     *
+     *  @throws IllegalArgumentException    If the range does not hold a valid version number.
+     *  @throws IndexOutOfBoundsException   If the range exceeds {@code a}.
+     */
+    public static SemVer parse(char[] a, int off, int len) throws IllegalArgumentException, IndexOutOfBoundsException {
+        if (off < 0 || len < 0 || off > a.length - len) throw new IndexOutOfBoundsException();
+        return parse_any(a, off, off + len);
+    }
+
+
+    /** Parses a version number from {@code len} ASCII characters of {@code a}, starting at {@code off}.
+     *  See {@link #parse(CharSequence)} for details. Bytes outside the ASCII range are simply invalid.
+     *
+     *  @throws IllegalArgumentException    If the range does not hold a valid version number.
+     *  @throws IndexOutOfBoundsException   If the range exceeds {@code a}.
+     */
+    public static SemVer parse(byte[] a, int off, int len) throws IllegalArgumentException, IndexOutOfBoundsException {
+        if (off < 0 || len < 0 || off > a.length - len) throw new IndexOutOfBoundsException();
+        return parse_any(chars(a, off, off + len), 0, len);
+    }
+
+
+    /** Parses a version number from the remaining ASCII characters of {@code b}. The position of {@code b} is
+     *  left unchanged. See {@link #parse(byte[], int, int)} for details.
+     *
+     *  @throws IllegalArgumentException    If the remaining bytes are not a valid version number.
+     */
+    public static SemVer parse(ByteBuffer b) throws IllegalArgumentException {
+        return parse_any(chars(b), 0, b.remaining());
     }
 
 
+        /* The parsers work on char arrays only, so the type of the source is dealt with once per parse
+         *  rather than once per character. A char[] is parsed in place; anything else is copied into the
+         *  scratch buffer, which version numbers, being short, never make grow much.
+         */
+
+
+        /** Returns this thread's scratch buffer, holding at least {@code n} chars. */
+        private static char[] scratch(int n) {
+            char[] c = scratch.get();
+            if (c.length < n) scratch.set(c = new char[Math.max(n, c.length * 2)]);
+            return c;
+        }
+
+
+        /** Returns the characters {@code start .. end - 1} of {@code s} at the start of the scratch buffer. */
+        static char[] chars(CharSequence s, int start, int end) {
+            char[] c = scratch(end - start);
+            if (s instanceof String) ((String) s).getChars(start, end, c, 0);
+            else if (s instanceof StringBuilder) ((StringBuilder) s).getChars(start, end, c, 0);
+            else for (int i = start; i < end; i++) c[i - start] = s.charAt(i);
+            return c;
+        }
+
+
+        /** Returns the bytes {@code start .. end - 1} of {@code a} as ASCII characters at the start of the
+         *  scratch buffer. Anything above ASCII is mapped to {@code 0xffff}, which is invalid wherever it appears.
+         */
+        static char[] chars(byte[] a, int start, int end) {
+            char[] c = scratch(end - start);
+            for (int i = start; i < end; i++) c[i - start] = a[i] >= 0 ? (char) a[i] : '\uffff';
+            return c;
+        }
+
+
+        /** Returns the remaining bytes of {@code b}, like {@link #chars(byte[], int, int)}, leaving its position
+         *  unchanged.
+         */
+        static char[] chars(ByteBuffer b) {
+            if (b.hasArray()) return chars(b.array(), b.arrayOffset() + b.position(), b.arrayOffset() + b.limit());
+
+            int start = b.position(), n = b.remaining();
+            char[] c = scratch(n);
+            for (int i = 0; i < n; i++) {
+                byte x = b.get(start + i);
+                c[i] = x >= 0 ? (char) x : '\uffff';
+            }
+            return c;
+        }
+
+
+        static boolean is_letter(char c) {
+            return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z';
+        }
+
+
+        static boolean is_digit(char c) {
+            return c >= '0' && c <= '9';
+        }
+
+
+        /** Checks the characters {@code start .. end - 1} against {@link #special_pattern}. */
+        static boolean is_special(char[] src, int start, int end) {
+            return is_identifiers(src, start, end, true);
+        }
+
+
+        /** Checks the characters {@code start .. end - 1} against {@link #build_pattern}. */
+        static boolean is_build(char[] src, int start, int end) {
+            return is_identifiers(src, start, end, false);
+        }
+
+
+        static boolean is_special(String s) {
+            return is_special(chars(s, 0, s.length()), 0, s.length());
+        }
 
 
+        static boolean is_build(String s) {
+            return is_build(chars(s, 0, s.length()), 0, s.length());
+        }
+
+
+        /** Checks for non-empty, dot-separated identifiers of alphanumerics and hyphens. If {@code strict},
+         *  numeric identifiers must not have leading zeros.
+         */
+        private static boolean is_identifiers(char[] src, int start, int end, boolean strict) {
+            if (start >= end) return false;
+
+            int id = start;
+            boolean numeric = true;
+            for (int i = start; i <= end; i++) {
+                char c = i < end ? src[i] : '.';
+                if (c == '.') {
+                    if (i == id) return false;
+                    if (strict && numeric && i - id > 1 && src[id] == '0') return false;
+                    id = i + 1;
+                    numeric = true;
+                } else if (is_letter(c) || c == '-') {
+                    numeric = false;
+                } else if (!is_digit(c)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+
+        /** Parses the number starting at {@code pos}, which must hold a digit.
+         *
+         *  @return     The number in the upper 32 bits and the position after it in the lower 32 bits.
+         */
+        static long parse_number(char[] src, int pos, int end) throws IllegalArgumentException {
+            long n = 0;
+
+            if (pos >= end || !is_digit(src[pos])) throw new IllegalArgumentException();
+            do {
+                n = n * 10 + (src[pos++] - '0');
+                if (n > Integer.MAX_VALUE) throw new IllegalArgumentException("version number too large");
+            } while (pos < end && is_digit(src[pos]));
+
+            return n << 32 | pos;
+        }
+
+
+        /** Parses {@code src}, whose range has already been checked. This is a hand-written matcher for
+         *  {@link #semver_pattern}, which never needs to backtrack: a dot must be followed by a number, a
+         *  hyphen or letter that follows a number starts a special string, which runs up to a {@code '+'},
+         *  and the rest is build metadata.
+         */
+        private static SemVer parse_any(char[] src, int start, int end) throws IllegalArgumentException {
+            int pos = start, x, y = 0, z = 0;
+            long r;
+            String special = null, build = null;
+
+            if (pos < end && src[pos] == 'v') pos++;
+
+            r = parse_number(src, pos, end); x = (int) (r >>> 32); pos = (int) r;
+            if (pos < end && src[pos] == '.') {
+                r = parse_number(src, pos + 1, end); y = (int) (r >>> 32); pos = (int) r;
+                if (pos < end && src[pos] == '.') {
+                    r = parse_number(src, pos + 1, end); z = (int) (r >>> 32); pos = (int) r;
+                }
+            }
+
+            if (pos < end && (src[pos] == '-' || is_letter(src[pos]))) {
+                int s = src[pos] == '-' ? pos + 1 : pos;
+                for (pos = s; pos < end && src[pos] != '+'; pos++) ;
+                if (!is_special(src, s, pos)) throw new IllegalArgumentException();
+                special = new String(src, s, pos - s);
+            }
+
+            if (pos < end) {
+                if (src[pos] != '+' || !is_build(src, pos + 1, end)) throw new IllegalArgumentException();
+                build = new String(src, pos + 1, end - pos - 1);
+            }
+
+            return new SemVer(x, y, z, special, build, false);
+        }
+
+
+
+
+    /*
+     *  Canonical instances.
+     *
+     *  Equal versions obtained through valueOf() are one and the same object. They live in two tiers: a small
+     *  direct-mapped table that holds the most recently used versions strongly, so hot versions never go away,
+     *  and a map that holds all of them weakly, so versions nobody uses any more can be collected. Both are
+     *  safe for concurrent use without locking; SemVer objects are immutable, so handing them around through
+     *  races is harmless (the string caches may get computed twice, which is harmless as well).
+     *
+     */
+
+
+    /** Number of slots of the table of hot versions, a power of two. */
+    static final int HOT_SIZE = 1 << 12;
+
+    private static final SemVer[] hot = new SemVer[HOT_SIZE];
+    private static final ConcurrentHashMap<Key, Ref> canonical = new ConcurrentHashMap<Key, Ref>();
+    private static final ReferenceQueue<SemVer> collected = new ReferenceQueue<SemVer>();
+
+
+        /** The identity of a version, without referring to the version itself. */
+        private static final class Key {
+            final int major, minor, patch;
+            final String special, build;
+            final int hash;
+
+            Key(int major, int minor, int patch, String special, String build) {
+                this.major = major; this.minor = minor; this.patch = patch; this.special = special; this.build = build;
+                this.hash = hash(major, minor, patch, special, build);
+            }
+
+            public @Override int hashCode() {
+                return hash;
+            }
+
+            public @Override boolean equals(Object o) {
+                if (!(o instanceof Key)) return false;
+                Key k = (Key) o;
+                return hash == k.hash && major == k.major && minor == k.minor && patch == k.patch
+                    && (special == null ? k.special == null : special.equals(k.special))
+                    && (build == null ? k.build == null : build.equals(k.build));
+            }
+        }
+
+
+        /** A weak reference to a canonical version, remembering its key for removal once it is gone. */
+        private static final class Ref extends WeakReference<SemVer> {
+            final Key key;
+
+            Ref(SemVer v, Key key) {
+                super(v, collected);
+                this.key = key;
+            }
+        }
+
+
+        /** Same as {@link #hashCode()}, without needing an object. */
+        private static int hash(int major, int minor, int patch, String special, String build) {
+            final int prime = 31;
+            int result = 1;
+            result = prime * result + major;
+            result = prime * result + minor;
+            result = prime * result + patch;
+            result = prime * result + (special == null ? 0 : special.hashCode());
+            result = prime * result + (build == null ? 0 : build.hashCode());
+            return result;
+        }
+
+
+        private static int hot_slot(int hash) {
+            return (hash ^ (hash >>> 16)) & (HOT_SIZE - 1);
+        }
+
+
+        /** Returns the hot version given by its parts, or {@code null} if it is not hot. */
+        private static SemVer hot(int major, int minor, int patch, String special, String build) {
+            SemVer v = hot[hot_slot(hash(major, minor, patch, special, build))];
+            if (v != null && v.major == major && v.minor == minor && v.patch == patch
+                    && (special == null ? v.special == null : special.equals(v.special))
+                    && (build == null ? v.build == null : build.equals(v.build)))
+                return v;
+            return null;
+        }
+
+
+        /** Removes the entries of collected versions from the map. */
+        private static void expunge() {
+            Object r;
+            while ((r = collected.poll()) != null) {
+                Ref ref = (Ref) r;
+                canonical.remove(ref.key, ref);
+            }
+        }
+
+
+        /** Returns the canonical instance of a version, making it the canonical instance if there is none yet
+         *  and its strings are interned, or a copy with the strings interned otherwise.
+         */
+        private static SemVer canonical(SemVer v) {
+            int slot = hot_slot(v.hashCode());
+            SemVer c = hot[slot];
+            if (c != null && c.equals(v)) return c;
+
+            Key key = new Key(v.major, v.minor, v.patch, v.special, v.build);
+            Ref ref = canonical.get(key);
+
+            if (ref == null || (c = ref.get()) == null) {
+                String special = v.special == null ? null : v.special.intern();
+                String build = v.build == null ? null : v.build.intern();
+                SemVer fresh = special == v.special && build == v.build
+                    ? v : new SemVer(v.major, v.minor, v.patch, special, build, false);
+                Ref mine = new Ref(fresh, new Key(v.major, v.minor, v.patch, special, build));
+
+                expunge();
+                for (;;) {
+                    if ((ref = canonical.putIfAbsent(mine.key, mine)) == null) { c = fresh; break; }
+                    if ((c = ref.get()) != null) break;                             // lost a race
+                    if (canonical.replace(mine.key, ref, mine)) { c = fresh; break; }  // replaced a dead one
+                }
+            }
+
+            hot[slot] = c;
+            return c;
+        }
+
+
+    /** Returns the canonical instance of a version.
+     *
+     *  <P>Equal versions obtained through any of the {@code valueOf} methods or {@link #intern()} are the
+     *  same object, so a large number of them takes the memory of just the distinct ones, and {@code equals}
+     *  usually succeeds on identity alone. Their special strings and build metadata are interned as well.</P>
+     *
+     *  <P>Canonical versions are held weakly, except for a few thousand recently used ones, so versions no
+     *  longer in use anywhere get collected. Lookups take a hash table probe and don't lock.</P>
+     *
+     *  @throws IllegalArgumentException    See {@link #SemVer(int, int, int, String)}.
+     */
+    public static SemVer valueOf(int major, int minor, int patch, String special) throws IllegalArgumentException {
+        return valueOf(major, minor, patch, special, null);
+    }
+
+
+    /** Returns the canonical instance of a version with build metadata.
+     *  See {@link #valueOf(int, int, int, String)} for details.
+     *
+     *  @throws IllegalArgumentException    See {@link #SemVer(int, int, int, String, String)}.
+     */
+    public static SemVer valueOf(int major, int minor, int patch, String special, String build)
+            throws IllegalArgumentException {
+        SemVer v = hot(major, minor, patch, special, build);
+        return v != null ? v : canonical(new SemVer(major, minor, patch, special, build));
+    }
+
+
+    /** Returns the canonical instance of a version without a special string.
+     *  See {@link #valueOf(int, int, int, String)} for details.
+     */
+    public static SemVer valueOf(int major, int minor, int patch) throws IllegalArgumentException {
+        return valueOf(major, minor, patch, null);
+    }
+
+
+    /** Parses a version number and returns its canonical instance. See {@link #parse(CharSequence)} and
+     *  {@link #valueOf(int, int, int, String)} for details.
+     *
+     *  @throws IllegalArgumentException    If {@code version} is not a valid version number.
+     */
+    public static SemVer valueOf(CharSequence version) throws IllegalArgumentException {
+        return parse(version).intern();
+    }
+
+
+    /** Returns the canonical instance of this version, see {@link #valueOf(int, int, int, String)}.
+     *  If there is none yet, this object becomes it, provided its strings are interned already.
+     */
+    public SemVer intern() {
+        return canonical(this);
+    }
+
+
+
+
+        /** Formats the version, appending the special string without a hyphen if it starts with a letter, as
+         *  this class always did, and like {@link Version} does. Special strings that start otherwise, which
+         *  only SemVer 2.0 allows, need the hyphen to be told apart from the patch level.
+         */
         private StringBuilder format(StringBuilder sb) {
             sb.append(major).append('.').append(minor).append('.').append(patch);
-            if (special != null) sb.append(special);
+            if (special != null) {
+                if (!is_letter(special.charAt(0))) sb.append('-');
+                sb.append(special);
+            }
+            if (build != null) sb.append('+').append(build);
             return sb;
         }
 
 
-    /** Returns the version number as a String, as in {@code "X.Y.Zspecial"} */
+    /** Returns the version number as a String, as in {@code "X.Y.Zspecial+build"}, or
+     *  {@code "X.Y.Z-special+build"} if the special string does not start with a letter.
+     */
     public @Override String toString() {
         if (tostring_cache == null)
             tostring_cache = format(new StringBuilder()).toString();
         return tostring_cache;
     }
 
-    /** Returns the version number as a String suitable for use as a version control tag, as in {@code "vX.Y.Zspecial"} */
+    /** Returns the version number as a String suitable for use as a version control tag, as in
+     *  {@code "vX.Y.Zspecial+build"}, see {@link #toString()}
+     */
     public String toTagString() {
         if (totag_cache == null)
             totag_cache = format((new StringBuilder()).append('v')).toString();
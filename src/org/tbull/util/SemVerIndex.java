@@ -0,0 +1,371 @@
+package org.tbull.util;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+
+
+/** An immutable, sorted set of {@link SemVer}s, each optionally carrying a value.
+ *
+ *  <P>The versions are kept in a sorted array, so lookups, floor and ceiling queries, and finding the latest
+ *  version compatible with an expected one (see {@link SemVer#compatibleForUse(SemVer)}) take a binary search,
+ *  and range scans a binary search plus the time to copy the result.</P>
+ *
+ *  <P>Adding versions creates a new index, sharing nothing with the old one, which stays valid. Adding a batch
+ *  of versions at once takes a single merge pass. As indexes are immutable, any number of threads can query
+ *  them without locking. For an index that is updated while being read, see {@link Shared}, which publishes
+ *  each new version of the index atomically.</P>
+ *
+ *  @param  <V>     The type of the values.
+ */
+
+public final class SemVerIndex<V> {
+
+    private static final SemVerIndex<Object> EMPTY = new SemVerIndex<Object>(new SemVer[0], new Object[0]);
+
+    /** The versions, ascending, without duplicates. */
+    private final SemVer[] versions;
+    /** The value of each version. */
+    private final Object[] values;
+
+
+
+
+    private SemVerIndex(SemVer[] versions, Object[] values) {
+        this.versions = versions;
+        this.values = values;
+    }
+
+
+    /** Returns the empty index. */
+    @SuppressWarnings("unchecked")
+    public static <V> SemVerIndex<V> empty() {
+        return (SemVerIndex<V>) EMPTY;
+    }
+
+
+    /** Creates an index of some versions, with {@code null} values. Duplicates are dropped. */
+    public static <V> SemVerIndex<V> of(Collection<SemVer> versions) {
+        SemVer[] v = versions.toArray(new SemVer[versions.size()]);
+        return SemVerIndex.<V>empty().with(v, new Object[v.length]);
+    }
+
+
+    /** Creates an index of the keys of a map, carrying the values of the map. */
+    public static <V> SemVerIndex<V> of(Map<SemVer, ? extends V> map) {
+        return SemVerIndex.<V>empty().withAll(map);
+    }
+
+
+
+
+    /** Returns a new index that additionally holds {@code version}, carrying {@code value}. If the version is
+     *  held already, its value is replaced. Takes time linear in the size of the index.
+     */
+    public SemVerIndex<V> with(SemVer version, V value) {
+        int i = Arrays.binarySearch(versions, version);
+        if (i >= 0) {
+            Object[] vals = values.clone();
+            vals[i] = value;
+            return new SemVerIndex<V>(versions, vals);
+        }
+
+        i = -i - 1;
+        int n = versions.length;
+        SemVer[] vs = new SemVer[n + 1];
+        Object[] vals = new Object[n + 1];
+        System.arraycopy(versions, 0, vs, 0, i);
+        System.arraycopy(values, 0, vals, 0, i);
+        vs[i] = version;
+        vals[i] = value;
+        System.arraycopy(versions, i, vs, i + 1, n - i);
+        System.arraycopy(values, i, vals, i + 1, n - i);
+
+        return new SemVerIndex<V>(vs, vals);
+    }
+
+
+    /** Returns a new index that additionally holds the keys of a map, carrying the values of the map.
+     *  Takes time linear in the size of the index, plus sorting the map.
+     */
+    public SemVerIndex<V> withAll(Map<SemVer, ? extends V> map) {
+        SemVer[] vs = new SemVer[map.size()];
+        Object[] vals = new Object[map.size()];
+        int i = 0;
+        for (Map.Entry<SemVer, ? extends V> e: map.entrySet()) {
+            vs[i] = e.getKey();
+            vals[i] = e.getValue();
+            i++;
+        }
+        return with(vs, vals);
+    }
+
+
+        /** Merges unsorted versions and their values into this index. Later duplicates win. */
+        private SemVerIndex<V> with(SemVer[] vs, Object[] vals) {
+            if (vs.length == 0) return this;
+
+            // sort the additions (stable, so that duplicates keep their order)
+            Integer[] order = new Integer[vs.length];
+            for (int i = 0; i < order.length; i++) order[i] = Integer.valueOf(i);
+            final SemVer[] keys = vs;
+            Arrays.sort(order, new java.util.Comparator<Integer>() {
+                public @Override int compare(Integer a, Integer b) {
+                    return keys[a.intValue()].compareTo(keys[b.intValue()]);
+                }
+            });
+
+            int n = versions.length, m = order.length, i = 0, j = 0, k = 0;
+            SemVer[] rv = new SemVer[n + m];
+            Object[] rvals = new Object[n + m];
+
+            while (i < n || j < m) {
+                // skip additions superseded by an equal later one
+                while (j + 1 < m && vs[order[j].intValue()].equals(vs[order[j + 1].intValue()])) j++;
+
+                int c = i >= n ? 1 : j >= m ? -1 : versions[i].compareTo(vs[order[j].intValue()]);
+                if (c < 0) {
+                    rv[k] = versions[i]; rvals[k++] = values[i++];
+                } else {
+                    if (c == 0) i++;    // replaced
+                    rv[k] = vs[order[j].intValue()]; rvals[k++] = vals[order[j++].intValue()];
+                }
+            }
+
+            return new SemVerIndex<V>(Arrays.copyOf(rv, k), Arrays.copyOf(rvals, k));
+        }
+
+
+    /** Returns a new index without {@code version}, or this index if it does not hold it. */
+    public SemVerIndex<V> without(SemVer version) {
+        int i = Arrays.binarySearch(versions, version);
+        if (i < 0) return this;
+
+        int n = versions.length;
+        SemVer[] vs = new SemVer[n - 1];
+        Object[] vals = new Object[n - 1];
+        System.arraycopy(versions, 0, vs, 0, i);
+        System.arraycopy(values, 0, vals, 0, i);
+        System.arraycopy(versions, i + 1, vs, i, n - i - 1);
+        System.arraycopy(values, i + 1, vals, i, n - i - 1);
+
+        return new SemVerIndex<V>(vs, vals);
+    }
+
+
+
+
+    /** Returns the number of versions. */
+    public int size() {
+        return versions.length;
+    }
+
+
+    /** Returns the version at position {@code i}, in ascending order. */
+    public SemVer version(int i) {
+        return versions[i];
+    }
+
+
+    /** Returns the value of the version at position {@code i}. */
+    @SuppressWarnings("unchecked")
+    public V value(int i) {
+        return (V) values[i];
+    }
+
+
+    /** Returns the position of a version, like {@link Arrays#binarySearch(Object[], Object)} does. */
+    public int indexOf(SemVer version) {
+        return Arrays.binarySearch(versions, version);
+    }
+
+
+    /** Tells whether the index holds a version. */
+    public boolean contains(SemVer version) {
+        return indexOf(version) >= 0;
+    }
+
+
+    /** Returns the value of a version, or {@code null} if the index does not hold it. */
+    public V get(SemVer version) {
+        int i = indexOf(version);
+        return i >= 0 ? value(i) : null;
+    }
+
+
+    /** Returns all versions, ascending. */
+    public SemVer[] versions() {
+        return versions.clone();
+    }
+
+
+
+
+        /** Returns the position of the first version that is greater than {@code version}, or, if
+         *  {@code inclusive}, not less than it.
+         */
+        private int bound(SemVer version, boolean inclusive) {
+            int lo = 0, hi = versions.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1, c = versions[mid].compareTo(version);
+                if (c < 0 || c == 0 && !inclusive) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+
+
+        /** Returns the position of the first version with a major version above {@code major}. */
+        private int major_end(int major) {
+            int lo = 0, hi = versions.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (versions[mid].major <= major) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+
+
+        /** Returns the position of the first version that takes precedence over {@code version}. */
+        private int precedence_end(SemVer version) {
+            int lo = 0, hi = versions.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (versions[mid].comparePrecedence(version) <= 0) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+
+
+    /** Returns the greatest version less than or equal to {@code version}, or {@code null} if there is none. */
+    public SemVer floor(SemVer version) {
+        int i = bound(version, false) - 1;
+        return i >= 0 ? versions[i] : null;
+    }
+
+
+    /** Returns the least version greater than or equal to {@code version}, or {@code null} if there is none. */
+    public SemVer ceiling(SemVer version) {
+        int i = bound(version, true);
+        return i < versions.length ? versions[i] : null;
+    }
+
+
+    /** Returns the greatest version less than {@code version}, or {@code null} if there is none. */
+    public SemVer lower(SemVer version) {
+        int i = bound(version, true) - 1;
+        return i >= 0 ? versions[i] : null;
+    }
+
+
+    /** Returns the least version greater than {@code version}, or {@code null} if there is none. */
+    public SemVer higher(SemVer version) {
+        int i = bound(version, false);
+        return i < versions.length ? versions[i] : null;
+    }
+
+
+    /** Returns the latest version that is compatible for use in place of {@code expected}, as determined by
+     *  {@link SemVer#compatibleForUse(SemVer)}, or {@code null} if there is none. Takes a binary search.
+     */
+    public SemVer latestCompatible(SemVer expected) {
+        // unstable versions are only compatible with themselves, whatever their build metadata
+        if (expected.major == 0) {
+            int i = precedence_end(expected) - 1;
+            return i >= 0 && versions[i].comparePrecedence(expected) == 0 ? versions[i] : null;
+        }
+
+        // the latest version with the same major version, if it isn't older than the expected one
+        int i = major_end(expected.major) - 1;
+        if (i < 0 || versions[i].major != expected.major || versions[i].comparePrecedence(expected) < 0) return null;
+        return versions[i];
+    }
+
+
+    /** Returns the latest version that satisfies a range, or {@code null} if there is none. */
+    public SemVer latest(SemVerRange range) {
+        return range.highest(versions);
+    }
+
+
+    /** Returns the versions from {@code from} to {@code to}, ascending.
+     *
+     *  @param  from    The lower bound, or {@code null} for none.
+     *  @param  to      The upper bound, or {@code null} for none.
+     */
+    public SemVerIndex<V> range(SemVer from, boolean from_inclusive, SemVer to, boolean to_inclusive) {
+        int i = from == null ? 0 : bound(from, from_inclusive);
+        int j = to == null ? versions.length : bound(to, !to_inclusive);
+        if (i >= j) return empty();
+        if (i == 0 && j == versions.length) return this;
+        return new SemVerIndex<V>(Arrays.copyOfRange(versions, i, j), Arrays.copyOfRange(values, i, j));
+    }
+
+
+    /** Returns the versions that satisfy a range, ascending. */
+    public SemVer[] range(SemVerRange range) {
+        return range.filter(versions);
+    }
+
+
+
+
+    /** A mutable reference to an index, for indexes that are updated while being read.
+     *
+     *  <P>Readers take a {@link #snapshot()}, which is an ordinary immutable index, and query that without any
+     *  locking. Updates build a new index and publish it with a compare-and-set, retrying if another update
+     *  came in between. Updates thus don't block readers, nor each other, but may have to redo their work
+     *  under contention; batching updates with {@link #putAll(Map)} helps then.</P>
+     */
+    public static final class Shared<V> {
+        private final AtomicReference<SemVerIndex<V>> ref;
+
+        public Shared() {
+            this(SemVerIndex.<V>empty());
+        }
+
+        public Shared(SemVerIndex<V> initial) {
+            ref = new AtomicReference<SemVerIndex<V>>(initial);
+        }
+
+
+        /** Returns the current index. */
+        public SemVerIndex<V> snapshot() {
+            return ref.get();
+        }
+
+
+        /** Adds a version, or replaces its value. */
+        public void put(SemVer version, V value) {
+            SemVerIndex<V> old;
+            do {
+                old = ref.get();
+            } while (!ref.compareAndSet(old, old.with(version, value)));
+        }
+
+
+        /** Adds the keys of a map, carrying the values of the map, in a single update. */
+        public void putAll(Map<SemVer, ? extends V> map) {
+            SemVerIndex<V> old;
+            do {
+                old = ref.get();
+            } while (!ref.compareAndSet(old, old.withAll(map)));
+        }
+
+
+        /** Removes a version. */
+        public void remove(SemVer version) {
+            SemVerIndex<V> old, index;
+            do {
+                old = ref.get();
+                index = old.without(version);
+            } while (index != old && !ref.compareAndSet(old, index));
+        }
+    }
+
+}
@@ -0,0 +1,406 @@
+package org.tbull.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+
+
+
+/** A set of {@link SemVer}s given by a range expression, as used by npm or Cargo.
+ *
+ *  <P>An expression consists of alternatives separated by {@code ||}, any of which a version must satisfy.
+ *  An alternative is a list of comparators separated by whitespace or commas, all of which a version must
+ *  satisfy, or a hyphen range {@code A - B}, or empty or {@code *} for any version. The comparators
+ *  are:</P>
+ *  <UL>
+ *    <LI>{@code >=V}, {@code >V}, {@code <=V}, {@code <V}: plain comparisons in the natural ordering of
+ *        {@code SemVer}.</LI>
+ *    <LI>{@code V} or {@code =V}: exactly {@code V}. A partial version, like {@code 1.2} or {@code 1.2.x},
+ *        stands for all of its releases: {@code 1.2} is {@code >=1.2.0 <1.3.0}. Ranges parsed by
+ *        {@link #parseCargo(CharSequence)} take a bare {@code V} as {@code ^V} instead, like Cargo does.</LI>
+ *    <LI>{@code ^V}: versions compatible with {@code V}, up to the next change of the leftmost non-zero number:
+ *        {@code ^1.2.3} is {@code >=1.2.3 <2.0.0}, {@code ^0.2.3} is {@code >=0.2.3 <0.3.0} and
+ *        {@code ^0.0.3} is {@code >=0.0.3 <0.0.4}.</LI>
+ *    <LI>{@code ~V}: patch level changes only if the minor version is given, minor version changes
+ *        otherwise: {@code ~1.2.3} is {@code >=1.2.3 <1.3.0}, {@code ~1} is {@code >=1.0.0 <2.0.0}.</LI>
+ *  </UL>
+ *  <P>The upper bounds implied by partial versions, {@code ^}, {@code ~} and hyphen ranges exclude the
+ *  pre-releases of that bound too, so {@code ^1.2.3} does not match {@code 2.0.0alpha}. Otherwise, pre-releases
+ *  are ordinary versions, placed just below their release.</P>
+ *
+ *  <P>An expression is compiled into a sorted list of disjoint intervals of versions. Matching a version then
+ *  takes a binary search over the intervals, and filtering a sorted array of versions takes a single pass over
+ *  both. Objects of this class are immutable.</P>
+ */
+
+public final class SemVerRange {
+
+        /** A point in the ordering of versions, where intervals start or end.
+         *
+         *  <P>It is either at the version given by the numbers and the special string, or just above it (when
+         *  {@code above} is set), or just below all versions with these numbers, including their pre-releases
+         *  (when {@code lowest} is set, the special string is ignored then).</P>
+         */
+        static final class Point {
+            final int major, minor, patch;
+            final String special;
+            final boolean lowest, above;
+
+            Point(int major, int minor, int patch, String special, boolean lowest, boolean above) {
+                this.major = major; this.minor = minor; this.patch = patch; this.special = special;
+                this.lowest = lowest; this.above = above;
+            }
+
+            Point(SemVer v, boolean above) {
+                this(v.major, v.minor, v.patch, v.special, false, above);
+            }
+
+            /** The point below all versions with the given numbers. */
+            static Point lowest(int major, int minor, int patch) {
+                return new Point(major, minor, patch, null, true, false);
+            }
+
+            public @Override String toString() {
+                return major + "." + minor + "." + patch + (lowest ? "-" : special == null ? "" : special)
+                    + (above ? "+" : "");
+            }
+        }
+
+
+        private static int cmp(int a, int b) {
+            return a < b ? -1 : (a == b ? 0 : 1);
+        }
+
+
+        /** Compares a version with a point. Allocates nothing. */
+        static int compare(SemVer v, Point p) {
+            int c;
+            if ((c = cmp(v.major, p.major)) != 0) return c;
+            if ((c = cmp(v.minor, p.minor)) != 0) return c;
+            if ((c = cmp(v.patch, p.patch)) != 0) return c;
+            if (p.lowest) return 1;
+            if ((c = SemVer.compare_special(v.special, p.special)) != 0) return c;
+            return p.above ? -1 : 0;
+        }
+
+
+        static int compare(Point a, Point b) {
+            int c;
+            if ((c = cmp(a.major, b.major)) != 0) return c;
+            if ((c = cmp(a.minor, b.minor)) != 0) return c;
+            if ((c = cmp(a.patch, b.patch)) != 0) return c;
+            if (a.lowest || b.lowest) return a.lowest == b.lowest ? 0 : a.lowest ? -1 : 1;
+            if ((c = SemVer.compare_special(a.special, b.special)) != 0) return c;
+            return a.above == b.above ? 0 : a.above ? 1 : -1;
+        }
+
+
+        /** Compares points, {@code null} being below all others if {@code low_null}, above them otherwise. */
+        private static int compare(Point a, Point b, boolean low_null) {
+            if (a == null || b == null) return a == b ? 0 : (a == null) == low_null ? -1 : 1;
+            return compare(a, b);
+        }
+
+
+        private static final Comparator<Point[]> BY_START = new Comparator<Point[]>() {
+            public @Override int compare(Point[] a, Point[] b) { return SemVerRange.compare(a[0], b[0], true); }
+        };
+
+
+
+
+    private final String expression;
+    /** The intervals, sorted and disjoint. Interval {@code i} contains the versions from {@code starts[i]}
+     *  (inclusive, {@code null} for no lower bound) to {@code ends[i]} (exclusive, {@code null} for no upper
+     *  bound). */
+    final Point[] starts, ends;
+
+
+
+
+    private SemVerRange(String expression, List<Point[]> intervals) {
+        Point[][] sorted = intervals.toArray(new Point[intervals.size()][]);
+        Arrays.sort(sorted, BY_START);
+
+        // merge overlapping and adjacent intervals
+        List<Point[]> merged = new ArrayList<Point[]>(sorted.length);
+        for (Point[] iv: sorted) {
+            Point[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && (iv[0] == null || last[1] == null || compare(iv[0], last[1]) <= 0)) {
+                if (compare(iv[1], last[1], false) > 0) last[1] = iv[1];
+            } else {
+                merged.add(new Point[] { iv[0], iv[1] });
+            }
+        }
+
+        this.expression = expression;
+        this.starts = new Point[merged.size()];
+        this.ends = new Point[merged.size()];
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = merged.get(i)[0];
+            ends[i] = merged.get(i)[1];
+        }
+    }
+
+
+    /** Compiles a range expression the way npm reads it, a bare version meaning exactly that version.
+     *
+     *  @throws IllegalArgumentException    If {@code expression} is not a valid range expression.
+     */
+    public static SemVerRange parse(CharSequence expression) throws IllegalArgumentException {
+        return parse(expression, false);
+    }
+
+
+    /** Compiles a range expression the way Cargo reads it, as in {@code ">=1.2.0, <1.5.0"}: a bare version
+     *  is a caret requirement, so {@code 1.2.3} is {@code ^1.2.3}, and {@code =1.2.3} must be used to ask for
+     *  exactly that version.
+     *
+     *  @throws IllegalArgumentException    If {@code expression} is not a valid range expression.
+     */
+    public static SemVerRange parseCargo(CharSequence expression) throws IllegalArgumentException {
+        return parse(expression, true);
+    }
+
+
+        private static SemVerRange parse(CharSequence expression, boolean cargo) throws IllegalArgumentException {
+            String expr = expression.toString();
+            List<Point[]> intervals = new ArrayList<Point[]>();
+
+            for (String alt: expr.split("\\|\\|", -1)) {
+                Point[] iv = parse_alternative(alt.trim(), expr, cargo);
+                if (iv != null) intervals.add(iv);
+            }
+
+            return new SemVerRange(expr, intervals);
+        }
+
+
+
+
+    /*
+     *  Parsing.
+     *
+     */
+
+
+        private static final List<String> OPERATORS = Arrays.asList("", "=", ">=", ">", "<=", "<", "^", "~");
+
+
+        /** A parsed, possibly partial version: the numbers given ({@code 0} to {@code 3}) and the version
+         *  with the missing numbers set to {@code 0}. */
+        private static final class Partial {
+            final int given;
+            final SemVer v;
+
+            Partial(int given, SemVer v) { this.given = given; this.v = v; }
+
+            /** The point just above all versions matching this partial version. */
+            Point end() {
+                switch (given) {
+                    case 0:  return null;
+                    case 1:  return Point.lowest(v.major + 1, 0, 0);
+                    case 2:  return Point.lowest(v.major, v.minor + 1, 0);
+                    default: return new Point(v, true);
+                }
+            }
+        }
+
+
+        private static Partial parse_partial(String s, String expr) throws IllegalArgumentException {
+            if (s.equals("*") || s.equalsIgnoreCase("x")) return new Partial(0, new SemVer(0, 0, 0));
+
+            // strip wildcard numbers, "1.2.x" is "1.2"
+            String t = s;
+            while (t.endsWith(".x") || t.endsWith(".X") || t.endsWith(".*")) t = t.substring(0, t.length() - 2);
+
+            SemVer v;
+            try {
+                v = SemVer.parse(t);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("invalid version \"" + s + "\" in range \"" + expr + "\"");
+            }
+
+            // the numbers given are those before any special string
+            int given = 1, i = t.startsWith("v") ? 1 : 0;
+            for (; i < t.length() && (t.charAt(i) == '.' || t.charAt(i) >= '0' && t.charAt(i) <= '9'); i++)
+                if (t.charAt(i) == '.') given++;
+            if (v.special != null) given = 3;   // "1.4foo" is the pre-release 1.4.0foo
+
+            return new Partial(given, v);
+        }
+
+
+        /** Parses an alternative into an interval, or {@code null} if it is empty. */
+        private static Point[] parse_alternative(String alt, String expr, boolean cargo)
+                throws IllegalArgumentException {
+            Point start = null, end = null;
+            boolean empty = false;
+
+            String[] hyphen = alt.split("\\s+-\\s+", -1);
+            if (hyphen.length == 2) {
+                Partial lo = parse_partial(hyphen[0].trim(), expr), hi = parse_partial(hyphen[1].trim(), expr);
+                return non_empty(new Point(lo.v, false), hi.end());
+            }
+            if (hyphen.length > 2) throw new IllegalArgumentException("invalid range \"" + expr + "\"");
+
+            // operators may be separated from their versions by blanks; commas separate like blanks, but
+            // must have a comparator on either side
+            List<String> tokens = new ArrayList<String>();
+            String[] parts = alt.replaceAll("([<>=^~]+)\\s+", "$1").split("\\s*,\\s*", -1);
+            for (String part: parts) {
+                if (part.isEmpty() && parts.length > 1)
+                    throw new IllegalArgumentException("missing comparator in range \"" + expr + "\"");
+                for (String tok: part.split("\\s+")) if (!tok.isEmpty()) tokens.add(tok);
+            }
+
+            for (String tok: tokens) {
+                int op_end = 0;
+                while (op_end < tok.length() && "<>=^~".indexOf(tok.charAt(op_end)) >= 0) op_end++;
+                String op = tok.substring(0, op_end);
+                if (!OPERATORS.contains(op))
+                    throw new IllegalArgumentException("invalid operator \"" + op + "\" in range \"" + expr + "\"");
+                if (cargo && op.isEmpty()) op = "^";
+
+                Partial p = parse_partial(tok.substring(op_end), expr);
+                SemVer v = p.v;
+                Point s = null, e = null;
+
+                if (op.isEmpty() || op.equals("=")) {
+                    if (p.given > 0) s = new Point(v, false);
+                    e = p.end();
+                } else if (op.equals(">=")) {
+                    s = new Point(v, false);
+                } else if (op.equals(">")) {
+                    // above all versions of a partial version
+                    s = p.given == 3 ? new Point(v, true) : p.end();
+                    if (s == null) empty = true;    // "> *"
+                } else if (op.equals("<=")) {
+                    e = p.end();
+                } else if (op.equals("<")) {
+                    e = p.given == 3 ? new Point(v, false) : Point.lowest(v.major, v.minor, v.patch);
+                    if (p.given == 0) empty = true; // "< *"
+                } else if (p.given == 0) {
+                    // "^*" and "~*" are just "*"
+                } else if (op.equals("^")) {
+                    s = new Point(v, false);
+                    if (v.major > 0 || p.given == 1) e = Point.lowest(v.major + 1, 0, 0);
+                    else if (v.minor > 0 || p.given == 2) e = Point.lowest(0, v.minor + 1, 0);
+                    else e = Point.lowest(0, 0, v.patch + 1);
+                } else {
+                    // "~", the operators being checked above
+                    s = new Point(v, false);
+                    e = p.given == 1 ? Point.lowest(v.major + 1, 0, 0) : Point.lowest(v.major, v.minor + 1, 0);
+                }
+
+                // intersect
+                if (compare(s, start, true) > 0) start = s;
+                if (compare(e, end, false) < 0) end = e;
+            }
+
+            return empty ? null : non_empty(start, end);
+        }
+
+
+        private static Point[] non_empty(Point start, Point end) {
+            if (start != null && end != null && compare(start, end) >= 0) return null;
+            return new Point[] { start, end };
+        }
+
+
+
+
+    /** Returns the expression this range was compiled from. */
+    public @Override String toString() {
+        return expression;
+    }
+
+
+    /** Tells whether no version at all satisfies this range. */
+    public boolean isEmpty() {
+        return starts.length == 0;
+    }
+
+
+    /** Tells whether a version satisfies this range. Takes a binary search over the intervals of the range and
+     *  allocates nothing.
+     */
+    public boolean matches(SemVer v) {
+        // the last interval starting at or below v
+        int lo = 0, hi = starts.length - 1, i = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (starts[mid] == null || compare(v, starts[mid]) >= 0) { i = mid; lo = mid + 1; }
+            else hi = mid - 1;
+        }
+
+        return i >= 0 && (ends[i] == null || compare(v, ends[i]) < 0);
+    }
+
+
+    /** Returns the versions of a sorted array that satisfy this range, in a single pass over both the versions
+     *  and the intervals of this range.
+     *
+     *  @param  sorted  Versions in ascending order.
+     *  @return         The matching versions, in ascending order.
+     */
+    public SemVer[] filter(SemVer[] sorted) {
+        SemVer[] result = new SemVer[sorted.length];
+        return Arrays.copyOf(result, filter(sorted, 0, sorted.length, result, 0));
+    }
+
+
+    /** Copies the versions of {@code sorted[from .. to - 1]} that satisfy this range to {@code dst}, starting
+     *  at {@code pos}, in a single pass over both the versions and the intervals of this range.
+     *
+     *  @param  sorted  Versions in ascending order.
+     *  @return         The number of matching versions.
+     *  @throws IndexOutOfBoundsException   If {@code dst} is too small.
+     */
+    public int filter(SemVer[] sorted, int from, int to, SemVer[] dst, int pos) throws IndexOutOfBoundsException {
+        int n = 0, k = 0, i = from;
+
+        while (i < to && k < starts.length) {
+            SemVer v = sorted[i];
+            if (starts[k] != null && compare(v, starts[k]) < 0) {
+                i++;                    // below interval k, and thus below all remaining intervals
+            } else if (ends[k] != null && compare(v, ends[k]) >= 0) {
+                k++;                    // beyond interval k
+            } else {
+                dst[pos + n++] = v;
+                i++;
+            }
+        }
+
+        return n;
+    }
+
+
+    /** Returns the greatest version of a sorted array that satisfies this range, or {@code null} if there is
+     *  none. Takes a binary search over the versions for each interval, from the topmost one down.
+     *
+     *  @param  sorted  Versions in ascending order.
+     */
+    public SemVer highest(SemVer[] sorted) {
+        int to = sorted.length;
+
+        for (int k = starts.length - 1; k >= 0 && to > 0; k--) {
+            // the number of versions below the end of interval k
+            int lo = 0, hi = to;
+            if (ends[k] != null) {
+                while (lo < hi) {
+                    int mid = (lo + hi) >>> 1;
+                    if (compare(sorted[mid], ends[k]) < 0) lo = mid + 1;
+                    else hi = mid;
+                }
+                to = lo;
+            }
+            if (to > 0 && (starts[k] == null || compare(sorted[to - 1], starts[k]) >= 0)) return sorted[to - 1];
+        }
+
+        return null;
+    }
+
+}
@@ -1,7 +1,17 @@
 package org.tbull.util;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 
 
 
@@ -33,6 +43,22 @@ public class StringBuilderWriter extends Writer implements CharSequence {
     private StringBuilder sb;
 
 
+    /** Number of {@code char}s encoded per chunk by the {@code writeTo} methods. */
+    private static final int CHUNK_SIZE = 8192;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /* The encoding machinery is pooled per thread, so that writing out a builder does not allocate anything
+     *  but the first time a thread does it. A writer is unsynchronized anyway, and the encoder state never
+     *  survives a single writeTo() call, so there is no point in tying it to the writer instance.
+     */
+    private static final ThreadLocal<Utf8Encoding> encoding_pool = new ThreadLocal<Utf8Encoding>() {
+        protected @Override Utf8Encoding initialValue() {
+            return new Utf8Encoding();
+        }
+    };
+
+
 
 
     /*
@@ -160,6 +186,150 @@ public class StringBuilderWriter extends Writer implements CharSequence {
 
 
 
+    /*
+     *  Writing out the accumulated data as UTF-8 without going through toString() and getBytes().
+     *
+     */
+
+
+        /** Per-thread buffers and encoder used by the {@code writeTo} methods. */
+        private static final class Utf8Encoding {
+            final CharsetEncoder encoder;
+            final char[] chars = new char[CHUNK_SIZE];
+            final CharBuffer cbuf = CharBuffer.wrap(chars);
+            /* UTF-8 takes at most 3 bytes per UTF-16 char (a surrogate pair takes 4 bytes for 2 chars),
+             *  so a chunk always fits in here and the encoder never overflows. */
+            final byte[] bytes = new byte[CHUNK_SIZE * 3];
+            final ByteBuffer bbuf = ByteBuffer.wrap(bytes);
+            ByteBuffer direct = null;   // allocated upon first use with a channel
+
+            Utf8Encoding() {
+                // replace unpaired surrogates like String.getBytes() does
+                encoder = UTF_8.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            }
+
+            ByteBuffer direct() {
+                if (direct == null) direct = ByteBuffer.allocateDirect(bytes.length);
+                return direct;
+            }
+        }
+
+
+        /** Encodes the chars {@code [start, end)} of the builder into {@code bb}, which is either
+         *  {@code enc.bbuf} or {@code enc.direct()}, and is cleared first.
+         *
+         *  {@code end} must not split a surrogate pair. As UTF-8 encoding carries no state from one char to the
+         *  next, each chunk is then encoded as a complete input of its own.
+         *
+         *  @return     The number of bytes produced.
+         */
+        private static int encode_chunk(Utf8Encoding enc, StringBuilder sb, int start, int end, ByteBuffer bb) {
+            char[] chars = enc.chars;
+            int n = end - start;
+            int i;
+            char c;
+
+            sb.getChars(start, end, chars, 0);
+            bb.clear();
+
+            /* ASCII fast path: one byte per char, no encoder involved */
+            for (i = 0; i < n && (c = chars[i]) < 0x80; i++)
+                bb.put(i, (byte) c);
+
+            bb.position(i);
+            if (i == n) return n;
+
+            /* encode whatever is left, starting at the first non-ASCII char */
+            CharBuffer cb = enc.cbuf;
+            cb.limit(n).position(i);
+
+            CoderResult cr = enc.encoder.reset().encode(cb, bb, true);
+            if (cr.isUnderflow()) cr = enc.encoder.flush(bb);
+            assert(cr.isUnderflow() && !cb.hasRemaining());
+
+            return bb.position();
+        }
+
+
+        /** Returns the end of the next chunk, taking care not to split a surrogate pair. */
+        private static int chunk_end(StringBuilder sb, int start, int len) {
+            int end = len - start > CHUNK_SIZE ? start + CHUNK_SIZE : len;
+            if (end < len && Character.isHighSurrogate(sb.charAt(end - 1))) end--;
+            return end;
+        }
+
+
+    /** Writes the accumulated string data UTF-8 encoded to an {@code OutputStream}.
+     *
+     *  <P>This is equivalent to {@code out.write(toString().getBytes("UTF-8"))}, but instead of copying the whole
+     *  data twice, the builder is encoded chunk by chunk through a buffer that is reused across invocations
+     *  (one per thread). Pure ASCII runs skip the {@link CharsetEncoder} altogether. Unpaired surrogates are
+     *  replaced by {@code '?'}, like {@link String#getBytes(Charset)} does.</P>
+     *
+     *  <P>The stream is neither flushed nor closed.</P>
+     *
+     *  @param  out         The stream to write to.
+     *  @return             The number of bytes written.
+     *  @throws IOException If the stream throws it.
+     */
+    public long writeTo(OutputStream out) throws IOException {
+        Utf8Encoding enc = encoding_pool.get();
+        int len = sb.length();
+        int start, end, n;
+        long total = 0;
+
+        for (start = 0; start < len; start = end) {
+            end = chunk_end(sb, start, len);
+            n = encode_chunk(enc, sb, start, end, enc.bbuf);
+            out.write(enc.bytes, 0, n);
+            total += n;
+        }
+
+        return total;
+    }
+
+
+    /** Writes the accumulated string data UTF-8 encoded to a {@code WritableByteChannel}.
+     *
+     *  <P>Works like {@link #writeTo(OutputStream)}. Each chunk is encoded straight into a direct
+     *  {@code ByteBuffer} which, like the rest of the encoding machinery, is reused across invocations (one per
+     *  thread), so the channel does not need to copy into a temporary direct buffer of its own.</P>
+     *
+     *  <P>Non-blocking channels are not supported, as there would be no way to tell how much of the data was
+     *  written when the channel takes no more.</P>
+     *
+     *  @param  ch                          The channel to write to.
+     *  @return                             The number of bytes written.
+     *  @throws IOException                 If the channel throws it.
+     *  @throws IllegalArgumentException    If {@code ch} is a {@link SelectableChannel} in non-blocking mode.
+     */
+    public long writeTo(WritableByteChannel ch) throws IOException, IllegalArgumentException {
+        if (ch instanceof SelectableChannel && !((SelectableChannel) ch).isBlocking())
+            throw new IllegalArgumentException("Channel is in non-blocking mode");
+
+        Utf8Encoding enc = encoding_pool.get();
+        ByteBuffer direct = enc.direct();
+        int len = sb.length();
+        int start, end, n;
+        long total = 0;
+
+        for (start = 0; start < len; start = end) {
+            end = chunk_end(sb, start, len);
+            n = encode_chunk(enc, sb, start, end, direct);
+
+            direct.flip();
+            while (direct.hasRemaining()) ch.write(direct);
+            total += n;
+        }
+
+        return total;
+    }
+
+
+
+
     /** Does nothing. */
     public @Override void close() {
         // nothing to do
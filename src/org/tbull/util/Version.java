@@ -1,6 +1,6 @@
 package org.tbull.util;
 
-import java.util.regex.Matcher;
+import java.nio.ByteBuffer;
 import java.util.regex.Pattern;
 
 
@@ -71,7 +71,7 @@ public class Version implements Comparable<Version> {
         this.patch = patch;
 
         // TODO does not match the empty string "" - what to do then?
-        if (special != null && !special_pattern.matcher(special).matches())
+        if (special != null && !is_special(special))
             throw new IllegalArgumentException();
         this.special = special;
     }
@@ -102,12 +102,18 @@ public class Version implements Comparable<Version> {
         i = cmp(patch, o.patch);
         if (i != 0) return i;
 
-        if (special == null) return (o.special == null ? 0 : 1);
-        if (o.special == null) return -1;
-        return special.compareTo(o.special);    // should case differences be ignored?
+        return compare_special(special, o.special);
     }
 
 
+        /** Compares special strings, a missing one ({@code null}) being greater than any other. */
+        static int compare_special(String a, String b) {
+            if (a == null) return (b == null ? 0 : 1);
+            if (b == null) return -1;
+            return a.compareTo(b);    // should case differences be ignored?
+        }
+
+
     public @Override int hashCode() {
         /* generated by Eclipse */
         final int prime = 31;
@@ -139,8 +145,22 @@ public class Version implements Comparable<Version> {
 
 
 
-    public boolean compatibleForUse(SemVer expected) {
-        throw new UnsupportedOperationException("not yet implemented");
+    /** Checks if this version is compatible for use in place of an expected version, like
+     *  {@link SemVer#compatibleForUse(SemVer)} does, but by the rules of this versioning scheme: while the major
+     *  version is 0, the minor version takes the part of the major version, so 0.3.2 can be used in place of
+     *  0.3.0, but not of 0.2.0.
+     *
+     *  @see    CompatibilityMatrix
+     */
+    public boolean compatibleForUse(Version expected) {
+        int cmp = this.compareTo(expected);
+
+        // same version: always compatible
+        if (cmp == 0) return true;
+        // actual version smaller than the expected: no good
+        if (cmp < 0) return false;
+        // actual version is larger (newer): usable as long as no incompatible change came in between
+        return this.major == expected.major && (this.major != 0 || this.minor == expected.minor);
     }
 
 
@@ -172,31 +192,153 @@ public class Version implements Comparable<Version> {
 
 
 
+    /** Parses a version number, as in {@code "A.B.C.D-special"}, optionally prefixed by a {@code 'v'}.
+     *
+     *  <P>All numbers but the major version may be omitted, they default to {@code 0} then. The dash before the
+     *  special string is optional. Like {@link SemVer#parse(CharSequence)}, the parser is hand-written, works in
+     *  a single pass and allocates nothing but the result and its special string. It accepts exactly the
+     *  strings that {@link #version_pattern} matches.</P>
+     *
+     *  @throws IllegalArgumentException    If {@code version} is not a valid version number, or one of its
+     *                                      numbers does not fit into an {@code int}.
+     */
     public static Version parse(CharSequence version) throws IllegalArgumentException {
-        int a, b, c, d;
-        String as, bs, cs, ds;
-        String special;
+        return parse(version, 0, version.length());
+    }
+
 
-        Matcher m = version_pattern.matcher(version);
-        if (!m.matches()) throw new IllegalArgumentException();
+    /** Parses a version number from the characters {@code start .. end - 1} of {@code s}.
+     *  See {@link #parse(CharSequence)} for details.
+     *
+     *  @throws IllegalArgumentException    If the range does not hold a valid version number.
+     *  @throws IndexOutOfBoundsException   If the range exceeds {@code s}.
+     */
+    public static Version parse(CharSequence s, int start, int end)
+            throws IllegalArgumentException, IndexOutOfBoundsException {
+        if (start < 0 || end > s.length() || start > end) throw new IndexOutOfBoundsException();
+        return parse_any(SemVer.chars(s, start, end), 0, end - start);
+    }
 
-//        System.out.printf("semver.parse: group count: %d\n", Integer.valueOf(m.groupCount()));
-//        for (int i = 1; i <= m.groupCount(); i++)
-//            System.out.printf("%d: (%s)\n", Integer.valueOf(i), m.group(i));
 
-        System.out.printf("matched: (%s) (%s) (%s) (%s) (%s)\n",
-                m.group(1), m.group(2), m.group(3), m.group(4), m.group(5));
+    /** Parses a version number from {@code len} characters of {@code a}, starting at {@code off}.
+     *  See {@link #parse(CharSequence)} for details.
+     *
+     *  @throws IllegalArgumentException    If the range does not hold a valid version number.
+     *  @throws IndexOutOfBoundsException   If the range exceeds {@code a}.
+     */
+    public static Version parse(char[] a, int off, int len) throws IllegalArgumentException, IndexOutOfBoundsException {
+        if (off < 0 || len < 0 || off > a.length - len) throw new IndexOutOfBoundsException();
+        return parse_any(a, off, off + len);
+    }
 
-        as = m.group(1); a = Integer.parseInt(as);
-        bs = m.group(2); b = bs == null ? 0 : Integer.parseInt(bs);
-        cs = m.group(3); c = cs == null ? 0 : Integer.parseInt(cs);
-        ds = m.group(4); d = ds == null ? 0 : Integer.parseInt(ds);
-        special = m.group(5);
 
-        return new Version(a, b, c, d, special);
+    /** Parses a version number from {@code len} ASCII characters of {@code a}, starting at {@code off}.
+     *  See {@link #parse(CharSequence)} for details. Bytes outside the ASCII range are simply invalid.
+     *
+     *  @throws IllegalArgumentException    If the range does not hold a valid version number.
+     *  @throws IndexOutOfBoundsException   If the range exceeds {@code a}.
+     */
+    public static Version parse(byte[] a, int off, int len) throws IllegalArgumentException, IndexOutOfBoundsException {
+        if (off < 0 || len < 0 || off > a.length - len) throw new IndexOutOfBoundsException();
+        return parse_any(SemVer.chars(a, off, off + len), 0, len);
     }
 
 
+    /** Parses a version number from the remaining ASCII characters of {@code b}. The position of {@code b} is
+     *  left unchanged. See {@link #parse(byte[], int, int)} for details.
+     *
+     *  @throws IllegalArgumentException    If the remaining bytes are not a valid version number.
+     */
+    public static Version parse(ByteBuffer b) throws IllegalArgumentException {
+        return parse_any(SemVer.chars(b), 0, b.remaining());
+    }
+
+
+        static boolean is_special(String s) {
+            return is_special(SemVer.chars(s, 0, s.length()), 0, s.length());
+        }
+
+
+        /** Checks the characters {@code start .. end - 1} against {@link #special_pattern}. */
+        static boolean is_special(char[] src, int start, int end) {
+            if (start >= end || !SemVer.is_letter(src[start])) return false;
+            for (int i = start + 1; i < end; i++) {
+                char c = src[i];
+                if (!SemVer.is_letter(c) && !SemVer.is_digit(c) && c != '-') return false;
+            }
+            return true;
+        }
+
+
+        /** Returns the position of the special string that follows the numbers at {@code pos}, which is
+         *  {@code end} if there is none, skipping the dash before it. Like {@link #version_pattern}, this
+         *  takes a trailing dash without a special string.
+         */
+        private static int special_start(char[] src, int pos, int end) throws IllegalArgumentException {
+            if (pos < end && src[pos] == '-') pos++;
+            if (pos < end && !is_special(src, pos, end)) throw new IllegalArgumentException();
+            return pos;
+        }
+
+
+        /** Parses {@code src}, whose range has already been checked, the same way
+         *  {@link SemVer#parse(CharSequence)} does: a dot must be followed by a number, and anything else that
+         *  follows a number must be the special string, optionally preceded by a dash.
+         */
+        static Version parse_any(char[] src, int start, int end) throws IllegalArgumentException {
+            int pos = start, a, b = 0, c = 0, d = 0;
+            long r;
+
+            if (pos < end && src[pos] == 'v') pos++;
+
+            r = SemVer.parse_number(src, pos, end); a = (int) (r >>> 32); pos = (int) r;
+            if (pos < end && src[pos] == '.') {
+                r = SemVer.parse_number(src, pos + 1, end); b = (int) (r >>> 32); pos = (int) r;
+                if (pos < end && src[pos] == '.') {
+                    r = SemVer.parse_number(src, pos + 1, end); c = (int) (r >>> 32); pos = (int) r;
+                    if (pos < end && src[pos] == '.') {
+                        r = SemVer.parse_number(src, pos + 1, end); d = (int) (r >>> 32); pos = (int) r;
+                    }
+                }
+            }
+
+            pos = special_start(src, pos, end);
+            String special = pos < end ? new String(src, pos, end - pos) : null;
+
+            return new Version(a, b, c, d, special);
+        }
+
+
+        /** Parses {@code src} like {@link #parse_any(char[], int, int)}, but right into the packed encoding,
+         *  without creating any objects.
+         *
+         *  @throws IllegalArgumentException    If the range does not hold a valid version number, or it can't
+         *                                      be packed with {@code dict}.
+         */
+        static long pack_any(char[] src, int start, int end, PackedVersions.Dictionary dict)
+                throws IllegalArgumentException {
+            int pos = start, n = 0;
+            long packed = 0, r;
+
+            if (pos < end && src[pos] == 'v') pos++;
+
+            // the fields are 12 bits apart, the major version taking the topmost one
+            do {
+                r = SemVer.parse_number(src, n == 0 ? pos : pos + 1, end); pos = (int) r;
+                long x = r >>> 32;
+                if (x > (n == 0 ? PackedVersions.VERSION_MAJOR_MAX : PackedVersions.VERSION_MINOR_MAX))
+                    throw new IllegalArgumentException("version number too large to pack");
+                packed |= x << (PackedVersions.VERSION_MAJOR_SHIFT - 12 * n++);
+            } while (n < 4 && pos < end && src[pos] == '.');
+
+            pos = special_start(src, pos, end);
+            int rank = pos < end ? dict.rank(src, pos, end) : PackedVersions.RELEASE;
+            if (rank < 0) throw new IllegalArgumentException("special string not in dictionary");
+
+            return packed | rank;
+        }
+
+
         private StringBuilder format(StringBuilder sb) {
             sb.append(major).append('.').append(minor).append('.').append(revision).append('.').append(patch);
             if (special != null) sb.append(special);
@@ -0,0 +1,544 @@
+package org.tbull.util;
+
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+
+
+
+/** A compact binary format for {@link SemVer}s and {@link Version}s, for storing large version catalogs.
+ *
+ *  <P>A stream holds versions of one kind. It starts with a header, which holds the special strings as a
+ *  {@link PackedVersions.Dictionary}, so each version refers to its special string by rank. The numbers and
+ *  the rank are written as varints, seven bits to the byte, so small numbers take a byte each. If the versions
+ *  are sorted, they can be delta-encoded: each one is then written as the position of the first number in
+ *  which it differs from the one before, the difference there, and the numbers after it. Runs of versions
+ *  that differ in the patch level only thus take a byte or two each.</P>
+ *
+ *  <P>The format of a stream:</P>
+ *  <UL>
+ *    <LI>The bytes {@code 'V' 'C'}, the format revision {@code 1}, {@code 'S'} for {@code SemVer}s or
+ *      {@code 'V'} for {@code Version}s, and {@code 1} if delta-encoded or {@code 0} if not.</LI>
+ *    <LI>The number of special strings, then each of them in order as its length and its ASCII bytes.</LI>
+ *    <LI>Each version, starting with a header {@code value << 4 | level << 1 | has_build}. The numbers of a
+ *      version are its version numbers, followed by the rank of its special string, the release being ranked
+ *      right after the last special string. {@code level} is the position of the first number written, and
+ *      {@code value} that number, or its difference from the version before if delta-encoded. The numbers
+ *      after it follow as they are. If delta-encoded, a {@code level} past the last number means that all
+ *      numbers are the same as before. If {@code has_build} is set, the build metadata of the {@code SemVer}
+ *      follows as its length and its ASCII bytes.</LI>
+ *    <LI>The header {@code 7 << 1} marks the end.</LI>
+ *  </UL>
+ *  <P>All numbers and lengths are unsigned varints, least significant group first.</P>
+ *
+ *  <P>An {@link Encoder} writes to a {@link DataOutput} or a {@link ByteBuffer}, one version at a time. A
+ *  {@link Decoder} reads from a {@code ByteBuffer}, typically a memory-mapped file, right where the bytes are.
+ *  It makes versions, or packed versions (see {@link PackedVersions}) without creating any objects.</P>
+ */
+
+public final class VersionCodec {
+
+    static final int MAGIC_0 = 'V', MAGIC_1 = 'C', REVISION = 1;
+    static final int SEMVER = 'S', VERSION = 'V';
+
+    /** The level of the end marker. */
+    static final int END = 7;
+
+
+    private VersionCodec() { }
+
+
+
+
+    /*
+     *  Varints.
+     *
+     */
+
+
+        /** Writes a varint into {@code b} at {@code pos}, returning the position after it. */
+        static int put_varint(byte[] b, int pos, long v) {
+            while ((v & ~0x7fL) != 0) {
+                b[pos++] = (byte) (v | 0x80);
+                v >>>= 7;
+            }
+            b[pos++] = (byte) v;
+            return pos;
+        }
+
+
+        /** Reads a varint from the position of {@code b}.
+         *
+         *  @throws IllegalArgumentException    If it is longer than ten bytes.
+         */
+        static long get_varint(ByteBuffer b) throws IllegalArgumentException {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int x = b.get();
+                v |= (long) (x & 0x7f) << shift;
+                if (x >= 0) return v;
+            }
+            throw new IllegalArgumentException("malformed varint");
+        }
+
+
+        /** Reads a varint that must fit into an {@code int}. */
+        private static int get_int(ByteBuffer b) throws IllegalArgumentException {
+            long v = get_varint(b);
+            if (v < 0 || v > Integer.MAX_VALUE) throw new IllegalArgumentException("number too large: " + v);
+            return (int) v;
+        }
+
+
+        private static String get_string(ByteBuffer b) throws IllegalArgumentException {
+            int n = get_int(b);
+            if (n > b.remaining()) throw new IllegalArgumentException("malformed string");
+            if (b.hasArray()) {
+                String s = new String(b.array(), b.arrayOffset() + b.position(), n, StandardCharsets.US_ASCII);
+                b.position(b.position() + n);
+                return s;
+            }
+            byte[] a = new byte[n];
+            b.get(a);
+            return new String(a, StandardCharsets.US_ASCII);
+        }
+
+
+
+
+    /** Writes versions of one kind, see {@link VersionCodec} for the format.
+     *
+     *  <P>The header is written right away, each version as it comes, the end marker by {@link #finish()}.
+     *  Encoders are not thread-safe.</P>
+     */
+    public static final class Encoder {
+        private final Object out;
+        private final PackedVersions.Dictionary dict;
+        private final boolean delta;
+        private final int count;
+
+        /** The numbers of the last version written, and of the current one. */
+        private final long[] prev, cur;
+        /** The bytes of the current version, written out in one go. */
+        private byte[] buf = new byte[64];
+        private boolean finished;
+
+
+        private Encoder(Object out, int kind, PackedVersions.Dictionary dict, boolean delta) throws IOException {
+            this.out = out;
+            this.dict = dict;
+            this.delta = delta;
+            this.count = kind == SEMVER ? 4 : 5;
+            this.prev = new long[count];
+            this.cur = new long[count];
+
+            int pos = 0;
+            buf[pos++] = MAGIC_0; buf[pos++] = MAGIC_1; buf[pos++] = REVISION;
+            buf[pos++] = (byte) kind; buf[pos++] = (byte) (delta ? 1 : 0);
+            pos = put_varint(buf, pos, dict.size());
+            for (int i = 0; i < dict.size(); i++) pos = put_string(pos, dict.special(i));
+            flush(pos);
+        }
+
+
+        /** Starts writing {@code SemVer}s to {@code out}, with their special strings taken from {@code dict}.
+         *
+         *  @param  delta   Whether to delta-encode; the versions must be written in ascending order then.
+         */
+        public static Encoder forSemVers(DataOutput out, PackedVersions.Dictionary dict, boolean delta)
+                throws IOException {
+            return new Encoder(out, SEMVER, dict, delta);
+        }
+
+
+        /** Starts writing {@code SemVer}s to {@code out}, see {@link #forSemVers(DataOutput,
+         *  PackedVersions.Dictionary, boolean)}. The buffer's position advances as versions are written.
+         *
+         *  @throws java.nio.BufferOverflowException    If the buffer runs full, here or while writing.
+         */
+        public static Encoder forSemVers(ByteBuffer out, PackedVersions.Dictionary dict, boolean delta) {
+            try {
+                return new Encoder(out, SEMVER, dict, delta);
+            } catch (IOException e) {
+                throw new AssertionError(e);    // buffers don't throw them
+            }
+        }
+
+
+        /** Starts writing {@code Version}s to {@code out}, with their special strings taken from {@code dict}.
+         *
+         *  @param  delta   Whether to delta-encode; the versions must be written in ascending order then.
+         */
+        public static Encoder forVersions(DataOutput out, PackedVersions.Dictionary dict, boolean delta)
+                throws IOException {
+            return new Encoder(out, VERSION, dict, delta);
+        }
+
+
+        /** Starts writing {@code Version}s to {@code out}, see {@link #forVersions(DataOutput,
+         *  PackedVersions.Dictionary, boolean)}. The buffer's position advances as versions are written.
+         *
+         *  @throws java.nio.BufferOverflowException    If the buffer runs full, here or while writing.
+         */
+        public static Encoder forVersions(ByteBuffer out, PackedVersions.Dictionary dict, boolean delta) {
+            try {
+                return new Encoder(out, VERSION, dict, delta);
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        }
+
+
+            private int put_string(int pos, String s) {
+                int n = s.length();
+                ensure(pos + 10 + n);
+                pos = put_varint(buf, pos, n);
+                for (int i = 0; i < n; i++) buf[pos++] = (byte) s.charAt(i);
+                return pos;
+            }
+
+
+            private void ensure(int size) {
+                if (size > buf.length) buf = Arrays.copyOf(buf, Math.max(size, buf.length * 2));
+            }
+
+
+            private void flush(int len) throws IOException {
+                if (out instanceof ByteBuffer) ((ByteBuffer) out).put(buf, 0, len);
+                else ((DataOutput) out).write(buf, 0, len);
+            }
+
+
+            private int rank(String special) throws IllegalArgumentException {
+                if (special == null) return dict.size();
+                int r = dict.rank(special);
+                if (r < 0) throw new IllegalArgumentException("special string not in dictionary: " + special);
+                return r;
+            }
+
+
+            /** Writes the version held in {@link #cur}. */
+            private void put(String build) throws IOException, IllegalArgumentException {
+                if (finished) throw new IllegalStateException("finished already");
+
+                int level = 0;
+                long value = cur[0];
+                if (delta) {
+                    while (level < count && cur[level] == prev[level]) level++;
+                    if (level < count) {
+                        value = cur[level] - prev[level];
+                        if (value < 0) throw new IllegalArgumentException("versions not in ascending order");
+                    } else {
+                        value = 0;
+                    }
+                }
+
+                int pos = put_varint(buf, 0, value << 4 | level << 1 | (build != null ? 1 : 0));
+                for (int i = level + 1; i < count; i++) pos = put_varint(buf, pos, cur[i]);
+                if (build != null) pos = put_string(pos, build);
+                flush(pos);
+
+                System.arraycopy(cur, 0, prev, 0, count);
+            }
+
+
+        /** Writes a {@code SemVer}.
+         *
+         *  @throws IllegalArgumentException    If the special string is not in the dictionary, or the versions
+         *                                      are delta-encoded and this one is less than the one before.
+         *  @throws IllegalStateException       If this encoder writes {@code Version}s, or has finished.
+         */
+        public void write(SemVer v) throws IOException, IllegalArgumentException, IllegalStateException {
+            if (count != 4) throw new IllegalStateException("not a SemVer encoder");
+            cur[0] = v.major; cur[1] = v.minor; cur[2] = v.patch; cur[3] = rank(v.special);
+            put(v.build);
+        }
+
+
+        /** Writes a {@code Version}.
+         *
+         *  @throws IllegalArgumentException    See {@link #write(SemVer)}.
+         *  @throws IllegalStateException       If this encoder writes {@code SemVer}s, or has finished.
+         */
+        public void write(Version v) throws IOException, IllegalArgumentException, IllegalStateException {
+            if (count != 5) throw new IllegalStateException("not a Version encoder");
+            cur[0] = v.major; cur[1] = v.minor; cur[2] = v.revision; cur[3] = v.patch; cur[4] = rank(v.special);
+            put(null);
+        }
+
+
+        /** Writes the end marker. Nothing can be written after that. */
+        public void finish() throws IOException {
+            if (finished) return;
+            buf[0] = END << 1;
+            flush(1);
+            finished = true;
+        }
+    }
+
+
+
+
+    /** Reads versions written by an {@link Encoder}, see {@link VersionCodec} for the format.
+     *
+     *  <P>Versions are read right from the buffer, which is left positioned after the end marker once all
+     *  versions have been read. Besides the versions themselves, which share the special strings of the
+     *  dictionary, nothing is allocated per version, and packed versions take no objects at all.
+     *  Decoders are not thread-safe.</P>
+     */
+    public static final class Decoder {
+        private final ByteBuffer in;
+        private final boolean semver, delta;
+        private final int count;
+        private final PackedVersions.Dictionary dict;
+        private final String[] specials;
+
+        private final long[] cur;
+        private String build;
+        /** Whether the next header was read already, and whether it was the end marker. */
+        private boolean peeked, ended;
+        private long header;
+
+
+        /** Starts reading at the position of {@code in}.
+         *
+         *  @throws IllegalArgumentException    If {@code in} does not hold a valid header.
+         */
+        public Decoder(ByteBuffer in) throws IllegalArgumentException {
+            this.in = in;
+
+            if (in.get() != MAGIC_0 || in.get() != MAGIC_1) throw new IllegalArgumentException("not a version stream");
+            if (in.get() != REVISION) throw new IllegalArgumentException("unknown format revision");
+            int kind = in.get();
+            if (kind != SEMVER && kind != VERSION) throw new IllegalArgumentException("unknown kind of version");
+            this.semver = kind == SEMVER;
+            this.delta = in.get() != 0;
+            this.count = semver ? 4 : 5;
+            this.cur = new long[count];
+
+            specials = new String[get_int(in)];
+            for (int i = 0; i < specials.length; i++) {
+                specials[i] = get_string(in);
+                boolean valid = semver ? SemVer.is_special(specials[i]) : Version.is_special(specials[i]);
+                if (!valid) throw new IllegalArgumentException("invalid special string: " + specials[i]);
+            }
+            List<String> list = Arrays.asList(specials);
+            dict = semver ? PackedVersions.Dictionary.ofSemVerSpecials(list)
+                : PackedVersions.Dictionary.ofVersionSpecials(list);
+            if (dict.size() != specials.length) throw new IllegalArgumentException("duplicate special strings");
+            for (int i = 0; i < specials.length; i++)
+                if (dict.rank(specials[i]) != i) throw new IllegalArgumentException("special strings out of order");
+        }
+
+
+        /** Maps a file and reads from it.
+         *
+         *  @throws IOException     If the file can not be mapped, or is larger than 2 GiB.
+         */
+        public static Decoder map(File file) throws IOException, IllegalArgumentException {
+            RandomAccessFile f = new RandomAccessFile(file, "r");
+            try {
+                FileChannel ch = f.getChannel();
+                if (ch.size() > Integer.MAX_VALUE) throw new IOException("file too large to map: " + file);
+                return new Decoder(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+            } finally {
+                f.close();      // the mapping stays valid
+            }
+        }
+
+
+        /** Tells whether the stream holds {@code SemVer}s, rather than {@code Version}s. */
+        public boolean isSemVer() {
+            return semver;
+        }
+
+
+        /** Returns the special strings of the stream, for unpacking packed versions. */
+        public PackedVersions.Dictionary dictionary() {
+            return dict;
+        }
+
+
+        /** Tells whether there are more versions. */
+        public boolean hasNext() throws IllegalArgumentException {
+            if (!peeked) {
+                header = get_varint(in);
+                ended = header == END << 1;
+                peeked = true;
+            }
+            return !ended;
+        }
+
+
+            /** Reads the next version into {@link #cur} and {@link #build}. */
+            private void next() throws IllegalArgumentException, NoSuchElementException {
+                if (!hasNext()) throw new NoSuchElementException();
+                peeked = false;
+
+                int level = (int) (header >>> 1 & 7);
+                long value = header >>> 4;
+                if (level > count || level == count && (!delta || value != 0))
+                    throw new IllegalArgumentException("malformed version");
+
+                if (level < count) {
+                    if (delta) {
+                        cur[level] += value;
+                    } else {
+                        cur[level] = value;
+                    }
+                    for (int i = level + 1; i < count; i++) cur[i] = get_varint(in);
+                }
+                for (int i = 0; i < count; i++) {
+                    if (cur[i] < 0 || cur[i] > Integer.MAX_VALUE)
+                        throw new IllegalArgumentException("number too large");
+                }
+                if (cur[count - 1] > specials.length) throw new IllegalArgumentException("no such special string");
+
+                build = null;
+                if ((header & 1) != 0) {
+                    if (!semver) throw new IllegalArgumentException("build metadata in a Version");
+                    build = get_string(in);
+                    if (!SemVer.is_build(build))
+                        throw new IllegalArgumentException("invalid build metadata: " + build);
+                }
+            }
+
+
+            private String special() {
+                int r = (int) cur[count - 1];
+                return r == specials.length ? null : specials[r];
+            }
+
+
+        /** Reads the next {@code SemVer}.
+         *
+         *  @throws IllegalStateException       If the stream holds {@code Version}s.
+         *  @throws NoSuchElementException    If there are no more versions.
+         */
+        public SemVer nextSemVer() throws IllegalArgumentException, IllegalStateException {
+            if (!semver) throw new IllegalStateException("not a SemVer stream");
+            next();
+            return new SemVer((int) cur[0], (int) cur[1], (int) cur[2], special(), build, false);
+        }
+
+
+        /** Reads the next {@code Version}.
+         *
+         *  @throws IllegalStateException       If the stream holds {@code SemVer}s.
+         *  @throws NoSuchElementException    If there are no more versions.
+         */
+        public Version nextVersion() throws IllegalArgumentException, IllegalStateException {
+            if (semver) throw new IllegalStateException("not a Version stream");
+            next();
+            return new Version((int) cur[0], (int) cur[1], (int) cur[2], (int) cur[3], special());
+        }
+
+
+        /** Reads the next version in the packed encoding, using the {@link #dictionary()} of the stream.
+         *
+         *  @throws IllegalArgumentException    Also if the version can't be packed.
+         *  @throws NoSuchElementException    If there are no more versions.
+         */
+        public long nextPacked() throws IllegalArgumentException {
+            next();
+
+            int r = (int) cur[count - 1];
+            if (r == specials.length) r = PackedVersions.RELEASE;
+
+            if (semver) {
+                if (cur[0] > PackedVersions.SEMVER_MAJOR_MAX || cur[1] > PackedVersions.SEMVER_MINOR_MAX
+                        || cur[2] > PackedVersions.SEMVER_PATCH_MAX || build != null)
+                    throw new IllegalArgumentException("version can't be packed");
+                return PackedVersions.semver((int) cur[0], (int) cur[1], (int) cur[2], r);
+            }
+
+            if (cur[0] > PackedVersions.VERSION_MAJOR_MAX || cur[1] > PackedVersions.VERSION_MINOR_MAX
+                    || cur[2] > PackedVersions.VERSION_MINOR_MAX || cur[3] > PackedVersions.VERSION_MINOR_MAX)
+                throw new IllegalArgumentException("version can't be packed");
+            return PackedVersions.version((int) cur[0], (int) cur[1], (int) cur[2], (int) cur[3], r);
+        }
+
+
+        /** Reads up to {@code len} packed versions into {@code dst}, starting at {@code off}.
+         *
+         *  @return     The number of versions read, less than {@code len} only at the end of the stream.
+         */
+        public int read(long[] dst, int off, int len) throws IllegalArgumentException {
+            int n = 0;
+            while (n < len && hasNext()) dst[off + n++] = nextPacked();
+            return n;
+        }
+    }
+
+
+
+
+    /*
+     *  Whole arrays.
+     *
+     */
+
+
+    /** Writes {@code SemVer}s, along with a dictionary of their special strings. If they are sorted, they are
+     *  delta-encoded.
+     */
+    public static void write(DataOutput out, SemVer[] versions) throws IOException {
+        PackedVersions.Dictionary dict = PackedVersions.Dictionary.forSemVers(Arrays.asList(versions));
+        Encoder e = Encoder.forSemVers(out, dict, is_sorted(versions));
+        for (SemVer v: versions) e.write(v);
+        e.finish();
+    }
+
+
+    /** Writes {@code Version}s, along with a dictionary of their special strings. If they are sorted, they are
+     *  delta-encoded.
+     */
+    public static void write(DataOutput out, Version[] versions) throws IOException {
+        PackedVersions.Dictionary dict = PackedVersions.Dictionary.forVersions(Arrays.asList(versions));
+        Encoder e = Encoder.forVersions(out, dict, is_sorted(versions));
+        for (Version v: versions) e.write(v);
+        e.finish();
+    }
+
+
+        private static <T extends Comparable<T>> boolean is_sorted(T[] a) {
+            for (int i = 1; i < a.length; i++) if (a[i - 1].compareTo(a[i]) > 0) return false;
+            return true;
+        }
+
+
+    /** Reads all {@code SemVer}s from the position of {@code in}.
+     *
+     *  @throws IllegalArgumentException    If {@code in} does not hold {@code SemVer}s in this format.
+     */
+    public static SemVer[] readSemVers(ByteBuffer in) throws IllegalArgumentException {
+        Decoder d = new Decoder(in);
+        if (!d.isSemVer()) throw new IllegalArgumentException("not a SemVer stream");
+        List<SemVer> list = new ArrayList<SemVer>();
+        while (d.hasNext()) list.add(d.nextSemVer());
+        return list.toArray(new SemVer[list.size()]);
+    }
+
+
+    /** Reads all {@code Version}s from the position of {@code in}.
+     *
+     *  @throws IllegalArgumentException    If {@code in} does not hold {@code Version}s in this format.
+     */
+    public static Version[] readVersions(ByteBuffer in) throws IllegalArgumentException {
+        Decoder d = new Decoder(in);
+        if (d.isSemVer()) throw new IllegalArgumentException("not a Version stream");
+        List<Version> list = new ArrayList<Version>();
+        while (d.hasNext()) list.add(d.nextVersion());
+        return list.toArray(new Version[list.size()]);
+    }
+
+}
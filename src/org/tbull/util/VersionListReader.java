@@ -0,0 +1,336 @@
+package org.tbull.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+
+
+/** Reads lists of version numbers, one per line, from a {@link Reader} or a memory-mapped file.
+ *
+ *  <P>Two kinds of lists are understood. Plain lists have a version number on each line. Property lists have
+ *  {@code key = value} lines, in the format of Java properties files or JAR manifests: every line with the
+ *  wanted key yields a version, the separator being {@code '='}, {@code ':'} or blanks, so both the
+ *  {@code version = 0.0.1} of a {@code lib-version} file and the {@code Implementation-Version: 1.2} of a
+ *  manifest are found. In either kind, blank lines and lines starting with {@code '#'} or {@code '!'} are
+ *  skipped, and blanks around the version number are ignored. Continuation lines are not supported.</P>
+ *
+ *  <P>The reader works like an iterator: {@link #next()} moves to the next version number, which
+ *  {@link #version()} parses into a {@link Version}, and {@link #packed(PackedVersions.Dictionary)} right into
+ *  the packed encoding. Lines are scanned in place in the reader's buffer. In a mapped file, line ends are
+ *  found in place, and each line is then copied into a char buffer that is reused, so that the rest of the
+ *  scanning, and the parsing, work on a {@code char[]} either way. Apart from the versions themselves nothing
+ *  is allocated per line, and packing allocates nothing at all. Mapped files are taken as ASCII; bytes outside
+ *  that range are invalid in version numbers.</P>
+ *
+ *  <P>Readers are not thread-safe.</P>
+ */
+
+public final class VersionListReader implements Closeable {
+
+    /** Initial size of the buffer for reading from a {@code Reader}. It grows to hold the longest line. */
+    static final int BUFFER_SIZE = 8192;
+
+
+    /** The key of property lists, or {@code null} for plain lists. */
+    private final String key;
+
+    /** The source, {@code null} once closed, or for mapped files. */
+    private Reader in;
+    /** Whether {@link #in} reached its end. It stays open until {@link #close()}. */
+    private boolean eof;
+    /** The lines: the buffer filled from {@link #in}, or the mapped file, the other one being {@code null}. */
+    private char[] buf;
+    private ByteBuffer mapped;
+    /** The current line: {@link #buf}, or a copy of the line of the mapped file. */
+    private char[] text;
+
+    /** Start of the unread lines, end of the valid data, and how far line ends were searched, all within
+     *  {@link #buf} or {@link #mapped}.
+     */
+    private int pos, lim, scan;
+    /** Whether the last line ended with a CR, so a LF that follows belongs to it. */
+    private boolean skip_lf;
+    private int line;
+
+    /** The range of the current version number within {@link #text}, empty if there is none. */
+    private int start, end;
+
+
+
+
+    /** Creates a reader for a plain list of version numbers. */
+    public VersionListReader(Reader in) {
+        this(in, null);
+    }
+
+
+    /** Creates a reader for the values of {@code key} in a property list, or, if {@code key} is {@code null},
+     *  a plain list of version numbers.
+     */
+    public VersionListReader(Reader in, String key) {
+        this.key = key;
+        this.in = in;
+        this.text = this.buf = new char[BUFFER_SIZE];
+    }
+
+
+        private VersionListReader(ByteBuffer mapped, String key) {
+            this.key = key;
+            this.mapped = mapped;
+            this.text = new char[256];
+            this.lim = mapped.limit();
+        }
+
+
+    /** Creates a reader for a memory-mapped file, see {@link #VersionListReader(Reader, String)}.
+     *  The file is mapped right away and not touched by {@link #close()}.
+     *
+     *  @throws IOException     If the file can not be mapped, or is larger than 2 GiB.
+     */
+    public static VersionListReader map(File file, String key) throws IOException {
+        RandomAccessFile f = new RandomAccessFile(file, "r");
+        try {
+            FileChannel ch = f.getChannel();
+            if (ch.size() > Integer.MAX_VALUE) throw new IOException("file too large to map: " + file);
+            return new VersionListReader(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()), key);
+        } finally {
+            f.close();      // the mapping stays valid
+        }
+    }
+
+
+
+
+    /** Moves to the next version number.
+     *
+     *  @return     {@code false} if there are no more.
+     */
+    public boolean next() throws IOException {
+        for (;;) {
+            if (skip_lf) {
+                if (pos >= lim && fill()) continue;
+                if (pos < lim && char_at(pos) == '\n') scan = ++pos;
+                skip_lf = false;
+            }
+
+            int eol = find_eol();
+            if (eol < 0) {
+                if (fill()) continue;
+                if (pos >= lim) {
+                    start = end = 0;
+                    return false;
+                }
+                eol = lim;
+            }
+
+            int s = pos, e = eol;
+            if (eol < lim) skip_lf = char_at(eol) == '\r';
+            pos = scan = eol < lim ? eol + 1 : lim;
+            line++;
+
+            if (mapped != null) {
+                copy_line(s, e);
+                e -= s;
+                s = 0;
+            }
+            if (entry(s, e)) return true;
+        }
+    }
+
+
+        private char char_at(int i) {
+            return buf != null ? buf[i] : (char) mapped.get(i);
+        }
+
+
+        /** Returns the position of the next line end, or {@code -1} if there is none in the data read. */
+        private int find_eol() {
+            if (buf != null) {
+                char[] b = buf;
+                for (; scan < lim; scan++) {
+                    char c = b[scan];
+                    if (c == '\n' || c == '\r') return scan;
+                }
+            } else {
+                ByteBuffer m = mapped;
+                for (; scan < lim; scan++) {
+                    byte c = m.get(scan);
+                    if (c == '\n' || c == '\r') return scan;
+                }
+            }
+            return -1;
+        }
+
+
+        /** Copies the line {@code s .. e - 1} of the mapped file to the start of {@link #text}, as ASCII. */
+        private void copy_line(int s, int e) {
+            if (text.length < e - s) text = new char[Math.max(e - s, text.length * 2)];
+            char[] t = text;
+            for (int i = s; i < e; i++) {
+                byte c = mapped.get(i);
+                t[i - s] = c >= 0 ? (char) c : '\uffff';
+            }
+        }
+
+
+        /** Reads more data from {@link #in}, making room as needed.
+         *
+         *  @return     {@code false} at the end of the input.
+         */
+        private boolean fill() throws IOException {
+            if (in == null || eof) return false;   // mapped files are there in full
+
+            if (pos > 0) {
+                System.arraycopy(buf, pos, buf, 0, lim - pos);
+                lim -= pos; scan -= pos; pos = 0;
+            }
+            if (lim == buf.length) text = buf = Arrays.copyOf(buf, buf.length * 2);
+
+            int n = in.read(buf, lim, buf.length - lim);
+            if (n < 0) {
+                eof = true;
+                return false;
+            }
+            lim += n;
+            return true;
+        }
+
+
+        private static boolean is_blank(char c) {
+            return c == ' ' || c == '\t' || c == '\f';
+        }
+
+
+        /** Checks whether the line {@code s .. e - 1} holds a version number, setting {@link #start} and
+         *  {@link #end} to it if so.
+         */
+        private boolean entry(int s, int e) {
+            char[] t = text;
+
+            while (s < e && is_blank(t[s])) s++;
+            while (e > s && is_blank(t[e - 1])) e--;
+            if (s == e) return false;
+
+            char c = t[s];
+            if (c == '#' || c == '!') return false;
+
+            if (key != null) {
+                int n = key.length();
+                if (e - s < n) return false;
+                for (int i = 0; i < n; i++)
+                    if (t[s + i] != key.charAt(i)) return false;
+                s += n;
+
+                if (s < e && !is_blank(c = t[s]) && c != '=' && c != ':') return false;
+                while (s < e && is_blank(t[s])) s++;
+                if (s < e && ((c = t[s]) == '=' || c == ':')) s++;
+                while (s < e && is_blank(t[s])) s++;
+            }
+
+            start = s;
+            end = e;
+            return true;
+        }
+
+
+
+
+    /** Returns the number of the line of the current version number, counting from 1. */
+    public int lineNumber() {
+        return line;
+    }
+
+
+    /** Returns the current version number as it appears in the list. */
+    public String text() {
+        return new String(text, start, end - start);
+    }
+
+
+    /** Parses the current version number.
+     *
+     *  @throws IllegalArgumentException    If it is not a valid version number.
+     */
+    public Version version() throws IllegalArgumentException {
+        try {
+            return Version.parse_any(text, start, end);
+        } catch (IllegalArgumentException e) {
+            throw invalid(e);
+        }
+    }
+
+
+    /** Parses the current version number right into the packed encoding, without creating any objects.
+     *
+     *  @param  dict    A dictionary made for {@code Version}s.
+     *  @throws IllegalArgumentException    If it is not a valid version number, or can't be packed with
+     *                                      {@code dict}.
+     *  @see    PackedVersions#pack(Version, PackedVersions.Dictionary)
+     */
+    public long packed(PackedVersions.Dictionary dict) throws IllegalArgumentException {
+        try {
+            return Version.pack_any(text, start, end, dict);
+        } catch (IllegalArgumentException e) {
+            throw invalid(e);
+        }
+    }
+
+
+        private IllegalArgumentException invalid(IllegalArgumentException e) {
+            String msg = "invalid version \"" + text() + "\" at line " + line;
+            if (e.getMessage() != null) msg += ": " + e.getMessage();
+            return new IllegalArgumentException(msg, e);
+        }
+
+
+
+
+    /** Reads up to {@code len} versions into {@code dst}, starting at {@code off}.
+     *
+     *  @return     The number of versions read, less than {@code len} only at the end of the list.
+     */
+    public int read(Version[] dst, int off, int len) throws IOException, IllegalArgumentException {
+        int n = 0;
+        while (n < len && next()) dst[off + n++] = version();
+        return n;
+    }
+
+
+    /** Reads up to {@code len} packed versions into {@code dst}, starting at {@code off}.
+     *
+     *  @return     The number of versions read, less than {@code len} only at the end of the list.
+     */
+    public int read(long[] dst, int off, int len, PackedVersions.Dictionary dict)
+            throws IOException, IllegalArgumentException {
+        int n = 0;
+        while (n < len && next()) dst[off + n++] = packed(dict);
+        return n;
+    }
+
+
+    /** Reads all remaining versions. */
+    public List<Version> readAll() throws IOException, IllegalArgumentException {
+        List<Version> list = new ArrayList<Version>();
+        while (next()) list.add(version());
+        return list;
+    }
+
+
+    /** Closes the underlying {@code Reader}, if any. */
+    public @Override void close() throws IOException {
+        Reader r = in;
+        in = null;
+        lim = pos;
+        if (r != null) r.close();
+    }
+
+}
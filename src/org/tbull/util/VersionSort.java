@@ -0,0 +1,285 @@
+package org.tbull.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+
+
+/** Sorts large arrays of {@link SemVer}s and {@link Version}s by radix sort.
+ *
+ *  <P>Comparison sorts call {@code compareTo} some {@code n log n} times, each call walking the version numbers
+ *  and maybe the special strings. Radix sort looks at each version a few times only: the numbers of all versions
+ *  are copied into {@code int} arrays first, and the special strings replaced by their ranks, so that the special
+ *  strings are compared only once for each distinct one. Then the versions are sorted byte by byte, starting from
+ *  the least significant byte of the rank (LSD). Bytes that are the same in all versions, like the upper bytes
+ *  of the usually small version numbers, are skipped, so a sort usually takes a handful of passes.</P>
+ *
+ *  <P>The parallel variants first split the versions by their most significant varying byte (MSD), then sort
+ *  the parts by LSD in parallel, in the common fork/join pool.</P>
+ *
+ *  <P>All sorts are stable and put the versions into their natural order. Small arrays are left to
+ *  {@link Arrays#sort(Object[])}.</P>
+ */
+
+public final class VersionSort {
+
+    /** Arrays of fewer elements are sorted by {@link Arrays#sort(Object[])}. */
+    static final int RADIX_THRESHOLD = 1 << 10;
+    /** Arrays of fewer elements are sorted sequentially by the parallel variants. */
+    static final int PARALLEL_THRESHOLD = 1 << 16;
+
+
+    private VersionSort() { }
+
+
+
+
+    /** Sorts {@code SemVer}s into ascending order. */
+    public static void sort(SemVer[] a) {
+        sort(a, false);
+    }
+
+
+    /** Sorts {@code SemVer}s into ascending order, in parallel if there are many. */
+    public static void parallelSort(SemVer[] a) {
+        sort(a, true);
+    }
+
+
+    /** Sorts {@code Version}s into ascending order. */
+    public static void sort(Version[] a) {
+        sort(a, false);
+    }
+
+
+    /** Sorts {@code Version}s into ascending order, in parallel if there are many. */
+    public static void parallelSort(Version[] a) {
+        sort(a, true);
+    }
+
+
+
+
+        private static void sort(SemVer[] a, boolean parallel) {
+            int n = a.length;
+            if (n < RADIX_THRESHOLD) {
+                Arrays.sort(a);
+                return;
+            }
+
+            int[] major = new int[n], minor = new int[n], patch = new int[n];
+            String[] specials = new String[n];
+            boolean builds = false;
+            for (int i = 0; i < n; i++) {
+                SemVer v = a[i];
+                major[i] = v.major; minor[i] = v.minor; patch[i] = v.patch; specials[i] = v.special;
+                builds |= v.build != null;
+            }
+            int[] rank = ranks(specials, SEMVER_ORDER);
+
+            permute(a, order(new int[][] { rank, patch, minor, major }, n, parallel));
+
+            // versions of the same precedence are ordered by their build metadata
+            if (builds) {
+                for (int i = 0, j; i < n; i = j) {
+                    for (j = i + 1; j < n && a[j].comparePrecedence(a[i]) == 0; j++) ;
+                    if (j - i > 1) Arrays.sort(a, i, j);
+                }
+            }
+        }
+
+
+        private static void sort(Version[] a, boolean parallel) {
+            int n = a.length;
+            if (n < RADIX_THRESHOLD) {
+                Arrays.sort(a);
+                return;
+            }
+
+            int[] major = new int[n], minor = new int[n], revision = new int[n], patch = new int[n];
+            String[] specials = new String[n];
+            for (int i = 0; i < n; i++) {
+                Version v = a[i];
+                major[i] = v.major; minor[i] = v.minor; revision[i] = v.revision; patch[i] = v.patch;
+                specials[i] = v.special;
+            }
+            int[] rank = ranks(specials, VERSION_ORDER);
+
+            permute(a, order(new int[][] { rank, patch, revision, minor, major }, n, parallel));
+        }
+
+
+        private static final Comparator<String> SEMVER_ORDER = new Comparator<String>() {
+            public @Override int compare(String a, String b) { return SemVer.compare_special(a, b); }
+        };
+
+        private static final Comparator<String> VERSION_ORDER = new Comparator<String>() {
+            public @Override int compare(String a, String b) { return Version.compare_special(a, b); }
+        };
+
+
+        /** Returns the rank of each special string among the distinct ones, {@code null} ranking highest. */
+        private static int[] ranks(String[] specials, Comparator<String> order) {
+            int n = specials.length;
+            int[] rank = new int[n];
+
+            // number the distinct strings as they come, then sort just those
+            Map<String, Integer> ids = new HashMap<String, Integer>();
+            List<String> distinct = new ArrayList<String>();
+            for (int i = 0; i < n; i++) {
+                String s = specials[i];
+                if (s == null) {
+                    rank[i] = -1;
+                    continue;
+                }
+                Integer id = ids.get(s);
+                if (id == null) {
+                    id = Integer.valueOf(distinct.size());
+                    ids.put(s, id);
+                    distinct.add(s);
+                }
+                rank[i] = id.intValue();
+            }
+
+            String[] sorted = distinct.toArray(new String[distinct.size()]);
+            Arrays.sort(sorted, order);
+            int[] remap = new int[sorted.length];
+            for (int r = 0; r < sorted.length; r++) remap[ids.get(sorted[r]).intValue()] = r;
+
+            for (int i = 0; i < n; i++) rank[i] = rank[i] < 0 ? sorted.length : remap[rank[i]];
+            return rank;
+        }
+
+
+        private static <T> void permute(T[] a, int[] order) {
+            T[] copy = a.clone();
+            for (int i = 0; i < a.length; i++) a[i] = copy[order[i]];
+        }
+
+
+
+
+    /*
+     *  Radix sort of indices.
+     *
+     *  The keys are given as fields, the least significant first, of non-negative ints. Digit d is byte d % 4 of
+     *  field d / 4, so digit 0 is the least significant.
+     *
+     */
+
+
+        private static int digit(int[][] fields, int d, int j) {
+            return fields[d >>> 2][j] >>> ((d & 3) << 3) & 0xff;
+        }
+
+
+        /** Counts the values of digits {@code 0 .. digits - 1} of the elements {@code idx[from .. to - 1]}. */
+        private static int[][] histograms(int[][] fields, int digits, int[] idx, int from, int to) {
+            int[][] counts = new int[digits][256];
+            for (int i = from; i < to; i++) {
+                int j = idx[i];
+                for (int f = 0; f << 2 < digits; f++) {
+                    int x = fields[f][j];
+                    for (int d = f << 2; d < digits && d < (f + 1) << 2; d++, x >>>= 8) counts[d][x & 0xff]++;
+                }
+            }
+            return counts;
+        }
+
+
+        /** Tells whether all elements have the same value of a digit, judging from its histogram. */
+        private static boolean is_trivial(int[] counts, int n) {
+            for (int c: counts) if (c != 0) return c == n;
+            return true;
+        }
+
+
+        /** Sorts {@code idx[from .. to - 1]} by digits {@code 0 .. digits - 1}, using {@code tmp} of the same
+         *  range as scratch space. Stable.
+         */
+        private static void lsd(int[][] fields, int digits, int[] idx, int[] tmp, int from, int to) {
+            int n = to - from;
+            int[][] counts = histograms(fields, digits, idx, from, to);
+            int[] src = idx, dst = tmp, t;
+            int[] offset = new int[256];
+
+            for (int d = 0; d < digits; d++) {
+                if (is_trivial(counts[d], n)) continue;
+
+                for (int v = 0, o = from; v < 256; o += counts[d][v++]) offset[v] = o;
+                for (int i = from; i < to; i++) {
+                    int j = src[i];
+                    dst[offset[digit(fields, d, j)]++] = j;
+                }
+                t = src; src = dst; dst = t;
+            }
+
+            if (src != idx) System.arraycopy(src, from, idx, from, n);
+        }
+
+
+        /** Returns the indices {@code 0 .. n - 1} in the order of their keys. */
+        private static int[] order(int[][] fields, int n, boolean parallel) {
+            int digits = fields.length << 2;
+            int[] idx = new int[n], tmp = new int[n];
+            for (int i = 0; i < n; i++) idx[i] = i;
+
+            if (!parallel || n < PARALLEL_THRESHOLD) {
+                lsd(fields, digits, idx, tmp, 0, n);
+                return idx;
+            }
+
+            // split by the most significant varying digit, all above it being the same
+            int[][] counts = histograms(fields, digits, idx, 0, n);
+            int top = digits - 1;
+            while (top >= 0 && is_trivial(counts[top], n)) top--;
+            if (top < 0) return idx;
+
+            int[] start = new int[257];
+            for (int v = 0; v < 256; v++) start[v + 1] = start[v] + counts[top][v];
+            int[] offset = Arrays.copyOf(start, 256);
+            for (int j = 0; j < n; j++) tmp[offset[digit(fields, top, j)]++] = j;
+            System.arraycopy(tmp, 0, idx, 0, n);
+
+            ForkJoinPool.commonPool().invoke(new Buckets(fields, top, idx, tmp, start));
+            return idx;
+        }
+
+
+        /** Sorts the buckets of an MSD split by the digits below it, in parallel. */
+        private static class Buckets extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+
+            final int[][] fields;
+            final int digits;
+            final int[] idx, tmp, start;
+
+            Buckets(int[][] fields, int digits, int[] idx, int[] tmp, int[] start) {
+                this.fields = fields; this.digits = digits; this.idx = idx; this.tmp = tmp; this.start = start;
+            }
+
+            protected @Override void compute() {
+                List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+                for (int v = 0; v < 256; v++) {
+                    final int from = start[v], to = start[v + 1];
+                    if (to - from < 2) continue;
+                    tasks.add(new RecursiveAction() {
+                        private static final long serialVersionUID = 1L;
+
+                        protected @Override void compute() {
+                            lsd(fields, digits, idx, tmp, from, to);
+                        }
+                    });
+                }
+                invokeAll(tasks);
+            }
+        }
+
+}
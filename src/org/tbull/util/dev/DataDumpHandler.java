@@ -0,0 +1,18 @@
+package org.tbull.util.dev;
+
+
+/** Dumps objects of some type, for types that do not implement {@link DataDumpable} themselves.
+ *
+ *  Handlers are registered with {@link DataDumper#register(Class, DataDumpHandler)}, and then used for objects
+ *  of that class and its subclasses, by the buffer routines as well as by {@link DataDumpWriter}.
+ *
+ *  @param  <T>     the type of the objects dumped
+ */
+public interface DataDumpHandler<T> {
+
+    /** Dumps an object, like {@link DataDumpable#dumpData()} does.
+     *
+     *  @return     the dump, or null to leave the object to the built-in rules
+     */
+    IndentableLineBuffer dumpData(T o);
+}
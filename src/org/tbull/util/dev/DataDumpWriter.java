@@ -0,0 +1,723 @@
+package org.tbull.util.dev;
+
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.RandomAccess;
+import java.util.Set;
+
+
+
+
+/** Dumps objects straight to an {@link Appendable}, like a {@link java.io.Writer} or a {@link StringBuilder}.
+ *
+ *  <P>The output is exactly what {@link DataDumper#dump(Object...)} returns, but the object graph is walked
+ *  only once, and each line is written out as it comes, with its indentation. Nothing is buffered, so dumping a
+ *  large structure does not allocate memory in proportion to its size. Only objects implementing
+ *  {@link DataDumpable} still deliver their dump as an {@link IndentableLineBuffer}, which then gets
+ *  written out like the rest.</P>
+ *
+ *  <P>A line stays open until the next one begins, so that a container can append a separator (like the
+ *  {@code ","} after each element) to the last line of a nested dump. Each top-level dump is terminated with a
+ *  line separator.</P>
+ *
+ *  <P>Dumps are safe on any object graph, and their cost can be bounded:</P>
+ *  <UL>
+ *    <LI>Containers (arrays, collections and maps) that contain themselves, directly or not, are not dumped
+ *      again, but shown as a back-reference, like {@code <back-reference to java.util.ArrayList, 2 levels up>}.
+ *      Containers are identified by identity, so their {@code equals()} and {@code hashCode()} are never
+ *      called.</LI>
+ *    <LI>Containers nested deeper than {@link #setMaxDepth(int) the maximum depth} only show their header and
+ *      the number of their elements, like {@code java.util.ArrayList(5) = [<5 elided>]}.</LI>
+ *    <LI>Containers with more elements than {@link #setMaxElements(int) the maximum} show only that many, and
+ *      the number of the rest, like {@code <95 more elided>}.</LI>
+ *    <LI>In {@link #setSample(int) sampling mode}, containers with more than twice the sample size of elements
+ *      show only the first and the last few, with the number of those in between, like {@code <9990 elided>}.
+ *      Arrays, {@link RandomAccess} and linked lists, and navigable sets and maps are sampled without walking
+ *      past the elided elements, so the cost does not depend on their size.</LI>
+ *    <LI>Each dump stops when it reaches {@link #setMaxChars(long) the maximum number of characters}, not
+ *      counting line separators, and closes with a line telling how many elements of the containers it was
+ *      in were left out.</LI>
+ *  </UL>
+ *  <P>By default, the depth is limited to {@link #DEFAULT_MAX_DEPTH}, and the rest is unlimited.</P>
+ *
+ *  <P>Optionally, byte arrays longer than {@link #setHexThreshold(int) the hex threshold} are shown as a hex
+ *  dump, 16 bytes per line, like</P>
+ *  <PRE>
+ *  byte[100] = [
+ *      00000000  48 65 6c 6c 6f 2c 20 77  6f 72 6c 64 0a 00 00 00  |Hello, world....|
+ *      ...
+ *  ]
+ *  </PRE>
+ *  <P>where each line counts as one element for the limits and for sampling. Hex dumps are off by default, as
+ *  {@link DataDumper#dump(Object...)} does not make them.</P>
+ *
+ *  <P>Writers are not thread-safe.</P>
+ */
+
+public class DataDumpWriter {
+
+    /** The default maximum depth. */
+    public static final int DEFAULT_MAX_DEPTH = 100;
+
+    /** The number of bytes per line of a hex dump. */
+    private static final int HEX_ROW = 16;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+
+    /** The destination. */
+    protected final Appendable out;
+    /** The indentation string, written once per indent level. */
+    protected String indentation;
+    /** The line separator. */
+    protected String line_separator;
+
+    /** Dumps the objects not covered by any other rule, or null to show their toString(). */
+    protected ObjectDumper object_dumper;
+
+    /** Containers nested deeper than this are elided. */
+    protected int max_depth = DEFAULT_MAX_DEPTH;
+    /** Elements of a container beyond this many are elided. */
+    protected int max_elements = Integer.MAX_VALUE;
+    /** A dump is truncated after this many characters. */
+    protected long max_chars = Long.MAX_VALUE;
+    /** The number of elements shown at each end of a sampled container, or 0 to not sample. */
+    protected int sample;
+    /** Byte arrays longer than this are shown as a hex dump. */
+    protected int hex_threshold = Integer.MAX_VALUE;
+
+    /** Whether a line has been begun and not yet terminated. */
+    private boolean line_open;
+
+    /** The containers being dumped, with the depth of each. */
+    private final IdentityHashMap<Object, Integer> path = new IdentityHashMap<Object, Integer>();
+    /** The number of containers being dumped. */
+    private int depth;
+    /** The number of characters written in the current dump. */
+    private long written;
+    /** Whether the current dump reached {@link #max_chars}, and the number of elements left out since. */
+    private boolean truncated;
+    private long elided;
+
+    /** A line of a hex dump, reused. */
+    private final StringBuilder hex_line = new StringBuilder();
+
+
+
+
+    /** Constructs a writer with the same indentation and line separator as {@link IndentableLineBuffer}. */
+    public DataDumpWriter(Appendable out) {
+        this.out = out;
+        this.indentation = "    ";
+        this.line_separator = java.lang.System.getProperty("line.separator");
+    }
+
+
+    /** Sets the indentation string, see {@link IndentableLineBuffer#setIndentation(String)}. */
+    public DataDumpWriter setIndentation(String indentation) {
+        this.indentation = indentation;
+        return this;
+    }
+
+
+    /** Sets the line separator. */
+    public DataDumpWriter setLineSeparator(String sep) {
+        this.line_separator = sep;
+        return this;
+    }
+
+
+
+
+    /** Sets the dumper for the objects not covered by a handler or a built-in rule, which are shown by their
+     *  {@code toString()} if it is null (the default). Objects dumped field by field count as containers, for
+     *  cycle detection and limits.
+     */
+    public DataDumpWriter setObjectDumper(ObjectDumper od) {
+        this.object_dumper = od;
+        return this;
+    }
+
+
+    /** Sets the maximum depth of nested containers, 0 eliding the contents of even the outermost one.
+     *
+     *  @throws IllegalArgumentException    if {@code depth} is negative
+     */
+    public DataDumpWriter setMaxDepth(int depth) throws IllegalArgumentException {
+        if (depth < 0) throw new IllegalArgumentException("max depth < 0");
+        this.max_depth = depth;
+        return this;
+    }
+
+
+    /** Sets the maximum number of elements shown per container.
+     *
+     *  @throws IllegalArgumentException    if {@code elements} is negative
+     */
+    public DataDumpWriter setMaxElements(int elements) throws IllegalArgumentException {
+        if (elements < 0) throw new IllegalArgumentException("max elements < 0");
+        this.max_elements = elements;
+        return this;
+    }
+
+
+    /** Sets the maximum number of characters per dump, not counting line separators.
+     *
+     *  @throws IllegalArgumentException    if {@code chars} is negative
+     */
+    public DataDumpWriter setMaxChars(long chars) throws IllegalArgumentException {
+        if (chars < 0) throw new IllegalArgumentException("max chars < 0");
+        this.max_chars = chars;
+        return this;
+    }
+
+
+    /** Sets the number of elements shown at the beginning and at the end of containers with more than twice
+     *  that many, 0 (the default) turning sampling off. The maximum number of elements still applies to the
+     *  sum of both.
+     *
+     *  @throws IllegalArgumentException    if {@code size} is negative
+     */
+    public DataDumpWriter setSample(int size) throws IllegalArgumentException {
+        if (size < 0) throw new IllegalArgumentException("sample size < 0");
+        this.sample = size;
+        return this;
+    }
+
+
+    /** Sets the length above which byte arrays are shown as a hex dump, {@link Integer#MAX_VALUE} (the default)
+     *  turning hex dumps off.
+     *
+     *  @throws IllegalArgumentException    if {@code length} is negative
+     */
+    public DataDumpWriter setHexThreshold(int length) throws IllegalArgumentException {
+        if (length < 0) throw new IllegalArgumentException("hex threshold < 0");
+        this.hex_threshold = length;
+        return this;
+    }
+
+
+
+
+    /** Dumps an object, beginning on a new line and terminating the last line.
+     *
+     *  @throws IOException     If the destination throws it.
+     */
+    public DataDumpWriter dump(Object o) throws IOException {
+        path.clear();
+        depth = 0;
+        written = elided = 0;
+        truncated = false;
+
+        dump_object(o, 0, false);
+
+        if (line_open) {
+            out.append(line_separator);
+            line_open = false;
+        }
+        if (truncated) {
+            out.append("<output truncated at ").append(String.valueOf(written)).append(" characters, ")
+                .append(String.valueOf(elided)).append(elided == 1 ? " element" : " elements").append(" elided>")
+                .append(line_separator);
+        }
+        return this;
+    }
+
+
+
+
+    /*
+     *  Output primitives.
+     *
+     */
+
+
+        /** Begins a new line with the given indent level, unless {@code inline}, in which case the text goes on
+         *  in the current line.
+         */
+        protected void begin(int indent, boolean inline) throws IOException {
+            if (truncated || inline && line_open) return;
+
+            if (line_open) out.append(line_separator);
+            line_open = true;
+            for (int i = 0; i < indent; i++) write(indentation);     // levels < 0 count as 0
+        }
+
+
+        /** Appends text to the current line. */
+        protected void text(CharSequence s) throws IOException {
+            if (!line_open) begin(0, false);
+            write(s);
+        }
+
+
+        /** Appends a character to the current line. */
+        protected void text(char c) throws IOException {
+            if (!line_open) begin(0, false);
+            if (truncated) return;
+            if (written == max_chars) {
+                truncated = true;
+                return;
+            }
+            out.append(c);
+            written++;
+        }
+
+
+        /** Writes as much of {@code s} as the character budget allows. */
+        private void write(CharSequence s) throws IOException {
+            if (truncated) return;
+            long room = max_chars - written;
+            if (s.length() > room) {
+                out.append(s, 0, (int) room);
+                written = max_chars;
+                truncated = true;
+            } else {
+                out.append(s);
+                written += s.length();
+            }
+        }
+
+
+
+
+    /*
+     *  Limits.
+     *
+     */
+
+
+        /** Begins dumping a container, unless it is being dumped already, in which case a back-reference is
+         *  written instead.
+         *
+         *  @return     false if the container must not be dumped
+         */
+        protected boolean enter(Object c, int indent, boolean inline) throws IOException {
+            Integer level = path.get(c);
+            if (level != null) {
+                int up = depth - level.intValue();
+                begin(indent, inline);
+                Class<?> cc = c.getClass().getComponentType();
+                text("<back-reference to ");
+                if (cc != null) {
+                    text(DataDumper.getPrettyClassName(cc)); text("[]");
+                } else
+                    text(DataDumper.getPrettyClassName(c));
+                text(", ");
+                text(String.valueOf(up)); text(up == 1 ? " level up>" : " levels up>");
+                return false;
+            }
+
+            path.put(c, Integer.valueOf(depth++));
+            return true;
+        }
+
+
+        /** Ends dumping a container. */
+        protected void leave(Object c) {
+            path.remove(c);
+            depth--;
+        }
+
+
+        /** Checks whether the contents of a container are too deep to be shown. If so, writes their number
+         *  and the closing bracket, and leaves the container.
+         */
+        protected boolean too_deep(Object c, int size, String close) throws IOException {
+            // the container itself counts already
+            if (depth <= max_depth) return false;
+
+            if (size > 0) {
+                text("<"); text(String.valueOf(size)); text(" elided>");
+            }
+            text(close);
+            leave(c);
+            return true;
+        }
+
+
+        /** Checks whether the element at {@code index} of a container must be left out. If so, accounts for it
+         *  and all that follow, writing their number at the given indent level unless the dump is truncated.
+         */
+        protected boolean elide(int index, int size, int indent, boolean inline) throws IOException {
+            if (!truncated && index < max_elements) return false;
+            if (index >= size) return true;
+
+            if (truncated) elided += size - index;
+            else {
+                begin(indent, inline);
+                text("<"); text(String.valueOf(size - index)); text(" more elided>");
+            }
+            return true;
+        }
+
+
+        /** Returns the number of elements to show at the beginning of a container of the given size. */
+        protected int head_size(int size) {
+            return Math.min(sampled(size) ? sample : size, max_elements);
+        }
+
+
+        /** Returns the number of elements to show at the end of a container, after the head. */
+        protected int tail_size(int size, int head) {
+            return sampled(size) ? Math.min(sample, max_elements - head) : 0;
+        }
+
+
+        private boolean sampled(int size) {
+            return sample > 0 && size > 2L * sample;
+        }
+
+
+        /** Writes the number of elements left out between the head and the tail, or after the head. */
+        private void gap(int gap, int tail, String unit) throws IOException {
+            text("<"); text(String.valueOf(gap)); text(unit); text(tail > 0 ? " elided>" : " more elided>");
+        }
+
+
+
+
+    /*
+     *  The dump routines, one per kind of object, following the rules of DataDumper's.
+     *
+     *  Each one writes a dump whose first line is at the given indent level, or, if inline, appended to the
+     *  current line. Nested dumps are placed relative to the indent level.
+     *
+     */
+
+
+    protected void dump_object(Object o, int indent, boolean inline) throws IOException {
+        if (o == null) {
+            begin(indent, inline);
+            text("null");
+            return;
+        }
+
+        DataDumper.Dispatch d = DataDumper.dispatch(o.getClass());
+        IndentableLineBuffer custom = d.handler != null ? d.handler.dumpData(o) : null;
+        if (custom != null) {
+            dump_lines(custom, indent, inline);
+            return;
+        }
+
+        switch (d.kind) {
+        case ARRAY:     dump_array(o, indent, inline); break;
+        case ENUM:      dump_enum((Enum<?>) o, indent, inline); break;
+        case DUMPABLE:  dump_lines(((DataDumpable) o).dumpData(), indent, inline); break;
+        case NUMBER:    dump_number((Number) o, indent, inline); break;
+        case STRING:
+            begin(indent, inline);
+            text("\""); text((String) o); text("\"");
+            break;
+        case MAP:       dump_map((Map<?, ?>) o, indent, inline); break;
+        case SET:       dump_elements((Set<?>) o, "(", ")", indent, inline); break;
+        case LIST:      dump_elements((List<?>) o, "[", "]", indent, inline); break;
+        default:
+            ObjectDumper.Plan plan = object_dumper != null ? object_dumper.plan(o.getClass()) : null;
+            if (plan != null) {
+                dump_fields(o, plan, indent, inline);
+                break;
+            }
+            begin(indent, inline);
+            text(DataDumper.getPrettyClassName(o)); text(" = "); text(o.toString());
+        }
+    }
+
+
+    protected void dump_enum(Enum<?> e, int indent, boolean inline) throws IOException {
+        begin(indent, inline);
+        text("enum "); text(DataDumper.getPrettyClassName(e)); text(" = "); text(e.toString());
+    }
+
+
+    protected void dump_number(Number n, int indent, boolean inline) throws IOException {
+        begin(indent, inline);
+        text(DataDumper.getPrettyClassName(n)); text(" = "); text(n.toString());
+    }
+
+
+    /** Writes the lines of a buffer, keeping their indentation relative to each other. */
+    protected void dump_lines(IndentableLineBuffer lb, int indent, boolean inline) throws IOException {
+        for (int i = 0, n = lb.line_count(); i < n && !truncated; i++) {
+            // the first line of a value inlined into its parent loses its indentation, as with appendLines()
+            begin(indent + lb.line_indent(i), inline && i == 0);
+            text(lb.line_text(i));
+        }
+    }
+
+
+    protected void dump_array(Object a, int indent, boolean inline) throws IOException {
+        Class<?> cc = a.getClass().getComponentType();
+
+        begin(indent, inline);
+        if (cc.isPrimitive()) {
+            text(cc.getName()); text("[");
+            if (a instanceof byte[] && ((byte[]) a).length > hex_threshold)
+                dump_hex((byte[]) a, indent);
+            else
+                dump_primitive_array(a);
+            return;
+        }
+
+        Object[] oa = (Object[]) a;
+        if (!enter(a, indent, true)) return;
+        text(DataDumper.getPrettyClassName(cc)); text("["); text(String.valueOf(oa.length)); text("] = [");
+        if (too_deep(a, oa.length, "]")) return;
+
+        List<Object> l = Arrays.asList(oa);
+        dump_contents(l, l.iterator(), oa.length, false, indent + 1);
+        begin(indent, false);
+        text("]");
+        leave(a);
+    }
+
+
+        /** Writes {@code "length] = [a, b, c]"}, like {@link java.util.Arrays#toString(int[])} would. Only the
+         *  elements shown are read, so the cost does not depend on the length of a sampled array.
+         */
+        private void dump_primitive_array(Object a) throws IOException {
+            int n = java.lang.reflect.Array.getLength(a), head = head_size(n), tail = tail_size(n, head);
+            text(String.valueOf(n)); text("] = [");
+
+            for (int i = 0; i < head && !truncated; i++) {
+                if (i > 0) text(", ");
+                dump_primitive(a, i);
+            }
+            if (head + tail < n) {
+                if (head > 0) text(", ");
+                gap(n - head - tail, tail, "");
+            }
+            for (int i = n - tail; i < n && !truncated; i++) {
+                text(", ");
+                dump_primitive(a, i);
+            }
+            text("]");
+        }
+
+
+        private void dump_primitive(Object a, int i) throws IOException {
+            if (a instanceof int[])             text(String.valueOf(((int[]) a)[i]));
+            else if (a instanceof byte[])       text(String.valueOf(((byte[]) a)[i]));
+            else if (a instanceof long[])       text(String.valueOf(((long[]) a)[i]));
+            else if (a instanceof char[])       text(((char[]) a)[i]);
+            else if (a instanceof double[])     text(String.valueOf(((double[]) a)[i]));
+            else if (a instanceof float[])      text(String.valueOf(((float[]) a)[i]));
+            else if (a instanceof short[])      text(String.valueOf(((short[]) a)[i]));
+            else if (a instanceof boolean[])    text(String.valueOf(((boolean[]) a)[i]));
+            else
+                // glitch in the matrix
+                assert(false);
+        }
+
+
+        /** Writes {@code "length] = ["}, the bytes as a hex dump one level deeper, and the closing bracket. */
+        private void dump_hex(byte[] ba, int indent) throws IOException {
+            int n = ba.length, rows = (n + HEX_ROW - 1) / HEX_ROW, head = head_size(rows), tail = tail_size(rows, head);
+            text(String.valueOf(n)); text("] = [");
+
+            for (int r = 0; r < head && !truncated; r++) dump_hex_row(ba, r * HEX_ROW, indent + 1);
+            if (head + tail < rows) {
+                begin(indent + 1, false);
+                gap(Math.min(n, (rows - tail) * HEX_ROW) - head * HEX_ROW, tail, " bytes");
+            }
+            for (int r = rows - tail; r < rows && !truncated; r++) dump_hex_row(ba, r * HEX_ROW, indent + 1);
+            begin(indent, false);
+            text("]");
+        }
+
+
+        /** Writes a line like {@code hexdump -C} does: the offset, up to 16 bytes in hex, and those that are
+         *  printable ASCII characters.
+         */
+        private void dump_hex_row(byte[] ba, int offset, int indent) throws IOException {
+            StringBuilder sb = hex_line;
+            int end = Math.min(offset + HEX_ROW, ba.length);
+
+            sb.setLength(0);
+            for (int shift = 28; shift >= 0; shift -= 4) sb.append(HEX_DIGITS[offset >>> shift & 0xf]);
+            for (int i = offset; i < offset + HEX_ROW; i++) {
+                // two spaces after the offset and in the middle
+                sb.append((i - offset) % 8 == 0 ? "  " : " ");
+                if (i < end) sb.append(HEX_DIGITS[ba[i] >>> 4 & 0xf]).append(HEX_DIGITS[ba[i] & 0xf]);
+                else sb.append("  ");
+            }
+            sb.append("  |");
+            for (int i = offset; i < end; i++) sb.append(ba[i] >= 0x20 && ba[i] < 0x7f ? (char) ba[i] : '.');
+            sb.append('|');
+
+            begin(indent, false);
+            text(sb);
+        }
+
+
+    /** Writes a {@code Set} or {@code List}: a header, the elements one level deeper, and the closing bracket. */
+    protected void dump_elements(Collection<?> c, String open, String close, int indent, boolean inline)
+            throws IOException {
+        if (!enter(c, indent, inline)) return;
+        begin(indent, inline);
+        int n = c.size();
+        text(DataDumper.getPrettyClassName(c)); text("("); text(String.valueOf(n)); text(") = "); text(open);
+        if (too_deep(c, n, close)) return;
+
+        dump_contents(c, c.iterator(), n, false, indent + 1);
+        begin(indent, false);
+        text(close);
+        leave(c);
+    }
+
+
+    protected void dump_map(Map<?, ?> m, int indent, boolean inline) throws IOException {
+        if (!enter(m, indent, inline)) return;
+        begin(indent, inline);
+        int n = m.size();
+        text(DataDumper.getPrettyClassName(m)); text("("); text(String.valueOf(n)); text(") = {");
+        if (too_deep(m, n, "}")) return;
+
+        dump_contents(m, m.entrySet().iterator(), n, true, indent + 1);
+        begin(indent, false);
+        text("}");
+        leave(m);
+    }
+
+
+        /** If the key is an enum, only shows its name, see {@link DataDumper#dump_map_key(Object)}. */
+        protected void dump_map_key(Object key, int indent) throws IOException {
+            if (key != null && key.getClass().isEnum()) {
+                begin(indent, false);
+                text(key.getClass().getSimpleName()); text("."); text(key.toString());
+            } else
+                dump_object(key, indent, false);
+        }
+
+
+        /** Writes the elements of a container, or the entries of a map, one per line at the given indent level,
+         *  followed by commas: all of them, or, if there are too many, the head and the tail with the number of
+         *  those left out in between.
+         *
+         *  @param  c       the container, a {@code List}, a {@code Set} or a {@code Map}
+         *  @param  it      an iterator over its elements, or over the map's entries
+         */
+        protected void dump_contents(Object c, Iterator<?> it, int size, boolean entries, int indent)
+                throws IOException {
+            int head = head_size(size), tail = tail_size(size, head), i;
+
+            for (i = 0; i < head && it.hasNext(); i++) {
+                if (truncated) break;
+                dump_element(it.next(), entries, indent);
+            }
+            if (truncated) {
+                elided += size - i;
+                return;
+            }
+            if (head + tail < size) {
+                begin(indent, false);
+                gap(size - head - tail, tail, "");
+            }
+            if (tail == 0) return;
+
+            Iterator<?> t = tail(c, it, size, head, tail);
+            for (i = 0; i < tail && t.hasNext(); i++) {
+                if (truncated) {
+                    elided += tail - i;
+                    return;
+                }
+                dump_element(t.next(), entries, indent);
+            }
+        }
+
+
+        private void dump_element(Object o, boolean entry, int indent) throws IOException {
+            if (entry) {
+                Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+                dump_map_key(e.getKey(), indent);
+                text(" => ");
+                dump_object(e.getValue(), indent, true);
+            } else
+                dump_object(o, indent, false);
+            text(",");
+        }
+
+
+        /** Returns an iterator over the last {@code tail} elements of a container, {@code it} having gone past
+         *  the first {@code head}. Only containers with no other way to get there are walked through.
+         */
+        private static Iterator<?> tail(Object c, Iterator<?> it, int size, int head, int tail) {
+            if (c instanceof List) {
+                List<?> l = (List<?>) c;
+                // a LinkedList walks from its nearer end
+                return l instanceof RandomAccess ? l.subList(size - tail, size).iterator()
+                    : l.listIterator(size - tail);
+            }
+
+            Iterator<?> back = null;
+            if (c instanceof NavigableSet) back = ((NavigableSet<?>) c).descendingIterator();
+            else if (c instanceof NavigableMap) back = ((NavigableMap<?, ?>) c).descendingMap().entrySet().iterator();
+            if (back != null) {
+                Object[] last = new Object[tail];
+                int i = tail;
+                while (i > 0 && back.hasNext()) last[--i] = back.next();
+                return Arrays.asList(last).subList(i, tail).iterator();
+            }
+
+            for (int i = size - head - tail; i > 0 && it.hasNext(); i--) it.next();
+            return it;
+        }
+
+
+
+    /** Writes an object field by field, see {@link ObjectDumper}. */
+    protected void dump_fields(Object o, ObjectDumper.Plan plan, int indent, boolean inline) throws IOException {
+        if (!enter(o, indent, inline)) return;
+        begin(indent, inline);
+        int n = plan.fields.length;
+        text(DataDumper.getPrettyClassName(o)); text(" = {");
+        if (too_deep(o, n, "}")) return;
+
+        for (int i = 0; i < n; i++) {
+            if (elide(i, n, indent + 1, false)) break;
+            ObjectDumper.Accessor a = plan.fields[i];
+            begin(indent + 1, false);
+            text(a.name); text(" = ");
+            dump_field(o, a, indent + 1);
+            text(",");
+        }
+        begin(indent, false);
+        text("}");
+        leave(o);
+    }
+
+
+        /** Writes the value of a field, reading primitives without boxing them. */
+        private void dump_field(Object o, ObjectDumper.Accessor a, int indent) throws IOException {
+            try {
+                switch (a.kind) {
+                case ObjectDumper.BOOLEAN:  text(String.valueOf((boolean) a.getter.invokeExact(o))); break;
+                case ObjectDumper.BYTE:     text(String.valueOf((byte) a.getter.invokeExact(o))); break;
+                case ObjectDumper.CHAR:     text((char) a.getter.invokeExact(o)); break;
+                case ObjectDumper.SHORT:    text(String.valueOf((short) a.getter.invokeExact(o))); break;
+                case ObjectDumper.INT:      text(String.valueOf((int) a.getter.invokeExact(o))); break;
+                case ObjectDumper.LONG:     text(String.valueOf((long) a.getter.invokeExact(o))); break;
+                case ObjectDumper.FLOAT:    text(String.valueOf((float) a.getter.invokeExact(o))); break;
+                case ObjectDumper.DOUBLE:   text(String.valueOf((double) a.getter.invokeExact(o))); break;
+                default:                    dump_object((Object) a.getter.invokeExact(o), indent, true);
+                }
+            } catch (IOException e) {
+                throw e;
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable t) {
+                // getters don't throw checked exceptions
+                throw new CantWorkLikeThisException(t);
+            }
+        }
+
+}
@@ -9,10 +9,14 @@
 package org.tbull.util.dev;
 
 
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 
@@ -20,17 +24,11 @@ import java.util.Set;
 /* @todo Differ between DataDumper and ObjectDumper,
     the former of which is for dumping data structures like collections,
     the latter of which is for dumping extensive info on fields, methods and more of an object.
+    (ObjectDumper does the fields now, methods are still to come)
 
-   @todo build circular reference detection and have an idea how to display such thing
+   circular reference detection: done by DataDumpWriter, which shows back-references (dump_Object() still has none)
 
-    @todo   build data-dump handler database which lets the user provide custom dump handlers (for classes that do not implement DataDumpable)
-            implementation: probably like: interface CustomDataDumper { ILB dumpData(Object) throws WontDumpThatThingException }
-                                           DataDumper.register(Class, CustomDataDumper)
-
-
-public interface DataDumpHandler {
-    public IndentableLineBuffer dumpData(Object o);
-}
+   data-dump handler database: see register(Class, DataDumpHandler)
 */
 
 
@@ -75,6 +73,139 @@ public class DataDumper {
 
 
 
+    /*
+     *  Dispatch.
+     *
+     *  What to do with an object is decided once per class, and cached in a ClassValue. Registering a handler
+     *  bumps the generation of the registry, which makes the cached decisions stale; they are then recomputed
+     *  on the next lookup of each class.
+     *
+     */
+
+
+    /** The built-in rules, by kind of object. */
+    enum Kind { ARRAY, ENUM, DUMPABLE, NUMBER, STRING, MAP, SET, LIST, OTHER }
+
+
+    /** What to do with the objects of a class: use a registered handler, or else a built-in rule. */
+    static final class Dispatch {
+        final int generation;
+        /** The handler, or null if there is none. */
+        final DataDumpHandler<Object> handler;
+        final Kind kind;
+
+        Dispatch(int generation, DataDumpHandler<Object> handler, Kind kind) {
+            this.generation = generation; this.handler = handler; this.kind = kind;
+        }
+    }
+
+
+    private static final ConcurrentHashMap<Class<?>, DataDumpHandler<?>> handlers =
+        new ConcurrentHashMap<Class<?>, DataDumpHandler<?>>();
+    private static volatile int generation;
+
+    private static final ClassValue<Dispatch> dispatch_cache = new ClassValue<Dispatch>() {
+        protected @Override Dispatch computeValue(Class<?> c) {
+            return resolve(c);
+        }
+    };
+
+
+
+
+    /** Registers a handler for dumping objects of a class and its subclasses, or of the classes implementing an
+     *  interface.
+     *
+     *  Registered handlers take precedence over the built-in rules, and over {@link DataDumpable}. If several
+     *  handlers apply to a class, the one registered for the nearest superclass wins, then the one for the nearest
+     *  interface, then the one registered for {@code Object}.
+     *
+     *  @return     the handler previously registered for the class, or null
+     */
+
+    public static <T> DataDumpHandler<?> register(Class<T> c, DataDumpHandler<? super T> handler) {
+        if (c == null || handler == null) throw new NullPointerException();
+        DataDumpHandler<?> old = handlers.put(c, handler);
+        bump_generation();
+        return old;
+    }
+
+
+    /** Removes the handler registered for a class.
+     *
+     *  @return     the handler removed, or null if there was none
+     */
+
+    public static DataDumpHandler<?> unregister(Class<?> c) {
+        DataDumpHandler<?> old = handlers.remove(c);
+        if (old != null) bump_generation();
+        return old;
+    }
+
+
+        private static synchronized void bump_generation() {
+            generation++;
+        }
+
+
+        /** Returns what to do with objects of class c. */
+        static Dispatch dispatch(Class<?> c) {
+            Dispatch d = dispatch_cache.get(c);
+            if (d.generation != generation) {
+                dispatch_cache.remove(c);
+                d = dispatch_cache.get(c);
+            }
+            return d;
+        }
+
+
+        @SuppressWarnings("unchecked")
+        private static Dispatch resolve(Class<?> c) {
+            int gen = generation;       // read before the handlers, so a concurrent registration makes this stale
+            return new Dispatch(gen, (DataDumpHandler<Object>) find_handler(c), kind(c));
+        }
+
+
+        /** Looks for a handler along the superclasses, then the interfaces, breadth first, then Object. */
+        private static DataDumpHandler<?> find_handler(Class<?> c) {
+            if (handlers.isEmpty()) return null;
+
+            DataDumpHandler<?> h;
+            for (Class<?> s = c; s != null && s != Object.class; s = s.getSuperclass())
+                if ((h = handlers.get(s)) != null) return h;
+
+            ArrayDeque<Class<?>> queue = new ArrayDeque<Class<?>>();
+            Set<Class<?>> seen = new HashSet<Class<?>>();
+            for (Class<?> s = c; s != null; s = s.getSuperclass()) queue.addAll(Arrays.asList(s.getInterfaces()));
+            while (!queue.isEmpty()) {
+                Class<?> i = queue.remove();
+                if (!seen.add(i)) continue;
+                if ((h = handlers.get(i)) != null) return h;
+                queue.addAll(Arrays.asList(i.getInterfaces()));
+            }
+
+            return handlers.get(Object.class);
+        }
+
+
+        /** Tells which built-in rule applies to class c, in the order of the old instanceof chain. */
+        private static Kind kind(Class<?> c) {
+            if (c.isArray()) return Kind.ARRAY;
+            if (c.isEnum()) return Kind.ENUM;
+            if (DataDumpable.class.isAssignableFrom(c)) return Kind.DUMPABLE;
+            if (Number.class.isAssignableFrom(c)) return Kind.NUMBER;
+            if (c == String.class) return Kind.STRING;
+            if (Map.class.isAssignableFrom(c)) return Kind.MAP;
+            if (Set.class.isAssignableFrom(c)) return Kind.SET;
+            if (List.class.isAssignableFrom(c)) return Kind.LIST;
+            return Kind.OTHER;
+        }
+
+
+
+
+
+
     /** The internal root.
      *
      *  @return     never null
@@ -96,22 +227,34 @@ public class DataDumper {
 */
 
 
-        if (false) return null;
-        else if (o == null) lb.append("null");
-        else if (o.getClass().isArray())
+        if (o == null) {
+            lb.append("null");
+            return lb;
+        }
+
+        Dispatch d = dispatch(o.getClass());
+        IndentableLineBuffer custom = d.handler != null ? d.handler.dumpData(o) : null;
+        if (custom != null) {
+            lb.addLines(custom);
+            return lb;
+        }
+
+        switch (d.kind) {
+        case ARRAY:
         /* The object o cannot be of a primitive type (it wouldn't be an Object then).
             However, an array's component type can be of primitive type. In that case, we cannot cast
             o to Object[] because a primitive type can't be cast to Object. Hence we pass the raw object to
             dump_array() which then can care for the details. */
-            lb.addLines(dump_array(o));
-        else if (o.getClass().isEnum()) lb.addLines(dump_enum((Enum<?>) o));
-        else if (o instanceof DataDumpable) lb.addLines(((DataDumpable) o).dumpData());
-        else if (o instanceof Number) lb.addLines(dump_Number((Number) o));
-        else if (o instanceof String) lb.addLine("\"" + (String) o + "\"");
-        else if (o instanceof Map<?, ?>) lb.addLines(dump_Map((Map<?,?>) o));
-        else if (o instanceof Set<?>) lb.addLines(dump_Set((Set<?>) o));
-        else if (o instanceof List<?>) lb.addLines(dump_List((List<?>) o));
-        else lb.addLine(getPrettyClassName(o)).append(" = ").append(o.toString());
+            lb.addLines(dump_array(o)); break;
+        case ENUM:      lb.addLines(dump_enum((Enum<?>) o)); break;
+        case DUMPABLE:  lb.addLines(((DataDumpable) o).dumpData()); break;
+        case NUMBER:    lb.addLines(dump_Number((Number) o)); break;
+        case STRING:    lb.addLine("\"" + (String) o + "\""); break;
+        case MAP:       lb.addLines(dump_Map((Map<?,?>) o)); break;
+        case SET:       lb.addLines(dump_Set((Set<?>) o)); break;
+        case LIST:      lb.addLines(dump_List((List<?>) o)); break;
+        default:        lb.addLine(getPrettyClassName(o)).append(" = ").append(o.toString());
+        }
 
         return lb;
     }
@@ -272,7 +415,7 @@ public class DataDumper {
         /** if the key is an enum, only show it's name (and maybe unqualified classname), not the full objectdump  */
         protected static IndentableLineBuffer dump_map_key(Object key) {
             Class<? extends Object> c;
-            if ((c = key.getClass()).isEnum()) {
+            if (key != null && (c = key.getClass()).isEnum()) {
                 return new IndentableLineBuffer(c.getSimpleName() + "." + key.toString());
             } else
                 return dump_Object(key);        // takes proper care of Strings
@@ -287,10 +430,10 @@ public class DataDumper {
             .append("(").append(String.valueOf(m.size())).append(")")
             .append(" = {");
 
-        for (Object key: m.keySet()) {
-            lb.addLines(dump_map_key(key).indent(1));
+        for (Map.Entry<?,?> e: m.entrySet()) {
+            lb.addLines(dump_map_key(e.getKey()).indent(1));
             lb.append(" => ");
-            lb.appendLines(dump_Object(m.get(key)).indent(1));
+            lb.appendLines(dump_Object(e.getValue()).indent(1));
             lb.append(",");
         }
 
@@ -302,20 +445,38 @@ public class DataDumper {
 
 
 
+    /** Dumps objects into a string.
+     *
+     *  The dump is written by a {@link DataDumpWriter}, so apart from the resulting string, and any line
+     *  buffers from {@link DataDumpable}s, nothing is allocated in proportion to its size.
+     *
+     *  @return     the dump, or null if no objects are given
+     */
+
     public static String dump(Object... objects) {
-        IndentableLineBuffer lb = null;
-        /*
-        IndentableLineBuffer lb = dump_Object(o);
-        System.err.println(dump_Object(lb).toString());
-        return lb.toString();
-        */
+        // TODO: what will we return if no args supplied?
+        if (objects.length == 0) return null;
+
+        StringBuilder sb = new StringBuilder();
+        try {
+            dumpTo(sb, objects);
+        } catch (IOException e) {
+            // StringBuilder doesn't do that
+            throw (InternalError) new InternalError().initCause(e);
+        }
+        return sb.toString();
+    }
 
-        for (Object o: objects)
-            if (lb != null) lb.addLines(dump_Object(o));
-            else lb = dump_Object(o);   // never returns null
 
-        // TODO: what will we return if no args supplied?
-        return lb == null ? null : lb.toString();
+    /** Dumps objects straight to a destination, like a {@link java.io.Writer}, without building the dump in
+     *  memory first. The output is the same as that of {@link #dump(Object...)}.
+     *
+     *  @throws IOException     if the destination throws it
+     */
+
+    public static void dumpTo(Appendable out, Object... objects) throws IOException {
+        DataDumpWriter w = new DataDumpWriter(out);
+        for (Object o: objects) w.dump(o);
     }
 
 
@@ -451,6 +451,26 @@ new resulting = this base + new individual
 
 
 
+    /** Returns the number of lines. */
+    int line_count() {
+        return lines.size();
+    }
+
+
+    /** Returns the resulting (base + individual) indent level of line i. */
+    int line_indent(int i) {
+        return base_indent + lines.get(i).indent_level;
+    }
+
+
+    /** Returns the text of line i. */
+    CharSequence line_text(int i) {
+        return lines.get(i).text;
+    }
+
+
+
+
     /** Returns all lines in the LineBuffer as String, separated by newlines.
      *
      *  The last line has a newline appended, too.
@@ -0,0 +1,213 @@
+package org.tbull.util.dev;
+
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.tbull.util.Grepper;
+
+
+
+
+/** Dumps objects field by field, for objects that are neither {@link DataDumpable}, nor have a
+ *  {@link DataDumpHandler}, nor are handled by the built-in rules of {@link DataDumper}, which would just show
+ *  their {@code toString()}.
+ *
+ *  <P>An object is shown as its class name and its fields, one per line, like</P>
+ *  <PRE>
+ *  com.example.Node = {
+ *      id = 17,
+ *      name = "root",
+ *      children = java.util.ArrayList(0) = [
+ *      ],
+ *  }
+ *  </PRE>
+ *  <P>with the values of reference fields dumped by the rules of {@link DataDumpWriter}, including cycle
+ *  detection and limits. The fields are those of the class and its superclasses, superclass fields first,
+ *  except static and synthetic ones. Rules can narrow them down further: if there are any include rules, only
+ *  fields that one of them accepts are shown, and fields that an exclude rule accepts are never shown.</P>
+ *
+ *  <P>Reflection is done once per class: the fields are looked up, filtered by the rules, and each gets a
+ *  {@link MethodHandle} that reads it, of exactly the type of the field, so primitive values are read without
+ *  boxing. These plans are cached in a {@link ClassValue}. Classes whose fields can't be made accessible, like
+ *  most of the JDK's, keep being shown by {@code toString()}.</P>
+ *
+ *  <P>Use with {@link DataDumpWriter#setObjectDumper(ObjectDumper)}, or through {@link #dump(Object)} and
+ *  {@link #dumpTo(Appendable, Object)}. Set up the rules before use; a dumper can then be used by several
+ *  threads.</P>
+ */
+
+public class ObjectDumper {
+
+    /** Kinds of fields. */
+    static final int BOOLEAN = 0, BYTE = 1, CHAR = 2, SHORT = 3, INT = 4, LONG = 5, FLOAT = 6, DOUBLE = 7,
+        REFERENCE = 8;
+
+    private static final Class<?>[] KIND_TYPES = {
+        boolean.class, byte.class, char.class, short.class, int.class, long.class, float.class, double.class
+    };
+
+
+    private final List<Grepper<Field>> includes = new ArrayList<Grepper<Field>>();
+    private final List<Grepper<Field>> excludes = new ArrayList<Grepper<Field>>();
+
+    /** The plans, replaced when the rules change. */
+    private volatile ClassValue<Plan> plans = new_plans();
+
+
+
+
+    /** Adds an include rule. Once there are include rules, only fields accepted by one of them are shown. */
+    public ObjectDumper include(Grepper<Field> rule) {
+        includes.add(rule);
+        plans = new_plans();
+        return this;
+    }
+
+
+    /** Adds an exclude rule. Fields accepted by an exclude rule are not shown. */
+    public ObjectDumper exclude(Grepper<Field> rule) {
+        excludes.add(rule);
+        plans = new_plans();
+        return this;
+    }
+
+
+    /** Excludes fields by name, in any class. */
+    public ObjectDumper exclude(String... names) {
+        final Set<String> set = new HashSet<String>(Arrays.asList(names));
+        return exclude(new Grepper<Field>() {
+            public @Override boolean grep(Field f) { return set.contains(f.getName()); }
+        });
+    }
+
+
+
+
+    /** Dumps an object into a string, see {@link DataDumper#dump(Object...)}. */
+    public String dump(Object o) {
+        StringBuilder sb = new StringBuilder();
+        try {
+            dumpTo(sb, o);
+        } catch (IOException e) {
+            // StringBuilder doesn't do that
+            throw (InternalError) new InternalError().initCause(e);
+        }
+        return sb.toString();
+    }
+
+
+    /** Dumps an object straight to a destination, see {@link DataDumper#dumpTo(Appendable, Object...)}.
+     *
+     *  @throws IOException     if the destination throws it
+     */
+    public void dumpTo(Appendable out, Object o) throws IOException {
+        new DataDumpWriter(out).setObjectDumper(this).dump(o);
+    }
+
+
+
+
+    /*
+     *  Plans.
+     *
+     */
+
+
+    /** A field to show, with a getter of type {@code (Object)T}, T being the field's type if primitive, and
+     *  {@code Object} otherwise.
+     */
+    static final class Accessor {
+        final String name;
+        final int kind;
+        final MethodHandle getter;
+
+        Accessor(String name, int kind, MethodHandle getter) {
+            this.name = name; this.kind = kind; this.getter = getter;
+        }
+    }
+
+
+    /** The fields to show for a class. */
+    static final class Plan {
+        final Accessor[] fields;
+
+        Plan(Accessor[] fields) {
+            this.fields = fields;
+        }
+    }
+
+
+        private ClassValue<Plan> new_plans() {
+            return new ClassValue<Plan>() {
+                protected @Override Plan computeValue(Class<?> c) {
+                    return make_plan(c);
+                }
+            };
+        }
+
+
+        /** Returns the plan for class c, or null if its objects can't, or need not, be dumped field by field. */
+        Plan plan(Class<?> c) {
+            return plans.get(c);
+        }
+
+
+        private boolean accepts(Field f) {
+            int mod = f.getModifiers();
+            if (Modifier.isStatic(mod) || f.isSynthetic()) return false;
+
+            if (!includes.isEmpty()) {
+                boolean included = false;
+                for (Grepper<Field> rule: includes) if (included = rule.grep(f)) break;
+                if (!included) return false;
+            }
+            for (Grepper<Field> rule: excludes) if (rule.grep(f)) return false;
+            return true;
+        }
+
+
+        private Plan make_plan(Class<?> c) {
+            List<Class<?>> hierarchy = new ArrayList<Class<?>>();
+            for (Class<?> s = c; s != null && s != Object.class; s = s.getSuperclass()) hierarchy.add(0, s);
+
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            List<Accessor> fields = new ArrayList<Accessor>();
+            for (Class<?> s: hierarchy) {
+                for (Field f: s.getDeclaredFields()) {
+                    if (!accepts(f)) continue;
+
+                    MethodHandle getter;
+                    try {
+                        f.setAccessible(true);
+                        getter = lookup.unreflectGetter(f);
+                    } catch (IllegalAccessException e) {
+                        return null;
+                    } catch (RuntimeException e) {
+                        // SecurityException, or InaccessibleObjectException for classes of closed modules
+                        return null;
+                    }
+
+                    Class<?> type = f.getType();
+                    int kind = type.isPrimitive() ? Arrays.asList(KIND_TYPES).indexOf(type) : REFERENCE;
+                    if (kind == REFERENCE) type = Object.class;
+                    getter = getter.asType(MethodType.methodType(type, Object.class));
+                    fields.add(new Accessor(f.getName(), kind, getter));
+                }
+            }
+
+            // nothing to show, so toString() tells more
+            if (fields.isEmpty()) return null;
+            return new Plan(fields.toArray(new Accessor[fields.size()]));
+        }
+
+}
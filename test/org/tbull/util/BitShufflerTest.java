@@ -0,0 +1,373 @@
+package org.tbull.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ *
+ *
+ */
+public class BitShufflerTest {
+
+    static final int ROUNDS = 1000;
+
+    static Random rnd;
+
+
+    @BeforeClass public static void setUpBeforeClass() throws Exception {
+        rnd = new Random();
+    }
+
+
+
+
+    /** Test method for {@link org.tbull.util.BitShuffler#shuffleLong(long)} and
+     *  {@link org.tbull.util.BitShuffler#unshuffleLong(long)}.
+     *
+     *  Checks the table-driven implementation against the bit loop.
+     */
+    @Test
+    public void testShuffleLong() {
+        for (int len = 1; len <= 64; len++) {
+            BitShuffler bs = new BitShuffler(BitShuffler.randomSequence(len));
+            long mask = len == 64 ? -1L : (1L << len) - 1;
+
+            for (int i = 0; i < ROUNDS; i++) {
+                long n = rnd.nextLong();
+                long s = bs.shuffleLong(n);
+                assertEquals(BitShuffler.shuffle_long_loop(bs.shuffle_sequence, n), s);
+                assertEquals(BitShuffler.shuffle_long_loop(bs.unshuffle_sequence, s), bs.unshuffleLong(s));
+                assertEquals(n & mask, bs.unshuffleLong(s));
+            }
+        }
+    }
+
+
+    /** Test method for {@link org.tbull.util.BitShuffler#shuffleInt(int)} and
+     *  {@link org.tbull.util.BitShuffler#unshuffleInt(int)}.
+     *
+     *  Checks the table-driven implementation against the bit loop.
+     */
+    @Test
+    public void testShuffleInt() {
+        for (int len = 1; len <= 32; len++) {
+            BitShuffler bs = new BitShuffler(BitShuffler.randomSequence(len));
+            int mask = len == 32 ? -1 : (1 << len) - 1;
+
+            for (int i = 0; i < ROUNDS; i++) {
+                int n = rnd.nextInt();
+                int s = bs.shuffleInt(n);
+                assertEquals(BitShuffler.shuffle_int_loop(bs.shuffle_sequence, n), s);
+                assertEquals(BitShuffler.shuffle_int_loop(bs.unshuffle_sequence, s), bs.unshuffleInt(s));
+                assertEquals(n & mask, bs.unshuffleInt(s));
+            }
+        }
+    }
+
+
+    /** Test method for {@link org.tbull.util.BitShuffler#setEngine(BitShuffler.Engine)}.
+     *
+     *  Checks the network engine against the bit loop.
+     */
+    @Test
+    public void testNetworkEngine() {
+        for (int len = 1; len <= 64; len++) {
+            BitShuffler bs = new BitShuffler(BitShuffler.randomSequence(len), BitShuffler.Engine.NETWORK);
+            long mask = len == 64 ? -1L : (1L << len) - 1;
+
+            for (int i = 0; i < ROUNDS; i++) {
+                long n = rnd.nextLong();
+                long s = bs.shuffleLong(n);
+                assertEquals(BitShuffler.shuffle_long_loop(bs.shuffle_sequence, n), s);
+                assertEquals(n & mask, bs.unshuffleLong(s));
+
+                if (len <= 32) {
+                    int m = (int) n;
+                    assertEquals(BitShuffler.shuffle_int_loop(bs.shuffle_sequence, m), bs.shuffleInt(m));
+                    assertEquals(m & (int) mask, bs.unshuffleInt(bs.shuffleInt(m)));
+                }
+            }
+        }
+
+        // switching engines must not change the results
+        BitShuffler bs = new BitShuffler(BitShuffler.randomSequence(64));
+        long[] a = new long[ROUNDS], b = new long[ROUNDS];
+        for (int i = 0; i < ROUNDS; i++) a[i] = rnd.nextLong();
+        bs.shuffle(a, b);
+        bs.setEngine(BitShuffler.Engine.NETWORK);
+        assertArrayEquals(b, bs.shuffle(a, new long[ROUNDS]));
+        assertArrayEquals(a, bs.unshuffle(b, new long[ROUNDS]));
+    }
+
+
+    /** Test method for {@link org.tbull.util.BitShuffler#gather_kernel(int[])}.
+     *
+     *  Checks the compress/expand kernels against the bit loop, for random sequences as well as for structured
+     *  ones (rotations, byte swaps), which make use of the grouping. Runs the portable fallback of compress/expand
+     *  on runtimes which lack the intrinsics.
+     */
+    @Test
+    public void testGatherKernels() {
+        for (int len = 1; len <= 64; len++) {
+            int[][] seqs = new int[3][len];
+            seqs[0] = BitShuffler.randomSequence(len);
+            for (int i = 0; i < len; i++) {
+                seqs[1][i] = (i + 5) % len;                 // rotation
+                seqs[2][i] = len == 64 ? i ^ 0x38 : i;      // byte swap
+            }
+
+            for (int[] seq: seqs) {
+                BitShuffler bs = new BitShuffler(seq);
+                BitShuffler.Kernel fwd = BitShuffler.gather_kernel(bs.shuffle_sequence);
+                BitShuffler.Kernel inv = BitShuffler.gather_kernel(bs.unshuffle_sequence);
+
+                for (int i = 0; i < ROUNDS; i++) {
+                    long n = rnd.nextLong();
+                    long s = fwd.permute(n);
+                    assertEquals(BitShuffler.shuffle_long_loop(seq, n), s);
+                    assertEquals(BitShuffler.shuffle_long_loop(bs.unshuffle_sequence, s), inv.permute(s));
+                }
+            }
+        }
+
+        // rotations are plain shifts, which need no intrinsics
+        int[] rot = new int[64];
+        for (int i = 0; i < 64; i++) rot[i] = (i + 13) % 64;
+        assertTrue(new BitShuffler(rot, BitShuffler.Engine.GATHER).compiled().shuffle_kernel instanceof BitShuffler.GatherKernel);
+
+        // the engine itself, whether it actually uses the kernels or not
+        BitShuffler bs = new BitShuffler(BitShuffler.randomSequence(64), BitShuffler.Engine.GATHER);
+        for (int i = 0; i < ROUNDS; i++) {
+            long n = rnd.nextLong();
+            assertEquals(n, bs.unshuffleLong(bs.shuffleLong(n)));
+        }
+    }
+
+
+    /** Test method for {@link org.tbull.util.BitShuffler#shuffle(long[], long[])} and
+     *  {@link org.tbull.util.BitShuffler#unshuffle(long[], long[])}.
+     *
+     *  Uses arrays large enough to take the parallel path.
+     */
+    @Test
+    public void testShuffleLongArray() {
+        BitShuffler bs = new BitShuffler(BitShuffler.randomSequence(64));
+        long[] a = new long[CompiledBitShuffler.PARALLEL_THRESHOLD * 3 + 17];
+        long[] b = new long[a.length], c = new long[a.length];
+
+        for (int i = 0; i < a.length; i++) a[i] = rnd.nextLong();
+
+        bs.shuffle(a, b);
+        for (int i = 0; i < a.length; i++) assertEquals(bs.shuffleLong(a[i]), b[i]);
+
+        assertArrayEquals(a, bs.unshuffle(b, c));
+
+        // in place
+        System.arraycopy(a, 0, c, 0, a.length);
+        assertArrayEquals(b, bs.shuffle(c, c));
+        assertArrayEquals(a, bs.unshuffle(c, 0, c, 0, c.length));
+    }
+
+
+    /** Test method for {@link org.tbull.util.BitShuffler#shuffle(int[], int[])} and
+     *  {@link org.tbull.util.BitShuffler#unshuffle(int[], int[])}.
+     */
+    @Test
+    public void testShuffleIntArray() {
+        BitShuffler bs = new BitShuffler(BitShuffler.randomSequence(32));
+        int[] a = new int[CompiledBitShuffler.PARALLEL_THRESHOLD + 5];
+        int[] b = new int[a.length + 3], c = new int[a.length];
+
+        for (int i = 0; i < a.length; i++) a[i] = rnd.nextInt();
+
+        bs.shuffle(a, 0, b, 3, a.length);
+        for (int i = 0; i < a.length; i++) assertEquals(bs.shuffleInt(a[i]), b[i + 3]);
+
+        assertArrayEquals(a, bs.unshuffle(b, 3, c, 0, a.length));
+    }
+
+
+    /** Test method for {@link org.tbull.util.BitShuffler#shuffle(LongBuffer, LongBuffer)} and
+     *  {@link org.tbull.util.BitShuffler#shuffle(IntBuffer, IntBuffer)}, with heap and direct buffers.
+     */
+    @Test
+    public void testShuffleBuffers() {
+        BitShuffler bs = new BitShuffler(BitShuffler.randomSequence(64));
+        BitShuffler bs32 = new BitShuffler(BitShuffler.randomSequence(32));
+        int n = 1000;
+        LongBuffer la = LongBuffer.allocate(n);
+        LongBuffer lb = ByteBuffer.allocateDirect(n * 8).asLongBuffer();
+        LongBuffer lc = LongBuffer.allocate(n);
+        IntBuffer ia = IntBuffer.allocate(n);
+        IntBuffer ib = ByteBuffer.allocateDirect(n * 4).asIntBuffer();
+        IntBuffer ic = IntBuffer.allocate(n);
+
+        for (int i = 0; i < n; i++) { la.put(i, rnd.nextLong()); ia.put(i, rnd.nextInt()); }
+
+        bs.shuffle(la, lb);
+        bs32.shuffle(ia, ib);
+        assertEquals(n, la.position());
+        assertEquals(n, lb.position());
+        for (int i = 0; i < n; i++) {
+            assertEquals(bs.shuffleLong(la.get(i)), lb.get(i));
+            assertEquals(bs32.shuffleInt(ia.get(i)), ib.get(i));
+        }
+
+        lb.flip(); ib.flip();
+        bs.unshuffle(lb, lc);
+        bs32.unshuffle(ib, ic);
+        assertArrayEquals(la.array(), lc.array());
+        assertArrayEquals(ia.array(), ic.array());
+    }
+
+
+        /** Tells whether bit {@code i} of {@code words} is set, in the order used by the wide operations. */
+        static boolean bit(long[] words, int i) {
+            return i >>> 6 < words.length && (words[i >>> 6] & (1L << i)) != 0;
+        }
+
+
+    /** Test method for {@link org.tbull.util.BitShuffler#shuffleWords(long[])} and
+     *  {@link org.tbull.util.BitShuffler#unshuffleWords(long[])}.
+     */
+    @Test
+    public void testShuffleWords() {
+        int[] lengths = { 1, 7, 40, 64, 65, 100, 128, 256, 1000, 1024 };
+
+        for (int len: lengths) {
+            BitShuffler bs = new BitShuffler(BitShuffler.randomSequence(len));
+
+            for (int i = 0; i < 20; i++) {
+                // one word more than needed, to see the excess bits pass through
+                long[] w = new long[(len + 63) / 64 + 1];
+                for (int j = 0; j < w.length; j++) w[j] = rnd.nextLong();
+
+                long[] s = bs.shuffleWords(w);
+                assertEquals(w.length, s.length);
+                for (int j = 0; j < w.length * 64; j++)
+                    assertEquals(bit(w, j), bit(s, j < len ? bs.shuffle_sequence[j] : j));
+
+                assertArrayEquals(w, bs.unshuffleWords(s));
+            }
+        }
+
+        // the bit loop and the wide operations must agree on numbers that fit into a long
+        BitShuffler bs = new BitShuffler(BitShuffler.randomSequence(64));
+        for (int i = 0; i < ROUNDS; i++) {
+            long n = rnd.nextLong();
+            assertEquals(bs.shuffleLong(n), bs.shuffleWords(new long[] { n })[0]);
+        }
+    }
+
+
+    /** Test method for {@link org.tbull.util.BitShuffler#shuffle(byte[])} and
+     *  {@link org.tbull.util.BitShuffler#shuffle(BitSet)}.
+     */
+    @Test
+    public void testShuffleBytesAndBitSet() {
+        BitShuffler bs = new BitShuffler(BitShuffler.randomSequence(128));
+
+        for (int i = 0; i < ROUNDS; i++) {
+            byte[] b = new byte[16];
+            rnd.nextBytes(b);
+            BitSet set = BitSet.valueOf(b);
+
+            byte[] sb = bs.shuffle(b);
+            assertEquals(BitSet.valueOf(sb), bs.shuffle(set));
+            assertArrayEquals(b, bs.unshuffle(sb));
+            assertEquals(set, bs.unshuffle(bs.shuffle(set)));
+        }
+
+        // shorter than the sequence: padded with zeroes
+        assertEquals(16, bs.shuffle(new byte[] { 1 }).length);
+    }
+
+
+    /** Test method for {@link org.tbull.util.BitShuffler#reset(int)}. */
+    @Test
+    public void testReset() {
+        BitShuffler bs = new BitShuffler(BitShuffler.randomSequence(64));
+        bs.reset(64);
+
+        for (int i = 0; i < ROUNDS; i++) {
+            long n = rnd.nextLong();
+            assertEquals(n, bs.shuffleLong(n));
+            assertEquals(n, bs.unshuffleLong(n));
+        }
+    }
+
+
+    /** Test method for {@link org.tbull.util.BitShuffler#setShuffleSequence(int[])}. */
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetShuffleSequenceInvalid() {
+        new BitShuffler(new int[] { 0, 1, 1, 3 });
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullEngine() {
+        new BitShuffler(new int[] { 1, 0 }, null);
+    }
+
+
+
+    /** Test method for {@link org.tbull.util.BitShuffler#keyedSequence(int, long)} and
+     *  {@link org.tbull.util.BitShuffler#randomSequence(int)}.
+     */
+    @Test
+    public void testSequences() {
+        for (int len: new int[] { 0, 1, 2, 31, 64, 1000 }) {
+            assertTrue(BitShuffler.is_permutation(BitShuffler.randomSequence(len)));
+            assertTrue(BitShuffler.is_permutation(BitShuffler.keyedSequence(len, rnd.nextLong())));
+        }
+
+        // pinned down, stored keys must keep working
+        assertArrayEquals(BitShuffler.keyedSequence(64, 42L), BitShuffler.keyedSequence(64, 42L));
+        assertArrayEquals(new int[] { 4, 3, 2, 0, 7, 6, 1, 5 }, BitShuffler.keyedSequence(8, 42L));
+        assertTrue(!java.util.Arrays.equals(BitShuffler.keyedSequence(64, 42L), BitShuffler.keyedSequence(64, 43L)));
+
+        byte[] key = "some secret".getBytes();
+        assertArrayEquals(BitShuffler.keyedSequence(64, key), BitShuffler.keyedSequence(64, key.clone()));
+    }
+
+
+    /** Test method for {@link org.tbull.util.BitShuffler#compiled()}. */
+    @Test
+    public void testCompiled() {
+        int[] seq = BitShuffler.keyedSequence(64, 7L);
+        BitShuffler bs = new BitShuffler(seq);
+        CompiledBitShuffler c = bs.compiled();
+
+        assertArrayEquals(seq, c.getShuffleSequence());
+        bs.reset(64);   // must not affect the snapshot
+
+        for (int i = 0; i < ROUNDS; i++) {
+            long n = rnd.nextLong();
+            assertEquals(BitShuffler.shuffle_long_loop(seq, n), c.shuffleLong(n));
+            assertEquals(n, c.unshuffleLong(c.shuffleLong(n)));
+            assertEquals(n, bs.shuffleLong(n));
+        }
+
+        assertEquals(new CompiledBitShuffler(seq, BitShuffler.Engine.NETWORK).shuffleLong(12345L),
+            c.shuffleLong(12345L));
+    }
+
+
+    /** Test method for {@link org.tbull.util.CompiledBitShuffler#CompiledBitShuffler(int[])}. */
+    @Test(expected = IllegalArgumentException.class)
+    public void testCompiledInvalid() {
+        new CompiledBitShuffler(new int[] { 0, 2 });
+    }
+
+}
@@ -0,0 +1,216 @@
+package org.tbull.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+
+/**
+ *
+ *
+ */
+public class CharPipeTest {
+
+        /** Some text of the given length, not repeating with any power-of-two period. */
+        static String text(int length) {
+            StringBuilder sb = new StringBuilder(length);
+            for (int i = 0; i < length; i++) sb.append((char) ('a' + i % 23));
+            return sb.toString();
+        }
+
+
+        /** Writes s through the pipe in another thread, in pieces of varying size, and closes the writer. */
+        static Thread produce(final CharPipe pipe, final String s, final AtomicReference<Throwable> failure) {
+            Thread t = new Thread() {
+                public @Override void run() {
+                    try {
+                        CharPipe.PipeWriter w = pipe.getWriter();
+                        char[] chars = s.toCharArray();
+                        int off = 0, piece = 1;
+                        while (off < chars.length) {
+                            int n = Math.min(piece, chars.length - off);
+                            if (piece % 3 == 0) w.write(s, off, n);
+                            else if (n == 1) w.write(chars[off]);
+                            else w.write(chars, off, n);
+                            off += n;
+                            piece = piece % 97 + 1;
+                        }
+                        w.close();
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            };
+            t.start();
+            return t;
+        }
+
+
+        static void transfer(CharPipe.WaitStrategy strategy) throws Exception {
+            String s = text(200000);
+            CharPipe pipe = new CharPipe(64, strategy);
+            AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+            Thread producer = produce(pipe, s, failure);
+
+            StringBuilder sb = new StringBuilder();
+            CharPipe.PipeReader r = pipe.getReader();
+            char[] buf = new char[50];
+            for (int n, i = 0; ; i++) {
+                if (i % 2 == 0) {
+                    int c = r.read();
+                    if (c < 0) break;
+                    sb.append((char) c);
+                } else {
+                    if ((n = r.read(buf, 0, 1 + i % buf.length)) < 0) break;
+                    sb.append(buf, 0, n);
+                }
+            }
+            producer.join();
+
+            assertNull(failure.get());
+            assertEquals(s, sb.toString());
+            assertEquals(-1, r.read());
+        }
+
+
+
+
+    /** Test method for {@link org.tbull.util.CharPipe.WaitStrategy#BLOCKING}. */
+    @Test
+    public void testBlocking() throws Exception {
+        transfer(CharPipe.WaitStrategy.BLOCKING);
+    }
+
+
+    /** Test method for {@link org.tbull.util.CharPipe.WaitStrategy#SPINNING}. */
+    @Test
+    public void testSpinning() throws Exception {
+        transfer(CharPipe.WaitStrategy.SPINNING);
+    }
+
+
+    /** Test method for {@link org.tbull.util.CharPipe#capacity()}, filling the pipe across its end. */
+    @Test
+    public void testWrapAround() throws Exception {
+        CharPipe pipe = new CharPipe(5);
+        assertEquals(8, pipe.capacity());
+        CharPipe.PipeWriter w = pipe.getWriter();
+        CharPipe.PipeReader r = pipe.getReader();
+        char[] buf = new char[8];
+
+        w.write("abcdef");
+        assertEquals(4, r.read(buf, 0, 4));
+        assertEquals("abcd", new String(buf, 0, 4));
+
+        // 2 left, 6 more wrap around the end of the buffer
+        w.write("ghijkl".toCharArray());
+        assertEquals(8, r.available());
+        // reads return what they know of, without looking for more
+        assertEquals(2, r.read(buf));
+        assertEquals(6, r.read(buf, 2, 6));
+        assertEquals("efghijkl", new String(buf));
+
+        w.append("mnopqrst", 1, 7).append('u');
+        assertEquals(7, r.read(buf));
+        assertEquals("nopqrsu", new String(buf, 0, 7));
+        assertEquals(0, r.available());
+
+        try {
+            new CharPipe(0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+
+    /** Test method for {@link org.tbull.util.CharPipe.PipeWriter#close()}. */
+    @Test
+    public void testCloseWriter() throws Exception {
+        CharPipe pipe = new CharPipe();
+        CharPipe.PipeWriter w = pipe.getWriter();
+        CharPipe.PipeReader r = pipe.getReader();
+
+        w.write("xy");
+        w.close();
+        w.close();
+        assertEquals('x', r.read());
+        assertEquals('y', r.read());
+        assertEquals(-1, r.read());
+        assertEquals(-1, r.read(new char[4], 0, 4));
+
+        try {
+            w.write('z');
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+
+        // a reader waiting for data sees end-of-stream
+        final CharPipe pipe2 = new CharPipe();
+        Thread closer = new Thread() {
+            public @Override void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    // just go ahead
+                }
+                pipe2.getWriter().close();
+            }
+        };
+        closer.start();
+        assertEquals(-1, pipe2.getReader().read());
+        closer.join();
+    }
+
+
+    /** Test method for {@link org.tbull.util.CharPipe.PipeReader#close()}. */
+    @Test
+    public void testCloseReader() throws Exception {
+        CharPipe pipe = new CharPipe(4);
+        CharPipe.PipeWriter w = pipe.getWriter();
+        CharPipe.PipeReader r = pipe.getReader();
+
+        w.write("ab");
+        r.close();
+        r.close();
+
+        // there is room, but nobody reads it
+        try {
+            w.write('c');
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+        try {
+            r.read();
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+
+        // a writer waiting for room fails
+        final CharPipe pipe2 = new CharPipe(4);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread producer = new Thread() {
+            public @Override void run() {
+                try {
+                    pipe2.getWriter().write(text(100));
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }
+        };
+        producer.start();
+        assertEquals('a', pipe2.getReader().read());
+        pipe2.getReader().close();
+        producer.join();
+        assertEquals(IOException.class, failure.get().getClass());
+    }
+
+}
@@ -0,0 +1,144 @@
+package org.tbull.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ *
+ *
+ */
+public class CompatibilityMatrixTest {
+
+    static final String[] SPECIALS = { null, null, null, "alpha", "beta.2", "rc.1" };
+
+    static Random rnd;
+
+
+    @BeforeClass public static void setUpBeforeClass() throws Exception {
+        rnd = new Random();
+    }
+
+
+        static SemVer[] semvers(int n) {
+            SemVer[] a = new SemVer[n];
+            for (int i = 0; i < n; i++)
+                a[i] = new SemVer(rnd.nextInt(4), rnd.nextInt(4), rnd.nextInt(4),
+                    SPECIALS[rnd.nextInt(SPECIALS.length)], rnd.nextInt(4) == 0 ? "b" + rnd.nextInt(3) : null);
+            return a;
+        }
+
+
+        static Version[] versions(int n) {
+            Version[] a = new Version[n];
+            for (int i = 0; i < n; i++)
+                a[i] = new Version(rnd.nextInt(3), rnd.nextInt(4), rnd.nextInt(3), rnd.nextInt(3),
+                    rnd.nextInt(4) == 0 ? "beta" : null);
+            return a;
+        }
+
+
+        static void assertNaive(SemVer[] actual, SemVer[] expected, CompatibilityMatrix m) {
+            assertEquals(expected.length, m.rows());
+            assertEquals(actual.length, m.columns());
+            for (int i = 0; i < expected.length; i++) {
+                int n = 0;
+                for (int j = 0; j < actual.length; j++) {
+                    boolean c = actual[j].compatibleForUse(expected[i]);
+                    assertEquals(actual[j] + " for " + expected[i], c, m.get(i, j));
+                    if (c) n++;
+                }
+                assertEquals(n, m.count(i));
+            }
+        }
+
+
+        static void assertNaive(Version[] actual, Version[] expected, CompatibilityMatrix m) {
+            for (int i = 0; i < expected.length; i++)
+                for (int j = 0; j < actual.length; j++)
+                    assertEquals(actual[j] + " for " + expected[i],
+                        actual[j].compatibleForUse(expected[i]), m.get(i, j));
+        }
+
+
+
+
+    /** Test method for {@link org.tbull.util.Version#compatibleForUse(Version)}. */
+    @Test
+    public void testVersionCompatibleForUse() {
+        Version expected = Version.parse("1.4.2");
+        assertTrue(Version.parse("1.4.2").compatibleForUse(expected));
+        assertTrue(Version.parse("1.4.2.3").compatibleForUse(expected));
+        assertTrue(Version.parse("1.5").compatibleForUse(expected));
+        assertFalse(Version.parse("1.4.0").compatibleForUse(expected));
+        assertFalse(Version.parse("1.4.2beta").compatibleForUse(expected));
+        assertFalse(Version.parse("2.0.0").compatibleForUse(expected));
+
+        // in initial development, the minor version counts as the major version
+        expected = Version.parse("0.3.1");
+        assertTrue(Version.parse("0.3.4").compatibleForUse(expected));
+        assertFalse(Version.parse("0.4.0").compatibleForUse(expected));
+        assertFalse(Version.parse("0.3.0").compatibleForUse(expected));
+        assertFalse(Version.parse("1.0.0").compatibleForUse(expected));
+    }
+
+
+    /** Test method for {@link org.tbull.util.CompatibilityMatrix#compute(SemVer[], SemVer[])}. */
+    @Test
+    public void testComputeSemVer() {
+        SemVer[] actual = {
+            SemVer.parse("1.4.2"), SemVer.parse("2.0.0"), SemVer.parse("1.5.0"), SemVer.parse("0.1.0"),
+            SemVer.parse("1.3.7"), SemVer.parse("0.1.0+b1")
+        };
+        SemVer[] expected = { SemVer.parse("1.4.2"), SemVer.parse("0.1.0"), SemVer.parse("3.0.0") };
+        CompatibilityMatrix m = CompatibilityMatrix.compute(actual, expected);
+
+        BitSet row = new BitSet();
+        row.set(0);
+        row.set(2);
+        assertEquals(row, m.row(0));
+        row.clear();
+        row.set(3);
+        row.set(5);
+        assertEquals(row, m.row(1));
+        assertTrue(m.row(2).isEmpty());
+        assertArrayEquals(new long[] { 5, 40, 0 }, m.toLongArray());
+
+        for (int n: new int[] { 0, 1, 63, 64, 65, 500 }) {
+            SemVer[] a = semvers(n), e = semvers(n / 2 + 1);
+            assertNaive(a, e, CompatibilityMatrix.compute(a, e));
+        }
+    }
+
+
+    /** Test method for {@link org.tbull.util.CompatibilityMatrix#compute(Version[], Version[])}. */
+    @Test
+    public void testComputeVersion() {
+        for (int n: new int[] { 0, 1, 64, 300 }) {
+            Version[] a = versions(n), e = versions(n + 3);
+            assertNaive(a, e, CompatibilityMatrix.compute(a, e));
+        }
+    }
+
+
+    /** Test method for {@link org.tbull.util.CompatibilityMatrix#parallelCompute(SemVer[], SemVer[])}. */
+    @Test
+    public void testParallelCompute() {
+        SemVer[] a = semvers(3000), e = semvers(2000);
+        CompatibilityMatrix m = CompatibilityMatrix.parallelCompute(a, e);
+        assertArrayEquals(CompatibilityMatrix.compute(a, e).toLongArray(), m.toLongArray());
+        assertNaive(a, e, m);
+
+        Version[] va = versions(3000), ve = versions(2000);
+        assertNaive(va, ve, CompatibilityMatrix.parallelCompute(va, ve));
+    }
+
+}
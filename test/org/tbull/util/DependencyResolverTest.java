@@ -0,0 +1,314 @@
+package org.tbull.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+
+/**
+ *
+ *
+ */
+public class DependencyResolverTest {
+
+        static DependencyResolver.MemoryProvider provider(String... lines) {
+            DependencyResolver.MemoryProvider p = new DependencyResolver.MemoryProvider();
+            for (String line: lines) p.add(line);
+            return p;
+        }
+
+
+        static Map<String, SemVerRange> require(String... pairs) {
+            Map<String, SemVerRange> m = new LinkedHashMap<String, SemVerRange>();
+            for (int i = 0; i < pairs.length; i += 2) m.put(pairs[i], SemVerRange.parse(pairs[i + 1]));
+            return m;
+        }
+
+
+        static void assertResolved(Map<String, SemVer> result, String... pairs) {
+            Map<String, SemVer> expected = new LinkedHashMap<String, SemVer>();
+            for (int i = 0; i < pairs.length; i += 2) expected.put(pairs[i], SemVer.parse(pairs[i + 1]));
+            assertEquals(expected, result);
+        }
+
+
+
+
+    /** Test method for {@link org.tbull.util.DependencyResolver#resolve(Map)}. */
+    @Test
+    public void testResolveNewest() throws Exception {
+        DependencyResolver r = new DependencyResolver(provider(
+            "app 1.0.0: lib ^1.0, util",
+            "lib 1.0.0: util ^2.0",
+            "lib 1.3.0: util ^2.1",
+            "lib 2.0.0: util ^3.0",
+            "util 2.0.0",
+            "util 2.4.1",
+            "util 3.0.0"
+        ));
+
+        assertResolved(r.resolve(require("app", "1")), "app", "1.0.0", "lib", "1.3.0", "util", "2.4.1");
+        assertResolved(r.resolve("lib", SemVer.parse("2.0.0")), "lib", "2.0.0", "util", "3.0.0");
+        assertResolved(r.resolve(require("util", "<2.1")), "util", "2.0.0");
+        assertResolved(r.resolve(Collections.<String, SemVerRange>emptyMap()));
+    }
+
+
+    /** Test method for {@link org.tbull.util.DependencyResolver#resolve(Map)}. */
+    @Test
+    public void testBacktracking() throws Exception {
+        // the newest a and b both want c 2, which d does not allow, so both must go back a version
+        DependencyResolver r = new DependencyResolver(provider(
+            "root 1.0.0: a, b, d",
+            "a 1.0.0: c ^1.0",
+            "a 2.0.0: c ^2.0",
+            "b 1.0.0: c ^1.0",
+            "b 2.0.0: c ^2.0",
+            "c 1.0.0",
+            "c 1.1.0",
+            "c 2.0.0",
+            "d 1.0.0: c <2"
+        ));
+
+        assertResolved(r.resolve(require("root", "*")),
+            "a", "1.0.0", "b", "1.0.0", "c", "1.1.0", "d", "1.0.0", "root", "1.0.0");
+    }
+
+
+    /** Test method for {@link org.tbull.util.DependencyResolver#resolve(Map)}. */
+    @Test
+    public void testBackjumping() throws Exception {
+        // x 2 rules out y, which comes up last, so without jumping back right to x, all 2^12 combinations of
+        // the p_i, which have nothing to do with it, would be tried in between
+        StringBuilder root = new StringBuilder("root 1.0.0: x");
+        DependencyResolver.MemoryProvider p = new DependencyResolver.MemoryProvider();
+        for (int i = 0; i < 12; i++) {
+            root.append(", p").append(i);
+            p.add("p" + i + " 1.0.0");
+            p.add("p" + i + " 2.0.0");
+        }
+        p.add(root.toString() + ", y");
+        p.add("x 1.0.0: z ^1.0");
+        p.add("x 2.0.0: z ^2.0");
+        p.add("y 1.0.0: z ^1.0");
+        p.add("y 1.1.0: z ^1.0");
+        p.add("z 1.0.0");
+        p.add("z 2.0.0");
+
+        final AtomicInteger calls = new AtomicInteger();
+        final DependencyResolver.MemoryProvider inner = p;
+        DependencyResolver r = new DependencyResolver(new DependencyResolver.Provider() {
+            public @Override SemVer[] versions(String pkg) {
+                return inner.versions(pkg);
+            }
+            public @Override Map<String, SemVerRange> dependencies(String pkg, SemVer version) {
+                calls.incrementAndGet();
+                return inner.dependencies(pkg, version);
+            }
+        }, null);
+
+        Map<String, SemVer> result = r.resolve(require("root", "1"));
+        assertEquals(SemVer.parse("1.0.0"), result.get("x"));
+        assertEquals(SemVer.parse("1.0.0"), result.get("z"));
+        for (int i = 0; i < 12; i++) assertEquals(SemVer.parse("2.0.0"), result.get("p" + i));
+        assertTrue(calls.get() < 40);
+    }
+
+
+    /** Test method for {@link org.tbull.util.DependencyResolver#resolve(Map)}. */
+    @Test
+    public void testUnsatisfiable() throws Exception {
+        DependencyResolver r = new DependencyResolver(provider(
+            "a 1.0.0: c ^1.0",
+            "b 1.0.0: c ^2.0",
+            "c 1.0.0",
+            "c 2.0.0"
+        ));
+
+        try {
+            r.resolve(require("a", "*", "b", "*"));
+            fail("resolved conflicting requirements");
+        } catch (DependencyResolver.ResolutionException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("no version of c"));
+        }
+
+        try {
+            r.resolve(require("a", ">=2"));
+            fail("resolved a missing version");
+        } catch (DependencyResolver.ResolutionException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("no version of a"));
+        }
+
+        try {
+            r.resolve(require("nothing", "*"));
+            fail("resolved a missing package");
+        } catch (DependencyResolver.ResolutionException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("no version of nothing"));
+        }
+    }
+
+
+    /** Test method for {@link org.tbull.util.DependencyResolver#resolve(Map)}, with prefetching. */
+    @Test
+    public void testPrefetch() throws Exception {
+        // a slow provider, which gets asked for each result once only, however many threads want it
+        final DependencyResolver.MemoryProvider inner = new DependencyResolver.MemoryProvider();
+        StringBuilder root = new StringBuilder("root 1.0.0: ");
+        for (int i = 0; i < 20; i++) {
+            root.append(i == 0 ? "" : ", ").append("p").append(i).append(" ^1.0");
+            inner.add("p" + i + " 1.0.0: q ^1.0");
+            inner.add("p" + i + " 1.1.0: q ^1.1");
+        }
+        inner.add(root.toString());
+        inner.add("q 1.0.0");
+        inner.add("q 1.1.0");
+
+        final Map<String, AtomicInteger> calls = new ConcurrentHashMap<String, AtomicInteger>();
+        DependencyResolver.Provider slow = new DependencyResolver.Provider() {
+            void call(String key) {
+                AtomicInteger n = calls.get(key);
+                if (n == null) {
+                    calls.putIfAbsent(key, new AtomicInteger());
+                    n = calls.get(key);
+                }
+                n.incrementAndGet();
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            public @Override SemVer[] versions(String pkg) {
+                call(pkg);
+                return inner.versions(pkg);
+            }
+            public @Override Map<String, SemVerRange> dependencies(String pkg, SemVer version) {
+                call(pkg + ' ' + version);
+                return inner.dependencies(pkg, version);
+            }
+        };
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            DependencyResolver r = new DependencyResolver(slow, pool);
+            Map<String, SemVer> result = r.resolve(require("root", "1"));
+            assertEquals(22, result.size());
+            assertEquals(SemVer.parse("1.1.0"), result.get("q"));
+            assertEquals(SemVer.parse("1.1.0"), result.get("p7"));
+
+            assertEquals(result, r.resolve(require("root", "1")));
+            for (Map.Entry<String, AtomicInteger> e: calls.entrySet())
+                assertEquals(e.getKey(), 1, e.getValue().get());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+
+    /** Test method for {@link org.tbull.util.DependencyResolver#resolve(Map)}, with a provider failing once. */
+    @Test
+    public void testRetryAfterFailure() throws Exception {
+        final DependencyResolver.MemoryProvider inner = provider("app 1.0.0: lib ^1.0", "lib 1.0.0");
+        final AtomicInteger failures = new AtomicInteger(2);
+        DependencyResolver.Provider flaky = new DependencyResolver.Provider() {
+            public @Override SemVer[] versions(String pkg) throws IOException {
+                if (pkg.equals("lib") && failures.get() == 2 && failures.decrementAndGet() >= 0)
+                    throw new IOException("versions of lib");
+                return inner.versions(pkg);
+            }
+            public @Override Map<String, SemVerRange> dependencies(String pkg, SemVer version) throws IOException {
+                if (failures.get() == 1 && failures.decrementAndGet() >= 0)
+                    throw new IOException("dependencies of " + pkg);
+                return inner.dependencies(pkg, version);
+            }
+        };
+
+        DependencyResolver r = new DependencyResolver(flaky, null);
+        for (String expected: new String[] { "versions of lib", "dependencies of lib" }) {
+            try {
+                r.resolve(require("app", "1"));
+                fail();
+            } catch (IOException e) {
+                assertEquals(expected, e.getMessage());
+            }
+        }
+        assertResolved(r.resolve(require("app", "1")), "app", "1.0.0", "lib", "1.0.0");
+    }
+
+
+    /** Test method for {@link org.tbull.util.DependencyResolver.MemoryProvider#read(java.io.Reader)}. */
+    @Test
+    public void testMemoryProvider() throws IOException {
+        DependencyResolver.MemoryProvider p = new DependencyResolver.MemoryProvider().read(new StringReader(
+            "# a comment\n" +
+            "\n" +
+            "foo 1.2.0: bar ^1.0, baz >=2.1 <3\n" +
+            "foo 1.3.0\n"
+        ));
+
+        assertEquals(2, p.versions("foo").length);
+        assertEquals(0, p.versions("bar").length);
+        Map<String, SemVerRange> deps = p.dependencies("foo", SemVer.parse("1.2.0"));
+        assertEquals(2, deps.size());
+        assertTrue(deps.get("baz").matches(SemVer.parse("2.5.0")));
+        assertTrue(!deps.get("baz").matches(SemVer.parse("3.0.0")));
+        assertTrue(p.dependencies("foo", SemVer.parse("1.3.0")).isEmpty());
+
+        for (String bad: new String[] { "foo", "foo 1.2.0 1.3.0", "foo x.y", "foo 1.0.0: bar ^^" }) {
+            try {
+                p.add(bad);
+                fail(bad);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+
+    /** Test method for {@link org.tbull.util.DependencyResolver.DirectoryProvider}. */
+    @Test
+    public void testDirectoryProvider() throws Exception {
+        File dir = File.createTempFile("deps", "");
+        assertTrue(dir.delete() && dir.mkdir());
+        File a = new File(dir, "a.deps"), b = new File(dir, "b.deps");
+        try {
+            write(a, "a 1.0.0: b ^1.0\na 2.0.0: b ^2.0\n");
+            write(b, "b 1.5.0\n");
+
+            DependencyResolver r = new DependencyResolver(new DependencyResolver.DirectoryProvider(dir));
+            assertResolved(r.resolve(require("a", "*")), "a", "1.0.0", "b", "1.5.0");
+        } finally {
+            a.delete();
+            b.delete();
+            dir.delete();
+        }
+    }
+
+
+        private static void write(File f, String text) throws IOException {
+            Writer w = new OutputStreamWriter(new FileOutputStream(f), StandardCharsets.UTF_8);
+            try {
+                w.write(text);
+            } finally {
+                w.close();
+            }
+        }
+
+}
@@ -0,0 +1,121 @@
+package org.tbull.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ *
+ *
+ */
+public class IdCodecTest {
+
+    static final int ROUNDS = 1000;
+
+    static Random rnd;
+
+
+    @BeforeClass public static void setUpBeforeClass() throws Exception {
+        rnd = new Random();
+    }
+
+
+
+
+    /** Test method for {@link org.tbull.util.IdCodec#encode(long)} and
+     *  {@link org.tbull.util.IdCodec#decode(CharSequence)}.
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        for (IdCodec.Alphabet a: IdCodec.Alphabet.values()) {
+            for (int bits: new int[] { 1, 5, 31, 40, 63, 64 }) {
+                IdCodec c = IdCodec.keyed(bits, 4711L, 3, a);
+                long mask = bits == 64 ? -1L : (1L << bits) - 1;
+
+                for (int i = 0; i < ROUNDS; i++) {
+                    long id = rnd.nextLong() & mask;
+                    String token = c.encode(id);
+                    assertEquals(c.width(), token.length());
+                    assertEquals(id, c.decode(token));
+                    assertEquals(token, c.encode(id, new StringBuilder()).toString());
+                }
+
+                assertEquals(0, c.decode(c.encode(0)));
+                assertEquals(mask, c.decode(c.encode(mask)));
+            }
+        }
+
+        assertEquals(11, IdCodec.keyed(64, 1, 2, IdCodec.Alphabet.BASE62).width());
+        assertEquals(13, IdCodec.keyed(64, 1, 2, IdCodec.Alphabet.BASE32).width());
+    }
+
+
+    /** Sequential IDs must give distinct tokens that don't look sequential. */
+    @Test
+    public void testSequentialIds() {
+        IdCodec c = IdCodec.keyed(40, 99L, 3, IdCodec.Alphabet.BASE62);
+        Set<String> tokens = new HashSet<String>();
+        int same_prefix = 0;
+        String last = null;
+
+        for (long id = 1; id <= ROUNDS; id++) {
+            String t = c.encode(id);
+            assertTrue(tokens.add(t));
+            if (last != null && t.regionMatches(0, last, 0, 3)) same_prefix++;
+            last = t;
+        }
+
+        assertTrue(same_prefix < ROUNDS / 10);
+    }
+
+
+    /** Test method for {@link org.tbull.util.IdCodec#encode(long[], int, int, char[], int)} and
+     *  {@link org.tbull.util.IdCodec#decode(char[], int, long[], int, int)}.
+     */
+    @Test
+    public void testBatch() throws Exception {
+        IdCodec c = IdCodec.keyed(48, 5L, 2, IdCodec.Alphabet.BASE32);
+        long[] ids = new long[100];
+        for (int i = 0; i < ids.length; i++) ids[i] = rnd.nextLong() & 0xffffffffffffL;
+
+        char[] buf = new char[ids.length * c.width() + 1];
+        assertEquals(buf.length, c.encode(ids, 0, ids.length, buf, 1));
+        long[] back = new long[ids.length];
+        assertEquals(buf.length, c.decode(buf, 1, back, 0, back.length));
+        assertArrayEquals(ids, back);
+
+        String joined = c.encode(ids, 0, 2, new StringBuilder(), ',').toString();
+        assertEquals(c.encode(ids[0]) + "," + c.encode(ids[1]), joined);
+
+        // base 32 decodes case-insensitively
+        assertEquals(ids[7], c.decode(c.encode(ids[7]).toUpperCase()));
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIdOutOfRange() {
+        IdCodec.keyed(32, 1L, 2, IdCodec.Alphabet.BASE62).encode(1L << 32);
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTokenOverflow() {
+        // the largest 11 digit base 62 number exceeds 64 bits
+        IdCodec.keyed(64, 1L, 2, IdCodec.Alphabet.BASE62).decode("zzzzzzzzzzz");
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidToken() {
+        IdCodec.keyed(32, 1L, 2, IdCodec.Alphabet.BASE62).decode("abc-ef");
+    }
+
+}
@@ -0,0 +1,113 @@
+package org.tbull.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ *
+ *
+ */
+public class PackedVersionsTest {
+
+    static final String[] SPECIALS = { null, "alpha", "alpha2", "beta", "rc1", "rc2" };
+
+    static Random rnd;
+
+
+    @BeforeClass public static void setUpBeforeClass() throws Exception {
+        rnd = new Random();
+    }
+
+
+        static SemVer random_semver() {
+            return new SemVer(rnd.nextInt(4), rnd.nextInt(4), rnd.nextInt(4), SPECIALS[rnd.nextInt(SPECIALS.length)]);
+        }
+
+
+
+
+    /** Test method for {@link org.tbull.util.PackedVersions#pack(SemVer, PackedVersions.Dictionary)}.
+     *
+     *  Checks that packed versions sort like the versions themselves.
+     */
+    @Test
+    public void testSemVerOrder() {
+        SemVer[] versions = new SemVer[1000];
+        for (int i = 0; i < versions.length; i++) versions[i] = random_semver();
+        PackedVersions.Dictionary dict = PackedVersions.Dictionary.forSemVers(Arrays.asList(versions));
+        assertEquals(SPECIALS.length - 1, dict.size());
+
+        long[] packed = PackedVersions.pack(versions, dict);
+        for (int i = 1; i < versions.length; i++)
+            assertEquals(Integer.signum(versions[i - 1].compareTo(versions[i])),
+                Long.signum(packed[i - 1] - packed[i]));
+
+        Arrays.sort(versions);
+        PackedVersions.sort(packed);
+        assertArrayEquals(versions, PackedVersions.unpackSemVers(packed, dict));
+
+        // a release sorts after its pre-releases
+        assertTrue(PackedVersions.pack(new SemVer(1, 2, 3), dict) > PackedVersions.pack(new SemVer(1, 2, 3, "rc2"), dict));
+        assertTrue(PackedVersions.pack(new SemVer(1, 2, 3), dict) < PackedVersions.pack(new SemVer(1, 2, 4, "alpha"), dict));
+    }
+
+
+    /** Test method for {@link org.tbull.util.PackedVersions#pack(Version, PackedVersions.Dictionary)}. */
+    @Test
+    public void testVersionOrder() {
+        Version[] versions = new Version[1000];
+        for (int i = 0; i < versions.length; i++)
+            versions[i] = new Version(rnd.nextInt(3), rnd.nextInt(3), rnd.nextInt(3), rnd.nextInt(3),
+                SPECIALS[rnd.nextInt(SPECIALS.length)]);
+        PackedVersions.Dictionary dict = PackedVersions.Dictionary.forVersions(Arrays.asList(versions));
+
+        long[] packed = PackedVersions.pack(versions, dict);
+        Arrays.sort(versions);
+        PackedVersions.sort(packed);
+        assertArrayEquals(versions, PackedVersions.unpackVersions(packed, dict));
+    }
+
+
+    /** Test method for {@link org.tbull.util.PackedVersions#sort(long[], Object[])} and the searches. */
+    @Test
+    public void testMapAndSearch() {
+        PackedVersions.Dictionary dict = PackedVersions.Dictionary.ofSemVerSpecials(Arrays.asList("beta"));
+        SemVer[] versions = { SemVer.parse("2.0.0"), SemVer.parse("1.0.0"), SemVer.parse("1.5.0beta"),
+            SemVer.parse("1.5.0") };
+        String[] values = { "two", "one", "beta", "one-five" };
+        long[] packed = PackedVersions.pack(versions, dict);
+
+        PackedVersions.sort(packed, values);
+        assertArrayEquals(new String[] { "one", "beta", "one-five", "two" }, values);
+        assertEquals("beta", PackedVersions.get(packed, values, PackedVersions.pack(SemVer.parse("1.5beta"), dict)));
+        assertEquals(null, PackedVersions.get(packed, values, PackedVersions.semver(1, 6, 0, PackedVersions.RELEASE)));
+
+        // the newest 1.x, and the first version of 1.5, pre-releases included
+        assertEquals(2, PackedVersions.floor(packed, PackedVersions.semver(1, 0xffff, 0xffff, PackedVersions.RELEASE)));
+        assertEquals(1, PackedVersions.ceiling(packed, PackedVersions.semver(1, 5, 0, 0)));
+        assertEquals(-1, PackedVersions.floor(packed, PackedVersions.semver(0, 9, 0, PackedVersions.RELEASE)));
+        assertEquals(-1, PackedVersions.ceiling(packed, PackedVersions.semver(3, 0, 0, 0)));
+        assertEquals(2, PackedVersions.semverMajor(packed[3]));
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotInDictionary() {
+        PackedVersions.pack(new SemVer(1, 0, 0, "gamma"), PackedVersions.Dictionary.ofSemVerSpecials(Arrays.asList("beta")));
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooLarge() {
+        PackedVersions.pack(new SemVer(1 << 15, 0, 0), PackedVersions.Dictionary.ofSemVerSpecials(Arrays.<String>asList()));
+    }
+
+}
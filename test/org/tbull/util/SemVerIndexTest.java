@@ -0,0 +1,156 @@
+package org.tbull.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+
+/**
+ *
+ *
+ */
+public class SemVerIndexTest {
+
+        static SemVer v(String s) {
+            return SemVer.parse(s);
+        }
+
+
+        static SemVerIndex<String> sample() {
+            Map<SemVer, String> m = new HashMap<SemVer, String>();
+            for (String s: new String[] { "0.9.0", "1.0.0", "1.2.0", "1.4.2", "1.5.0beta", "2.0.0", "2.1.0" })
+                m.put(v(s), s);
+            return SemVerIndex.of(m);
+        }
+
+
+
+
+    /** Test method for {@link org.tbull.util.SemVerIndex#latestCompatible(SemVer)}. */
+    @Test
+    public void testLatestCompatible() {
+        SemVerIndex<String> idx = sample();
+
+        assertEquals(v("1.5.0beta"), idx.latestCompatible(v("1.2.0")));
+        assertEquals(v("2.1.0"), idx.latestCompatible(v("2.0.0")));
+        assertNull(idx.latestCompatible(v("2.2.0")));
+        assertNull(idx.latestCompatible(v("3.0.0")));
+        assertEquals(v("0.9.0"), idx.latestCompatible(v("0.9.0")));
+        assertNull(idx.latestCompatible(v("0.8.0")));
+
+        // the same as filtering with compatibleForUse and taking the maximum
+        for (SemVer expected: new SemVer[] { v("1.0.0"), v("1.4.3"), v("1.5.0"), v("2.0.5"), v("0.9.0") }) {
+            SemVer best = null;
+            for (SemVer actual: idx.versions())
+                if (actual.compatibleForUse(expected) && (best == null || actual.compareTo(best) > 0)) best = actual;
+            assertEquals(best, idx.latestCompatible(expected));
+        }
+    }
+
+
+    /** Test method for {@link org.tbull.util.SemVerIndex#floor(SemVer)} and friends. */
+    @Test
+    public void testNavigation() {
+        SemVerIndex<String> idx = sample();
+
+        assertEquals(v("1.4.2"), idx.floor(v("1.4.2")));
+        assertEquals(v("1.4.2"), idx.floor(v("1.4.9")));
+        assertEquals(v("1.2.0"), idx.lower(v("1.4.2")));
+        assertEquals(v("1.4.2"), idx.ceiling(v("1.4.2")));
+        assertEquals(v("1.5.0beta"), idx.higher(v("1.4.2")));
+        assertNull(idx.floor(v("0.1.0")));
+        assertNull(idx.ceiling(v("3.0.0")));
+        assertEquals("1.4.2", idx.get(v("1.4.2")));
+
+        assertArrayEquals(new SemVer[] { v("1.2.0"), v("1.4.2"), v("1.5.0beta") },
+            idx.range(v("1.0.0"), false, v("2.0.0"), false).versions());
+        assertArrayEquals(new SemVer[] { v("1.0.0"), v("1.2.0"), v("1.4.2"), v("1.5.0beta"), v("2.0.0") },
+            idx.range(v("1.0.0"), true, v("2.0.0"), true).versions());
+        assertArrayEquals(new SemVer[] { v("1.2.0"), v("1.4.2") }, idx.range(SemVerRange.parse("~1.2 || 1.4")));
+        assertEquals(v("1.4.2"), idx.latest(SemVerRange.parse("^1.0.0 <1.5")));
+    }
+
+
+    /** Test method for {@link org.tbull.util.SemVerIndex#with(SemVer, Object)} and
+     *  {@link org.tbull.util.SemVerIndex#withAll(Map)}.
+     */
+    @Test
+    public void testCopyOnWrite() {
+        Random rnd = new Random();
+        SemVerIndex<Integer> idx = SemVerIndex.empty();
+        java.util.TreeMap<SemVer, Integer> ref = new java.util.TreeMap<SemVer, Integer>();
+
+        for (int i = 0; i < 500; i++) {
+            SemVer v = new SemVer(rnd.nextInt(5), rnd.nextInt(5), rnd.nextInt(5));
+            SemVerIndex<Integer> before = idx;
+            int size = before.size();
+
+            if (rnd.nextInt(4) == 0) {
+                idx = idx.without(v);
+                ref.remove(v);
+            } else if (rnd.nextInt(3) == 0) {
+                Map<SemVer, Integer> batch = new HashMap<SemVer, Integer>();
+                batch.put(v, Integer.valueOf(i));
+                batch.put(new SemVer(v.major, v.minor, v.patch + 1), Integer.valueOf(-i));
+                idx = idx.withAll(batch);
+                ref.putAll(batch);
+            } else {
+                idx = idx.with(v, Integer.valueOf(i));
+                ref.put(v, Integer.valueOf(i));
+            }
+
+            assertEquals(size, before.size());      // the old one stays as it was
+            assertArrayEquals(ref.keySet().toArray(), idx.versions());
+            for (int k = 0; k < idx.size(); k++) assertEquals(ref.get(idx.version(k)), idx.value(k));
+        }
+    }
+
+
+    /** Test method for {@link org.tbull.util.SemVerIndex.Shared}. */
+    @Test
+    public void testShared() throws Exception {
+        final SemVerIndex.Shared<String> shared = new SemVerIndex.Shared<String>();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+
+        for (int t = 0; t < 4; t++) {
+            final int major = t + 1;
+            threads.add(new Thread() {
+                public @Override void run() {
+                    try {
+                        for (int i = 0; i < 200; i++) {
+                            shared.put(new SemVer(major, i, 0), "x");
+                            SemVerIndex<String> snap = shared.snapshot();
+                            assertTrue(snap.contains(new SemVer(major, i, 0)));
+                        }
+                    } catch (Throwable e) {
+                        // an AssertionError would only end this thread
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            });
+        }
+        for (Thread t: threads) t.start();
+        for (Thread t: threads) t.join();
+        if (failure.get() != null) throw new AssertionError(failure.get());
+
+        assertEquals(800, shared.snapshot().size());
+        assertEquals(new SemVer(3, 199, 0), shared.snapshot().latestCompatible(new SemVer(3, 5, 0)));
+        SemVerIndex<String> snap = shared.snapshot();
+        shared.remove(new SemVer(3, 199, 0));
+        assertEquals(799, shared.snapshot().size());
+        assertSame(snap, snap.without(new SemVer(9, 9, 9)));
+    }
+
+}
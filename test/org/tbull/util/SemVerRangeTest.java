@@ -0,0 +1,169 @@
+package org.tbull.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ *
+ *
+ */
+public class SemVerRangeTest {
+
+    static SemVer[] versions;
+
+
+    @BeforeClass public static void setUpBeforeClass() throws Exception {
+        List<SemVer> all = new ArrayList<SemVer>();
+        for (int x = 0; x < 4; x++)
+            for (int y = 0; y < 4; y++)
+                for (int z = 0; z < 4; z++) {
+                    all.add(new SemVer(x, y, z));
+                    all.add(new SemVer(x, y, z, "alpha"));
+                }
+        versions = all.toArray(new SemVer[all.size()]);
+        Arrays.sort(versions);
+    }
+
+
+        static SemVer v(String s) {
+            return SemVer.parse(s);
+        }
+
+
+        /** Checks a range against the bounds it should be equivalent to, {@code null} meaning unbounded. */
+        static void check(String expr, String ge, String lt) {
+            check(SemVerRange.parse(expr), expr, ge, lt);
+        }
+
+
+        static void check(SemVerRange r, String expr, String ge, String lt) {
+            List<SemVer> expected = new ArrayList<SemVer>();
+
+            for (SemVer v: versions) {
+                boolean in = (ge == null || v.compareTo(v(ge)) >= 0) && (lt == null || v.compareTo(v(lt)) < 0);
+                assertEquals(expr + " " + v, in, r.matches(v));
+                if (in) expected.add(v);
+            }
+
+            assertArrayEquals(expected.toArray(), r.filter(versions));
+            assertEquals(expected.isEmpty() ? null : expected.get(expected.size() - 1), r.highest(versions));
+        }
+
+
+
+
+    /** Test method for {@link org.tbull.util.SemVerRange#matches(SemVer)}. */
+    @Test
+    public void testOperators() {
+        check(">=1.2.3", "1.2.3", null);
+        check(">1.2.3", "1.2.4alpha", null);
+        check("<1.2.3", null, "1.2.3");
+        check("<=1.2.3", null, "1.2.4alpha");
+        check("1.2.3", "1.2.3", "1.2.4alpha");
+        check("=1.2.3", "1.2.3", "1.2.4alpha");
+        check("1.2", "1.2.0", "1.3.0alpha");
+        check("1.2.x", "1.2.0", "1.3.0alpha");
+        check("^1.2.3", "1.2.3", "2.0.0alpha");
+        check("^0.2.3", "0.2.3", "0.3.0alpha");
+        check("^0.0.3", "0.0.3", "0.0.4alpha");
+        check("^0", "0.0.0", "1.0.0alpha");
+        check("~1.2.3", "1.2.3", "1.3.0alpha");
+        check("~1", "1.0.0", "2.0.0alpha");
+        check("*", null, null);
+        check("", null, null);
+        check(">= 1.1.0 < 2.1", "1.1.0", "2.1.0alpha");
+        check("1.1.0 - 2.1", "1.1.0", "2.2.0alpha");
+        check("^1.2.3alpha", "1.2.3alpha", "2.0.0alpha");
+    }
+
+
+    /** Test method for {@link org.tbull.util.SemVerRange#parse(CharSequence)}: alternatives get merged. */
+    @Test
+    public void testAlternatives() {
+        check("^1.0.0 || ^2.0.0alpha", "1.0.0", "3.0.0alpha");
+        check("^2.0.0alpha || ^1.0.0 || ~1.5", "1.0.0", "3.0.0alpha");
+        check(">=2.0.0 || *", null, null);
+        check("<1.0.0 || >=1.0.0", null, null);
+        // adjacent: ^1.0.0 ends right where >1 starts, just below all of 2.0.0
+        assertEquals(1, SemVerRange.parse("^1.0.0 || >1 <3 || 1.4.x").starts.length);
+
+        SemVerRange r = SemVerRange.parse("^0.1.0 || ^2.0.0 || 3.0.0");
+        assertEquals(3, r.starts.length);
+        assertTrue(r.matches(v("2.3.1")));
+        assertTrue(!r.matches(v("1.0.0")));
+        assertEquals(v("3.0.0"), r.highest(versions));
+        assertEquals(v("0.1.3"), SemVerRange.parse("^0.1.0 || 5.x").highest(versions));
+
+        assertTrue(SemVerRange.parse(">2.0.0 <1.0.0").isEmpty());
+        assertTrue(SemVerRange.parse("> *").isEmpty());
+        assertTrue(SemVerRange.parse("> * ^1.0.0").isEmpty());
+        assertTrue(SemVerRange.parse("< * || 2.x").matches(v("2.1.0")));
+    }
+
+
+    /** Test method for {@link org.tbull.util.SemVerRange#parse(CharSequence)}: comma separated comparators. */
+    @Test
+    public void testCommas() {
+        check(">=1.2.0, <1.5.0", "1.2.0", "1.5.0");
+        check("^1.2, <1.9", "1.2.0", "1.9.0");
+        check(">= 1.1.0 ,< 2.1", "1.1.0", "2.1.0alpha");
+        check(">=1.0.0,<2.0.0 || ^2", "1.0.0", "3.0.0alpha");
+    }
+
+
+    /** Test method for {@link org.tbull.util.SemVerRange#parseCargo(CharSequence)}. */
+    @Test
+    public void testCargo() {
+        check(SemVerRange.parseCargo("1.2.3"), "1.2.3", "1.2.3", "2.0.0alpha");
+        check(SemVerRange.parseCargo("0.2"), "0.2", "0.2.0", "0.3.0alpha");
+        check(SemVerRange.parseCargo("=1.2.3"), "=1.2.3", "1.2.3", "1.2.4alpha");
+        check(SemVerRange.parseCargo("1.2, <1.9"), "1.2, <1.9", "1.2.0", "1.9.0");
+        check(SemVerRange.parseCargo("*"), "*", null, null);
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalid() {
+        SemVerRange.parse(">=1.x.3");
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidOperator() {
+        SemVerRange.parse("=>1.0.0");
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidOperatorWildcard() {
+        SemVerRange.parse("=>*");
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidAfterEmpty() {
+        SemVerRange.parse("> * foo");
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidAfterEmptyBelow() {
+        SemVerRange.parse("< * foo");
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingComparator() {
+        SemVerRange.parse(">=1.0.0,, <2.0.0");
+    }
+
+}
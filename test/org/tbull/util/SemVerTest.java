@@ -3,9 +3,16 @@
  */
 package org.tbull.util;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.Arrays;
+import java.util.TreeSet;
+
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -43,7 +50,11 @@ public class SemVerTest {
             new VInfo("1", 1, 0, 0, null),
             new VInfo("1.4.2foo23", 1, 4, 2, "foo23"),
             new VInfo("1.4foo23", 1, 4, 0, "foo23"),
-            new VInfo("1foo23", 1, 0, 0, "foo23")
+            new VInfo("1foo23", 1, 0, 0, "foo23"),
+            new VInfo("1.4.2-foo", 1, 4, 2, "foo"),
+            new VInfo("1.4.2-foo.23.x-y", 1, 4, 2, "foo.23.x-y"),
+            new VInfo("1.4.2-0.3.7", 1, 4, 2, "0.3.7"),
+            new VInfo("1.4foo.1", 1, 4, 0, "foo.1")
         };
 
         static VInfo[] version_vstrings = {
@@ -69,8 +80,16 @@ public class SemVerTest {
             "-1.4.2",
             "1.-4.2",
             "1.4.-2",
-            "1.4.2-foo",
-            "1.4.2_foo"
+            "1.4.2_foo",
+            "1.4.2-",
+            "1.4.2-foo..23",
+            "1.4.2-foo.",
+            "1.4.2-01",
+            "1.4.2-foo.023",
+            "1.4.2+",
+            "1.4.2+foo+23",
+            "1.4.2+foo_23",
+            "1.4.2-foo+"
         };
 
 
@@ -139,7 +158,37 @@ public class SemVerTest {
      */
     @Test
     public void testCompareTo() {
-        fail("Not yet implemented");
+        // ascending, from the SemVer 2.0 spec and then some
+        String[] ordered = {
+            "1.0.0-2", "1.0.0-10", "1.0.0-alpha", "1.0.0-alpha.1", "1.0.0-alpha.2", "1.0.0-alpha.10",
+            "1.0.0-alpha.beta", "1.0.0-beta", "1.0.0-beta.2", "1.0.0-beta.11", "1.0.0-rc.1", "1.0.0",
+            "1.0.0+build.1", "1.0.0+build.2", "1.0.0+build.10", "1.0.1-alpha", "1.0.1"
+        };
+
+        for (int i = 0; i < ordered.length; i++)
+            for (int j = 0; j < ordered.length; j++) {
+                SemVer a = SemVer.parse(ordered[i]), b = SemVer.parse(ordered[j]);
+                assertEquals(ordered[i] + " <> " + ordered[j], Integer.signum(i - j), Integer.signum(a.compareTo(b)));
+                assertEquals(i == j, a.equals(b));
+            }
+
+        // build metadata has no precedence
+        SemVer a = SemVer.parse("1.0.0+build.1"), b = SemVer.parse("1.0.0+build.2");
+        assertEquals(0, a.comparePrecedence(b));
+        assertEquals(0, SemVer.PRECEDENCE.compare(a, SemVer.parse("1.0.0")));
+        assertTrue(a.compatibleForUse(SemVer.parse("1.0.0")));
+        assertTrue(SemVer.parse("0.1.0+b").compatibleForUse(SemVer.parse("0.1.0+a")));
+
+        // consistent with equals, even where identifiers compare as equal
+        SemVer zeros = SemVer.parse("1.0.0+001"), one = SemVer.parse("1.0.0+1");
+        assertFalse(zeros.equals(one));
+        assertEquals(-Integer.signum(zeros.compareTo(one)), Integer.signum(one.compareTo(zeros)));
+        assertTrue(zeros.compareTo(one) != 0);
+        assertEquals(2, new TreeSet<SemVer>(Arrays.asList(zeros, one)).size());
+
+        // the older form without a hyphen orders the same
+        assertEquals(0, SemVer.parse("1.0.0alpha.10").compareTo(SemVer.parse("1.0.0-alpha.10")));
+        assertTrue(SemVer.parse("1.0.0beta").compareTo(SemVer.parse("1.0.0alpha.10")) > 0);
     }
 
 
@@ -237,6 +286,11 @@ public class SemVerTest {
         assertTrue("vequals", vequals(SemVer.parse("v1.4.2foo23"), 1, 4, 2, "foo23"));
         assertTrue("vequals", vequals(SemVer.parse("v1.4foo23"), 1, 4, 0, "foo23"));
         assertTrue("vequals", vequals(SemVer.parse("v1foo23"), 1, 0, 0, "foo23"));
+        assertTrue("vequals", vequals(SemVer.parse("1.4.2-foo.23"), 1, 4, 2, "foo.23"));
+        assertTrue("vequals", vequals(SemVer.parse("1.4.2-foo23+b.001"), 1, 4, 2, "foo23"));
+        assertEquals("b.001", SemVer.parse("1.4.2-foo23+b.001").build);
+        assertEquals("b-2", SemVer.parse("1.4.2+b-2").build);
+        assertEquals(null, SemVer.parse("1.4.2+b-2").special);
 
         // strings that are not parsable as a version number
         for (String vs: non_version_strings)
@@ -246,6 +300,85 @@ public class SemVerTest {
 
 
 
+    /** Test method for {@link org.tbull.util.SemVer#parse(CharSequence, int, int)},
+     *  {@link org.tbull.util.SemVer#parse(char[], int, int)}, {@link org.tbull.util.SemVer#parse(byte[], int, int)}
+     *  and {@link org.tbull.util.SemVer#parse(java.nio.ByteBuffer)}.
+     *
+     *  Checks that all of these accept exactly what {@code semver_pattern} matches.
+     */
+    @Test
+    public void testParseSources() {
+        java.util.List<String> all = new java.util.ArrayList<String>();
+        for (VInfo vi: version_strings) all.add(vi.string);
+        for (VInfo vi: version_vstrings) all.add(vi.string);
+        for (String vs: non_version_strings) all.add(vs);
+        all.add("v");
+        all.add("1.4.2foo-23");
+        all.add("01.004.2");
+        all.add("1.4.2.5");
+        all.add("1.4.2\u00e4");
+        all.add("1.0.0-alpha+001");
+        all.add("1.0.0+20130313144700");
+        all.add("1.0.0-x.7.z.92");
+        all.add("1.0.0--");
+        all.add("1.0.0-0a");
+        all.add("1.0.0foo-");
+
+        for (String vs: all) {
+            boolean valid = SemVer.semver_pattern.matcher(vs).matches();
+            String padded = "[" + vs + "]";
+            byte[] bytes = padded.getBytes(java.nio.charset.StandardCharsets.ISO_8859_1);
+            java.nio.ByteBuffer direct = java.nio.ByteBuffer.allocateDirect(bytes.length);
+            direct.put(bytes).position(1);
+            direct.limit(bytes.length - 1);
+
+            assertEquals(vs, valid, !parse_throws(vs));
+            if (!valid) continue;
+
+            SemVer v = SemVer.parse(vs);
+            assertEquals(v, SemVer.parse(padded, 1, padded.length() - 1));
+            assertEquals(v, SemVer.parse(padded.toCharArray(), 1, vs.length()));
+            assertEquals(v, SemVer.parse(bytes, 1, vs.length()));
+            assertEquals(v, SemVer.parse(java.nio.ByteBuffer.wrap(bytes, 1, vs.length())));
+            assertEquals(v, SemVer.parse(direct));
+            assertEquals(1, direct.position());
+        }
+
+        assertEquals(Integer.MAX_VALUE, SemVer.parse("2147483647").major);
+        assertTrue(parse_throws("2147483648"));
+    }
+
+
+
+
+    /** Test method for {@link org.tbull.util.SemVer#valueOf(CharSequence)},
+     *  {@link org.tbull.util.SemVer#valueOf(int, int, int, String)} and {@link org.tbull.util.SemVer#intern()}.
+     */
+    @Test
+    public void testValueOf() {
+        String special = new String("foo23");
+        SemVer v = SemVer.valueOf("1.4.2foo23");
+
+        assertTrue(vequals(v, 1, 4, 2, "foo23"));
+        assertSame(v, SemVer.valueOf("v1.4.2foo23"));
+        assertSame(v, SemVer.valueOf(1, 4, 2, special));
+        assertSame(v, new SemVer(1, 4, 2, special).intern());
+        assertSame("foo23", v.special);
+
+        assertSame(SemVer.valueOf(1, 4, 2), SemVer.valueOf("1.4.2"));
+        assertNotSame(SemVer.valueOf(1, 4, 2), SemVer.valueOf(1, 4, 3));
+
+        // many more versions than there are hot slots: the others must still be canonical
+        for (int i = 0; i < 3 * SemVer.HOT_SIZE; i++)
+            assertSame(SemVer.valueOf(2, i, 0), SemVer.valueOf(2, i, 0, null));
+        assertSame(SemVer.valueOf(2, 5, 0), SemVer.valueOf("2.5"));
+        assertSame(SemVer.valueOf(1, 4, 2, "foo23", "b1"), SemVer.valueOf("1.4.2-foo23+b1"));
+        assertNotSame(v, SemVer.valueOf("1.4.2-foo23+b1"));
+    }
+
+
+
+
     /** Test method for {@link org.tbull.util.SemVer#toString()}.
      *
      *  Depends on the correctness of {@code equals()} and {@code parse()}.
@@ -261,6 +394,15 @@ public class SemVerTest {
             assertTrue(SemVer.parse(v.toString()).equals(v));
             assertTrue(SemVer.parse(v.toString()).equals(v));
         }
+
+        // the hyphen only where the special string needs it, so earlier strings stay the same
+        assertEquals("1.4.2foo23", SemVer.parse("1.4.2foo23").toString());
+        assertEquals("1.4.2foo23", SemVer.parse("1.4.2-foo23").toString());
+        assertEquals("1.4.2.0foo23", Version.parse("1.4.2-foo23").toString());
+        assertEquals("1.0.0alpha.1+b.7", new SemVer(1, 0, 0, "alpha.1", "b.7").toString());
+        assertEquals("1.0.0-2.a", new SemVer(1, 0, 0, "2.a").toString());
+        assertEquals("1.0.0--x+b", new SemVer(1, 0, 0, "-x", "b").toString());
+        assertEquals("v1.0.0rc-1", SemVer.parse("1.0.0-rc-1").toTagString());
     }
 
 
@@ -0,0 +1,104 @@
+package org.tbull.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+
+/**
+ *
+ *
+ */
+public class StringBuilderWriterTest {
+
+        /** Checks both writeTo() methods against String.getBytes(). */
+        static void check(String s) throws IOException {
+            byte[] expected = s.getBytes(StandardCharsets.UTF_8);
+            StringBuilderWriter w = new StringBuilderWriter();
+            w.write(s);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(expected.length, w.writeTo(out));
+            assertArrayEquals(expected, out.toByteArray());
+
+            out.reset();
+            assertEquals(expected.length, w.writeTo(Channels.newChannel(out)));
+            assertArrayEquals(expected, out.toByteArray());
+        }
+
+
+        static String repeat(char c, int n) {
+            StringBuilder sb = new StringBuilder(n);
+            for (int i = 0; i < n; i++) sb.append(c);
+            return sb.toString();
+        }
+
+
+
+
+    /** Test method for {@link org.tbull.util.StringBuilderWriter#writeTo(java.io.OutputStream)} with ASCII. */
+    @Test
+    public void testAscii() throws IOException {
+        check("");
+        check("Hello, world\n");
+        // several chunks
+        check(repeat('x', 20000));
+        // ASCII, then not, in the same chunk
+        check("abc\u00e4\u20acdef");
+    }
+
+
+    /** Test method for {@link org.tbull.util.StringBuilderWriter#writeTo(java.io.OutputStream)} with surrogate
+     *  pairs across the boundary of the 8192 char chunks.
+     */
+    @Test
+    public void testSurrogatePairs() throws IOException {
+        String pair = "\ud83d\ude00";
+        for (int k = 8189; k <= 8193; k++) {
+            check(repeat('a', k) + pair + repeat('\u00e9', 10));
+            check(repeat('\u00e9', k) + pair + pair + "z");
+        }
+    }
+
+
+    /** Test method for {@link org.tbull.util.StringBuilderWriter#writeTo(java.io.OutputStream)} with unpaired
+     *  surrogates, which are replaced like getBytes() does.
+     */
+    @Test
+    public void testLoneSurrogates() throws IOException {
+        check("a\ud83db");
+        check("a\ude00b");
+        check("\ude00\ud83d");
+        check(repeat('a', 8191) + "\ud83d");
+        check(repeat('a', 8191) + "\ud83dx" + repeat('b', 9000));
+        check(repeat('a', 8192) + "\ude00");
+    }
+
+
+    /** Test method for {@link org.tbull.util.StringBuilderWriter#writeTo(java.nio.channels.WritableByteChannel)}
+     *  with a non-blocking channel.
+     */
+    @Test
+    public void testNonBlocking() throws IOException {
+        Pipe pipe = Pipe.open();
+        try {
+            pipe.sink().configureBlocking(false);
+            new StringBuilderWriter().append("x").writeTo(pipe.sink());
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        } finally {
+            pipe.sink().close();
+            pipe.source().close();
+        }
+    }
+
+}
@@ -0,0 +1,161 @@
+package org.tbull.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ *
+ *
+ */
+public class VersionCodecTest {
+
+    static final String[] SPECIALS = { null, "alpha", "alpha.2", "alpha.10", "beta", "rc.1" };
+    static final String[] BUILDS = { null, null, null, "b.1", "20130313" };
+
+    static Random rnd;
+
+
+    @BeforeClass public static void setUpBeforeClass() throws Exception {
+        rnd = new Random();
+    }
+
+
+        static SemVer[] random_semvers(int n) {
+            SemVer[] a = new SemVer[n];
+            for (int i = 0; i < n; i++)
+                a[i] = new SemVer(rnd.nextInt(3), rnd.nextInt(20), rnd.nextInt(1000),
+                    SPECIALS[rnd.nextInt(SPECIALS.length)], BUILDS[rnd.nextInt(BUILDS.length)]);
+            return a;
+        }
+
+
+        static byte[] encode(SemVer[] versions) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            VersionCodec.write(new DataOutputStream(bytes), versions);
+            return bytes.toByteArray();
+        }
+
+
+
+
+    /** Test method for {@link org.tbull.util.VersionCodec#write(java.io.DataOutput, SemVer[])}, unsorted and
+     *  sorted.
+     */
+    @Test
+    public void testSemVers() throws IOException {
+        SemVer[] versions = random_semvers(5000);
+        byte[] plain = encode(versions);
+        assertArrayEquals(versions, VersionCodec.readSemVers(ByteBuffer.wrap(plain)));
+
+        Arrays.sort(versions);
+        byte[] delta = encode(versions);
+        ByteBuffer in = ByteBuffer.wrap(delta);
+        assertArrayEquals(versions, VersionCodec.readSemVers(in));
+        assertEquals(delta.length, in.position());
+        assertTrue(delta.length + " < " + plain.length, delta.length < plain.length);
+    }
+
+
+    /** Test method for {@link org.tbull.util.VersionCodec.Encoder#forVersions(ByteBuffer,
+     *  PackedVersions.Dictionary, boolean)} and {@link org.tbull.util.VersionCodec.Decoder#nextPacked()}.
+     */
+    @Test
+    public void testVersionsPacked() throws IOException {
+        Version[] versions = new Version[3000];
+        for (int i = 0; i < versions.length; i++)
+            versions[i] = new Version(rnd.nextInt(3), rnd.nextInt(3), rnd.nextInt(300), rnd.nextInt(3),
+                rnd.nextInt(4) == 0 ? "rc" + rnd.nextInt(3) : null);
+        Arrays.sort(versions);
+        PackedVersions.Dictionary dict = PackedVersions.Dictionary.forVersions(Arrays.asList(versions));
+
+        ByteBuffer buf = ByteBuffer.allocateDirect(1 << 16);
+        VersionCodec.Encoder e = VersionCodec.Encoder.forVersions(buf, dict, true);
+        for (Version v: versions) e.write(v);
+        e.finish();
+        buf.flip();
+        // consecutive versions mostly differ in the revision by a little: one byte for that, and the patch
+        // level and the rank of the special string after it, where plain encoding takes at least five bytes
+        assertTrue(buf.limit() + " bytes", buf.limit() < 3 * versions.length);
+
+        VersionCodec.Decoder d = new VersionCodec.Decoder(buf.duplicate());
+        long[] packed = new long[versions.length + 1];
+        assertEquals(versions.length, d.read(packed, 1, packed.length));
+        assertArrayEquals(PackedVersions.pack(versions, dict), Arrays.copyOfRange(packed, 1, packed.length));
+
+        assertArrayEquals(versions, VersionCodec.readVersions(buf));
+    }
+
+
+    /** Test method for {@link org.tbull.util.VersionCodec.Decoder#map(File)}. */
+    @Test
+    public void testMapped() throws IOException {
+        SemVer[] versions = random_semvers(1000);
+        Arrays.sort(versions);
+        File file = File.createTempFile("versions", ".bin");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            out.write(encode(versions));
+            out.close();
+
+            VersionCodec.Decoder d = VersionCodec.Decoder.map(file);
+            assertTrue(d.isSemVer());
+            for (SemVer v: versions) assertEquals(v, d.nextSemVer());
+            assertTrue(!d.hasNext());
+        } finally {
+            file.delete();
+        }
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotAscending() throws IOException {
+        PackedVersions.Dictionary dict = PackedVersions.Dictionary.ofSemVerSpecials(Arrays.<String>asList());
+        VersionCodec.Encoder e = VersionCodec.Encoder.forSemVers(ByteBuffer.allocate(100), dict, true);
+        e.write(new SemVer(1, 2, 0));
+        e.write(new SemVer(1, 1, 0));
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongKind() throws IOException {
+        VersionCodec.readVersions(ByteBuffer.wrap(encode(random_semvers(10))));
+    }
+
+
+    /** A rank that decodes to a negative number. */
+    @Test(expected = IllegalArgumentException.class)
+    public void testCorruptNumber() {
+        byte[] b = {
+            'V', 'C', 1, 'S', 0,
+            0,                                                          // no special strings
+            1 << 4, 0, 0,                                               // 1.0.0
+            (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80,
+            (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 1,      // rank 1 << 63
+            7 << 1,
+        };
+        VersionCodec.readSemVers(ByteBuffer.wrap(b));
+    }
+
+
+    /** A special string longer than the rest of the stream. */
+    @Test(expected = IllegalArgumentException.class)
+    public void testCorruptString() {
+        byte[] b = { 'V', 'C', 1, 'S', 0, 1, 100, 'a', 'b' };
+        VersionCodec.readSemVers(ByteBuffer.wrap(b));
+    }
+
+}
@@ -0,0 +1,151 @@
+package org.tbull.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+
+/**
+ *
+ *
+ */
+public class VersionListReaderTest {
+
+    static final String PLAIN = "1.0\n\n  # a comment\n2.1.3-rc1  \r\n\t3\r!another\r4.5.6.7";
+
+    static final String PROPERTIES = "# lib-version\nversion = 0.0.1\nversionless = 9\nother=2.0\n"
+        + "Implementation-Version: 1.2.3\nversion:0.0.2\nversion 0.0.3\n";
+
+
+        /** A reader that hands out one character at a time, to get the line ends across buffer fills. */
+        static Reader trickle(final String s) {
+            return new StringReader(s) {
+                public @Override int read(char[] cbuf, int off, int len) throws IOException {
+                    return super.read(cbuf, off, Math.min(len, 1));
+                }
+            };
+        }
+
+
+        static List<Version> versions(String... vs) {
+            List<Version> list = new ArrayList<Version>();
+            for (String v: vs) list.add(Version.parse(v));
+            return list;
+        }
+
+
+
+
+    /** Test method for {@link org.tbull.util.VersionListReader#next()} with plain lists. */
+    @Test
+    public void testPlain() throws IOException {
+        List<Version> expected = versions("1.0", "2.1.3-rc1", "3", "4.5.6.7");
+
+        assertEquals(expected, new VersionListReader(new StringReader(PLAIN)).readAll());
+        assertEquals(expected, new VersionListReader(trickle(PLAIN)).readAll());
+
+        VersionListReader r = new VersionListReader(new StringReader(PLAIN));
+        assertTrue(r.next());
+        assertTrue(r.next());
+        assertEquals("2.1.3-rc1", r.text());
+        assertEquals(4, r.lineNumber());
+    }
+
+
+    /** Test method for {@link org.tbull.util.VersionListReader#close()}. */
+    @Test
+    public void testClose() throws IOException {
+        final boolean[] closed = { false };
+        Reader in = new StringReader(PLAIN) {
+            public @Override void close() {
+                closed[0] = true;
+                super.close();
+            }
+        };
+
+        VersionListReader r = new VersionListReader(in);
+        try {
+            assertEquals(4, r.readAll().size());
+            assertFalse(r.next());
+        } finally {
+            r.close();
+        }
+        assertTrue(closed[0]);
+    }
+
+
+    /** Test method for {@link org.tbull.util.VersionListReader#next()} with property lists. */
+    @Test
+    public void testProperties() throws IOException {
+        assertEquals(versions("0.0.1", "0.0.2", "0.0.3"),
+            new VersionListReader(new StringReader(PROPERTIES), "version").readAll());
+        assertEquals(versions("1.2.3"),
+            new VersionListReader(trickle(PROPERTIES), "Implementation-Version").readAll());
+    }
+
+
+    /** Test method for {@link org.tbull.util.VersionListReader#map(File, String)} and the packed encoding. */
+    @Test
+    public void testMappedAndPacked() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        List<Version> expected = new ArrayList<Version>();
+        for (int i = 0; i < 5000; i++) {
+            Version v = new Version(i % 7, i % 100, i % 13, i % 3, i % 5 == 0 ? "rc" + (i % 3) : null);
+            expected.add(v);
+            sb.append(i % 2 == 0 ? "v" : " ").append(v.toString()).append(i % 3 == 0 ? "\r\n" : "\n");
+        }
+        PackedVersions.Dictionary dict = PackedVersions.Dictionary.forVersions(expected);
+
+        File file = File.createTempFile("versions", ".txt");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            out.write(sb.toString().getBytes(StandardCharsets.US_ASCII));
+            out.close();
+
+            VersionListReader r = VersionListReader.map(file, null);
+            assertEquals(expected, r.readAll());
+
+            long[] packed = new long[expected.size() + 10];
+            r = VersionListReader.map(file, null);
+            assertEquals(expected.size(), r.read(packed, 10, packed.length, dict));
+            assertArrayEquals(PackedVersions.pack(expected.toArray(new Version[0]), dict),
+                Arrays.copyOfRange(packed, 10, packed.length));
+
+            Version[] some = new Version[100];
+            r = new VersionListReader(new StringReader(sb.toString()));
+            assertEquals(100, r.read(some, 0, 100));
+            assertEquals(expected.subList(0, 100), Arrays.asList(some));
+        } finally {
+            file.delete();
+        }
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalid() throws IOException {
+        VersionListReader r = new VersionListReader(new StringReader("1.0\n1.x\n"));
+        r.readAll();
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotInDictionary() throws IOException {
+        VersionListReader r = new VersionListReader(new StringReader("1.0-beta\n"));
+        r.next();
+        r.packed(PackedVersions.Dictionary.ofVersionSpecials(Arrays.asList("alpha")));
+    }
+
+}
@@ -0,0 +1,103 @@
+package org.tbull.util;
+
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ *
+ *
+ */
+public class VersionSortTest {
+
+    static final String[] SPECIALS = { null, null, "alpha", "alpha.2", "alpha.10", "beta", "1", "rc.1", "rc.1.1" };
+    static final String[] BUILDS = { null, null, null, "b.2", "b.10", "001" };
+
+    static Random rnd;
+
+
+    @BeforeClass public static void setUpBeforeClass() throws Exception {
+        rnd = new Random();
+    }
+
+
+        /** Mostly small numbers, some large ones, so that some but not all bytes vary. */
+        static int number() {
+            return rnd.nextInt(8) == 0 ? rnd.nextInt(Integer.MAX_VALUE) : rnd.nextInt(20);
+        }
+
+
+        static SemVer[] semvers(int n) {
+            SemVer[] a = new SemVer[n];
+            for (int i = 0; i < n; i++)
+                a[i] = new SemVer(rnd.nextInt(3), number(), number(),
+                    SPECIALS[rnd.nextInt(SPECIALS.length)], BUILDS[rnd.nextInt(BUILDS.length)]);
+            return a;
+        }
+
+
+        /** Checks that a sort gives the same order as the (stable) {@code Arrays.sort}, equal elements included. */
+        static void check(Object[] sorted, Object[] expected) {
+            for (int i = 0; i < expected.length; i++) assertSame("" + i, expected[i], sorted[i]);
+        }
+
+
+
+
+    /** Test method for {@link org.tbull.util.VersionSort#sort(SemVer[])}. */
+    @Test
+    public void testSemVers() {
+        for (int n: new int[] { 0, 1, 100, 5000, 50000 }) {
+            SemVer[] a = semvers(n);
+            SemVer[] expected = a.clone();
+            Arrays.sort(expected);
+            VersionSort.sort(a);
+            check(a, expected);
+        }
+    }
+
+
+    /** Test method for {@link org.tbull.util.VersionSort#parallelSort(SemVer[])}. */
+    @Test
+    public void testSemVersParallel() {
+        SemVer[] a = semvers(3 * VersionSort.PARALLEL_THRESHOLD);
+        SemVer[] expected = a.clone();
+        Arrays.sort(expected);
+        VersionSort.parallelSort(a);
+        check(a, expected);
+
+        // all the same but the least significant byte
+        a = new SemVer[VersionSort.PARALLEL_THRESHOLD];
+        for (int i = 0; i < a.length; i++) a[i] = new SemVer(1, 2, rnd.nextInt(256));
+        expected = a.clone();
+        Arrays.sort(expected);
+        VersionSort.parallelSort(a);
+        check(a, expected);
+    }
+
+
+    /** Test method for {@link org.tbull.util.VersionSort#sort(Version[])} and
+     *  {@link org.tbull.util.VersionSort#parallelSort(Version[])}.
+     */
+    @Test
+    public void testVersions() {
+        Version[] a = new Version[2 * VersionSort.PARALLEL_THRESHOLD];
+        for (int i = 0; i < a.length; i++)
+            a[i] = new Version(number(), number(), number(), number(),
+                rnd.nextInt(3) == 0 ? "rc" + rnd.nextInt(12) : null);
+        Version[] expected = a.clone();
+        Arrays.sort(expected);
+
+        Version[] b = a.clone();
+        VersionSort.sort(b);
+        check(b, expected);
+        VersionSort.parallelSort(a);
+        check(a, expected);
+    }
+
+}
@@ -0,0 +1,62 @@
+package org.tbull.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+
+/**
+ *
+ *
+ */
+public class VersionTest {
+
+        static boolean parse_throws(String vstring) {
+            try {
+                Version.parse(vstring);
+            } catch (IllegalArgumentException e) {
+                return true;
+            }
+
+            return false;
+        }
+
+
+
+
+    /** Test method for {@link org.tbull.util.Version#parse(CharSequence)} and its overloads.
+     *
+     *  Checks that all of these accept exactly what {@code version_pattern} matches.
+     */
+    @Test
+    public void testParse() {
+        assertEquals(new Version(1, 4, 2, 7, "foo23"), Version.parse("v1.4.2.7-foo23"));
+        assertEquals(new Version(1, 4, 0, 0, "foo23"), Version.parse("1.4foo23"));
+        assertEquals(new Version(1, 0, 0, 0, null), Version.parse("1"));
+
+        for (String vs: Arrays.asList("1.4.2.7", "1.4.2", "1.4", "1", "v1.4.2.7-rc1", "1.4.2rc-1", "1.4.2-",
+                "", "v", "1.", "1.4.2.7.", "1.4.2.7.5", "1.4.2.7rc", "1.4--rc", "1.4-1rc", "1.a", "-1", "1.4rc_1",
+                "01.004", "2147483647", "1.4.2\u00e4")) {
+            boolean valid = Version.version_pattern.matcher(vs).matches();
+            assertEquals(vs, valid, !parse_throws(vs));
+            if (!valid) continue;
+
+            Version v = Version.parse(vs);
+            String padded = "[" + vs + "]";
+            byte[] bytes = padded.getBytes(StandardCharsets.ISO_8859_1);
+            assertEquals(v, Version.parse(padded, 1, padded.length() - 1));
+            assertEquals(v, Version.parse(padded.toCharArray(), 1, vs.length()));
+            assertEquals(v, Version.parse(bytes, 1, vs.length()));
+            assertEquals(v, Version.parse(ByteBuffer.wrap(bytes, 1, vs.length())));
+        }
+
+        // matches, but does not fit into an int
+        assertTrue(parse_throws("2147483648"));
+    }
+
+}
@@ -0,0 +1,335 @@
+package org.tbull.util.dev;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+
+/**
+ *
+ *
+ */
+public class DataDumperTest {
+
+    enum Foonum { ALPHA, BETA, GAMMA }
+
+
+        static class SelfDumper implements DataDumpable {
+            final int lines;
+
+            SelfDumper(int lines) {
+                this.lines = lines;
+            }
+
+            public @Override IndentableLineBuffer dumpData() {
+                IndentableLineBuffer lb = new IndentableLineBuffer();
+                for (int i = 0; i < lines; i++) lb.addLine(i, "line " + i);
+                return lb.setBaseIndentLevel(lines > 2 ? 1 : 0);
+            }
+        }
+
+
+        static class Base implements Runnable {
+            public @Override void run() { }
+            public @Override String toString() { return "base"; }
+        }
+
+        static class Sub extends Base { }
+
+
+        static DataDumpHandler<Object> handler(final String text) {
+            return new DataDumpHandler<Object>() {
+                public @Override IndentableLineBuffer dumpData(Object o) {
+                    return text == null ? null : new IndentableLineBuffer(text).addLine(1, "of " + o);
+                }
+            };
+        }
+
+
+        /** A structure like the one of t_DD_0, with everything nested in everything. */
+        static List<Object> sample() {
+            List<Object> l = new ArrayList<Object>();
+            l.add(new int[] { 1, 1024, -3 });
+            l.add(new double[] { 1.5, 1e300 });
+            l.add(new char[] { 'a', 'b' });
+            l.add(new boolean[0]);
+            l.add(new SelfDumper(3));
+            l.add(new SelfDumper(0));
+            l.add(Integer.valueOf(-13));
+            l.add(new String[] { "x", null });
+            l.add("Just a string");
+            l.add(new StringBuilder("A string builder"));
+            l.add(Foonum.BETA);
+            l.add(null);
+
+            Map<Object, Object> m = new LinkedHashMap<Object, Object>();
+            m.put("Huhu", Collections.EMPTY_SET);
+            m.put(Foonum.GAMMA, Arrays.asList("a", new SelfDumper(4), new Object[] { 1L, 2.0f }));
+            m.put(Long.valueOf(7), new LinkedHashSet<Object>(Arrays.asList("p", "q")));
+            m.put(Arrays.asList(1, 2), new SelfDumper(2));
+            l.add(m);
+
+            EnumMap<Foonum, Object> em = new EnumMap<Foonum, Object>(Foonum.class);
+            em.put(Foonum.ALPHA, "String");
+            em.put(Foonum.BETA, m);
+            em.put(Foonum.GAMMA, new byte[] { 1, -1 });
+            l.add(em);
+            return l;
+        }
+
+
+
+
+    /** Test method for {@link org.tbull.util.dev.DataDumper#dump(Object...)}. */
+    @Test
+    public void testDumpLikeLineBuffers() {
+        List<Object> l = sample();
+        assertEquals(DataDumper.dump_Object(l).toString(), DataDumper.dump(l));
+
+        String expected = DataDumper.dump_Object(l).toString() + DataDumper.dump_Object("x").toString();
+        assertEquals(expected, DataDumper.dump(l, "x"));
+        assertNull(DataDumper.dump());
+    }
+
+
+    /** Test method for {@link org.tbull.util.dev.DataDumper#dumpTo(Appendable, Object...)}. */
+    @Test
+    public void testDumpTo() throws Exception {
+        StringWriter w = new StringWriter();
+        DataDumper.dumpTo(w, sample());
+        assertEquals(DataDumper.dump(sample()), w.toString());
+
+        StringBuilder sb = new StringBuilder();
+        new DataDumpWriter(sb).setIndentation("\t").setLineSeparator("\n").dump(Arrays.asList(1, "a"));
+        assertEquals("Arrays$ArrayList(2) = [\n\tInteger = 1,\n\t\"a\",\n]\n".replace("Arrays$ArrayList",
+            DataDumper.getPrettyClassName(Arrays.asList())), sb.toString());
+    }
+
+
+
+    /** Test method for {@link org.tbull.util.dev.DataDumpWriter}, dumping cycles. */
+    @Test
+    public void testCycles() throws Exception {
+        List<Object> l = new ArrayList<Object>();
+        Map<Object, Object> m = new LinkedHashMap<Object, Object>();
+        Object[] a = { l, null };
+        l.add(l);
+        l.add(m);
+        m.put("list", l);
+        m.put("array", a);
+        a[1] = a;
+
+        StringBuilder sb = new StringBuilder();
+        new DataDumpWriter(sb).setLineSeparator("\n").dump(l);
+        assertEquals(
+            "java.util.ArrayList(2) = [\n" +
+            "    <back-reference to java.util.ArrayList, 1 level up>,\n" +
+            "    java.util.LinkedHashMap(2) = {\n" +
+            "        \"list\" => <back-reference to java.util.ArrayList, 2 levels up>,\n" +
+            "        \"array\" => Object[2] = [\n" +
+            "            <back-reference to java.util.ArrayList, 3 levels up>,\n" +
+            "            <back-reference to Object[], 1 level up>,\n" +
+            "        ],\n" +
+            "    },\n" +
+            "]\n", sb.toString());
+
+        // shared, but not circular
+        List<Object> shared = Arrays.<Object>asList("s");
+        sb.setLength(0);
+        new DataDumpWriter(sb).setLineSeparator("\n").dump(Arrays.asList(shared, shared));
+        assertEquals(2, sb.toString().split("\"s\"", -1).length - 1);
+    }
+
+
+    /** Test method for {@link org.tbull.util.dev.DataDumpWriter}, with limits. */
+    @Test
+    public void testLimits() throws Exception {
+        List<Object> inner = new ArrayList<Object>();
+        for (int i = 0; i < 10; i++) inner.add(Integer.valueOf(i));
+        List<Object> l = Arrays.<Object>asList(inner, new int[] { 1, 2, 3, 4 }, Collections.EMPTY_LIST);
+        String name = DataDumper.getPrettyClassName(l);
+
+        StringBuilder sb = new StringBuilder();
+        new DataDumpWriter(sb).setLineSeparator("\n").setMaxDepth(1).setMaxElements(3).dump(l);
+        assertEquals(
+            name + "(3) = [\n" +
+            "    java.util.ArrayList(10) = [<10 elided>],\n" +
+            "    int[4] = [1, 2, 3, <1 more elided>],\n" +
+            "    java.util.Collections$EmptyList(0) = [],\n" +
+            "]\n", sb.toString());
+
+        sb.setLength(0);
+        new DataDumpWriter(sb).setLineSeparator("\n").setMaxElements(2).dump(inner);
+        assertEquals("java.util.ArrayList(10) = [\n    Integer = 0,\n    Integer = 1,\n    <8 more elided>\n]\n",
+            sb.toString());
+
+        sb.setLength(0);
+        new DataDumpWriter(sb).setLineSeparator("\n").setMaxDepth(0).dump(inner);
+        assertEquals("java.util.ArrayList(10) = [<10 elided>]\n", sb.toString());
+
+        // truncated within the second element of inner, so the rest of it, and of l, is left out
+        sb.setLength(0);
+        int budget = (name + "(3) = [" + "    java.util.ArrayList(10) = [" + "        Integer = 0,").length() + 15;
+        new DataDumpWriter(sb).setLineSeparator("\n").setMaxChars(budget).dump(l);
+        assertEquals(
+            name + "(3) = [\n" +
+            "    java.util.ArrayList(10) = [\n" +
+            "        Integer = 0,\n" +
+            "        Integer\n" +
+            "<output truncated at " + budget + " characters, 10 elements elided>\n", sb.toString());
+
+        // dumps of DataDumpables are within the budget, too
+        sb.setLength(0);
+        new DataDumpWriter(sb).setLineSeparator("\n").setMaxChars(20).dump(new SelfDumper(3));
+        assertEquals("    line 0\n        li\n<output truncated at 20 characters, 0 elements elided>\n", sb.toString());
+
+        sb.setLength(0);
+        new DataDumpWriter(sb).setLineSeparator("\n").setMaxChars(40)
+            .dump(Arrays.<Object>asList(new SelfDumper(3), new SelfDumper(3), new SelfDumper(3)));
+        String out = sb.toString(), dumped = out.substring(0, out.indexOf("<output truncated"));
+        assertEquals(40, dumped.replace("\n", "").length());
+        assertTrue(out.endsWith("<output truncated at 40 characters, 2 elements elided>\n"));
+    }
+
+
+
+    /** Test method for {@link org.tbull.util.dev.DataDumpWriter#setSample(int)}. */
+    @Test
+    public void testSample() throws Exception {
+        List<Object> l = new LinkedList<Object>();
+        Map<Object, Object> m = new TreeMap<Object, Object>();
+        for (int i = 0; i < 10; i++) {
+            l.add(Integer.valueOf(i));
+            m.put(Integer.valueOf(i), "v" + i);
+        }
+
+        StringBuilder sb = new StringBuilder();
+        DataDumpWriter w = new DataDumpWriter(sb).setLineSeparator("\n").setSample(2);
+        w.dump(l);
+        assertEquals("java.util.LinkedList(10) = [\n    Integer = 0,\n    Integer = 1,\n    <6 elided>\n"
+            + "    Integer = 8,\n    Integer = 9,\n]\n", sb.toString());
+
+        sb.setLength(0);
+        w.dump(m);
+        assertEquals("java.util.TreeMap(10) = {\n    Integer = 0 => \"v0\",\n    Integer = 1 => \"v1\",\n"
+            + "    <6 elided>\n    Integer = 8 => \"v8\",\n    Integer = 9 => \"v9\",\n}\n", sb.toString());
+
+        // sets without a way to their end are walked through
+        sb.setLength(0);
+        w.dump(new LinkedHashSet<Object>(l));
+        assertTrue(sb.toString().endsWith("    <6 elided>\n    Integer = 8,\n    Integer = 9,\n)\n"));
+
+        // small containers are shown whole, and the maximum still applies
+        sb.setLength(0);
+        w.dump(new int[] { 1, 2, 3, 4 });
+        assertEquals("int[4] = [1, 2, 3, 4]\n", sb.toString());
+        sb.setLength(0);
+        w.setMaxElements(3).dump(new int[] { 1, 2, 3, 4, 5 });
+        assertEquals("int[5] = [1, 2, <2 elided>, 5]\n", sb.toString());
+
+        // huge arrays cost nothing
+        int[] huge = new int[10000000];
+        huge[huge.length - 1] = 7;
+        sb.setLength(0);
+        long t = System.nanoTime();
+        new DataDumpWriter(sb).setLineSeparator("\n").setSample(3).dump(huge);
+        t = System.nanoTime() - t;
+        assertEquals("int[10000000] = [0, 0, 0, <9999994 elided>, 0, 0, 7]\n", sb.toString());
+        assertTrue(t + " ns", t < 100000000L);
+    }
+
+
+    /** Test method for {@link org.tbull.util.dev.DataDumpWriter#setHexThreshold(int)}. */
+    @Test
+    public void testHex() throws Exception {
+        byte[] ba = new byte[40];
+        byte[] hello = "Hello, world\n".getBytes("US-ASCII");
+        System.arraycopy(hello, 0, ba, 0, hello.length);
+        ba[39] = (byte) 0xff;
+
+        StringBuilder sb = new StringBuilder();
+        new DataDumpWriter(sb).setLineSeparator("\n").setHexThreshold(16).dump(ba);
+        assertEquals(
+            "byte[40] = [\n" +
+            "    00000000  48 65 6c 6c 6f 2c 20 77  6f 72 6c 64 0a 00 00 00  |Hello, world....|\n" +
+            "    00000010  00 00 00 00 00 00 00 00  00 00 00 00 00 00 00 00  |................|\n" +
+            "    00000020  00 00 00 00 00 00 00 ff                           |........|\n" +
+            "]\n", sb.toString());
+
+        sb.setLength(0);
+        new DataDumpWriter(sb).setLineSeparator("\n").setHexThreshold(16).setSample(1).dump(ba);
+        assertEquals(
+            "byte[40] = [\n" +
+            "    00000000  48 65 6c 6c 6f 2c 20 77  6f 72 6c 64 0a 00 00 00  |Hello, world....|\n" +
+            "    <16 bytes elided>\n" +
+            "    00000020  00 00 00 00 00 00 00 ff                           |........|\n" +
+            "]\n", sb.toString());
+
+        // short ones as ever
+        sb.setLength(0);
+        new DataDumpWriter(sb).setLineSeparator("\n").setHexThreshold(16).dump(new byte[] { 1, -1 });
+        assertEquals("byte[2] = [1, -1]\n", sb.toString());
+
+        // off by default, so long ones come out like from dump_Object()
+        byte[] big = new byte[100];
+        big[99] = 7;
+        assertEquals(DataDumper.dump_Object(big).toString(), DataDumper.dump(big));
+        assertTrue(DataDumper.dump(big).startsWith("byte[100] = [0, 0, "));
+    }
+
+
+
+    /** Test method for {@link org.tbull.util.dev.DataDumper#register(Class, DataDumpHandler)}. */
+    @Test
+    public void testRegister() throws Exception {
+        String nl = System.getProperty("line.separator");
+        List<Object> l = Arrays.<Object>asList(new Sub(), "x");
+        String builtin = DataDumper.dump(new Sub());
+        assertEquals("org.tbull.util.dev.DataDumperTest$Sub = base" + nl, builtin);
+
+        try {
+            DataDumper.register(Runnable.class, handler("runnable"));
+            assertEquals("runnable" + nl + "    of base" + nl, DataDumper.dump(new Sub()));
+
+            // the superclass is nearer than the interface
+            DataDumper.register(Base.class, handler("base"));
+            assertEquals("base" + nl + "    of base" + nl, DataDumper.dump(new Sub()));
+            assertEquals(DataDumper.dump_Object(l).toString(), DataDumper.dump(l));
+
+            // declined
+            DataDumper.register(Sub.class, handler(null));
+            assertEquals(builtin, DataDumper.dump(new Sub()));
+            DataDumper.unregister(Sub.class);
+
+            // handlers win over the built-in rules
+            DataDumper.register(String.class, handler("string"));
+            assertEquals("string" + nl + "    of x" + nl, DataDumper.dump("x"));
+            DataDumper.unregister(String.class);
+            assertEquals("\"x\"" + nl, DataDumper.dump("x"));
+
+            DataDumper.unregister(Base.class);
+            assertEquals("runnable" + nl + "    of base" + nl, DataDumper.dump(new Sub()));
+        } finally {
+            DataDumper.unregister(Runnable.class);
+            DataDumper.unregister(Base.class);
+            DataDumper.unregister(Sub.class);
+            DataDumper.unregister(String.class);
+        }
+        assertEquals(builtin, DataDumper.dump(new Sub()));
+    }
+
+}
@@ -0,0 +1,152 @@
+package org.tbull.util.dev;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.tbull.util.Grepper;
+
+
+/**
+ *
+ *
+ */
+public class ObjectDumperTest {
+
+        static class Base {
+            static int instances;
+            protected long id = 1L << 40;
+            transient char tag = 'x';
+        }
+
+        static class Node extends Base {
+            private int weight = -7;
+            boolean leaf;
+            double score = 0.5;
+            String name;
+            Node parent;
+            final List<Node> children = new ArrayList<Node>();
+
+            Node(String name) {
+                this.name = name;
+            }
+
+            Node add(Node child) {
+                child.parent = this;
+                children.add(child);
+                return this;
+            }
+        }
+
+        static class Empty { }
+
+
+        static final String NL = "\n";
+
+        static String dump(ObjectDumper od, Object o) throws Exception {
+            StringBuilder sb = new StringBuilder();
+            new DataDumpWriter(sb).setLineSeparator(NL).setObjectDumper(od).dump(o);
+            return sb.toString();
+        }
+
+
+
+
+    /** Test method for {@link org.tbull.util.dev.ObjectDumper#dumpTo(Appendable, Object)}. */
+    @Test
+    public void testDump() throws Exception {
+        Node root = new Node("root").add(new Node("leaf"));
+        String node = "org.tbull.util.dev.ObjectDumperTest$Node";
+
+        assertEquals(
+            node + " = {" + NL +
+            "    id = 1099511627776," + NL +
+            "    tag = x," + NL +
+            "    weight = -7," + NL +
+            "    leaf = false," + NL +
+            "    score = 0.5," + NL +
+            "    name = \"root\"," + NL +
+            "    parent = null," + NL +
+            "    children = java.util.ArrayList(1) = [" + NL +
+            "        " + node + " = {" + NL +
+            "            id = 1099511627776," + NL +
+            "            tag = x," + NL +
+            "            weight = -7," + NL +
+            "            leaf = false," + NL +
+            "            score = 0.5," + NL +
+            "            name = \"leaf\"," + NL +
+            "            parent = <back-reference to " + node + ", 3 levels up>," + NL +
+            "            children = java.util.ArrayList(0) = [" + NL +
+            "            ]," + NL +
+            "        }," + NL +
+            "    ]," + NL +
+            "}" + NL, dump(new ObjectDumper(), root));
+
+        // JDK classes and classes without fields are shown as before
+        Object o = new Empty();
+        assertEquals(DataDumper.dump(o), new ObjectDumper().dump(o));
+        StringBuilder sb = new StringBuilder("sb");
+        assertEquals(DataDumper.dump(sb), new ObjectDumper().dump(sb));
+
+        // without an object dumper, toString() as ever
+        assertEquals(DataDumper.dump(root), new DataDumpWriter(new StringBuilder()).dump(root).out.toString());
+    }
+
+
+    /** Test method for {@link org.tbull.util.dev.ObjectDumper#include(Grepper)} and
+     *  {@link org.tbull.util.dev.ObjectDumper#exclude(String...)}.
+     */
+    @Test
+    public void testRules() throws Exception {
+        Node n = new Node("n");
+        String node = "org.tbull.util.dev.ObjectDumperTest$Node";
+
+        ObjectDumper od = new ObjectDumper().exclude("children", "parent", "id");
+        od.exclude(new Grepper<Field>() {
+            public @Override boolean grep(Field f) { return Modifier.isTransient(f.getModifiers()); }
+        });
+        assertEquals(
+            node + " = {" + NL +
+            "    weight = -7," + NL +
+            "    leaf = false," + NL +
+            "    score = 0.5," + NL +
+            "    name = \"n\"," + NL +
+            "}" + NL, dump(od, n));
+
+        od.include(new Grepper<Field>() {
+            public @Override boolean grep(Field f) { return f.getType().isPrimitive(); }
+        });
+        assertEquals(node + " = {" + NL + "    weight = -7," + NL + "    leaf = false," + NL + "    score = 0.5," + NL
+            + "}" + NL, dump(od, n));
+
+        // with limits, fields count like elements
+        StringBuilder sb = new StringBuilder();
+        new DataDumpWriter(sb).setLineSeparator(NL).setObjectDumper(od).setMaxElements(1).setMaxDepth(1)
+            .dump(new Object[] { n });
+        assertEquals("Object[1] = [" + NL + "    " + node + " = {<3 elided>}," + NL + "]" + NL, sb.toString());
+    }
+
+
+    /** Test method for {@link org.tbull.util.dev.ObjectDumper#plan(Class)}. */
+    @Test
+    public void testPlanCache() {
+        ObjectDumper od = new ObjectDumper();
+        ObjectDumper.Plan plan = od.plan(Node.class);
+        assertSame(plan, od.plan(Node.class));
+        assertEquals(8, plan.fields.length);
+        assertEquals(ObjectDumper.LONG, plan.fields[0].kind);
+        assertEquals(ObjectDumper.REFERENCE, plan.fields[5].kind);
+        assertNull(od.plan(Empty.class));
+        assertNull(od.plan(StringBuilder.class));
+
+        od.exclude("name");
+        assertEquals(7, od.plan(Node.class).fields.length);
+    }
+
+}